@@ -0,0 +1,791 @@
+package cn.vicey.navigator.Components;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Point;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+import android.view.TextureView;
+import cn.vicey.navigator.Debug.DebugManager;
+import cn.vicey.navigator.Models.Adjacency;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.PathNode;
+import cn.vicey.navigator.Models.Nodes.WallNode;
+import cn.vicey.navigator.Models.SegmentIndex;
+import cn.vicey.navigator.Navigate.NavigateManager;
+import cn.vicey.navigator.Navigate.Path;
+import cn.vicey.navigator.R;
+import cn.vicey.navigator.Utils.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Map OpenGL ES renderer component, a {@link MapRenderer.Backend} drawing floor's geometry on a render thread
+ * <p>
+ * Wall links and nodes picked by level of detail are uploaded once per floor and zoom bucket, and guide links and nodes
+ * once per floor, as triangles in floor coordinate, so panning and zooming within a bucket only changes the transform
+ * matrix. Nodes are quads cut into circles by fragment shader, so their size doesn't depend on point size range of the
+ * device. Paths and user node are uploaded again on every render request. Floors are got on render thread, so a floor
+ * which isn't loaded is never loaded on UI thread. Node names aren't drawn, map renderer draws them over this view.
+ */
+public class MapGLRenderer
+        extends TextureView
+        implements MapRenderer.Backend, TextureView.SurfaceTextureListener
+{
+    //region Inner classes
+
+    /**
+     * Listener which will be invoked when OpenGL ES can't be used
+     */
+    public interface OnFailedListener
+    {
+        //region Methods
+
+        /**
+         * Invoked on UI thread when OpenGL ES can't be used
+         */
+        void onFailed();
+
+        //endregion
+    }
+
+    /**
+     * Listener which will be invoked when a floor is uploaded
+     */
+    public interface OnFloorUploadedListener
+    {
+        //region Methods
+
+        /**
+         * Invoked on UI thread when a floor different from the previous one is uploaded, so things drawn over this view
+         * can get it without loading it
+         */
+        void onFloorUploaded();
+
+        //endregion
+    }
+
+    //endregion
+
+    //region Constants
+
+    private static final String LOGGER_TAG = "MapGLRenderer";
+
+    private static final int BATCH_GUIDE_PATH_LINES = 0;    // Dynamic batch of guide path lines
+    private static final int BATCH_GUIDE_PATH_NODES = 1;    // Dynamic batch of guide path nodes
+    private static final int BATCH_USER_PATH_LINES  = 2;    // Dynamic batch of user path lines
+    private static final int BATCH_USER_PATH_NODES  = 3;    // Dynamic batch of user path nodes
+    private static final int BATCH_USER_NODE        = 4;    // Dynamic batch of user node
+    private static final int BATCH_COUNT            = 5;    // Dynamic batch count
+    private static final int BUFFER_CAPACITY        = 1024; // Initial float count of dynamic vertex buffer
+    private static final int EGL_OPENGL_ES2_BIT     = 4;    // EGL renderable type of OpenGL ES 2.0
+    private static final int FLOATS_PER_VERTEX      = 4;    // Float count of a vertex, x, y and corner x, y
+    private static final int STATIC_GUIDE_LINKS     = 2;    // Static range of guide links
+    private static final int STATIC_GUIDE_NODES     = 3;    // Static range of guide nodes
+    private static final int STATIC_RANGE_COUNT     = 4;    // Static range count
+    private static final int STATIC_WALL_LINKS      = 0;    // Static range of wall links
+    private static final int STATIC_WALL_NODES      = 1;    // Static range of wall nodes
+    private static final int VERTICES_PER_LINK      = 6;    // Vertex count of a link, two triangles
+    private static final int VERTICES_PER_NODE      = 6;    // Vertex count of a node, two triangles
+
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n"
+                                                  + "uniform vec4 uColor;\n"
+                                                  + "varying vec2 vCorner;\n"
+                                                  + "void main()\n"
+                                                  + "{\n"
+                                                  + "    if (dot(vCorner, vCorner) > 1.0) discard;\n"
+                                                  + "    gl_FragColor = uColor;\n"
+                                                  + "}\n"; // Fragment shader, cuts node quads into circles, links have zero corner
+    private static final String VERTEX_SHADER   = "uniform mat4 uMatrix;\n"
+                                                  + "attribute vec2 aPosition;\n"
+                                                  + "attribute vec2 aCorner;\n"
+                                                  + "varying vec2 vCorner;\n"
+                                                  + "void main()\n"
+                                                  + "{\n"
+                                                  + "    gl_Position = uMatrix * vec4(aPosition, 0.0, 1.0);\n"
+                                                  + "    vCorner = aCorner;\n"
+                                                  + "}\n"; // Vertex shader, transforms floor coordinate by matrix
+
+    //endregion
+
+    //region Fields
+
+    private int                     mBackgroundColor;  // Background color
+    private MapLevelOfDetailCache   mDetailCache;      // Levels of detail of walls
+    private EGLConfig               mEglConfig;        // EGL config, or null if EGL isn't initialized
+    private EGLContext              mEglContext;       // EGL context, or null if EGL isn't initialized
+    private EGLDisplay              mEglDisplay;       // EGL display, or null if EGL isn't initialized
+    private EGLSurface              mEglSurface;       // EGL window surface, or null if there is no surface
+    private Floor                   mGLFloor;          // Floor uploaded to static vertex buffer, used on render thread only
+    private int                     mGLZoomBucket;     // Zoom bucket of walls uploaded to static vertex buffer, used on render thread only
+    private int                     mGuideColor;       // Color of guide nodes and links
+    private Handler                 mHandler;          // Handler of render thread
+    private OnFailedListener        mListener;         // Listener invoked when OpenGL ES can't be used
+    private int                     mProgram;          // Shader program
+    private HandlerThread           mRenderThread;     // Render thread
+    private OnFloorUploadedListener mUploadedListener; // Listener invoked when a floor is uploaded
+    private int                     mUserColor;        // Color of user node
+    private int                     mUserPathColor;    // Color of user path
+    private int                     mWallColor;        // Color of wall nodes and links
+
+    private int mColorLocation;    // Location of color uniform
+    private int mCornerLocation;   // Location of corner attribute
+    private int mMatrixLocation;   // Location of matrix uniform
+    private int mPositionLocation; // Location of position attribute
+
+    private int[]       mBuffers       = new int[2];                      // Static and dynamic vertex buffer objects
+    private FloatBuffer mDynamicBuffer = allocateBuffer(BUFFER_CAPACITY); // Dynamic vertices copied for uploading, used on render thread only
+    private float[]     mMatrix        = new float[16];                   // Transform matrix, used on render thread only
+    private int[]       mRenderCounts  = new int[BATCH_COUNT];            // Vertex count of each dynamic batch, used on render thread only
+    private int[]       mRenderFirsts  = new int[BATCH_COUNT];            // First vertex of each dynamic batch, used on render thread only
+    private int[]       mStaticCounts  = new int[STATIC_RANGE_COUNT];     // Vertex count of each static range
+    private int[]       mStaticFirsts  = new int[STATIC_RANGE_COUNT];     // First vertex of each static range
+
+    private final Object mFrameLock = new Object(); // Lock of frame state, which is written on UI thread and read on render thread
+
+    private boolean mFrameDebug;      // Whether all guide paths should be displayed, guarded by frame lock
+    private int     mFrameFloorIndex; // Index of floor to draw, or NO_SELECTED_FLOOR if no floor is displaying, guarded by frame lock
+    private int     mFrameHeight;     // View's height, guarded by frame lock
+    private float   mFrameOffsetX;    // X axis of floor's origin in view coordinate, guarded by frame lock
+    private float   mFrameOffsetY;    // Y axis of floor's origin in view coordinate, guarded by frame lock
+    private int     mFrameSize;       // Float count of dynamic vertices, guarded by frame lock
+    private int     mFrameWidth;      // View's width, guarded by frame lock
+    private float   mFrameZoomLevel;  // Zoom level, guarded by frame lock
+    private boolean mReleased;        // Whether this backend is released, render thread quits once EGL is released, guarded by frame lock
+    private boolean mRenderPending;   // Whether a render task is posted and not run yet, guarded by frame lock
+
+    private int[]   mFrameCounts   = new int[BATCH_COUNT];       // Vertex count of each dynamic batch, guarded by frame lock
+    private int[]   mFrameFirsts   = new int[BATCH_COUNT];       // First vertex of each dynamic batch, guarded by frame lock
+    private float[] mFrameVertices = new float[BUFFER_CAPACITY]; // Dynamic vertices, guarded by frame lock
+
+    private final Runnable mRenderTask = new Runnable() // Task rendering latest frame state
+    {
+        @Override
+        public void run()
+        {
+            render();
+        }
+    };
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link MapGLRenderer}
+     *
+     * @param context          Related context
+     * @param detailCache      Levels of detail of walls, shared with map renderer
+     * @param listener         Listener invoked when OpenGL ES can't be used
+     * @param uploadedListener Listener invoked when a floor is uploaded
+     */
+    public MapGLRenderer(Context context, final @NonNull MapLevelOfDetailCache detailCache, final @NonNull OnFailedListener listener, final @NonNull OnFloorUploadedListener uploadedListener)
+    {
+        super(context);
+        mDetailCache = detailCache;
+        mListener = listener;
+        mUploadedListener = uploadedListener;
+        mFrameFloorIndex = NavigateManager.NO_SELECTED_FLOOR;
+        mBackgroundColor = ContextCompat.getColor(context, R.color.renderer_background);
+        mGuideColor = ContextCompat.getColor(context, R.color.renderer_guide_color);
+        mUserColor = ContextCompat.getColor(context, R.color.renderer_user_color);
+        mUserPathColor = ContextCompat.getColor(context, R.color.renderer_user_path_color);
+        mWallColor = ContextCompat.getColor(context, R.color.renderer_wall_color);
+        mRenderThread = new HandlerThread(LOGGER_TAG);
+        mRenderThread.start();
+        mHandler = new Handler(mRenderThread.getLooper());
+        setSurfaceTextureListener(this);
+    }
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Allocate a direct float buffer in native order
+     *
+     * @param capacity Float count
+     * @return Float buffer
+     */
+    private static FloatBuffer allocateBuffer(int capacity)
+    {
+        return ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Append a link as two triangles of specified width to vertices, with zero corner so it's never cut
+     *
+     * @param vertices Vertices, may be reallocated
+     * @param size     Float count in vertices
+     * @param width    Link's width
+     * @param x1       Start point's x axis
+     * @param y1       Start point's y axis
+     * @param x2       End point's x axis
+     * @param y2       End point's y axis
+     * @return Vertices, reallocated if it's grown
+     */
+    private static float[] appendLink(float[] vertices, int size, float width, float x1, float y1, float x2, float y2)
+    {
+        if (size + VERTICES_PER_LINK * FLOATS_PER_VERTEX > vertices.length)
+            vertices = Arrays.copyOf(vertices, Math.max(vertices.length * 2, size + VERTICES_PER_LINK * FLOATS_PER_VERTEX));
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        // Zero length links are covered by their nodes, emit degenerate triangles to keep vertex count
+        float nx = length == 0 ? 0 : -dy / length * width / 2;
+        float ny = length == 0 ? 0 : dx / length * width / 2;
+        setVertex(vertices, size, x1 + nx, y1 + ny, 0, 0);
+        setVertex(vertices, size + FLOATS_PER_VERTEX, x1 - nx, y1 - ny, 0, 0);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 2, x2 + nx, y2 + ny, 0, 0);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 3, x2 + nx, y2 + ny, 0, 0);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 4, x1 - nx, y1 - ny, 0, 0);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 5, x2 - nx, y2 - ny, 0, 0);
+        return vertices;
+    }
+
+    /**
+     * Append a node as a quad of two triangles to vertices, corners run from -1 to 1 so the quad is cut into a circle
+     *
+     * @param vertices Vertices, may be reallocated
+     * @param size     Float count in vertices
+     * @param radius   Node's radius
+     * @param x        X axis
+     * @param y        Y axis
+     * @return Vertices, reallocated if it's grown
+     */
+    private static float[] appendNode(float[] vertices, int size, float radius, float x, float y)
+    {
+        if (size + VERTICES_PER_NODE * FLOATS_PER_VERTEX > vertices.length)
+            vertices = Arrays.copyOf(vertices, Math.max(vertices.length * 2, size + VERTICES_PER_NODE * FLOATS_PER_VERTEX));
+        setVertex(vertices, size, x - radius, y - radius, -1, -1);
+        setVertex(vertices, size + FLOATS_PER_VERTEX, x + radius, y - radius, 1, -1);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 2, x - radius, y + radius, -1, 1);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 3, x - radius, y + radius, -1, 1);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 4, x + radius, y - radius, 1, -1);
+        setVertex(vertices, size + FLOATS_PER_VERTEX * 5, x + radius, y + radius, 1, 1);
+        return vertices;
+    }
+
+    /**
+     * Sets a vertex in vertices
+     *
+     * @param vertices Vertices
+     * @param offset   Float offset of the vertex
+     * @param x        X axis
+     * @param y        Y axis
+     * @param cornerX  Corner's x axis
+     * @param cornerY  Corner's y axis
+     */
+    private static void setVertex(final @NonNull float[] vertices, int offset, float x, float y, float cornerX, float cornerY)
+    {
+        vertices[offset] = x;
+        vertices[offset + 1] = y;
+        vertices[offset + 2] = cornerX;
+        vertices[offset + 3] = cornerY;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Append a path's links and nodes to frame vertices, drawn the same way as {@link MapRenderer}'s canvas backend
+     *
+     * @param path       Path to append
+     * @param linesBatch Batch index of links
+     * @param nodesBatch Batch index of nodes
+     */
+    private void appendPath(final @NonNull Path path, int linesBatch, int nodesBatch)
+    {
+        List<PathNode> nodes = path.getNodes();
+        int end = path.getSize() - 1;
+        mFrameFirsts[linesBatch] = mFrameSize / FLOATS_PER_VERTEX;
+        for (int i = 1; i < end; i++)
+        {
+            PathNode prevNode = nodes.get(i - 1);
+            PathNode curNode = nodes.get(i);
+            mFrameVertices = appendLink(mFrameVertices, mFrameSize, MapRenderer.LINE_WIDTH, prevNode.getX(), prevNode.getY(), curNode
+                    .getX(), curNode.getY());
+            mFrameSize += VERTICES_PER_LINK * FLOATS_PER_VERTEX;
+        }
+        mFrameCounts[linesBatch] = mFrameSize / FLOATS_PER_VERTEX - mFrameFirsts[linesBatch];
+        mFrameFirsts[nodesBatch] = mFrameSize / FLOATS_PER_VERTEX;
+        for (int i = 0; i < end; i++)
+        {
+            mFrameVertices = appendNode(mFrameVertices, mFrameSize, MapRenderer.NODE_RADIUS, nodes.get(i).getX(), nodes.get(i).getY());
+            mFrameSize += VERTICES_PER_NODE * FLOATS_PER_VERTEX;
+        }
+        mFrameCounts[nodesBatch] = mFrameSize / FLOATS_PER_VERTEX - mFrameFirsts[nodesBatch];
+    }
+
+    /**
+     * Bind a vertex buffer and point position and corner attributes to it
+     *
+     * @param buffer Vertex buffer object
+     */
+    private void bindBuffer(int buffer)
+    {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+        GLES20.glVertexAttribPointer(mPositionLocation, 2, GLES20.GL_FLOAT, false, FLOATS_PER_VERTEX * 4, 0);
+        GLES20.glVertexAttribPointer(mCornerLocation, 2, GLES20.GL_FLOAT, false, FLOATS_PER_VERTEX * 4, 8);
+    }
+
+    /**
+     * Compile a shader
+     *
+     * @param type   Shader type
+     * @param source Shader source
+     * @return Shader, or 0 if the compiling failed
+     */
+    private int compileShader(int type, final @NonNull String source)
+    {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != 0) return shader;
+        Logger.error(LOGGER_TAG, "Failed to compile shader: " + GLES20.glGetShaderInfoLog(shader));
+        GLES20.glDeleteShader(shader);
+        return 0;
+    }
+
+    /**
+     * Draw a range of triangles in bound vertex buffer
+     *
+     * @param color Color
+     * @param first First vertex
+     * @param count Vertex count
+     */
+    private void drawRange(int color, int first, int count)
+    {
+        if (count == 0) return;
+        GLES20.glUniform4f(mColorLocation, Color.red(color) / 255f, Color.green(color) / 255f, Color.blue(color) / 255f, Color
+                .alpha(color) / 255f);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, first, count);
+    }
+
+    /**
+     * Initialize EGL and OpenGL ES objects, runs on render thread
+     *
+     * @param surfaceTexture Surface texture to draw into
+     * @return Whether the initialization is succeed or not
+     */
+    private boolean initGL(final @NonNull SurfaceTexture surfaceTexture)
+    {
+        mEglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(mEglDisplay, version, 0, version, 1)) return false;
+        int[] configAttributes = {EGL14.EGL_RED_SIZE, 8, EGL14.EGL_GREEN_SIZE, 8, EGL14.EGL_BLUE_SIZE, 8, EGL14.EGL_ALPHA_SIZE, 8,
+                                  EGL14.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT, EGL14.EGL_NONE};
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        if (!EGL14.eglChooseConfig(mEglDisplay, configAttributes, 0, configs, 0, 1, configCount, 0)) return false;
+        if (configCount[0] == 0) return false;
+        mEglConfig = configs[0];
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        mEglContext = EGL14.eglCreateContext(mEglDisplay, mEglConfig, EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        if (mEglContext == null || mEglContext == EGL14.EGL_NO_CONTEXT) return false;
+        mEglSurface = EGL14.eglCreateWindowSurface(mEglDisplay, mEglConfig, surfaceTexture, new int[]{EGL14.EGL_NONE}, 0);
+        if (mEglSurface == null || mEglSurface == EGL14.EGL_NO_SURFACE) return false;
+        if (!EGL14.eglMakeCurrent(mEglDisplay, mEglSurface, mEglSurface, mEglContext)) return false;
+
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        if (vertexShader == 0 || fragmentShader == 0) return false;
+        mProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(mProgram, vertexShader);
+        GLES20.glAttachShader(mProgram, fragmentShader);
+        GLES20.glLinkProgram(mProgram);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(mProgram, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0)
+        {
+            Logger.error(LOGGER_TAG, "Failed to link program: " + GLES20.glGetProgramInfoLog(mProgram));
+            return false;
+        }
+        mColorLocation = GLES20.glGetUniformLocation(mProgram, "uColor");
+        mCornerLocation = GLES20.glGetAttribLocation(mProgram, "aCorner");
+        mMatrixLocation = GLES20.glGetUniformLocation(mProgram, "uMatrix");
+        mPositionLocation = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        GLES20.glGenBuffers(2, mBuffers, 0);
+        mGLFloor = null;
+        return true;
+    }
+
+    /**
+     * Invoke failed listener on UI thread
+     */
+    private void notifyFailed()
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mListener.onFailed();
+            }
+        });
+    }
+
+    /**
+     * Invoke floor uploaded listener on UI thread
+     */
+    private void notifyFloorUploaded()
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mUploadedListener.onFloorUploaded();
+            }
+        });
+    }
+
+    /**
+     * Release EGL and OpenGL ES objects, runs on render thread
+     */
+    private void releaseGL()
+    {
+        if (mEglDisplay == null) return;
+        if (mEglContext != null && mEglSurface != null && EGL14.eglMakeCurrent(mEglDisplay, mEglSurface, mEglSurface, mEglContext))
+        {
+            GLES20.glDeleteBuffers(2, mBuffers, 0);
+            GLES20.glDeleteProgram(mProgram);
+        }
+        EGL14.eglMakeCurrent(mEglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        if (mEglSurface != null) EGL14.eglDestroySurface(mEglDisplay, mEglSurface);
+        if (mEglContext != null) EGL14.eglDestroyContext(mEglDisplay, mEglContext);
+        EGL14.eglTerminate(mEglDisplay);
+        mEglConfig = null;
+        mEglContext = null;
+        mEglDisplay = null;
+        mEglSurface = null;
+        mGLFloor = null;
+    }
+
+    /**
+     * Render latest frame state, runs on render thread
+     */
+    private void render()
+    {
+        try
+        {
+            int floorIndex;
+            boolean debug;
+            int width;
+            int height;
+            float zoomLevel;
+            synchronized (mFrameLock)
+            {
+                mRenderPending = false;
+                if (mEglSurface == null) return;
+                floorIndex = mFrameFloorIndex;
+                debug = mFrameDebug;
+                width = mFrameWidth;
+                height = mFrameHeight;
+                zoomLevel = mFrameZoomLevel;
+                if (width == 0 || height == 0) return;
+                // Floor coordinate to normalized device coordinate, column major
+                Arrays.fill(mMatrix, 0);
+                mMatrix[0] = 2 * mFrameZoomLevel / width;
+                mMatrix[5] = -2 * mFrameZoomLevel / height;
+                mMatrix[10] = 1;
+                mMatrix[12] = 2 * mFrameOffsetX / width - 1;
+                mMatrix[13] = 1 - 2 * mFrameOffsetY / height;
+                mMatrix[15] = 1;
+                System.arraycopy(mFrameFirsts, 0, mRenderFirsts, 0, BATCH_COUNT);
+                System.arraycopy(mFrameCounts, 0, mRenderCounts, 0, BATCH_COUNT);
+                if (mDynamicBuffer.capacity() < mFrameSize) mDynamicBuffer = allocateBuffer(mFrameVertices.length);
+                mDynamicBuffer.clear();
+                mDynamicBuffer.put(mFrameVertices, 0, mFrameSize);
+                mDynamicBuffer.flip();
+            }
+
+            // Floor may be loaded here, off UI thread
+            Floor floor = NavigateManager.getFloor(floorIndex);
+            if (floor != null)
+            {
+                int zoomBucket = MapTileCache.getZoomBucket(zoomLevel);
+                if (floor != mGLFloor)
+                {
+                    uploadFloor(floor, zoomBucket, mDetailCache.get(floor, zoomBucket));
+                    notifyFloorUploaded();
+                }
+                else if (zoomBucket != mGLZoomBucket)
+                {
+                    // Keep walls of previous bucket until level of detail is built, cache flushes map renderer then
+                    MapLevelOfDetail detail = mDetailCache.peek(floor, zoomBucket);
+                    if (detail != null) uploadFloor(floor, zoomBucket, detail);
+                }
+            }
+
+            GLES20.glViewport(0, 0, width, height);
+            GLES20.glClearColor(Color.red(mBackgroundColor) / 255f, Color.green(mBackgroundColor) / 255f, Color.blue(mBackgroundColor) / 255f, 1);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            if (floor != null)
+            {
+                GLES20.glUseProgram(mProgram);
+                GLES20.glUniformMatrix4fv(mMatrixLocation, 1, false, mMatrix, 0);
+                GLES20.glEnableVertexAttribArray(mPositionLocation);
+                GLES20.glEnableVertexAttribArray(mCornerLocation);
+
+                // Static geometry uploaded once per floor and zoom bucket
+                bindBuffer(mBuffers[0]);
+                drawRange(mWallColor, mStaticFirsts[STATIC_WALL_LINKS], mStaticCounts[STATIC_WALL_LINKS]);
+                drawRange(mWallColor, mStaticFirsts[STATIC_WALL_NODES], mStaticCounts[STATIC_WALL_NODES]);
+                if (debug) drawRange(mGuideColor, mStaticFirsts[STATIC_GUIDE_LINKS], mStaticCounts[STATIC_GUIDE_LINKS]);
+
+                // Dynamic geometry uploaded every frame
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[1]);
+                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mDynamicBuffer.limit() * 4, mDynamicBuffer, GLES20.GL_STREAM_DRAW);
+                bindBuffer(mBuffers[1]);
+                drawRange(mGuideColor, mRenderFirsts[BATCH_GUIDE_PATH_LINES], mRenderCounts[BATCH_GUIDE_PATH_LINES]);
+                drawRange(mGuideColor, mRenderFirsts[BATCH_GUIDE_PATH_NODES], mRenderCounts[BATCH_GUIDE_PATH_NODES]);
+                drawRange(mUserPathColor, mRenderFirsts[BATCH_USER_PATH_LINES], mRenderCounts[BATCH_USER_PATH_LINES]);
+                drawRange(mUserPathColor, mRenderFirsts[BATCH_USER_PATH_NODES], mRenderCounts[BATCH_USER_PATH_NODES]);
+                drawRange(mUserColor, mRenderFirsts[BATCH_USER_NODE], mRenderCounts[BATCH_USER_NODE]);
+
+                if (debug)
+                {
+                    bindBuffer(mBuffers[0]);
+                    drawRange(mGuideColor, mStaticFirsts[STATIC_GUIDE_NODES], mStaticCounts[STATIC_GUIDE_NODES]);
+                }
+                GLES20.glDisableVertexAttribArray(mCornerLocation);
+                GLES20.glDisableVertexAttribArray(mPositionLocation);
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            }
+            EGL14.eglSwapBuffers(mEglDisplay, mEglSurface);
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to render.", t);
+            releaseGL();
+            notifyFailed();
+        }
+    }
+
+    /**
+     * Upload floor's wall geometry picked by level of detail and guide geometry to static vertex buffer, runs on render
+     * thread
+     *
+     * @param floor      Floor to upload
+     * @param zoomBucket Zoom bucket of level of detail
+     * @param detail     Level of detail of walls
+     */
+    private void uploadFloor(final @NonNull Floor floor, int zoomBucket, final @NonNull MapLevelOfDetail detail)
+    {
+        long startTime = new Date().getTime();
+        float[] vertices = new float[BUFFER_CAPACITY];
+        int size = 0;
+
+        // Wall links
+        mStaticFirsts[STATIC_WALL_LINKS] = 0;
+        SegmentIndex wallIndex = detail.getWallIndex();
+        int[] segments = wallIndex.getSegments();
+        for (int i = 0; i < wallIndex.getSize() * 4; i += 4)
+        {
+            vertices = appendLink(vertices, size, MapRenderer.LINE_WIDTH, segments[i], segments[i + 1], segments[i + 2], segments[i + 3]);
+            size += VERTICES_PER_LINK * FLOATS_PER_VERTEX;
+        }
+        mStaticCounts[STATIC_WALL_LINKS] = size / FLOATS_PER_VERTEX;
+
+        // Wall nodes
+        mStaticFirsts[STATIC_WALL_NODES] = size / FLOATS_PER_VERTEX;
+        for (WallNode wallNode : detail.getWallNodes())
+        {
+            vertices = appendNode(vertices, size, MapRenderer.NODE_RADIUS, wallNode.getX(), wallNode.getY());
+            size += VERTICES_PER_NODE * FLOATS_PER_VERTEX;
+        }
+        mStaticCounts[STATIC_WALL_NODES] = size / FLOATS_PER_VERTEX - mStaticFirsts[STATIC_WALL_NODES];
+
+        // Guide links
+        mStaticFirsts[STATIC_GUIDE_LINKS] = size / FLOATS_PER_VERTEX;
+        List<GuideNode> guideNodes = floor.getGuideNodes();
+        Adjacency adjacency = floor.getGuideAdjacency();
+        int[] offsets = adjacency.getOffsets();
+        int[] targets = adjacency.getTargets();
+        for (int i = 0; i < guideNodes.size(); i++)
+        {
+            GuideNode start = guideNodes.get(i);
+            for (int j = offsets[i]; j < offsets[i + 1]; j++)
+            {
+                // Each link is stored in both directions, upload it once
+                if (targets[j] < i) continue;
+                GuideNode end = guideNodes.get(targets[j]);
+                vertices = appendLink(vertices, size, MapRenderer.LINE_WIDTH, start.getX(), start.getY(), end.getX(), end.getY());
+                size += VERTICES_PER_LINK * FLOATS_PER_VERTEX;
+            }
+        }
+        mStaticCounts[STATIC_GUIDE_LINKS] = size / FLOATS_PER_VERTEX - mStaticFirsts[STATIC_GUIDE_LINKS];
+
+        // Guide nodes
+        mStaticFirsts[STATIC_GUIDE_NODES] = size / FLOATS_PER_VERTEX;
+        for (GuideNode guideNode : guideNodes)
+        {
+            vertices = appendNode(vertices, size, MapRenderer.NODE_RADIUS, guideNode.getX(), guideNode.getY());
+            size += VERTICES_PER_NODE * FLOATS_PER_VERTEX;
+        }
+        mStaticCounts[STATIC_GUIDE_NODES] = size / FLOATS_PER_VERTEX - mStaticFirsts[STATIC_GUIDE_NODES];
+
+        FloatBuffer buffer = allocateBuffer(size);
+        buffer.put(vertices, 0, size);
+        buffer.flip();
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, size * 4, buffer, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        mGLFloor = floor;
+        mGLZoomBucket = zoomBucket;
+        Logger.info(LOGGER_TAG, "Uploaded floor at zoom bucket " + zoomBucket + ", " + size / FLOATS_PER_VERTEX + " vertices. Total time: " + (new Date().getTime() - startTime) + " ms.");
+    }
+
+    //endregion
+
+    //region Override methods
+
+    @Override
+    public void onSurfaceTextureAvailable(final SurfaceTexture surfaceTexture, int width, int height)
+    {
+        synchronized (mFrameLock)
+        {
+            // Surface texture is released when it's destroyed
+            if (mReleased) return;
+            mFrameWidth = width;
+            mFrameHeight = height;
+        }
+        mHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    if (initGL(surfaceTexture))
+                    {
+                        render();
+                        return;
+                    }
+                    Logger.error(LOGGER_TAG, "Failed to init OpenGL ES, EGL error: " + EGL14.eglGetError());
+                }
+                catch (Throwable t)
+                {
+                    Logger.error(LOGGER_TAG, "Failed to init OpenGL ES.", t);
+                }
+                releaseGL();
+                notifyFailed();
+            }
+        });
+    }
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(final SurfaceTexture surfaceTexture)
+    {
+        boolean isPosted = mHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                releaseGL();
+                surfaceTexture.release();
+            }
+        });
+        // Render thread quits only after releasing EGL, so surface texture can be released here if it has quit
+        if (!isPosted) surfaceTexture.release();
+        // Otherwise surface texture is released on render thread once EGL stops using it
+        return false;
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture, int width, int height)
+    {
+        synchronized (mFrameLock)
+        {
+            if (mReleased) return;
+            mFrameWidth = width;
+            mFrameHeight = height;
+            if (mRenderPending) return;
+            mRenderPending = true;
+        }
+        mHandler.post(mRenderTask);
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture)
+    {
+        // no-op
+    }
+
+    @Override
+    public void release()
+    {
+        synchronized (mFrameLock)
+        {
+            if (mReleased) return;
+            mReleased = true;
+        }
+        mHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                releaseGL();
+                // Quit after releasing EGL, tasks posted later are rejected and handled by their posters
+                mRenderThread.quitSafely();
+            }
+        });
+    }
+
+    @Override
+    public void requestRender(int floorIndex, float zoomLevel, float offsetX, float offsetY)
+    {
+        synchronized (mFrameLock)
+        {
+            if (mReleased) return;
+            mFrameFloorIndex = floorIndex;
+            mFrameDebug = DebugManager.isDisplayAllGuidePaths();
+            mFrameZoomLevel = zoomLevel;
+            mFrameOffsetX = offsetX;
+            mFrameOffsetY = offsetY;
+            mFrameSize = 0;
+            Arrays.fill(mFrameCounts, 0);
+            if (floorIndex != NavigateManager.NO_SELECTED_FLOOR)
+            {
+                Path navigatePath = NavigateManager.getCurrentGuidePath();
+                if (navigatePath != null) appendPath(navigatePath, BATCH_GUIDE_PATH_LINES, BATCH_GUIDE_PATH_NODES);
+                Path userPath = DebugManager.isTrackPathEnabled() ? NavigateManager.getCurrentUserPath() : null;
+                if (userPath != null) appendPath(userPath, BATCH_USER_PATH_LINES, BATCH_USER_PATH_NODES);
+                if (NavigateManager.getCurrentFloorIndex() == floorIndex)
+                {
+                    Point location = NavigateManager.getCurrentLocation();
+                    mFrameFirsts[BATCH_USER_NODE] = mFrameSize / FLOATS_PER_VERTEX;
+                    mFrameVertices = appendNode(mFrameVertices, mFrameSize, MapRenderer.NODE_RADIUS * 2, location.x, location.y);
+                    mFrameSize += VERTICES_PER_NODE * FLOATS_PER_VERTEX;
+                    mFrameCounts[BATCH_USER_NODE] = VERTICES_PER_NODE;
+                }
+            }
+            if (mRenderPending) return;
+            mRenderPending = true;
+        }
+        mHandler.post(mRenderTask);
+    }
+
+    //endregion
+}
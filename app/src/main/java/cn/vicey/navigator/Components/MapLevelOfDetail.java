@@ -0,0 +1,424 @@
+package cn.vicey.navigator.Components;
+
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.WallNode;
+import cn.vicey.navigator.Models.SegmentIndex;
+import cn.vicey.navigator.Models.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Map level of detail class, holds what of a floor's static layers is drawn at a zoom bucket
+ * <p>
+ * Labels are picked by priority, entries of other floors first, then nodes with more guide links, and a label is
+ * dropped if it overlaps a picked one on screen. Walls are joined into chains through nodes shared by exactly two
+ * links, and each chain is simplified by Douglas-Peucker algorithm. Allowed error is a pixel at max zoom bucket and
+ * grows in proportion as zooming out, so overview levels drop most points. Wall nodes are kept only where a simplified
+ * link ends, or where they aren't on any wall link.
+ */
+public class MapLevelOfDetail
+{
+    //region Constants
+
+    private static final int   LABEL_CELL_SIZE = 128; // Collision grid's cell width and height in pixels
+    private static final int   LABEL_PADDING   = 4;   // Min gap between two labels in pixels
+    private static final float WALL_TOLERANCE  = 1f;  // Max distance in pixels between a dropped wall point and the simplified chain at max zoom bucket
+
+    //endregion
+
+    //region Fields
+
+    private SpatialIndex<GuideNode> mLabelIndex;    // Spatial index of guide nodes whose names are drawn
+    private float                   mMaxLabelWidth; // Width of the widest drawn label in pixels
+    private float                   mTextSize;      // Label text size in pixels
+    private SegmentIndex            mWallIndex;     // Segment index of simplified wall links
+    private SpatialIndex<WallNode>  mWallNodeIndex; // Spatial index of wall nodes which are drawn
+    private List<WallNode>          mWallNodes;     // Wall nodes which are drawn
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link MapLevelOfDetail}
+     *
+     * @param floor         Floor to draw
+     * @param zoomBucket    Zoom bucket to draw at, see {@link MapTileCache#getZoomBucket(float)}
+     * @param maxZoomBucket Max zoom bucket, where allowed wall error is least
+     * @param textSize      Label text size in pixels
+     * @param textPaint     Paint to measure labels, its text size will be changed
+     */
+    public MapLevelOfDetail(final @NonNull Floor floor, int zoomBucket, int maxZoomBucket, float textSize, final @NonNull Paint textPaint)
+    {
+        mTextSize = textSize;
+        mLabelIndex = new SpatialIndex<>(pickLabels(floor, zoomBucket, textPaint));
+        // Error in pixels grows by max zoom bucket / zoom bucket, divided by zoom bucket again to floor coordinate
+        float tolerance = WALL_TOLERANCE * maxZoomBucket / zoomBucket / zoomBucket;
+        mWallIndex = simplifyWalls(floor.getWallIndex(), tolerance);
+        mWallNodes = pickWallNodes(floor, mWallIndex);
+        mWallNodeIndex = new SpatialIndex<>(mWallNodes);
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets spatial index of guide nodes whose names are drawn
+     *
+     * @return Spatial index of labeled guide nodes
+     */
+    public SpatialIndex<GuideNode> getLabelIndex()
+    {
+        return mLabelIndex;
+    }
+
+    /**
+     * Gets width of the widest drawn label in pixels
+     *
+     * @return Max label width
+     */
+    public float getMaxLabelWidth()
+    {
+        return mMaxLabelWidth;
+    }
+
+    /**
+     * Gets label text size in pixels
+     *
+     * @return Label text size
+     */
+    public float getTextSize()
+    {
+        return mTextSize;
+    }
+
+    /**
+     * Gets segment index of simplified wall links
+     *
+     * @return Simplified wall index
+     */
+    public SegmentIndex getWallIndex()
+    {
+        return mWallIndex;
+    }
+
+    /**
+     * Gets spatial index of wall nodes which are drawn
+     *
+     * @return Drawn wall nodes' spatial index
+     */
+    public SpatialIndex<WallNode> getWallNodeIndex()
+    {
+        return mWallNodeIndex;
+    }
+
+    /**
+     * Gets wall nodes which are drawn
+     *
+     * @return Drawn wall nodes
+     */
+    public List<WallNode> getWallNodes()
+    {
+        return mWallNodes;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Add links between a chain's points kept by Douglas-Peucker algorithm to segments, a chain of n points adds at
+     * most n - 1 links
+     *
+     * @param chain     Chain's points, x, y of each point
+     * @param size      Chain's point count
+     * @param tolerance Max distance between a dropped point and the simplified chain
+     * @param segments  Segments to receive kept links, x1, y1, x2, y2 of each link
+     * @param count     Link count in segments
+     * @return Link count in segments after adding
+     */
+    private static int addSimplifiedChain(final @NonNull int[] chain, int size, float tolerance, final @NonNull int[] segments, int count)
+    {
+        boolean[] kept = new boolean[size];
+        kept[0] = kept[size - 1] = true;
+        int[] stack = new int[size * 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        while (top > 0)
+        {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double farthestDistance = tolerance;
+            for (int i = first + 1; i < last; i++)
+            {
+                double distance = calcDistance(chain, i, first, last);
+                if (distance <= farthestDistance) continue;
+                farthest = i;
+                farthestDistance = distance;
+            }
+            if (farthest < 0) continue;
+            kept[farthest] = true;
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+        int prev = 0;
+        for (int i = 1; i < size; i++)
+        {
+            if (!kept[i]) continue;
+            segments[count * 4] = chain[prev * 2];
+            segments[count * 4 + 1] = chain[prev * 2 + 1];
+            segments[count * 4 + 2] = chain[i * 2];
+            segments[count * 4 + 3] = chain[i * 2 + 1];
+            count++;
+            prev = i;
+        }
+        return count;
+    }
+
+    /**
+     * Calculate distance between a chain point and line through two other chain points, or the first of them if they
+     * are the same point
+     *
+     * @param chain Chain's points, x, y of each point
+     * @param point Point's index
+     * @param first Line's first point index
+     * @param last  Line's last point index
+     * @return Distance
+     */
+    private static double calcDistance(final @NonNull int[] chain, int point, int first, int last)
+    {
+        double dx = chain[last * 2] - chain[first * 2];
+        double dy = chain[last * 2 + 1] - chain[first * 2 + 1];
+        double px = chain[point * 2] - chain[first * 2];
+        double py = chain[point * 2 + 1] - chain[first * 2 + 1];
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) return Math.sqrt(px * px + py * py);
+        return Math.abs(dx * py - dy * px) / length;
+    }
+
+    /**
+     * Gets key of a point
+     *
+     * @param x X axis
+     * @param y Y axis
+     * @return Point's key
+     */
+    private static long getKey(int x, int y)
+    {
+        return (long) x << 32 | y & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Check whether a guide node is an entry of another floor
+     *
+     * @param node Guide node
+     * @return Whether the node is an entry
+     */
+    private static boolean isEntry(final @NonNull GuideNode node)
+    {
+        return node.getPrev() != null || node.getNext() != null;
+    }
+
+    /**
+     * Pick labels which don't overlap each other at specified zoom bucket
+     *
+     * @param floor      Floor to draw
+     * @param zoomBucket Zoom bucket to draw at
+     * @param textPaint  Paint to measure labels
+     * @return Guide nodes whose names are drawn
+     */
+    private List<GuideNode> pickLabels(final @NonNull Floor floor, int zoomBucket, final @NonNull Paint textPaint)
+    {
+        final List<GuideNode> guideNodes = floor.getGuideNodes();
+        final int[] offsets = floor.getGuideAdjacency().getOffsets();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < guideNodes.size(); i++)
+            if (guideNodes.get(i).getName() != null) order.add(i);
+        Collections.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer left, Integer right)
+            {
+                boolean leftIsEntry = isEntry(guideNodes.get(left));
+                boolean rightIsEntry = isEntry(guideNodes.get(right));
+                if (leftIsEntry != rightIsEntry) return leftIsEntry ? -1 : 1;
+                int leftDegree = offsets[left + 1] - offsets[left];
+                int rightDegree = offsets[right + 1] - offsets[right];
+                if (leftDegree != rightDegree) return rightDegree - leftDegree;
+                return left - right;
+            }
+        });
+
+        textPaint.setTextSize(mTextSize);
+        HashMap<Long, List<float[]>> grid = new HashMap<>();
+        List<GuideNode> labels = new ArrayList<>();
+        for (int index : order)
+        {
+            GuideNode node = guideNodes.get(index);
+            float width = textPaint.measureText(node.getName());
+            float x = (float) node.getX() * zoomBucket;
+            float y = (float) node.getY() * zoomBucket;
+            // Same placement as MapRenderer's drawName, baseline half text size above the node
+            float[] bounds = new float[]{x - width / 2 - LABEL_PADDING, y - mTextSize * 3 / 2 - LABEL_PADDING, x + width / 2 + LABEL_PADDING, y - mTextSize / 4 + LABEL_PADDING};
+            if (!tryPlaceLabel(grid, bounds)) continue;
+            labels.add(node);
+            mMaxLabelWidth = Math.max(mMaxLabelWidth, width);
+        }
+        return labels;
+    }
+
+    /**
+     * Pick wall nodes which end a simplified wall link, or aren't on any wall link
+     *
+     * @param floor     Floor to draw
+     * @param wallIndex Segment index of simplified wall links
+     * @return Wall nodes which are drawn
+     */
+    private static List<WallNode> pickWallNodes(final @NonNull Floor floor, final @NonNull SegmentIndex wallIndex)
+    {
+        HashSet<Long> linkedPoints = new HashSet<>();
+        int[] segments = floor.getWallIndex().getSegments();
+        for (int i = 0; i < floor.getWallIndex().getSize() * 2; i++)
+            linkedPoints.add(getKey(segments[i * 2], segments[i * 2 + 1]));
+        HashSet<Long> keptPoints = new HashSet<>();
+        segments = wallIndex.getSegments();
+        for (int i = 0; i < wallIndex.getSize() * 2; i++)
+            keptPoints.add(getKey(segments[i * 2], segments[i * 2 + 1]));
+        List<WallNode> wallNodes = new ArrayList<>();
+        for (WallNode wallNode : floor.getWallNodes())
+        {
+            long key = getKey(wallNode.getX(), wallNode.getY());
+            if (keptPoints.contains(key) || !linkedPoints.contains(key)) wallNodes.add(wallNode);
+        }
+        return wallNodes;
+    }
+
+    /**
+     * Join wall links into chains and simplify them
+     *
+     * @param wallIndex Segment index of wall links
+     * @param tolerance Max distance between a dropped point and the simplified chain, in floor coordinate
+     * @return Segment index of simplified wall links
+     */
+    private static SegmentIndex simplifyWalls(final @NonNull SegmentIndex wallIndex, float tolerance)
+    {
+        int count = wallIndex.getSize();
+        int[] segments = wallIndex.getSegments();
+
+        // Links of each point
+        HashMap<Long, List<Integer>> pointLinks = new HashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            for (int end = 0; end < 2; end++)
+            {
+                long key = getKey(segments[i * 4 + end * 2], segments[i * 4 + end * 2 + 1]);
+                List<Integer> links = pointLinks.get(key);
+                if (links == null)
+                {
+                    links = new ArrayList<>(2);
+                    pointLinks.put(key, links);
+                }
+                links.add(i);
+            }
+        }
+
+        // Walk chains from points which aren't shared by exactly two links first, then closed loops
+        // Simplifying never adds links, so result has room for all of them
+        int[] result = new int[count * 4];
+        int resultCount = 0;
+        boolean[] visited = new boolean[count];
+        int[] chain = new int[(count + 1) * 2];
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                for (int end = 0; end < 2 && !visited[i]; end++)
+                {
+                    int x = segments[i * 4 + end * 2];
+                    int y = segments[i * 4 + end * 2 + 1];
+                    if (pass == 0 && pointLinks.get(getKey(x, y)).size() == 2) continue;
+                    int size = 0;
+                    int segment = i;
+                    while (true)
+                    {
+                        chain[size * 2] = x;
+                        chain[size * 2 + 1] = y;
+                        size++;
+                        if (segment < 0) break;
+                        visited[segment] = true;
+                        // Move to the other end of current link
+                        int base = segment * 4;
+                        boolean isStart = segments[base] == x && segments[base + 1] == y;
+                        x = isStart ? segments[base + 2] : segments[base];
+                        y = isStart ? segments[base + 3] : segments[base + 1];
+                        List<Integer> links = pointLinks.get(getKey(x, y));
+                        segment = -1;
+                        if (links.size() != 2) continue;
+                        int next = links.get(0) == base / 4 ? links.get(1) : links.get(0);
+                        if (!visited[next]) segment = next;
+                    }
+                    resultCount = addSimplifiedChain(chain, size, tolerance, result, resultCount);
+                }
+            }
+        }
+        return new SegmentIndex(result, resultCount);
+    }
+
+    /**
+     * Check whether a label rectangle overlaps any picked one, and register it if not
+     *
+     * @param grid   Collision grid, picked label rectangles registered in each overlapped cell
+     * @param bounds Label rectangle, left, top, right, bottom in pixels
+     * @return Whether the label is picked
+     */
+    private static boolean tryPlaceLabel(final @NonNull HashMap<Long, List<float[]>> grid, final @NonNull float[] bounds)
+    {
+        int fromColumn = (int) Math.floor(bounds[0] / LABEL_CELL_SIZE);
+        int toColumn = (int) Math.floor(bounds[2] / LABEL_CELL_SIZE);
+        int fromRow = (int) Math.floor(bounds[1] / LABEL_CELL_SIZE);
+        int toRow = (int) Math.floor(bounds[3] / LABEL_CELL_SIZE);
+        for (int row = fromRow; row <= toRow; row++)
+        {
+            for (int column = fromColumn; column <= toColumn; column++)
+            {
+                List<float[]> cell = grid.get(getKey(column, row));
+                if (cell == null) continue;
+                for (float[] other : cell)
+                {
+                    if (bounds[0] < other[2] && other[0] < bounds[2] && bounds[1] < other[3] && other[1] < bounds[3])
+                        return false;
+                }
+            }
+        }
+        for (int row = fromRow; row <= toRow; row++)
+        {
+            for (int column = fromColumn; column <= toColumn; column++)
+            {
+                long key = getKey(column, row);
+                List<float[]> cell = grid.get(key);
+                if (cell == null)
+                {
+                    cell = new ArrayList<>();
+                    grid.put(key, cell);
+                }
+                cell.add(bounds);
+            }
+        }
+        return true;
+    }
+
+    //endregion
+}
@@ -0,0 +1,169 @@
+package cn.vicey.navigator.Components;
+
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Utils.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Map level of detail cache class, holds levels of detail of a floor at each zoom bucket
+ * <p>
+ * UI thread only peeks built levels, a missing one is built on a background thread and listener is invoked once it's
+ * ready, so UI thread never waits for simplifying walls or placing labels. Threads which draw off UI thread get levels
+ * directly, building them on their own thread if needed. All levels are dropped when the floor changes.
+ */
+public class MapLevelOfDetailCache
+{
+    //region Inner classes
+
+    /**
+     * Listener which will be invoked when a requested level of detail is built
+     */
+    public interface OnBuiltListener
+    {
+        //region Methods
+
+        /**
+         * Invoked on building thread when a level of detail requested by peeking is built
+         */
+        void onBuilt();
+
+        //endregion
+    }
+
+    //endregion
+
+    //region Constants
+
+    private static final String LOGGER_TAG = "MapLevelOfDetailCache";
+
+    private static final int TEXT_SIZE = 16; // Label text size at zoom bucket 1
+
+    private static final ExecutorService BUILD_EXECUTOR = Executors.newSingleThreadExecutor(); // Executor building levels of detail off UI thread
+
+    //endregion
+
+    //region Fields
+
+    private MapLevelOfDetail[] mDetails;       // Built levels of detail indexed by zoom bucket, guarded by this
+    private Floor              mFloor;         // Floor of built levels of detail, guarded by this
+    private OnBuiltListener    mListener;      // Listener invoked when a requested level of detail is built
+    private int                mMaxZoomBucket; // Max zoom bucket
+    private boolean[]          mRequested;     // Whether building of each zoom bucket is queued, guarded by this
+    private Paint              mTextPaint;     // Paint to copy for measuring labels
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link MapLevelOfDetailCache}
+     *
+     * @param maxZoomBucket Max zoom bucket
+     * @param textPaint     Paint for labels, it's copied before measuring
+     * @param listener      Listener invoked when a requested level of detail is built
+     */
+    public MapLevelOfDetailCache(int maxZoomBucket, final @NonNull Paint textPaint, final @NonNull OnBuiltListener listener)
+    {
+        mMaxZoomBucket = maxZoomBucket;
+        mTextPaint = new Paint(textPaint);
+        mListener = listener;
+        mDetails = new MapLevelOfDetail[maxZoomBucket + 1];
+        mRequested = new boolean[maxZoomBucket + 1];
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Drop built levels of detail if they aren't of specified floor, should be called with lock held
+     *
+     * @param floor Floor to draw
+     */
+    private void checkFloor(final @NonNull Floor floor)
+    {
+        if (floor == mFloor) return;
+        mFloor = floor;
+        mDetails = new MapLevelOfDetail[mMaxZoomBucket + 1];
+        mRequested = new boolean[mMaxZoomBucket + 1];
+    }
+
+    /**
+     * Drop all built levels of detail, levels being built are discarded
+     */
+    public synchronized void clear()
+    {
+        mFloor = null;
+        mDetails = new MapLevelOfDetail[mMaxZoomBucket + 1];
+        mRequested = new boolean[mMaxZoomBucket + 1];
+    }
+
+    /**
+     * Gets level of detail of specified floor at specified zoom bucket, builds it on calling thread if it isn't built,
+     * shouldn't be called on UI thread
+     *
+     * @param floor      Floor to draw
+     * @param zoomBucket Zoom bucket, within [1, max zoom bucket]
+     * @return Level of detail
+     */
+    public MapLevelOfDetail get(final @NonNull Floor floor, int zoomBucket)
+    {
+        synchronized (this)
+        {
+            checkFloor(floor);
+            if (mDetails[zoomBucket] != null) return mDetails[zoomBucket];
+        }
+        // Build without lock, so UI thread peeking isn't blocked, labels grow slower than the map so more of them fit
+        // as zooming in
+        float textSize = TEXT_SIZE * (float) Math.sqrt(zoomBucket);
+        MapLevelOfDetail detail = new MapLevelOfDetail(floor, zoomBucket, mMaxZoomBucket, textSize, new Paint(mTextPaint));
+        synchronized (this)
+        {
+            if (floor != mFloor) return detail;
+            if (mDetails[zoomBucket] == null) mDetails[zoomBucket] = detail;
+            return mDetails[zoomBucket];
+        }
+    }
+
+    /**
+     * Gets built level of detail of specified floor at specified zoom bucket, queues building of it if it isn't built
+     *
+     * @param floor      Floor to draw
+     * @param zoomBucket Zoom bucket, within [1, max zoom bucket]
+     * @return Level of detail, or null if it isn't built yet
+     */
+    public synchronized MapLevelOfDetail peek(final @NonNull Floor floor, final int zoomBucket)
+    {
+        checkFloor(floor);
+        if (mDetails[zoomBucket] != null) return mDetails[zoomBucket];
+        if (mRequested[zoomBucket]) return null;
+        mRequested[zoomBucket] = true;
+        BUILD_EXECUTOR.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    synchronized (MapLevelOfDetailCache.this)
+                    {
+                        if (floor != mFloor) return;
+                    }
+                    get(floor, zoomBucket);
+                    mListener.onBuilt();
+                }
+                catch (Throwable t)
+                {
+                    Logger.error(LOGGER_TAG, "Failed to build level of detail. Zoom bucket: " + zoomBucket, t);
+                }
+            }
+        });
+        return null;
+    }
+
+    //endregion
+}
@@ -15,20 +15,29 @@ import android.widget.ListView;
 import android.widget.RelativeLayout;
 import android.widget.SearchView;
 import cn.vicey.navigator.Debug.DebugManager;
+import cn.vicey.navigator.Models.Adjacency;
 import cn.vicey.navigator.Models.Floor;
 import cn.vicey.navigator.Models.Map;
 import cn.vicey.navigator.Models.Nodes.GuideNode;
-import cn.vicey.navigator.Models.Nodes.NodeBase;
 import cn.vicey.navigator.Models.Nodes.PathNode;
+import cn.vicey.navigator.Models.Nodes.UserNode;
 import cn.vicey.navigator.Models.Nodes.WallNode;
+import cn.vicey.navigator.Models.SearchIndex;
+import cn.vicey.navigator.Models.SegmentIndex;
 import cn.vicey.navigator.Navigate.NavigateManager;
 import cn.vicey.navigator.Navigate.Path;
 import cn.vicey.navigator.Navigator;
 import cn.vicey.navigator.R;
 import cn.vicey.navigator.Share.ListViewAdapter;
+import cn.vicey.navigator.Share.SettingsManager;
 import cn.vicey.navigator.Utils.Logger;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Map renderer component, provides support for drawing, scrolling and zooming map
@@ -36,16 +45,309 @@ import java.util.List;
 public class MapRenderer
         extends RelativeLayout
 {
+    //region Inner classes
+
+    /**
+     * Backend which draws displaying floor of map renderer
+     */
+    public interface Backend
+    {
+        //region Methods
+
+        /**
+         * Release resources held by the backend, it won't be used again
+         */
+        void release();
+
+        /**
+         * Request drawing specified floor with current navigation state, should be called on UI thread
+         *
+         * @param floorIndex Index of floor to draw, or {@link NavigateManager#NO_SELECTED_FLOOR} if no floor is displaying
+         * @param zoomLevel  Zoom level
+         * @param offsetX    X axis of floor's origin in view coordinate
+         * @param offsetY    Y axis of floor's origin in view coordinate
+         */
+        void requestRender(int floorIndex, float zoomLevel, float offsetX, float offsetY);
+
+        //endregion
+    }
+
+    /**
+     * Painter, holds transform, visible area and buffers of a canvas being drawn, each thread drawing map uses its own
+     */
+    private static class Painter
+    {
+        //region Fields
+
+        private float mDrawOffsetX;     // X axis of floor's origin in coordinate of canvas being drawn
+        private float mDrawOffsetY;     // Y axis of floor's origin in coordinate of canvas being drawn
+        private float mDrawScale;       // Zoom level of canvas being drawn
+        private Paint mTextPaint;       // Paint for text
+        private int   mViewMaxX;        // Visible area's right bound in floor coordinate
+        private int   mViewMaxY;        // Visible area's bottom bound in floor coordinate
+        private int   mViewMinX;        // Visible area's left bound in floor coordinate
+        private int   mViewMinY;        // Visible area's top bound in floor coordinate
+        private int[] mVisibleSegments; // Indexes of wall links within visible area
+        private Paint mWallPaint;       // Paint for wall nodes and lines
+
+        private int mLineBufferSize;  // Float count of lines waiting in line buffer
+        private int mPointBufferSize; // Float count of points waiting in point buffer
+
+        private float[]         mLineBuffer        = new float[BUFFER_CAPACITY]; // Lines waiting to be drawn, x1, y1, x2, y2 of each line in canvas coordinate
+        private float[]         mPointBuffer       = new float[BUFFER_CAPACITY]; // Points waiting to be drawn, x, y of each point in canvas coordinate
+        private List<GuideNode> mVisibleGuideNodes = new ArrayList<>();          // Guide nodes within visible area
+        private List<WallNode>  mVisibleWallNodes  = new ArrayList<>();          // Wall nodes within visible area
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link Painter}
+         *
+         * @param textPaint Paint for text, its text size will be changed
+         * @param wallPaint Paint for wall nodes and lines, its stroke width will be changed
+         */
+        Painter(final @NonNull Paint textPaint, final @NonNull Paint wallPaint)
+        {
+            mTextPaint = textPaint;
+            mWallPaint = wallPaint;
+        }
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Draw target node's name
+         *
+         * @param canvas   Canvas to draw
+         * @param paint    Paint to use
+         * @param textSize Text size
+         * @param node     Target node
+         */
+        private void drawName(final @NonNull Canvas canvas, final @NonNull Paint paint, float textSize, final @NonNull GuideNode node)
+        {
+            if (node.getName() == null) return;
+            float x = getRelativeX(node.getX());
+            float y = getRelativeY(node.getY());
+            paint.setTextSize(textSize);
+            float width = paint.measureText(node.getName());
+            canvas.drawText(node.getName(), x - width / 2, y - textSize / 2, paint);
+        }
+
+        /**
+         * Convert x axis from floor coordinate to view coordinate
+         *
+         * @param x X axis in floor coordinate
+         * @return X axis in view coordinate
+         */
+        private float getRelativeX(int x)
+        {
+            return x * mDrawScale + mDrawOffsetX;
+        }
+
+        /**
+         * Convert y axis from floor coordinate to view coordinate
+         *
+         * @param y Y axis in floor coordinate
+         * @return Y axis in view coordinate
+         */
+        private float getRelativeY(int y)
+        {
+            return y * mDrawScale + mDrawOffsetY;
+        }
+
+        /**
+         * Check whether specified rectangle overlaps visible area
+         *
+         * @param minX Rectangle's left bound in floor coordinate
+         * @param minY Rectangle's top bound in floor coordinate
+         * @param maxX Rectangle's right bound in floor coordinate
+         * @param maxY Rectangle's bottom bound in floor coordinate
+         * @return Whether the rectangle is visible
+         */
+        private boolean isVisible(int minX, int minY, int maxX, int maxY)
+        {
+            return maxX >= mViewMinX && minX <= mViewMaxX && maxY >= mViewMinY && minY <= mViewMaxY;
+        }
+
+        /**
+         * Add a line between two points to line buffer, skipped if it's out of visible area
+         *
+         * @param x1 Start point's x axis in floor coordinate
+         * @param y1 Start point's y axis in floor coordinate
+         * @param x2 End point's x axis in floor coordinate
+         * @param y2 End point's y axis in floor coordinate
+         */
+        public void addLine(int x1, int y1, int x2, int y2)
+        {
+            if (!isVisible(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2))) return;
+            if (mLineBufferSize + 4 > mLineBuffer.length)
+                mLineBuffer = Arrays.copyOf(mLineBuffer, mLineBuffer.length * 2);
+            mLineBuffer[mLineBufferSize++] = getRelativeX(x1);
+            mLineBuffer[mLineBufferSize++] = getRelativeY(y1);
+            mLineBuffer[mLineBufferSize++] = getRelativeX(x2);
+            mLineBuffer[mLineBufferSize++] = getRelativeY(y2);
+        }
+
+        /**
+         * Add a point to point buffer, skipped if it's out of visible area
+         *
+         * @param x X axis in floor coordinate
+         * @param y Y axis in floor coordinate
+         */
+        public void addPoint(int x, int y)
+        {
+            if (!isVisible(x, y, x, y)) return;
+            if (mPointBufferSize + 2 > mPointBuffer.length)
+                mPointBuffer = Arrays.copyOf(mPointBuffer, mPointBuffer.length * 2);
+            mPointBuffer[mPointBufferSize++] = getRelativeX(x);
+            mPointBuffer[mPointBufferSize++] = getRelativeY(y);
+        }
+
+        /**
+         * Draw guide nodes within visible area
+         *
+         * @param canvas Canvas to draw
+         * @param floor  Target floor
+         * @param paint  Paint to use, its stroke cap should be round
+         */
+        public void drawGuideNodes(final @NonNull Canvas canvas, final @NonNull Floor floor, final @NonNull Paint paint)
+        {
+            mVisibleGuideNodes.clear();
+            floor.getGuideIndex().findInRect(mViewMinX, mViewMinY, mViewMaxX, mViewMaxY, mVisibleGuideNodes);
+            for (int i = 0; i < mVisibleGuideNodes.size(); i++)
+            {
+                GuideNode guideNode = mVisibleGuideNodes.get(i);
+                addPoint(guideNode.getX(), guideNode.getY());
+            }
+            drawPoints(canvas, paint, NODE_RADIUS);
+        }
+
+        /**
+         * Draw buffered lines and clear the buffer
+         *
+         * @param canvas Canvas to draw
+         * @param paint  Paint to use
+         * @param width  Line width
+         */
+        public void drawLines(final @NonNull Canvas canvas, final @NonNull Paint paint, int width)
+        {
+            if (mLineBufferSize == 0) return;
+            paint.setStrokeWidth(width * mDrawScale);
+            canvas.drawLines(mLineBuffer, 0, mLineBufferSize, paint);
+            mLineBufferSize = 0;
+        }
+
+        /**
+         * Draw guide node names picked by level of detail
+         *
+         * @param canvas Canvas to draw
+         * @param detail Level of detail to draw at
+         */
+        public void drawNames(final @NonNull Canvas canvas, final @NonNull MapLevelOfDetail detail)
+        {
+            // Labels are centered above nodes, so nodes a half label out of visible area may still show part of it
+            int marginX = (int) Math.ceil(detail.getMaxLabelWidth() / 2 / mDrawScale);
+            int marginY = (int) Math.ceil(detail.getTextSize() * 3 / 2 / mDrawScale);
+            mVisibleGuideNodes.clear();
+            detail.getLabelIndex().findInRect(mViewMinX - marginX, mViewMinY, mViewMaxX + marginX, mViewMaxY + marginY, mVisibleGuideNodes);
+            for (int i = 0; i < mVisibleGuideNodes.size(); i++)
+                drawName(canvas, mTextPaint, detail.getTextSize(), mVisibleGuideNodes.get(i));
+        }
+
+        /**
+         * Draw buffered points as round nodes and clear the buffer
+         *
+         * @param canvas Canvas to draw
+         * @param paint  Paint to use, its stroke cap should be round
+         * @param radius Node radius
+         */
+        public void drawPoints(final @NonNull Canvas canvas, final @NonNull Paint paint, int radius)
+        {
+            if (mPointBufferSize == 0) return;
+            paint.setStrokeWidth(radius * 2 * mDrawScale);
+            canvas.drawPoints(mPointBuffer, 0, mPointBufferSize, paint);
+            mPointBufferSize = 0;
+        }
+
+        /**
+         * Draw wall links and wall nodes picked by level of detail
+         *
+         * @param canvas Canvas to draw
+         * @param detail Level of detail to draw at
+         */
+        public void drawWalls(final @NonNull Canvas canvas, final @NonNull MapLevelOfDetail detail)
+        {
+            SegmentIndex wallIndex = detail.getWallIndex();
+            if (mVisibleSegments == null || mVisibleSegments.length < wallIndex.getSize())
+                mVisibleSegments = new int[wallIndex.getSize()];
+            int count = wallIndex.findInRect(mViewMinX, mViewMinY, mViewMaxX, mViewMaxY, mVisibleSegments);
+            int[] segments = wallIndex.getSegments();
+            for (int i = 0; i < count; i++)
+            {
+                int base = mVisibleSegments[i] * 4;
+                addLine(segments[base], segments[base + 1], segments[base + 2], segments[base + 3]);
+            }
+            drawLines(canvas, mWallPaint, LINE_WIDTH);
+            mVisibleWallNodes.clear();
+            detail.getWallNodeIndex().findInRect(mViewMinX, mViewMinY, mViewMaxX, mViewMaxY, mVisibleWallNodes);
+            for (int i = 0; i < mVisibleWallNodes.size(); i++)
+            {
+                WallNode wallNode = mVisibleWallNodes.get(i);
+                addPoint(wallNode.getX(), wallNode.getY());
+            }
+            drawPoints(canvas, mWallPaint, NODE_RADIUS);
+        }
+
+        /**
+         * Sets transform from floor coordinate to coordinate of canvas being drawn, and visible area of the canvas
+         *
+         * @param scale   Zoom level to draw at
+         * @param offsetX X axis of floor's origin in canvas coordinate
+         * @param offsetY Y axis of floor's origin in canvas coordinate
+         * @param width   Canvas's width
+         * @param height  Canvas's height
+         */
+        public void setDrawArea(float scale, float offsetX, float offsetY, int width, int height)
+        {
+            mDrawScale = scale;
+            mDrawOffsetX = offsetX;
+            mDrawOffsetY = offsetY;
+            mViewMinX = (int) Math.floor((-offsetX - CULLING_MARGIN) / scale);
+            mViewMinY = (int) Math.floor((-offsetY - CULLING_MARGIN) / scale);
+            mViewMaxX = (int) Math.ceil((width - offsetX + CULLING_MARGIN) / scale);
+            mViewMaxY = (int) Math.ceil((height - offsetY + CULLING_MARGIN) / scale);
+        }
+
+        //endregion
+    }
+
+    //endregion
+
     //region Constants
 
     private static final String LOGGER_TAG = "MapRenderer";
 
-    private static final int LINE_WIDTH     = 8;   // Line width
-    private static final int NODE_RADIUS    = 4;   // Node radius
-    private static final int TEXT_SIZE      = 16;  // Text size
-    private static final int ZOOM_LEVEL_MAX = 10;  // Max zoom level
-    private static final int ZOOM_LEVEL_MIN = 1;   // Min zoom level
-    private static final int ZOOM_SPEED     = 200; // Zoom speed
+    private static final int BUFFER_CAPACITY = 1024; // Initial float count of line and point buffers, grows when a batch doesn't fit
+    private static final int CULLING_MARGIN  = 100;  // Margin in view pixels around visible area, keeps wide labels and lines of nodes near edges
+    private static final int SEARCH_DELAY    = 150;  // Delay in milliseconds before searching, keystrokes within it are merged
+    private static final int ZOOM_LEVEL_MAX  = 10;   // Max zoom level
+    private static final int ZOOM_LEVEL_MIN  = 1;    // Min zoom level
+    private static final int ZOOM_SPEED      = 200;  // Zoom speed
+
+    private static final ExecutorService SEARCH_EXECUTOR = Executors.newSingleThreadExecutor(); // Executor running searches off UI thread
+
+    /**
+     * Line width in floor coordinate
+     */
+    public static final int LINE_WIDTH = 8;
+
+    /**
+     * Node radius in floor coordinate
+     */
+    public static final int NODE_RADIUS = 4;
 
     //endregion
 
@@ -62,6 +364,7 @@ public class MapRenderer
         @Override
         public boolean onQueryTextChange(String s)
         {
+            cancelSearch();
             if (s.isEmpty())
             {
                 // No query string, hide list panel
@@ -69,10 +372,8 @@ public class MapRenderer
             }
             else
             {
-                Floor floor = NavigateManager.getFloor(mCurrentDisplayingFloorIndex);
-                if (floor == null) return false;
-                List<GuideNode> targets = floor.findGuideNodes(s);
-                mSearchResultsAdapter.replace(targets);
+                if (NavigateManager.getCurrentMap() == null) return false;
+                scheduleSearch(s);
             }
             return true;
         }
@@ -82,12 +383,14 @@ public class MapRenderer
         @Override
         public void onItemClick(AdapterView<?> adapterView, View view, int i, long l)
         {
-            GuideNode target = mSearchResultsAdapter.getItem(i);
+            SearchIndex.Result target = mSearchResultsAdapter.getItem(i);
             if (target == null) return;
+            Floor floor = NavigateManager.getFloor(target.getFloorIndex());
+            if (floor == null) return;
             mSearchView.setQuery("", false);
             mSearchView.setIconified(true);
             mSearchResultsAdapter.clear();
-            NavigateManager.startNavigate(mCurrentDisplayingFloorIndex, target);
+            NavigateManager.startNavigate(target.getFloorIndex(), floor.getGuideNode(target.getNodeIndex()));
         }
     };
     private View.OnClickListener           mOnSearchBoxClickListener = new View.OnClickListener()            // Search box click event listener
@@ -103,22 +406,45 @@ public class MapRenderer
 
     //region Fields
 
-    private Paint                      mBackgroundPaint;      // Paint for background
-    private Paint                      mTextPaint;            // Paint for text
-    private Paint                      mGuidePaint;           // Paint for guide nodes and lines
-    private int                        mHalfHeight;           // Half of the component height
-    private int                        mHalfWidth;            // Half of the component width
-    private boolean                    mIsZooming;            // Whether the component is zooming
-    private Point                      mLookAt;               // The center point of the view window in map
-    private float                      mPrevTouchX;           // Previous touch point x axis
-    private float                      mPrevTouchY;           // Previous touch point y axis
-    private ListViewAdapter<GuideNode> mSearchResultsAdapter; // Search result list adapter
-    private SearchView                 mSearchView;           // Search view
-    private float                      mTouchPointDistance;   // Distance between two touch points
-    private int                        mTouchedPointCount;    // Current touch point count
-    private Paint                      mUserPaint;            // Paint for user node and lines
-    private Paint                      mUserPathPaint;        // Paint for user path
-    private Paint                      mWallPaint;            // Paint for wall nodes and lines
+    private Backend mCanvasBackend = new Backend() // Backend drawing on this component's canvas, with static layers in tiles
+    {
+        @Override
+        public void release()
+        {
+            mTileCache.clear();
+        }
+
+        @Override
+        public void requestRender(int floorIndex, float zoomLevel, float offsetX, float offsetY)
+        {
+            invalidate();
+        }
+    };
+
+    private Backend                             mBackend;              // Current backend
+    private Paint                               mBackgroundPaint;      // Paint for background
+    private MapLevelOfDetailCache               mDetailCache;          // Cached levels of detail of displaying floor
+    private Paint                               mGuidePaint;           // Paint for guide nodes and lines
+    private int                                 mHalfHeight;           // Half of the component height
+    private int                                 mHalfWidth;            // Half of the component width
+    private boolean                             mIsZooming;            // Whether the component is zooming
+    private View                                mLabelView;            // View drawing names over OpenGL ES backend, or null if canvas backend is used
+    private Point                               mLookAt;               // The center point of the view window in map
+    private Painter                             mPainter;              // Painter used on UI thread
+    private Runnable                            mPendingSearch;        // Search waiting for keystrokes to stop, or null
+    private float                               mPrevTouchX;           // Previous touch point x axis
+    private float                               mPrevTouchY;           // Previous touch point y axis
+    private Future<?>                           mSearchFuture;         // Search queued or running on search executor, or null
+    private ListViewAdapter<SearchIndex.Result> mSearchResultsAdapter; // Search result list adapter
+    private SearchView                          mSearchView;           // Search view
+    private MapTileCache                        mTileCache;            // Cached tiles of walls and names
+    private Painter                             mTilePainter;          // Painter used on tile rendering thread
+    private float                               mTouchPointDistance;   // Distance between two touch points
+    private int                                 mTouchedPointCount;    // Current touch point count
+    private Paint                               mUserPaint;            // Paint for user node and lines
+    private Paint                               mUserPathPaint;        // Paint for user path
+
+    private volatile int mSearchId; // Id of the latest search, results of older searches are dropped
 
     private int   mCurrentDisplayingFloorIndex = NavigateManager.NO_SELECTED_FLOOR;     // Current displaying floor's index
     private float mCurrentZoomLevel            = (ZOOM_LEVEL_MAX + ZOOM_LEVEL_MIN) / 2; // Current zoom level
@@ -168,7 +494,7 @@ public class MapRenderer
         Map currentMap = NavigateManager.getCurrentMap();
         if (currentMap == null) return;
         if (value < 0) return;
-        if (value > currentMap.getFloors().size() - 1) return;
+        if (value > currentMap.getFloorCount() - 1) return;
         mCurrentDisplayingFloorIndex = value;
     }
 
@@ -193,90 +519,87 @@ public class MapRenderer
     }
 
     /**
-     * Draw a line between two nodes
-     *
-     * @param canvas Canvas to draw
-     * @param paint  Paint to use
-     * @param start  Start node
-     * @param end    End node
+     * Cancel pending and running searches, results of them are dropped, should be called on UI thread
      */
-    private void drawLine(final @NonNull Canvas canvas, final @NonNull Paint paint, int width, final @NonNull NodeBase start, final @NonNull NodeBase end)
+    private void cancelSearch()
     {
-        paint.setStrokeWidth(width * mCurrentZoomLevel);
-        float startX = getRelativeX(start.getX());
-        float startY = getRelativeY(start.getY());
-        float endX = getRelativeX(end.getX());
-        float endY = getRelativeY(end.getY());
-        canvas.drawLine(startX, startY, endX, endY, paint);
+        mSearchId++;
+        if (mPendingSearch != null)
+        {
+            removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
+        if (mSearchFuture != null)
+        {
+            mSearchFuture.cancel(false);
+            mSearchFuture = null;
+        }
     }
 
     /**
-     * Draw target floor's links
+     * Draw displaying floor's guide node names at current zoom level, used over backends which don't draw them
      *
      * @param canvas Canvas to draw
-     * @param floor  Target floor
-     */
-    private void drawLinks(final @NonNull Canvas canvas, final @NonNull Floor floor)
-    {
-        for (WallNode wallNode : floor.getWallNodes())
-            for (NodeBase.Link link : wallNode.getLinks())
-                drawLine(canvas, mWallPaint, LINE_WIDTH, wallNode, link.getTarget());
-        if (!DebugManager.isDisplayAllGuidePaths()) return;
-        for (GuideNode guideNode : floor.getGuideNodes())
-            for (NodeBase.Link link : guideNode.getLinks())
-                drawLine(canvas, mGuidePaint, LINE_WIDTH, guideNode, link.getTarget());
-    }
-
-    /**
-     * Draw target node's name
-     *
-     * @param canvas   Canvas to draw
-     * @param paint    Paint to use
-     * @param textSize Text size
-     * @param node     Target node
      */
-    private void drawName(final @NonNull Canvas canvas, final @NonNull Paint paint, float textSize, final @NonNull GuideNode node)
+    private void drawLabels(final @NonNull Canvas canvas)
     {
-        if (node.getName() == null) return;
-        float x = getRelativeX(node.getX());
-        float y = getRelativeY(node.getY());
-        float width = paint.measureText(node.getName());
-        paint.setTextSize(textSize);
-        canvas.drawText(node.getName(), x - width / 2, y - textSize / 2, paint);
+        // Floor is loaded on render thread, names are drawn once it's uploaded
+        Floor floor = NavigateManager.getLoadedFloor(mCurrentDisplayingFloorIndex);
+        if (floor == null) return;
+        // Draw at zoom bucket and scale canvas down, so names look the same as the ones in tiles
+        int zoomBucket = MapTileCache.getZoomBucket(mCurrentZoomLevel);
+        MapLevelOfDetail detail = mDetailCache.peek(floor, zoomBucket);
+        // Names are drawn once level of detail is built in background
+        if (detail == null) return;
+        float ratio = mCurrentZoomLevel / zoomBucket;
+        canvas.save();
+        canvas.scale(ratio, ratio);
+        mPainter.setDrawArea(zoomBucket, getOffsetX() / ratio, getOffsetY() / ratio, (int) Math.ceil(getWidth() / ratio), (int) Math
+                .ceil(getHeight() / ratio));
+        mPainter.drawNames(canvas, detail);
+        canvas.restore();
     }
 
     /**
-     * Draw a node
+     * Draw target floor's guide links if all guide paths should be displayed
      *
      * @param canvas Canvas to draw
-     * @param paint  Paint to use
-     * @param node   Target node
+     * @param floor  Target floor
      */
-    private void drawNode(final @NonNull Canvas canvas, final @NonNull Paint paint, int radius, final @NonNull NodeBase node)
+    private void drawLinks(final @NonNull Canvas canvas, final @NonNull Floor floor)
     {
-        float x = getRelativeX(node.getX());
-        float y = getRelativeY(node.getY());
-        canvas.drawCircle(x, y, radius * mCurrentZoomLevel, paint);
+        if (!DebugManager.isDisplayAllGuidePaths()) return;
+        Adjacency adjacency = floor.getGuideAdjacency();
+        int[] offsets = adjacency.getOffsets();
+        int[] targets = adjacency.getTargets();
+        List<GuideNode> guideNodes = floor.getGuideNodes();
+        for (int i = 0; i < guideNodes.size(); i++)
+        {
+            GuideNode start = guideNodes.get(i);
+            for (int j = offsets[i]; j < offsets[i + 1]; j++)
+            {
+                GuideNode end = guideNodes.get(targets[j]);
+                mPainter.addLine(start.getX(), start.getY(), end.getX(), end.getY());
+            }
+        }
+        mPainter.drawLines(canvas, mGuidePaint, LINE_WIDTH);
     }
 
     /**
-     * Draw target floor's nodes
+     * Draw user node, and target floor's guide nodes if all guide paths should be displayed
      *
      * @param canvas Canvas to draw
      * @param floor  Target floor
      */
     private void drawNodes(final @NonNull Canvas canvas, final @NonNull Floor floor)
     {
-        for (WallNode wallNode : floor.getWallNodes())
-            drawNode(canvas, mWallPaint, NODE_RADIUS, wallNode);
         if (NavigateManager.getCurrentFloorIndex() == mCurrentDisplayingFloorIndex)
-            drawNode(canvas, mUserPaint, NODE_RADIUS * 2, new PathNode(NavigateManager.getCurrentLocation().x, NavigateManager
-                    .getCurrentLocation().y));
-        for (GuideNode guideNode : floor.getGuideNodes())
         {
-            if (DebugManager.isDisplayAllGuidePaths()) drawNode(canvas, mGuidePaint, NODE_RADIUS, guideNode);
-            if (guideNode.getName() != null) drawName(canvas, mTextPaint, TEXT_SIZE * mCurrentZoomLevel, guideNode);
+            Point location = NavigateManager.getCurrentLocation();
+            mPainter.addPoint(location.x, location.y);
+            mPainter.drawPoints(canvas, mUserPaint, NODE_RADIUS * 2);
         }
+        if (DebugManager.isDisplayAllGuidePaths()) mPainter.drawGuideNodes(canvas, floor, mGuidePaint);
     }
 
     /**
@@ -303,14 +626,17 @@ public class MapRenderer
     private void drawPath(final @NonNull Canvas canvas, final @NonNull Paint paint, final @NonNull Path path, int startIndex, int endIndex)
     {
         if (startIndex < 0 || endIndex >= path.getSize() || startIndex > endIndex) return;
+        List<PathNode> nodes = path.getNodes();
         PathNode prevNode = null;
         for (; startIndex < endIndex; startIndex++)
         {
-            PathNode curNode = path.getNodes().get(startIndex);
-            if (prevNode != null) drawLine(canvas, paint, LINE_WIDTH, prevNode, curNode);
-            drawNode(canvas, paint, NODE_RADIUS, curNode);
+            PathNode curNode = nodes.get(startIndex);
+            if (prevNode != null) mPainter.addLine(prevNode.getX(), prevNode.getY(), curNode.getX(), curNode.getY());
+            mPainter.addPoint(curNode.getX(), curNode.getY());
             prevNode = curNode;
         }
+        mPainter.drawLines(canvas, paint, LINE_WIDTH);
+        mPainter.drawPoints(canvas, paint, NODE_RADIUS);
     }
 
     /**
@@ -342,25 +668,23 @@ public class MapRenderer
     }
 
     /**
-     * Convert x axis from floor coordinate to view coordinate
+     * Gets x axis of floor's origin in view coordinate
      *
-     * @param x X axis in floor coordinate
-     * @return X axis in view coordinate
+     * @return X axis of floor's origin
      */
-    private float getRelativeX(int x)
+    private float getOffsetX()
     {
-        return (x - mLookAt.x) * mCurrentZoomLevel + mHalfWidth;
+        return mHalfWidth - mLookAt.x * mCurrentZoomLevel;
     }
 
     /**
-     * Convert y axis from floor coordinate to view coordinate
+     * Gets y axis of floor's origin in view coordinate
      *
-     * @param y Y axis in floor coordinate
-     * @return Y axis in view coordinate
+     * @return Y axis of floor's origin
      */
-    private float getRelativeY(int y)
+    private float getOffsetY()
     {
-        return (y - mLookAt.y) * mCurrentZoomLevel + mHalfHeight;
+        return mHalfHeight - mLookAt.y * mCurrentZoomLevel;
     }
 
     /**
@@ -396,29 +720,75 @@ public class MapRenderer
             mBackgroundPaint.setColor(ContextCompat.getColor(getContext(), R.color.renderer_background));
             mBackgroundPaint.setStyle(Paint.Style.FILL);
 
-            // mTextPaint
-            mTextPaint = new Paint();
-            mTextPaint.setColor(ContextCompat.getColor(getContext(), R.color.text_dark));
+            // textPaint
+            Paint textPaint = new Paint();
+            textPaint.setColor(ContextCompat.getColor(getContext(), R.color.text_dark));
+
+            // mDetailCache
+            mDetailCache = new MapLevelOfDetailCache(ZOOM_LEVEL_MAX, textPaint, new MapLevelOfDetailCache.OnBuiltListener()
+            {
+                @Override
+                public void onBuilt()
+                {
+                    invoke(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            flush();
+                        }
+                    });
+                }
+            });
 
             // mGuidePaint
             mGuidePaint = new Paint();
+            mGuidePaint.setStrokeCap(Paint.Cap.ROUND);
             mGuidePaint.setColor(ContextCompat.getColor(getContext(), R.color.renderer_guide_color));
 
-            // mWallPaint
-            mWallPaint = new Paint();
-            mWallPaint.setColor(ContextCompat.getColor(getContext(), R.color.renderer_wall_color));
+            // wallPaint
+            Paint wallPaint = new Paint();
+            wallPaint.setStrokeCap(Paint.Cap.ROUND);
+            wallPaint.setColor(ContextCompat.getColor(getContext(), R.color.renderer_wall_color));
+
+            // mPainter
+            mPainter = new Painter(textPaint, wallPaint);
+
+            // mTilePainter, paints are copied as they're changed while drawing
+            mTilePainter = new Painter(new Paint(textPaint), new Paint(wallPaint));
 
             // mUserPaint
             mUserPaint = new Paint();
+            mUserPaint.setStrokeCap(Paint.Cap.ROUND);
             mUserPaint.setColor(ContextCompat.getColor(getContext(), R.color.renderer_user_color));
 
             // mUserPathPaint
             mUserPathPaint = new Paint();
+            mUserPathPaint.setStrokeCap(Paint.Cap.ROUND);
             mUserPathPaint.setColor(ContextCompat.getColor(getContext(), R.color.renderer_user_path_color));
 
             // mLookAt
             mLookAt = new Point();
 
+            // mTileCache
+            mTileCache = new MapTileCache(mBackgroundPaint.getColor(), new MapTileCache.OnDrawTileListener()
+            {
+                @Override
+                public void onDrawTile(Canvas canvas, Floor floor, float scale, int left, int top)
+                {
+                    MapLevelOfDetail detail = mDetailCache.get(floor, (int) scale);
+                    mTilePainter.setDrawArea(scale, -left, -top, MapTileCache.TILE_SIZE, MapTileCache.TILE_SIZE);
+                    mTilePainter.drawWalls(canvas, detail);
+                    mTilePainter.drawNames(canvas, detail);
+                }
+
+                @Override
+                public void onTileReady()
+                {
+                    postInvalidate();
+                }
+            });
+
             NavigateManager.addOnUpdateListener(NavigateManager.LOWEST_PRIORITY, new NavigateManager.OnUpdateListener()
             {
                 @Override
@@ -435,6 +805,8 @@ public class MapRenderer
                 }
             });
 
+            // mBackend
+            mBackend = mCanvasBackend;
             setWillNotDraw(false);
         }
         catch (Throwable t)
@@ -467,6 +839,130 @@ public class MapRenderer
         flush();
     }
 
+    /**
+     * Schedule a search, which runs on search executor once keystrokes stop for a while and delivers its results on UI
+     * thread unless it's superseded, should be called on UI thread
+     *
+     * @param query Search query
+     */
+    private void scheduleSearch(final @NonNull String query)
+    {
+        final int searchId = mSearchId;
+        mPendingSearch = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mPendingSearch = null;
+                mSearchFuture = SEARCH_EXECUTOR.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (searchId != mSearchId) return;
+                        final List<SearchIndex.Result> results = search(query);
+                        if (results == null || searchId != mSearchId) return;
+                        invoke(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                if (searchId != mSearchId) return;
+                                mSearchFuture = null;
+                                mSearchResultsAdapter.replace(results);
+                            }
+                        });
+                    }
+                });
+            }
+        };
+        postDelayed(mPendingSearch, SEARCH_DELAY);
+    }
+
+    /**
+     * Search current map's guide nodes, ranked by distance from user
+     *
+     * @param query Search query
+     * @return Found results, or null if there is no map or the search failed
+     */
+    private List<SearchIndex.Result> search(final @NonNull String query)
+    {
+        try
+        {
+            Map currentMap = NavigateManager.getCurrentMap();
+            if (currentMap == null) return null;
+            UserNode user = UserNode.getInstance();
+            return currentMap.getSearchIndex().search(query, user.getCurrentFloorIndex(), user.getX(), user.getY());
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to search " + query + ".", t);
+            return null;
+        }
+    }
+
+    /**
+     * Switch to OpenGL ES or canvas backend, previous backend is released
+     *
+     * @param useGL Whether OpenGL ES backend should be used
+     */
+    private void switchBackend(boolean useGL)
+    {
+        if (useGL == (mBackend != mCanvasBackend)) return;
+        Backend oldBackend = mBackend;
+        if (useGL)
+        {
+            MapGLRenderer glRenderer = new MapGLRenderer(getContext(), mDetailCache, new MapGLRenderer.OnFailedListener()
+            {
+                @Override
+                public void onFailed()
+                {
+                    Logger.info(LOGGER_TAG, "Hardware rendering failed, fall back to canvas.");
+                    SettingsManager.setHardwareRenderingEnabled(false);
+                    flush();
+                }
+            }, new MapGLRenderer.OnFloorUploadedListener()
+            {
+                @Override
+                public void onFloorUploaded()
+                {
+                    if (mLabelView != null) mLabelView.invalidate();
+                }
+            });
+            mLabelView = new View(getContext())
+            {
+                @Override
+                protected void onDraw(Canvas canvas)
+                {
+                    drawLabels(canvas);
+                }
+            };
+            // Below search box, which is the first inflated child
+            addView(glRenderer, 0, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            addView(mLabelView, 1, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            mBackend = glRenderer;
+            setWillNotDraw(true);
+        }
+        else
+        {
+            removeView((View) mBackend);
+            removeView(mLabelView);
+            mLabelView = null;
+            mBackend = mCanvasBackend;
+            setWillNotDraw(false);
+        }
+        // Release after views are removed, so OpenGL ES backend can still release its surface
+        oldBackend.release();
+    }
+
+    /**
+     * Switch backend if hardware rendering setting has changed, settings is reset to canvas backend if OpenGL ES fails
+     */
+    private void updateBackend()
+    {
+        switchBackend(SettingsManager.isHardwareRenderingEnabled());
+    }
+
     /**
      * Zoom the floor view
      *
@@ -505,7 +1001,7 @@ public class MapRenderer
     public boolean displayUpstairs()
     {
         if (NavigateManager.getCurrentMap() == null) return false;
-        if (mCurrentDisplayingFloorIndex >= NavigateManager.getCurrentMap().getFloors().size() - 1) return false;
+        if (mCurrentDisplayingFloorIndex >= NavigateManager.getCurrentMap().getFloorCount() - 1) return false;
         mCurrentDisplayingFloorIndex++;
 
         flush();
@@ -517,7 +1013,9 @@ public class MapRenderer
      */
     public void flush()
     {
-        invalidate();
+        updateBackend();
+        mBackend.requestRender(mCurrentDisplayingFloorIndex, mCurrentZoomLevel, getOffsetX(), getOffsetY());
+        if (mLabelView != null) mLabelView.invalidate();
     }
 
     /**
@@ -540,6 +1038,16 @@ public class MapRenderer
 
     //region Override methods
 
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+        // Release OpenGL ES backend and its render thread, a new one is created when flushed after attached again
+        switchBackend(false);
+        mCanvasBackend.release();
+        mDetailCache.clear();
+    }
+
     @Override
     protected void onDraw(Canvas canvas)
     {
@@ -549,6 +1057,11 @@ public class MapRenderer
             Floor floor = getDisplayingFloor();
             if (floor == null) return;
 
+            // Walls and names are drawn from cached tiles, only paths and nodes which may change are drawn every frame
+            float offsetX = getOffsetX();
+            float offsetY = getOffsetY();
+            mTileCache.draw(canvas, floor, mCurrentZoomLevel, offsetX, offsetY, mHalfWidth * 2, mHalfHeight * 2);
+            mPainter.setDrawArea(mCurrentZoomLevel, offsetX, offsetY, mHalfWidth * 2, mHalfHeight * 2);
             drawLinks(canvas, floor);
             drawPaths(canvas);
             drawNodes(canvas, floor);
@@ -0,0 +1,366 @@
+package cn.vicey.navigator.Components;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Utils.Logger;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Map tile cache class, holds a floor's static layers rendered at a zoom bucket, split into square bitmap tiles
+ * <p>
+ * Tile (column, row) covers [column * TILE_SIZE, (column + 1) * TILE_SIZE) x [row * TILE_SIZE, (row + 1) * TILE_SIZE)
+ * pixels of the floor drawn at its bucket's zoom level, and is scaled to current zoom level when displayed. Tiles are
+ * rendered on a background thread the first time they're displayed, until then the area shows tiles of the previous
+ * zoom bucket scaled to current zoom level, or background color if there are none. Tiles are dropped least recently
+ * used first, and all dropped when the floor changes. Dropped tiles aren't recycled, as hardware accelerated canvas may
+ * still refer to them, garbage collector frees them once they're no longer drawn.
+ */
+public class MapTileCache
+{
+    //region Inner classes
+
+    /**
+     * Listener which will be invoked when a tile needs to be rendered or is rendered
+     */
+    public interface OnDrawTileListener
+    {
+        //region Methods
+
+        /**
+         * Invoked on tile rendering thread when a tile needs to be rendered
+         *
+         * @param canvas Canvas of the tile, filled with background color
+         * @param floor  Floor to draw
+         * @param scale  Zoom level the tile is drawn at
+         * @param left   Tile's left bound in pixels of the floor drawn at scale
+         * @param top    Tile's top bound in pixels of the floor drawn at scale
+         */
+        void onDrawTile(Canvas canvas, Floor floor, float scale, int left, int top);
+
+        /**
+         * Invoked on tile rendering thread when a tile is rendered and can be drawn
+         */
+        void onTileReady();
+
+        //endregion
+    }
+
+    //endregion
+
+    //region Constants
+
+    private static final String LOGGER_TAG = "MapTileCache";
+
+    private static final int EXTRA_TILE_COUNT = 4; // Count of tiles kept besides the ones covering the view, so panning back doesn't render them again
+
+    private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor(); // Executor rendering tiles off UI thread
+
+    /**
+     * Tile's width and height in pixels
+     */
+    public static final int TILE_SIZE = 256;
+
+    //endregion
+
+    //region Fields
+
+    private int                mBackgroundColor; // Background color of tiles
+    private Floor              mFloor;           // Floor of cached tiles, used on UI thread only
+    private OnDrawTileListener mListener;        // Listener rendering tiles
+    private int                mOldZoomBucket;   // Zoom bucket of previous tiles, used on UI thread only
+    private int                mZoomBucket;      // Zoom bucket of cached tiles, used on UI thread only
+
+    private Canvas                      mCanvas      = new Canvas();                         // Canvas reused for rendering tiles, used on tile rendering thread only
+    private RectF                       mOldTileRect = new RectF();                          // Previous tile's bounds in view coordinate
+    private LinkedHashMap<Long, Bitmap> mOldTiles    = new LinkedHashMap<>();                // Tiles of previous zoom bucket drawn until new ones are rendered, used on UI thread only
+    private Paint                       mPaint       = new Paint(Paint.FILTER_BITMAP_FLAG);  // Paint for scaling tiles
+    private RectF                       mTileRect    = new RectF();                          // Tile's bounds in view coordinate
+    private LinkedHashMap<Long, Bitmap> mTiles       = new LinkedHashMap<>(16, 0.75f, true); // Cached tiles in access order, keyed by column and row, used on UI thread only
+
+    private final Object mLock = new Object(); // Lock of rendering state, which is shared by UI thread and tile rendering thread
+
+    private int mFromColumn; // First visible column, tiles scrolled out of view aren't rendered, guarded by lock
+    private int mFromRow;    // First visible row, guarded by lock
+    private int mGeneration; // Generation of cached tiles, increased when they're dropped, tiles rendered for older ones are discarded, guarded by lock
+    private int mToColumn;   // Last visible column, guarded by lock
+    private int mToRow;      // Last visible row, guarded by lock
+
+    private HashSet<Long>         mPendingTiles = new HashSet<>(); // Tiles queued or being rendered, guarded by lock
+    private HashMap<Long, Bitmap> mReadyTiles   = new HashMap<>(); // Rendered tiles not moved to cached tiles yet, guarded by lock
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link MapTileCache}
+     *
+     * @param backgroundColor Background color of tiles
+     * @param listener        Listener rendering tiles
+     */
+    public MapTileCache(int backgroundColor, final @NonNull OnDrawTileListener listener)
+    {
+        mBackgroundColor = backgroundColor;
+        mListener = listener;
+    }
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Gets key of a tile
+     *
+     * @param column Tile's column
+     * @param row    Tile's row
+     * @return Tile's key
+     */
+    private static long getKey(int column, int row)
+    {
+        return (long) column << 32 | row & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Gets zoom bucket of specified zoom level, tiles are drawn at zoom level equal to the bucket and scaled down to
+     * zoom levels within (bucket - 1, bucket]
+     *
+     * @param zoomLevel Zoom level
+     * @return Zoom bucket
+     */
+    public static int getZoomBucket(float zoomLevel)
+    {
+        return Math.max(1, (int) Math.ceil(zoomLevel));
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Draw tiles of previous zoom bucket covering current tile bounds, clipped to them
+     *
+     * @param canvas    Canvas to draw
+     * @param zoomLevel Current zoom level
+     * @param offsetX   X axis of floor's origin in view coordinate
+     * @param offsetY   Y axis of floor's origin in view coordinate
+     */
+    private void drawOldTiles(final @NonNull Canvas canvas, float zoomLevel, float offsetX, float offsetY)
+    {
+        float oldTileSize = TILE_SIZE * zoomLevel / mOldZoomBucket;
+        int fromColumn = Math.max(0, (int) Math.floor((mTileRect.left - offsetX) / oldTileSize));
+        int toColumn = (int) Math.floor((mTileRect.right - offsetX) / oldTileSize);
+        int fromRow = Math.max(0, (int) Math.floor((mTileRect.top - offsetY) / oldTileSize));
+        int toRow = (int) Math.floor((mTileRect.bottom - offsetY) / oldTileSize);
+        canvas.save();
+        canvas.clipRect(mTileRect);
+        for (int row = fromRow; row <= toRow; row++)
+        {
+            for (int column = fromColumn; column <= toColumn; column++)
+            {
+                Bitmap oldTile = mOldTiles.get(getKey(column, row));
+                if (oldTile == null) continue;
+                float left = offsetX + column * oldTileSize;
+                float top = offsetY + row * oldTileSize;
+                mOldTileRect.set(left, top, left + oldTileSize, top + oldTileSize);
+                canvas.drawBitmap(oldTile, null, mOldTileRect, mPaint);
+            }
+        }
+        canvas.restore();
+    }
+
+    /**
+     * Render a tile and hand it to UI thread, runs on tile rendering thread
+     *
+     * @param generation Generation the tile is rendered for
+     * @param floor      Floor to draw
+     * @param zoomBucket Zoom bucket to draw at
+     * @param column     Tile's column
+     * @param row        Tile's row
+     */
+    private void renderTile(int generation, final @NonNull Floor floor, int zoomBucket, int column, int row)
+    {
+        long key = getKey(column, row);
+        synchronized (mLock)
+        {
+            if (generation != mGeneration) return;
+            if (column < mFromColumn || column > mToColumn || row < mFromRow || row > mToRow)
+            {
+                // Scrolled out of view, rendered again if it's displayed later
+                mPendingTiles.remove(key);
+                return;
+            }
+        }
+        // Tiles are opaque, so they take half the memory of transparent ones
+        Bitmap tile = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565);
+        tile.eraseColor(mBackgroundColor);
+        mCanvas.setBitmap(tile);
+        try
+        {
+            mListener.onDrawTile(mCanvas, floor, zoomBucket, column * TILE_SIZE, row * TILE_SIZE);
+        }
+        finally
+        {
+            mCanvas.setBitmap(null);
+        }
+        synchronized (mLock)
+        {
+            if (generation != mGeneration) return;
+            mReadyTiles.put(key, tile);
+        }
+        mListener.onTileReady();
+    }
+
+    /**
+     * Queue rendering of specified tile unless it's queued already
+     *
+     * @param floor      Floor to draw
+     * @param zoomBucket Zoom bucket to draw at
+     * @param column     Tile's column
+     * @param row        Tile's row
+     */
+    private void requestTile(final @NonNull Floor floor, final int zoomBucket, final int column, final int row)
+    {
+        final int generation;
+        synchronized (mLock)
+        {
+            if (!mPendingTiles.add(getKey(column, row))) return;
+            generation = mGeneration;
+        }
+        RENDER_EXECUTOR.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    renderTile(generation, floor, zoomBucket, column, row);
+                }
+                catch (Throwable t)
+                {
+                    Logger.error(LOGGER_TAG, "Failed to render tile. Column: " + column + ", row: " + row, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop all cached tiles, tiles being rendered are discarded
+     */
+    public void clear()
+    {
+        synchronized (mLock)
+        {
+            mGeneration++;
+            mPendingTiles.clear();
+            mReadyTiles.clear();
+        }
+        mTiles.clear();
+        mOldTiles.clear();
+        mFloor = null;
+    }
+
+    /**
+     * Draw tiles covering the view, queue rendering of missing ones
+     *
+     * @param canvas     Canvas to draw
+     * @param floor      Floor to draw
+     * @param zoomLevel  Current zoom level
+     * @param offsetX    X axis of floor's origin in view coordinate
+     * @param offsetY    Y axis of floor's origin in view coordinate
+     * @param viewWidth  View's width
+     * @param viewHeight View's height
+     */
+    public void draw(final @NonNull Canvas canvas, final @NonNull Floor floor, float zoomLevel, float offsetX, float offsetY, int viewWidth, int viewHeight)
+    {
+        int zoomBucket = getZoomBucket(zoomLevel);
+        if (floor != mFloor)
+        {
+            clear();
+            mFloor = floor;
+            mZoomBucket = zoomBucket;
+        }
+        else if (zoomBucket != mZoomBucket)
+        {
+            synchronized (mLock)
+            {
+                mGeneration++;
+                mPendingTiles.clear();
+                mReadyTiles.clear();
+            }
+            // Keep tiles of the last bucket which has any, while zooming through buckets faster than tiles are rendered
+            if (zoomBucket == mOldZoomBucket && !mOldTiles.isEmpty())
+            {
+                LinkedHashMap<Long, Bitmap> tiles = mTiles;
+                mTiles = new LinkedHashMap<>(16, 0.75f, true);
+                mTiles.putAll(mOldTiles);
+                mOldTiles = new LinkedHashMap<>(tiles);
+                mOldZoomBucket = mZoomBucket;
+            }
+            else if (!mTiles.isEmpty())
+            {
+                mOldTiles = new LinkedHashMap<>(mTiles);
+                mOldZoomBucket = mZoomBucket;
+                mTiles.clear();
+            }
+            mZoomBucket = zoomBucket;
+        }
+        float tileSize = TILE_SIZE * zoomLevel / zoomBucket;
+        int columnCount = (int) Math.ceil((double) floor.getWidth() * zoomBucket / TILE_SIZE);
+        int rowCount = (int) Math.ceil((double) floor.getHeight() * zoomBucket / TILE_SIZE);
+        int fromColumn = Math.max(0, (int) Math.floor(-offsetX / tileSize));
+        int toColumn = Math.min(columnCount - 1, (int) Math.floor((viewWidth - offsetX) / tileSize));
+        int fromRow = Math.max(0, (int) Math.floor(-offsetY / tileSize));
+        int toRow = Math.min(rowCount - 1, (int) Math.floor((viewHeight - offsetY) / tileSize));
+        synchronized (mLock)
+        {
+            mTiles.putAll(mReadyTiles);
+            mPendingTiles.removeAll(mReadyTiles.keySet());
+            mReadyTiles.clear();
+            mFromColumn = fromColumn;
+            mFromRow = fromRow;
+            mToColumn = toColumn;
+            mToRow = toRow;
+        }
+        boolean isComplete = true;
+        for (int row = fromRow; row <= toRow; row++)
+        {
+            for (int column = fromColumn; column <= toColumn; column++)
+            {
+                float left = offsetX + column * tileSize;
+                float top = offsetY + row * tileSize;
+                mTileRect.set(left, top, left + tileSize, top + tileSize);
+                Bitmap tile = mTiles.get(getKey(column, row));
+                if (tile != null)
+                {
+                    canvas.drawBitmap(tile, null, mTileRect, mPaint);
+                    continue;
+                }
+                isComplete = false;
+                requestTile(floor, zoomBucket, column, row);
+                if (!mOldTiles.isEmpty()) drawOldTiles(canvas, zoomLevel, offsetX, offsetY);
+            }
+        }
+        if (isComplete) mOldTiles.clear();
+
+        // Keep tiles covering the view and a few more, least recently used ones are dropped first
+        int maxTileCount = Math.max(0, toColumn - fromColumn + 1) * Math.max(0, toRow - fromRow + 1) + EXTRA_TILE_COUNT;
+        Iterator<Long> iterator = mTiles.keySet().iterator();
+        while (mTiles.size() > maxTileCount && iterator.hasNext())
+        {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    //endregion
+}
@@ -64,7 +64,7 @@ public class DebugPath
      */
     public void addNode(final @NonNull DebugPathNode node)
     {
-        mPath.appendTail(node);
+        mPath = mPath.appendTail(node);
         mFloorIndexTable.put(mPath.getSize() - 1, node.getFloorIndex());
     }
 
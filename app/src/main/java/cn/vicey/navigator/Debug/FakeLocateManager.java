@@ -47,7 +47,7 @@ public final class FakeLocateManager
 
         if (DebugManager.isUseRandomLocationEnabled())
         {
-            int range = map.getFloors().size();
+            int range = map.getFloorCount();
             return new Random().nextInt(range);
         }
         else
@@ -0,0 +1,554 @@
+package cn.vicey.navigator.File;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Adjacency;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.GuideGraph;
+import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.NodeBase;
+import cn.vicey.navigator.Models.Nodes.NodeType;
+import cn.vicey.navigator.Models.Nodes.WallNode;
+import cn.vicey.navigator.Models.SearchIndex;
+import cn.vicey.navigator.Utils.Logger;
+import cn.vicey.navigator.Utils.Tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Binary map file class, provides a set of methods to convert a map to a compact binary file and load it back
+ * <p>
+ * File layout, all values are big endian:
+ * <pre>
+ * Header:       magic, version, map file content hash length, map file content hash (UTF-8 bytes)
+ * String table: string count, byte count, string offsets (string count + 1), UTF-8 bytes
+ * Map:          name string index, floor count, floor offsets (floor count, from file start)
+ * Each floor:   guide node tag, guide node count, x, y, name string index, prev, next
+ *               wall node tag, wall node count, x, y
+ *               guide link tag, guide link count, link offsets (guide node count + 1), link targets
+ *               wall link tag, wall link count, link offsets (wall node count + 1), link targets
+ * </pre>
+ * Missing names, prev and next indexes are stored as -1, same as {@link GuideGraph#NO_ENTRY}. Each link is stored once, under its smaller node index.
+ * <p>
+ * Loaded maps keep the file memory mapped and build each floor from it the first time the floor is used. Binary map
+ * files are validated by map file's content hash, so a file stays valid across copies and renames of its map file.
+ */
+public final class BinaryMapFile
+{
+    //region Inner classes
+
+    /**
+     * Floor loader which builds floors from a memory mapped binary map file
+     */
+    private static class FloorReader
+            implements Map.FloorLoader
+    {
+        //region Fields
+
+        private ByteBuffer mBuffer;       // Memory mapped binary map file
+        private int[]      mFloorOffsets; // Each floor's offset from file start
+        private String[]   mStrings;      // String table
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link FloorReader}
+         *
+         * @param buffer       Memory mapped binary map file
+         * @param floorOffsets Each floor's offset from file start
+         * @param strings      String table
+         */
+        public FloorReader(final @NonNull ByteBuffer buffer, final @NonNull int[] floorOffsets, final @NonNull String[] strings)
+        {
+            mBuffer = buffer;
+            mFloorOffsets = floorOffsets;
+            mStrings = strings;
+        }
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Gets a buffer positioned at specified floor, buffers are independent so floors can be read concurrently
+         *
+         * @param floorIndex Floor index
+         * @return Positioned buffer
+         */
+        private ByteBuffer getFloorBuffer(int floorIndex)
+        {
+            ByteBuffer buffer = mBuffer.duplicate();
+            buffer.position(mFloorOffsets[floorIndex]);
+            return buffer;
+        }
+
+        /**
+         * Build search index from guide nodes' names, coordinates and indexes, without building floors
+         *
+         * @return Search index of all floors
+         */
+        public SearchIndex readSearchIndex()
+        {
+            List<int[]> floorX = new ArrayList<>();
+            List<int[]> floorY = new ArrayList<>();
+            List<int[]> floorNames = new ArrayList<>();
+            int count = 0;
+            for (int i = 0; i < mFloorOffsets.length; i++)
+            {
+                ByteBuffer buffer = getFloorBuffer(i);
+                readTag(buffer, NodeType.GUIDE_NODE);
+                int guideCount = buffer.getInt();
+                floorX.add(readInts(buffer, guideCount));
+                floorY.add(readInts(buffer, guideCount));
+                floorNames.add(readInts(buffer, guideCount));
+                count += guideCount;
+            }
+            String[] names = new String[count];
+            int[] floorIndexes = new int[count];
+            int[] nodeIndexes = new int[count];
+            int[] x = new int[count];
+            int[] y = new int[count];
+            int entry = 0;
+            for (int i = 0; i < mFloorOffsets.length; i++)
+            {
+                int[] nameIndexes = floorNames.get(i);
+                for (int j = 0; j < nameIndexes.length; j++, entry++)
+                {
+                    names[entry] = nameIndexes[j] == NO_VALUE ? null : mStrings[nameIndexes[j]];
+                    floorIndexes[entry] = i;
+                    nodeIndexes[entry] = j;
+                    x[entry] = floorX.get(i)[j];
+                    y[entry] = floorY.get(i)[j];
+                }
+            }
+            return new SearchIndex(names, floorIndexes, nodeIndexes, x, y);
+        }
+
+        //endregion
+
+        //region Override methods
+
+        @Override
+        public Floor loadFloor(int floorIndex)
+        {
+            long startTime = new Date().getTime();
+            Floor floor = readFloor(getFloorBuffer(floorIndex), mStrings);
+            Logger.info(LOGGER_TAG, "Finished loading floor " + floorIndex + ". Total time: " + (new Date().getTime() - startTime) + " ms.");
+            return floor;
+        }
+
+        @Override
+        public GuideGraph loadGuideGraph(int floorIndex)
+        {
+            return readGuideGraph(getFloorBuffer(floorIndex));
+        }
+
+        //endregion
+    }
+
+    //endregion
+
+    //region Constants
+
+    private static final String LOGGER_TAG = "BinaryMapFile";
+
+    private static final int    FILE_MAGIC       = 0x4E4D4150; // File magic number
+    private static final int    FILE_VERSION     = 2;          // File version
+    private static final int    NO_VALUE         = -1;         // Value of missing name, prev or next index
+    private static final String TEMP_FILE_SUFFIX = ".tmp";     // Suffix of files being written
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Read floor at current position of buffer
+     *
+     * @param buffer  Buffer to read
+     * @param strings String table
+     * @return New floor object
+     */
+    private static Floor readFloor(final @NonNull ByteBuffer buffer, final @NonNull String[] strings)
+    {
+        Floor floor = new Floor();
+
+        readTag(buffer, NodeType.GUIDE_NODE);
+        int guideCount = buffer.getInt();
+        int[] guideX = readInts(buffer, guideCount);
+        int[] guideY = readInts(buffer, guideCount);
+        int[] names = readInts(buffer, guideCount);
+        int[] prevs = readInts(buffer, guideCount);
+        int[] nexts = readInts(buffer, guideCount);
+        for (int i = 0; i < guideCount; i++)
+        {
+            String name = names[i] == NO_VALUE ? null : strings[names[i]];
+            Integer prev = prevs[i] == NO_VALUE ? null : prevs[i];
+            Integer next = nexts[i] == NO_VALUE ? null : nexts[i];
+            floor.addNode(new GuideNode(guideX[i], guideY[i], name, prev, next));
+        }
+
+        readTag(buffer, NodeType.WALL_NODE);
+        int wallCount = buffer.getInt();
+        int[] wallX = readInts(buffer, wallCount);
+        int[] wallY = readInts(buffer, wallCount);
+        for (int i = 0; i < wallCount; i++) floor.addNode(new WallNode(wallX[i], wallY[i]));
+
+        readLinks(buffer, floor, NodeType.GUIDE_NODE, guideCount);
+        readLinks(buffer, floor, NodeType.WALL_NODE, wallCount);
+        floor.buildIndexes();
+        return floor;
+    }
+
+    /**
+     * Read guide graph of floor at current position of buffer, skipping names and wall nodes
+     *
+     * @param buffer Buffer to read
+     * @return New guide graph object
+     */
+    private static GuideGraph readGuideGraph(final @NonNull ByteBuffer buffer)
+    {
+        readTag(buffer, NodeType.GUIDE_NODE);
+        int guideCount = buffer.getInt();
+        int[] x = readInts(buffer, guideCount);
+        int[] y = readInts(buffer, guideCount);
+        buffer.position(buffer.position() + guideCount * 4);
+        int[] prevs = readInts(buffer, guideCount);
+        int[] nexts = readInts(buffer, guideCount);
+
+        readTag(buffer, NodeType.WALL_NODE);
+        int wallCount = buffer.getInt();
+        buffer.position(buffer.position() + wallCount * 8);
+
+        // Each link is stored once under its start node, expand offsets to start indexes
+        readTag(buffer, NodeType.GUIDE_NODE);
+        int linkCount = buffer.getInt();
+        int[] offsets = readInts(buffer, guideCount + 1);
+        int[] targets = readInts(buffer, linkCount);
+        int[] starts = new int[linkCount];
+        for (int i = 0; i < guideCount; i++)
+            for (int j = offsets[i]; j < offsets[i + 1]; j++)
+                starts[j] = i;
+        return new GuideGraph(x, y, prevs, nexts, Adjacency.build(guideCount, starts, targets, linkCount, x, y));
+    }
+
+    /**
+     * Read ints at current position of buffer
+     *
+     * @param buffer Buffer to read
+     * @param count  Int count
+     * @return Read ints
+     */
+    private static int[] readInts(final @NonNull ByteBuffer buffer, int count)
+    {
+        int[] result = new int[count];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + count * 4);
+        return result;
+    }
+
+    /**
+     * Read links at current position of buffer and add them to floor
+     *
+     * @param buffer    Buffer to read
+     * @param floor     Floor to add links to
+     * @param type      Link type
+     * @param nodeCount Count of nodes of link type
+     */
+    private static void readLinks(final @NonNull ByteBuffer buffer, final @NonNull Floor floor, final @NonNull NodeType type, int nodeCount)
+    {
+        readTag(buffer, type);
+        int linkCount = buffer.getInt();
+        int[] offsets = readInts(buffer, nodeCount + 1);
+        int[] targets = readInts(buffer, linkCount);
+        for (int i = 0; i < nodeCount; i++)
+            for (int j = offsets[i]; j < offsets[i + 1]; j++)
+                floor.addLink(type, i, targets[j]);
+    }
+
+    /**
+     * Read string table at current position of buffer
+     *
+     * @param buffer Buffer to read
+     * @return Strings
+     * @throws Exception Thrown if bytes can't be decoded
+     */
+    private static String[] readStrings(final @NonNull ByteBuffer buffer)
+            throws Exception
+    {
+        int count = buffer.getInt();
+        int byteCount = buffer.getInt();
+        int[] offsets = readInts(buffer, count + 1);
+        byte[] bytes = new byte[byteCount];
+        buffer.get(bytes);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++)
+            result[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], Tools.FILE_ENCODING);
+        return result;
+    }
+
+    /**
+     * Read section tag at current position of buffer and check it
+     *
+     * @param buffer Buffer to read
+     * @param type   Expected node type of the section
+     */
+    private static void readTag(final @NonNull ByteBuffer buffer, final @NonNull NodeType type)
+    {
+        int tag = buffer.getInt();
+        if (tag != type.getValue())
+            throw new IllegalStateException("Unexpected section tag. Expected: " + type.getValue() + ", actual: " + tag);
+    }
+
+    /**
+     * Write floor to stream
+     *
+     * @param stream  Stream to write
+     * @param floor   Floor to write
+     * @param strings String to string index table
+     * @throws Exception Thrown if writing failed
+     */
+    private static void writeFloor(final @NonNull DataOutputStream stream, final @NonNull Floor floor, final @NonNull HashMap<String, Integer> strings)
+            throws Exception
+    {
+        List<GuideNode> guideNodes = floor.getGuideNodes();
+        stream.writeInt(NodeType.GUIDE_NODE.getValue());
+        stream.writeInt(guideNodes.size());
+        for (GuideNode node : guideNodes) stream.writeInt(node.getX());
+        for (GuideNode node : guideNodes) stream.writeInt(node.getY());
+        for (GuideNode node : guideNodes) stream.writeInt(node.getName() == null ? NO_VALUE : strings.get(node.getName()));
+        for (GuideNode node : guideNodes) stream.writeInt(node.getPrev() == null ? NO_VALUE : node.getPrev());
+        for (GuideNode node : guideNodes) stream.writeInt(node.getNext() == null ? NO_VALUE : node.getNext());
+
+        List<WallNode> wallNodes = floor.getWallNodes();
+        stream.writeInt(NodeType.WALL_NODE.getValue());
+        stream.writeInt(wallNodes.size());
+        for (WallNode node : wallNodes) stream.writeInt(node.getX());
+        for (WallNode node : wallNodes) stream.writeInt(node.getY());
+
+        // Guide links, the adjacency holds each link in both directions
+        Adjacency adjacency = floor.getGuideAdjacency();
+        int[] offsets = adjacency.getOffsets();
+        int[] targets = adjacency.getTargets();
+        int[] linkOffsets = new int[guideNodes.size() + 1];
+        List<Integer> linkTargets = new ArrayList<>();
+        for (int i = 0; i < guideNodes.size(); i++)
+        {
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) if (targets[j] > i) linkTargets.add(targets[j]);
+            linkOffsets[i + 1] = linkTargets.size();
+        }
+        writeLinks(stream, NodeType.GUIDE_NODE, linkOffsets, linkTargets);
+
+        // Wall links, each node holds its links as objects
+        IdentityHashMap<NodeBase, Integer> wallIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < wallNodes.size(); i++) wallIndexes.put(wallNodes.get(i), i);
+        linkOffsets = new int[wallNodes.size() + 1];
+        linkTargets = new ArrayList<>();
+        for (int i = 0; i < wallNodes.size(); i++)
+        {
+            for (NodeBase.Link link : wallNodes.get(i).getLinks())
+            {
+                Integer target = wallIndexes.get(link.getTarget());
+                if (target != null && target > i) linkTargets.add(target);
+            }
+            linkOffsets[i + 1] = linkTargets.size();
+        }
+        writeLinks(stream, NodeType.WALL_NODE, linkOffsets, linkTargets);
+    }
+
+    /**
+     * Write links to stream
+     *
+     * @param stream  Stream to write
+     * @param type    Link type
+     * @param offsets Each node's first link index, node count + 1 entries
+     * @param targets Link targets
+     * @throws Exception Thrown if writing failed
+     */
+    private static void writeLinks(final @NonNull DataOutputStream stream, final @NonNull NodeType type, final @NonNull int[] offsets, final @NonNull List<Integer> targets)
+            throws Exception
+    {
+        stream.writeInt(type.getValue());
+        stream.writeInt(targets.size());
+        for (int value : offsets) stream.writeInt(value);
+        for (int value : targets) stream.writeInt(value);
+    }
+
+    /**
+     * Load map from binary map file, the file is memory mapped and floors are built when they're used
+     *
+     * @param mapHash    Content hash of map file the binary map file should be converted from
+     * @param binaryFile Binary map file
+     * @return Map object, or null if file doesn't exist, is outdated or error occurred
+     */
+    public static Map load(final @NonNull String mapHash, final @NonNull File binaryFile)
+    {
+        if (!binaryFile.exists()) return null;
+        try
+        {
+            long startTime = new Date().getTime();
+            RandomAccessFile raf = new RandomAccessFile(binaryFile, "r");
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION)
+                {
+                    Logger.error(LOGGER_TAG, "Unsupported binary map file. File path: " + binaryFile.getPath());
+                    return null;
+                }
+                byte[] hash = new byte[buffer.getInt()];
+                buffer.get(hash);
+                if (!mapHash.equals(new String(hash, Tools.FILE_ENCODING)))
+                {
+                    Logger.info(LOGGER_TAG, "Binary map file is outdated. File path: " + binaryFile.getPath());
+                    return null;
+                }
+                String[] strings = readStrings(buffer);
+                String name = strings[buffer.getInt()];
+                int floorCount = buffer.getInt();
+                int[] floorOffsets = new int[floorCount];
+                for (int i = 0; i < floorCount; i++) floorOffsets[i] = (int) buffer.getLong();
+                // The mapping stays valid after the file is closed
+                FloorReader reader = new FloorReader(buffer, floorOffsets, strings);
+                Map map = new Map(name, floorCount, reader, reader.readSearchIndex());
+                Logger.info(LOGGER_TAG, "Finished loading binary map file: " + binaryFile.getPath() + ". Total time: " + (new Date()
+                        .getTime() - startTime) + " ms.");
+                return map;
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to load binary map file. File path: " + binaryFile.getPath(), t);
+            return null;
+        }
+    }
+
+    /**
+     * Convert map to binary map file
+     *
+     * @param map        Map to convert
+     * @param mapHash    Content hash of map file the map was parsed from
+     * @param binaryFile Binary map file to save
+     * @return Whether the saving is succeed or not
+     */
+    public static boolean save(final @NonNull Map map, final @NonNull String mapHash, final @NonNull File binaryFile)
+    {
+        File tempFile = null;
+        try
+        {
+            // Each save writes its own temp file, so concurrent saves of the same file don't corrupt each other
+            tempFile = File.createTempFile(binaryFile.getName() + ".", TEMP_FILE_SUFFIX, binaryFile.getParentFile());
+            long startTime = new Date().getTime();
+
+            // String table
+            HashMap<String, Integer> stringIndexes = new HashMap<>();
+            List<byte[]> strings = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            names.add(map.getName());
+            for (Floor floor : map.getFloors())
+                for (GuideNode node : floor.getGuideNodes())
+                    if (node.getName() != null) names.add(node.getName());
+            int byteCount = 0;
+            for (String name : names)
+            {
+                if (stringIndexes.containsKey(name)) continue;
+                stringIndexes.put(name, strings.size());
+                byte[] bytes = name.getBytes(Tools.FILE_ENCODING);
+                strings.add(bytes);
+                byteCount += bytes.length;
+            }
+
+            // Floors are serialized first, so their offsets are known before writing the map section
+            List<byte[]> floors = new ArrayList<>();
+            for (Floor floor : map.getFloors())
+            {
+                ByteArrayOutputStream floorBytes = new ByteArrayOutputStream();
+                DataOutputStream floorStream = new DataOutputStream(floorBytes);
+                writeFloor(floorStream, floor, stringIndexes);
+                floorStream.flush();
+                floors.add(floorBytes.toByteArray());
+            }
+
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try
+            {
+                stream.writeInt(FILE_MAGIC);
+                stream.writeInt(FILE_VERSION);
+                byte[] hash = mapHash.getBytes(Tools.FILE_ENCODING);
+                stream.writeInt(hash.length);
+                stream.write(hash);
+
+                stream.writeInt(strings.size());
+                stream.writeInt(byteCount);
+                int offset = 0;
+                stream.writeInt(offset);
+                for (byte[] bytes : strings) stream.writeInt(offset += bytes.length);
+                for (byte[] bytes : strings) stream.write(bytes);
+
+                stream.writeInt(stringIndexes.get(map.getName()));
+                stream.writeInt(floors.size());
+                long floorOffset = stream.size() + floors.size() * 8;
+                for (byte[] bytes : floors)
+                {
+                    stream.writeLong(floorOffset);
+                    floorOffset += bytes.length;
+                }
+                for (byte[] bytes : floors) stream.write(bytes);
+            }
+            finally
+            {
+                stream.close();
+            }
+
+            if (!(tempFile.renameTo(binaryFile) || binaryFile.delete() && tempFile.renameTo(binaryFile)))
+            {
+                Logger.error(LOGGER_TAG, "Failed to replace binary map file. File path: " + binaryFile.getPath());
+                if (!tempFile.delete())
+                    Logger.error(LOGGER_TAG, "Failed to delete temp file. File path: " + tempFile.getPath());
+                return false;
+            }
+            Logger.info(LOGGER_TAG, "Finished converting map: " + map.getName() + ". Total time: " + (new Date()
+                    .getTime() - startTime) + " ms.");
+            return true;
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to save binary map file. File path: " + binaryFile.getPath(), t);
+            if (tempFile != null && tempFile.exists() && !tempFile.delete())
+                Logger.error(LOGGER_TAG, "Failed to delete temp file. File path: " + tempFile.getPath());
+            return false;
+        }
+    }
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Hidden for static class design pattern
+     */
+    private BinaryMapFile()
+    {
+        // no-op
+    }
+
+    //endregion
+}
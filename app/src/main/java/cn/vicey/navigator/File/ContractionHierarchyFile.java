@@ -0,0 +1,157 @@
+package cn.vicey.navigator.File;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Navigate.ContractionHierarchy;
+import cn.vicey.navigator.Utils.Logger;
+import cn.vicey.navigator.Utils.Tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Contraction hierarchy file class, provides a set of methods to save and load contraction hierarchy of a map
+ */
+public final class ContractionHierarchyFile
+{
+    //region Constants
+
+    private static final String LOGGER_TAG = "ContractionHierarchyFile";
+
+    private static final int    FILE_MAGIC       = 0x4E434849; // File magic number
+    private static final int    FILE_VERSION     = 3;          // File version
+    private static final String TEMP_FILE_SUFFIX = ".tmp";     // Suffix of files being written
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Load contraction hierarchy of a map file
+     *
+     * @param mapHash       Content hash of map file the hierarchy should be built from
+     * @param hierarchyFile Contraction hierarchy file
+     * @return Contraction hierarchy, or null if file doesn't exist, is outdated or error occurred
+     */
+    public static ContractionHierarchy load(final @NonNull String mapHash, final @NonNull File hierarchyFile)
+    {
+        if (!hierarchyFile.exists()) return null;
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(hierarchyFile, "r");
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION)
+                {
+                    Logger.error(LOGGER_TAG, "Unsupported contraction hierarchy file. File path: " + hierarchyFile.getPath());
+                    return null;
+                }
+                byte[] hash = new byte[buffer.getInt()];
+                buffer.get(hash);
+                if (!mapHash.equals(new String(hash, Tools.FILE_ENCODING)))
+                {
+                    Logger.info(LOGGER_TAG, "Contraction hierarchy file is outdated. File path: " + hierarchyFile.getPath());
+                    return null;
+                }
+                double floorChangeCost = buffer.getDouble();
+                int nodeCount = buffer.getInt();
+                int linkCount = buffer.getInt();
+                int[] offsets = new int[nodeCount + 1];
+                int[] targets = new int[linkCount];
+                int[] middles = new int[linkCount];
+                double[] weights = new double[linkCount];
+                buffer.asIntBuffer().get(offsets);
+                buffer.position(buffer.position() + offsets.length * 4);
+                buffer.asIntBuffer().get(targets);
+                buffer.position(buffer.position() + targets.length * 4);
+                buffer.asIntBuffer().get(middles);
+                buffer.position(buffer.position() + middles.length * 4);
+                buffer.asDoubleBuffer().get(weights);
+                return new ContractionHierarchy(floorChangeCost, offsets, targets, weights, middles);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to load contraction hierarchy file. File path: " + hierarchyFile.getPath(), t);
+            return null;
+        }
+    }
+
+    /**
+     * Save contraction hierarchy to file
+     *
+     * @param hierarchy     Contraction hierarchy to save
+     * @param mapHash       Content hash of map file the hierarchy was built from
+     * @param hierarchyFile Contraction hierarchy file to save
+     * @return Whether the saving is succeed or not
+     */
+    public static boolean save(final @NonNull ContractionHierarchy hierarchy, final @NonNull String mapHash, final @NonNull File hierarchyFile)
+    {
+        File tempFile = null;
+        try
+        {
+            // Each save writes its own temp file, so concurrent saves of the same file don't corrupt each other
+            tempFile = File.createTempFile(hierarchyFile.getName() + ".", TEMP_FILE_SUFFIX, hierarchyFile.getParentFile());
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try
+            {
+                stream.writeInt(FILE_MAGIC);
+                stream.writeInt(FILE_VERSION);
+                byte[] hash = mapHash.getBytes(Tools.FILE_ENCODING);
+                stream.writeInt(hash.length);
+                stream.write(hash);
+                stream.writeDouble(hierarchy.getFloorChangeCost());
+                stream.writeInt(hierarchy.getNodeCount());
+                stream.writeInt(hierarchy.getTargets().length);
+                for (int value : hierarchy.getOffsets()) stream.writeInt(value);
+                for (int value : hierarchy.getTargets()) stream.writeInt(value);
+                for (int value : hierarchy.getMiddles()) stream.writeInt(value);
+                for (double value : hierarchy.getWeights()) stream.writeDouble(value);
+            }
+            finally
+            {
+                stream.close();
+            }
+
+            if (!(tempFile.renameTo(hierarchyFile) || hierarchyFile.delete() && tempFile.renameTo(hierarchyFile)))
+            {
+                Logger.error(LOGGER_TAG, "Failed to replace contraction hierarchy file. File path: " + hierarchyFile.getPath());
+                if (!tempFile.delete())
+                    Logger.error(LOGGER_TAG, "Failed to delete temp file. File path: " + tempFile.getPath());
+                return false;
+            }
+            return true;
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to save contraction hierarchy file. File path: " + hierarchyFile.getPath(), t);
+            if (tempFile != null && tempFile.exists() && !tempFile.delete())
+                Logger.error(LOGGER_TAG, "Failed to delete temp file. File path: " + tempFile.getPath());
+            return false;
+        }
+    }
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Hidden for static class design pattern
+     */
+    private ContractionHierarchyFile()
+    {
+        // no-op
+    }
+
+    //endregion
+}
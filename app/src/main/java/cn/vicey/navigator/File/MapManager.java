@@ -2,35 +2,381 @@ package cn.vicey.navigator.File;
 
 import android.support.annotation.NonNull;
 import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Navigate.ContractionHierarchy;
+import cn.vicey.navigator.Navigate.MapNavigator;
+import cn.vicey.navigator.Navigate.NavigateManager;
+import cn.vicey.navigator.Navigate.RouteTable;
 import cn.vicey.navigator.Navigator;
 import cn.vicey.navigator.Utils.Logger;
 import cn.vicey.navigator.Utils.Tools;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Map manager, provides a set of methods to help manage map files
  */
 public final class MapManager
 {
+    //region Inner classes
+
+    /**
+     * Listener which will be invoked while loading a map in background
+     */
+    public interface OnLoadListener
+    {
+        //region Methods
+
+        /**
+         * Invoked when the loading is failed
+         */
+        void onFailed();
+
+        /**
+         * Invoked when the map and its precomputed route indexes are loaded
+         *
+         * @param map         Loaded map
+         * @param routeTables Route tables indexed by floor index, or null if they aren't built or are outdated
+         * @param hierarchy   Contraction hierarchy, or null if it isn't built or is outdated
+         */
+        void onLoaded(Map map, List<RouteTable> routeTables, ContractionHierarchy hierarchy);
+
+        /**
+         * Invoked periodically while the map file is parsed
+         *
+         * @param processedBytes Count of bytes processed
+         * @param totalBytes     Total count of bytes, or -1 if unknown
+         * @param elementCount   Count of elements processed
+         */
+        void onProgress(long processedBytes, long totalBytes, int elementCount);
+
+        //endregion
+    }
+
+    /**
+     * Load request, represents a map being loaded in background
+     */
+    public static class LoadRequest
+            implements Runnable
+    {
+        //region Fields
+
+        private volatile boolean mCancelled;   // Indicates whether the request is cancelled or not
+        private Future<?>        mFuture;      // Future of the loading
+        private OnLoadListener   mListener;    // Listener for load events
+        private String           mMapFileName; // Map file name to load
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link LoadRequest}
+         *
+         * @param mapFileName Map file name to load
+         * @param listener    Listener for load events
+         */
+        private LoadRequest(final @NonNull String mapFileName, final @NonNull OnLoadListener listener)
+        {
+            mMapFileName = mapFileName;
+            mListener = listener;
+        }
+
+        //endregion
+
+        //region Accessors
+
+        /**
+         * Gets whether the request is cancelled or not
+         *
+         * @return Whether the request is cancelled or not
+         */
+        public boolean isCancelled()
+        {
+            return mCancelled;
+        }
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Cancel this request, the parsing stops at next progress report and no more event will be notified
+         */
+        public void cancel()
+        {
+            mCancelled = true;
+            if (mFuture != null) mFuture.cancel(false);
+        }
+
+        //endregion
+
+        //region Override methods
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                if (mCancelled) return;
+                String mapHash = getMapHash(mMapFileName);
+                if (mapHash == null)
+                {
+                    if (!mCancelled) mListener.onFailed();
+                    return;
+                }
+                Map map = loadMap(mMapFileName, mapHash, new MapParser.OnProgressListener()
+                {
+                    @Override
+                    public boolean onProgress(long processedBytes, long totalBytes, int elementCount)
+                    {
+                        if (mCancelled) return false;
+                        mListener.onProgress(processedBytes, totalBytes, elementCount);
+                        return true;
+                    }
+                });
+                if (mCancelled) return;
+                if (map == null)
+                {
+                    mListener.onFailed();
+                    return;
+                }
+                List<RouteTable> routeTables = RouteTableFile.load(mapHash, getRouteTableFile(mapHash));
+                ContractionHierarchy hierarchy = ContractionHierarchyFile.load(mapHash, getHierarchyFile(mapHash));
+                if (!mCancelled) mListener.onLoaded(map, routeTables, hierarchy);
+            }
+            catch (Throwable t)
+            {
+                Logger.error(LOGGER_TAG, "Failed to load map file in background. File name: " + mMapFileName, t);
+                if (!mCancelled) mListener.onFailed();
+            }
+        }
+
+        //endregion
+    }
+
+    //endregion
+
     //region Constants
 
     private static final String LOGGER_TAG = "MapManager";
 
-    private static final String MAP_DIR = "/maps"; // Map file directory name
+    private static final String BINARY_FILE_SUFFIX    = ".bin";      // Binary map file suffix
+    private static final String CACHE_DIR             = "/maps";     // Binary map file directory name, under cache directory
+    private static final String HASH_FILE_SUFFIX      = ".hash";     // Map file hash file suffix
+    private static final String HIERARCHY_FILE_SUFFIX = ".ch";       // Contraction hierarchy file suffix
+    private static final String INDEX_DIR             = "/indexes";  // Route table and contraction hierarchy file directory name
+    private static final String LEGACY_ROUTE_DIR      = "/routes";   // Directory name of route indexes and binary map files keyed by map file name
+    private static final String MAP_DIR               = "/maps";     // Map file directory name
+    private static final String ROUTE_FILE_SUFFIX     = ".route";    // Route table file suffix
+
+    private static final ExecutorService LOAD_EXECUTOR = Executors.newSingleThreadExecutor(); // Executor for background map loading and route index building
 
     //endregion
 
     //region Static fields
 
-    private static File mMapDir; // Map file directory
+    private static File mCacheDir; // Binary map file and map file hash file directory
+    private static File mIndexDir; // Route table and contraction hierarchy file directory
+    private static File mMapDir;   // Map file directory
 
     //endregion
 
     //region Static methods
 
     /**
-     * Delete specified map file
+     * Gets binary map file of map file with specified content hash
+     *
+     * @param mapHash Map file's content hash
+     * @return Binary map file
+     */
+    private static File getBinaryFile(final @NonNull String mapHash)
+    {
+        return new File(mCacheDir + "/" + mapHash + BINARY_FILE_SUFFIX);
+    }
+
+    /**
+     * Gets hash file of specified map file, which records the map file's content hash along with its length and last
+     * modified time
+     *
+     * @param mapFileName Map file name
+     * @return Map file hash file
+     */
+    private static File getHashFile(final @NonNull String mapFileName)
+    {
+        return new File(mCacheDir + "/" + mapFileName + HASH_FILE_SUFFIX);
+    }
+
+    /**
+     * Gets contraction hierarchy file of map file with specified content hash
+     *
+     * @param mapHash Map file's content hash
+     * @return Contraction hierarchy file
+     */
+    private static File getHierarchyFile(final @NonNull String mapHash)
+    {
+        return new File(mIndexDir + "/" + mapHash + HIERARCHY_FILE_SUFFIX);
+    }
+
+    /**
+     * Gets content hash of specified map file. The hash recorded in its hash file is used if the map file's length and
+     * last modified time are unchanged, otherwise the map file is hashed again and the hash file is updated
+     *
+     * @param mapFileName Map file name
+     * @return Content hash, or null if map file doesn't exist or error occurred
+     */
+    private static synchronized String getMapHash(final @NonNull String mapFileName)
+    {
+        File mapFile = new File(mMapDir + "/" + mapFileName);
+        if (!mapFile.exists()) return null;
+        long length = mapFile.length();
+        long lastModified = mapFile.lastModified();
+        File hashFile = getHashFile(mapFileName);
+        try
+        {
+            if (hashFile.exists())
+            {
+                DataInputStream stream = new DataInputStream(new FileInputStream(hashFile));
+                try
+                {
+                    if (stream.readLong() == length && stream.readLong() == lastModified) return stream.readUTF();
+                }
+                finally
+                {
+                    stream.close();
+                }
+            }
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to read map file hash file. File path: " + hashFile.getPath(), t);
+        }
+        String mapHash = Tools.getFileHash(mapFile);
+        if (mapHash == null) return null;
+        try
+        {
+            DataOutputStream stream = new DataOutputStream(new FileOutputStream(hashFile));
+            try
+            {
+                stream.writeLong(length);
+                stream.writeLong(lastModified);
+                stream.writeUTF(mapHash);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to save map file hash file. File path: " + hashFile.getPath(), t);
+            if (hashFile.exists() && !hashFile.delete())
+                Logger.error(LOGGER_TAG, "Failed to delete map file hash file. File path: " + hashFile.getPath());
+        }
+        return mapHash;
+    }
+
+    /**
+     * Gets route table file of map file with specified content hash
+     *
+     * @param mapHash Map file's content hash
+     * @return Route table file
+     */
+    private static File getRouteTableFile(final @NonNull String mapHash)
+    {
+        return new File(mIndexDir + "/" + mapHash + ROUTE_FILE_SUFFIX);
+    }
+
+    /**
+     * Checks whether any map file other than specified one has specified content hash
+     *
+     * @param mapFileName Map file name to exclude
+     * @param mapHash     Content hash to check
+     * @return Whether there is another map file with the same content
+     */
+    private static boolean isMapHashShared(final @NonNull String mapFileName, final @NonNull String mapHash)
+    {
+        List<File> mapFiles = Tools.getFiles(mMapDir);
+        if (mapFiles == null) return false;
+        for (File mapFile : mapFiles)
+        {
+            if (mapFile.getName().equals(mapFileName)) continue;
+            if (mapHash.equals(getMapHash(mapFile.getName()))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Load specified map file, from binary map file cached for its content if there is one
+     *
+     * @param mapFileName Map file name to load
+     * @param mapHash     Map file's content hash
+     * @param listener    Listener for parsing progress event, or null if caller doesn't need it
+     * @return Map object, or null if failed to load or the loading is cancelled
+     */
+    private static Map loadMap(final @NonNull String mapFileName, final @NonNull String mapHash, MapParser.OnProgressListener listener)
+    {
+        long startTime = new Date().getTime();
+        File mapFile = new File(mMapDir + "/" + mapFileName);
+        File binaryFile = getBinaryFile(mapHash);
+        Map map = BinaryMapFile.load(mapHash, binaryFile);
+        if (map == null)
+        {
+            map = MapParser.parse(mapFile, listener);
+            // Cache is missed, e.g. the cache directory is cleared, convert the map again for next load
+            if (map != null) BinaryMapFile.save(map, mapHash, binaryFile);
+        }
+        else if (listener != null) listener.onProgress(mapFile.length(), mapFile.length(), 0);
+        if (map != null)
+            Logger.info(LOGGER_TAG, "Finished loading map file: " + mapFileName + ". Total time: " + (new Date().getTime() - startTime) + " ms.");
+        return map;
+    }
+
+    /**
+     * Convert specified map file to binary map file, then precompute its route tables and contraction hierarchy in
+     * background
+     *
+     * @param mapFileName Map file name
+     */
+    public static void buildRouteIndexesAsync(final @NonNull String mapFileName)
+    {
+        LOAD_EXECUTOR.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                File mapFile = new File(mMapDir + "/" + mapFileName);
+                Map map = MapParser.parse(mapFile);
+                if (map == null)
+                {
+                    Logger.error(LOGGER_TAG, "Failed to build route indexes. Can not parse map file: " + mapFileName);
+                    return;
+                }
+                String mapHash = getMapHash(mapFileName);
+                if (mapHash == null)
+                {
+                    Logger.error(LOGGER_TAG, "Failed to build route indexes. Can not hash map file: " + mapFileName);
+                    return;
+                }
+                BinaryMapFile.save(map, mapHash, getBinaryFile(mapHash));
+                RouteTableFile.save(map, mapHash, getRouteTableFile(mapHash));
+                MapNavigator navigator = new MapNavigator(map, NavigateManager.getFloorChangeCost());
+                ContractionHierarchyFile.save(ContractionHierarchy.build(navigator), mapHash, getHierarchyFile(mapHash));
+            }
+        });
+    }
+
+    /**
+     * Delete specified map file, along with its binary map file and route indexes if no other map file has the same
+     * content
      *
      * @param mapFileName Map file name to delete
      * @return Whether the deletion is succeed or not
@@ -38,6 +384,18 @@ public final class MapManager
     public static boolean deleteMapFile(final @NonNull String mapFileName)
     {
         File map = new File(mMapDir + "/" + mapFileName);
+        String mapHash = getMapHash(mapFileName);
+        if (mapHash != null && !isMapHashShared(mapFileName, mapHash))
+        {
+            for (File index : new File[]{getBinaryFile(mapHash), getRouteTableFile(mapHash), getHierarchyFile(mapHash)})
+            {
+                if (index.exists() && !index.delete())
+                    Logger.error(LOGGER_TAG, "Failed to delete route index file. File path: " + index.getPath());
+            }
+        }
+        File hashFile = getHashFile(mapFileName);
+        if (hashFile.exists() && !hashFile.delete())
+            Logger.error(LOGGER_TAG, "Failed to delete map file hash file. File path: " + hashFile.getPath());
         return !map.exists() || map.delete();
     }
 
@@ -87,6 +445,32 @@ public final class MapManager
                 Logger.error(LOGGER_TAG, "Failed to init map manager. Can not init map directory.");
                 return false;
             }
+            mIndexDir = new File(Navigator.getFilesDirPath() + INDEX_DIR);
+            if (!(mIndexDir.exists() || mIndexDir.mkdir()))
+            {
+                Logger.error(LOGGER_TAG, "Failed to init map manager. Can not init route index directory.");
+                return false;
+            }
+            // Files under legacy directory are keyed by map file name and can't be shared by copies, they are rebuilt
+            // under index directory and cache directory when needed
+            File legacyRouteDir = new File(Navigator.getFilesDirPath() + LEGACY_ROUTE_DIR);
+            List<File> legacyFiles = Tools.getFiles(legacyRouteDir);
+            if (legacyFiles != null)
+            {
+                for (File legacyFile : legacyFiles)
+                {
+                    if (!legacyFile.delete())
+                        Logger.error(LOGGER_TAG, "Failed to delete legacy route index file. File path: " + legacyFile.getPath());
+                }
+                if (!legacyRouteDir.delete())
+                    Logger.error(LOGGER_TAG, "Failed to delete legacy route index directory.");
+            }
+            mCacheDir = new File(Navigator.getCacheDirPath() + CACHE_DIR);
+            if (!(mCacheDir.exists() || mCacheDir.mkdir()))
+            {
+                Logger.error(LOGGER_TAG, "Failed to init map manager. Can not init map cache directory.");
+                return false;
+            }
             return true;
         }
         catch (Throwable t)
@@ -97,14 +481,17 @@ public final class MapManager
     }
 
     /**
-     * Load specified map file
+     * Load specified map file and its precomputed route indexes in background
      *
      * @param mapFileName Map file name to load
-     * @return Map object, or null if failed to load
+     * @param listener    Listener for load events, invoked on loading thread
+     * @return Load request which can be cancelled
      */
-    public static Map loadMap(final @NonNull String mapFileName)
+    public static LoadRequest loadMapAsync(final @NonNull String mapFileName, final @NonNull OnLoadListener listener)
     {
-        return MapParser.parse(new File(mMapDir + "/" + mapFileName));
+        LoadRequest request = new LoadRequest(mapFileName, listener);
+        request.mFuture = LOAD_EXECUTOR.submit(request);
+        return request;
     }
 
     /**
@@ -119,7 +506,12 @@ public final class MapManager
         if (!hasMapFile(mapFileName)) return false;
         if (hasMapFile(newMapFileName)) return false;
         File map = new File(mMapDir + "/" + mapFileName);
-        return map.renameTo(new File(mMapDir + "/" + newMapFileName));
+        if (!map.renameTo(new File(mMapDir + "/" + newMapFileName))) return false;
+        // Binary map file and route indexes are keyed by content hash, only the hash file follows the map file
+        File hashFile = getHashFile(mapFileName);
+        if (hashFile.exists() && !hashFile.renameTo(getHashFile(newMapFileName)))
+            Logger.error(LOGGER_TAG, "Failed to rename map file hash file. File path: " + hashFile.getPath());
+        return true;
     }
 
     /**
@@ -133,7 +525,9 @@ public final class MapManager
     {
         String fileName = src.getName();
         if (!overwritten && hasMapFile(fileName)) fileName = getAvailableDefaultMapFileName();
-        return Tools.copyFile(src, new File(mMapDir + "/" + fileName), overwritten);
+        if (!Tools.copyFile(src, new File(mMapDir + "/" + fileName), overwritten)) return false;
+        buildRouteIndexesAsync(fileName);
+        return true;
     }
 
     //endregion
@@ -3,7 +3,6 @@ package cn.vicey.navigator.File;
 import android.support.annotation.NonNull;
 import android.util.Xml;
 import cn.vicey.navigator.Models.Floor;
-import cn.vicey.navigator.Models.Link;
 import cn.vicey.navigator.Models.Map;
 import cn.vicey.navigator.Models.Nodes.GuideNode;
 import cn.vicey.navigator.Models.Nodes.NodeBase;
@@ -13,17 +12,238 @@ import cn.vicey.navigator.Utils.Logger;
 import cn.vicey.navigator.Utils.Tools;
 import org.xmlpull.v1.XmlPullParser;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Map parser class, provides a set of methods to parse map file
  */
 public final class MapParser
 {
+    //region Inner classes
+
+    /**
+     * Listener which will be invoked periodically while parsing
+     */
+    public interface OnProgressListener
+    {
+        //region Methods
+
+        /**
+         * Invoked periodically while parsing
+         *
+         * @param processedBytes Count of bytes processed
+         * @param totalBytes     Total count of bytes, or -1 if unknown
+         * @param elementCount   Count of elements processed
+         * @return Whether the parsing should go on, false to cancel it
+         */
+        boolean onProgress(long processedBytes, long totalBytes, int elementCount);
+
+        //endregion
+    }
+
+    /**
+     * Input stream which reads remaining bytes of a byte buffer
+     */
+    private static class ByteBufferInputStream
+            extends InputStream
+    {
+        //region Fields
+
+        private ByteBuffer mBuffer; // Buffer to read
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link ByteBufferInputStream}
+         *
+         * @param buffer Buffer to read, its position is moved while reading
+         */
+        private ByteBufferInputStream(final @NonNull ByteBuffer buffer)
+        {
+            mBuffer = buffer;
+        }
+
+        //endregion
+
+        //region Override methods
+
+        @Override
+        public int available()
+        {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public int read()
+        {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final @NonNull byte[] buffer, int offset, int length)
+        {
+            if (length == 0) return 0;
+            if (!mBuffer.hasRemaining()) return -1;
+            int count = Math.min(length, mBuffer.remaining());
+            mBuffer.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count)
+        {
+            int skipped = (int) Math.max(0, Math.min(count, mBuffer.remaining()));
+            mBuffer.position(mBuffer.position() + skipped);
+            return skipped;
+        }
+
+        //endregion
+    }
+
+    /**
+     * Input stream which counts bytes read through it
+     */
+    private static class CountingInputStream
+            extends FilterInputStream
+    {
+        //region Fields
+
+        private long mCount; // Count of bytes read
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link CountingInputStream}
+         *
+         * @param stream Input stream to count
+         */
+        private CountingInputStream(final @NonNull InputStream stream)
+        {
+            super(stream);
+        }
+
+        //endregion
+
+        //region Accessors
+
+        /**
+         * Gets count of bytes read
+         *
+         * @return Count of bytes read
+         */
+        private long getCount()
+        {
+            return mCount;
+        }
+
+        //endregion
+
+        //region Override methods
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int value = super.read();
+            if (value != -1) mCount++;
+            return value;
+        }
+
+        @Override
+        public int read(final @NonNull byte[] buffer, int offset, int length)
+                throws IOException
+        {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) mCount += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long count)
+                throws IOException
+        {
+            long skipped = super.skip(count);
+            if (skipped > 0) mCount += skipped;
+            return skipped;
+        }
+
+        //endregion
+    }
+
+    /**
+     * Link buffer, holds links referring to nodes which aren't read yet until their floor is finished
+     */
+    private static class LinkBuffer
+    {
+        //region Fields
+
+        private int   mCount; // Count of buffered links
+        private int[] mLinks; // Buffered links, type ordinal, start index and end index of each link
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Add a link to buffer
+         *
+         * @param type       Link's type
+         * @param startIndex Link's start index
+         * @param endIndex   Link's end index
+         */
+        private void add(final @NonNull NodeType type, int startIndex, int endIndex)
+        {
+            if (mLinks == null) mLinks = new int[DEFAULT_LINK_BUFFER_CAPACITY * 3];
+            else if (mCount * 3 == mLinks.length) mLinks = Arrays.copyOf(mLinks, mLinks.length * 2);
+            int base = mCount++ * 3;
+            mLinks[base] = type.ordinal();
+            mLinks[base + 1] = startIndex;
+            mLinks[base + 2] = endIndex;
+        }
+
+        /**
+         * Add all buffered links to specified floor, then clear the buffer
+         *
+         * @param floor Floor to add links to
+         */
+        private void flush(final @NonNull Floor floor)
+        {
+            NodeType[] types = NodeType.values();
+            for (int i = 0; i < mCount; i++)
+            {
+                int base = i * 3;
+                floor.addLink(types[mLinks[base]], mLinks[base + 1], mLinks[base + 2]);
+            }
+            mCount = 0;
+            mLinks = null;
+        }
+
+        //endregion
+    }
+
+    //endregion
+
     //region Constants
 
     private static final String LOGGER_TAG = "MapParser";
@@ -44,30 +264,38 @@ public final class MapParser
     private static final String ELEMENT_NODE      = "Node";       // Node element name
     private static final String SUPPORTED_VERSION = "1.1";        // Supported version of this parser
 
+    private static final int DEFAULT_LINK_BUFFER_CAPACITY = 16;                                         // Default capacity of link buffer
+    private static final int MIN_PARALLEL_FILE_SIZE       = 256 * 1024;                                 // Min file size in bytes to parse floors in parallel
+    private static final int PARSER_THREAD_COUNT          = Runtime.getRuntime().availableProcessors(); // Count of threads parsing floors in parallel
+    private static final int PROGRESS_INTERVAL            = 256;                                        // Count of elements between two progress reports
+
+    private static final ExecutorService PARSE_EXECUTOR = Executors.newFixedThreadPool(PARSER_THREAD_COUNT); // Executor for parsing floors in parallel
+
     //endregion
 
     //region Static methods
 
     /**
-     * Generate link object from xml parser
+     * Find end of tag starting at specified position, skipping quoted attribute values
      *
-     * @param parser Xml parser
-     * @return New link object, or null if errors occurred
+     * @param data     File content
+     * @param position Position of tag's '<'
+     * @return Position after tag's '>', or -1 if the tag isn't closed
      */
-    private static Link generateLink(final @NonNull XmlPullParser parser)
+    private static int findTagEnd(final @NonNull ByteBuffer data, int position)
     {
-        try
+        byte quote = 0;
+        for (int i = position + 1; i < data.limit(); i++)
         {
-            NodeType type = NodeType.parse(parser.getAttributeValue(null, ATTR_TYPE));
-            int startIndex = Integer.parseInt(parser.getAttributeValue(null, ATTR_START_INDEX));
-            int endIndex = Integer.parseInt(parser.getAttributeValue(null, ATTR_END_INDEX));
-            return new Link(type, startIndex, endIndex);
-        }
-        catch (Throwable t)
-        {
-            Logger.error(LOGGER_TAG, "Link element must have valid type or index attribute.", t);
-            return null;
+            byte b = data.get(i);
+            if (quote != 0)
+            {
+                if (b == quote) quote = 0;
+            }
+            else if (b == '"' || b == '\'') quote = b;
+            else if (b == '>') return i + 1;
         }
+        return -1;
     }
 
     /**
@@ -135,23 +363,196 @@ public final class MapParser
     }
 
     /**
-     * Parse a map from InputStream
+     * Locate floor elements of a map file by scanning its raw bytes
      *
-     * @param stream Input stream to parse
-     * @return New map object, or null if error occurred
+     * @param data File content
+     * @return Start and end positions of each floor element, or null if the file's layout can't be indexed safely
+     */
+    private static int[] indexFloors(final @NonNull ByteBuffer data)
+    {
+        int[] ranges = new int[16];
+        int count = 0;
+        int floorStart = -1;
+        for (int i = 0; i < data.limit(); i++)
+        {
+            if (data.get(i) != '<') continue;
+            // Comments, CDATA sections and DTDs may hide or fake tags
+            if (i + 1 < data.limit() && data.get(i + 1) == '!') return null;
+            int tagEnd = findTagEnd(data, i);
+            if (tagEnd < 0) return null;
+            if (floorStart < 0)
+            {
+                if (isTag(data, i, "<" + ELEMENT_FLOOR))
+                {
+                    if (count * 2 == ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                    if (data.get(tagEnd - 2) == '/')
+                    {
+                        ranges[count * 2] = i;
+                        ranges[count++ * 2 + 1] = tagEnd;
+                    }
+                    else floorStart = i;
+                }
+                else if (count > 0)
+                {
+                    // Only map end tag is expected after floors
+                    if (isTag(data, i, "</" + ELEMENT_MAP)) break;
+                    return null;
+                }
+            }
+            else if (isTag(data, i, "</" + ELEMENT_FLOOR))
+            {
+                ranges[count * 2] = floorStart;
+                ranges[count++ * 2 + 1] = tagEnd;
+                floorStart = -1;
+            }
+            else if (isTag(data, i, "<" + ELEMENT_FLOOR) || isTag(data, i, "<" + ELEMENT_MAP) || isTag(data, i, "</" + ELEMENT_MAP))
+                return null;
+            i = tagEnd - 1;
+        }
+        if (floorStart >= 0 || count == 0) return null;
+        return Arrays.copyOf(ranges, count * 2);
+    }
+
+    /**
+     * Check whether tag at specified position has specified name
+     *
+     * @param data     File content
+     * @param position Position of tag's '<'
+     * @param tag      Tag's beginning, '<' or '</' followed by element name
+     * @return Whether the tag has specified name
+     */
+    private static boolean isTag(final @NonNull ByteBuffer data, int position, final @NonNull String tag)
+    {
+        int end = position + tag.length();
+        if (end >= data.limit()) return false;
+        for (int i = 0; i < tag.length(); i++)
+        {
+            if (data.get(position + i) != tag.charAt(i)) return false;
+        }
+        byte next = data.get(end);
+        return next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\r' || next == '\n';
+    }
+
+    /**
+     * Create input stream reading a fragment of file content, the content's position isn't changed so fragments can be
+     * read by several threads at the same time
+     *
+     * @param data  File content
+     * @param start Fragment's start position
+     * @param end   Fragment's end position
+     * @return New input stream
+     */
+    private static InputStream openFragment(final @NonNull ByteBuffer data, int start, int end)
+    {
+        ByteBuffer fragment = data.duplicate();
+        fragment.limit(end);
+        fragment.position(start);
+        return new ByteBufferInputStream(fragment);
+    }
+
+    /**
+     * Parse a floor element
+     *
+     * @param data  File content
+     * @param start Floor element's start position
+     * @param end   Floor element's end position
+     * @return New floor object, or null if error occurred
+     */
+    private static Floor parseFloor(final @NonNull ByteBuffer data, int start, int end)
+    {
+        List<Floor> floors = new ArrayList<>(1);
+        if (parseStream(openFragment(data, start, end), -1, null, floors) == null) return null;
+        if (floors.size() != 1)
+        {
+            Logger.error(LOGGER_TAG, "Failed to parse floor element. Position: " + start);
+            return null;
+        }
+        return floors.get(0);
+    }
+
+    /**
+     * Parse floors of a map file in parallel, then assemble them in floor order
+     *
+     * @param data        File content
+     * @param floorRanges Start and end positions of each floor element
+     * @param listener    Listener for progress event, or null if caller doesn't need it
+     * @return New map object, or null if error occurred or the parsing is cancelled
+     * @throws Exception Thrown if a floor's parsing is interrupted
      */
-    private static Map parseStream(final @NonNull InputStream stream)
+    private static Map parseParallel(final @NonNull ByteBuffer data, final @NonNull int[] floorRanges, OnProgressListener listener)
+            throws Exception
     {
+        int floorCount = floorRanges.length / 2;
+        List<Future<Floor>> futures = new ArrayList<>(floorCount);
+        for (int i = 0; i < floorCount; i++)
+        {
+            final int start = floorRanges[i * 2];
+            final int end = floorRanges[i * 2 + 1];
+            futures.add(PARSE_EXECUTOR.submit(new Callable<Floor>()
+            {
+                @Override
+                public Floor call()
+                {
+                    return parseFloor(data, start, end);
+                }
+            }));
+        }
         try
         {
+            // Map element is all before the first floor, close it to make the header a complete document
+            List<Floor> floors = new ArrayList<>(floorCount);
+            byte[] mapEndTag = ("</" + ELEMENT_MAP + ">").getBytes(Tools.FILE_ENCODING);
+            InputStream header = new SequenceInputStream(openFragment(data, 0, floorRanges[0]), new ByteArrayInputStream(mapEndTag));
+            String mapName = parseStream(header, -1, null, floors);
+            if (mapName == null) return null;
+
+            long processedBytes = floorRanges[0];
+            int elementCount = 1;
+            for (int i = 0; i < floorCount; i++)
+            {
+                Floor floor = futures.get(i).get();
+                if (floor == null) return null;
+                floors.add(floor);
+                processedBytes += floorRanges[i * 2 + 1] - floorRanges[i * 2];
+                elementCount += 1 + floor.getGuideNodes().size() + floor.getWallNodes().size();
+                if (listener != null && !listener.onProgress(processedBytes, data.limit(), elementCount))
+                {
+                    Logger.info(LOGGER_TAG, "Parsing cancelled. Floor: " + i);
+                    return null;
+                }
+            }
+            if (listener != null) listener.onProgress(data.limit(), data.limit(), elementCount);
+            return new Map(mapName, floors);
+        }
+        finally
+        {
+            // Drop floors which aren't parsed yet if the parsing is failed or cancelled
+            for (Future<Floor> future : futures) future.cancel(false);
+        }
+    }
+
+    /**
+     * Parse map elements from InputStream
+     *
+     * @param stream     Input stream to parse
+     * @param totalBytes Total count of bytes of the stream, or -1 if unknown
+     * @param listener   Listener for progress event, or null if caller doesn't need it
+     * @param floors     List to receive parsed floors
+     * @return Map name, or null if error occurred or the parsing is cancelled
+     */
+    private static String parseStream(final @NonNull InputStream stream, long totalBytes, OnProgressListener listener, final @NonNull List<Floor> floors)
+    {
+        try
+        {
+            CountingInputStream countingStream = new CountingInputStream(stream);
+            int elementCount = 0;
             String mapName = DEFAULT_MAP_NAME;
 
             Floor currentFloor = null;
-            List<Link> links = new ArrayList<>();
-            List<Floor> floors = new ArrayList<>();
+            LinkBuffer linkBuffer = new LinkBuffer();
 
             XmlPullParser parser = Xml.newPullParser();
-            parser.setInput(stream, Tools.FILE_ENCODING);
+            parser.setInput(countingStream, Tools.FILE_ENCODING);
             int event = parser.getEventType();
             while (event != XmlPullParser.END_DOCUMENT)
             {
@@ -160,6 +561,12 @@ public final class MapParser
                     //region Start tag
                     case XmlPullParser.START_TAG:
                     {
+                        if (listener != null && ++elementCount % PROGRESS_INTERVAL == 0 && !listener.onProgress(countingStream
+                                .getCount(), totalBytes, elementCount))
+                        {
+                            Logger.info(LOGGER_TAG, "Parsing cancelled. Line: " + parser.getLineNumber());
+                            return null;
+                        }
                         String elementName = parser.getName();
                         switch (elementName)
                         {
@@ -219,7 +626,7 @@ public final class MapParser
                                 break;
                             }
                             //endregion
-                            // Meet link element, if is parsing a floor, then add the link to the floor, else break the parsing
+                            // Meet link element, if is parsing a floor, then add or buffer the link, else break the parsing
                             //region Link element
                             case ELEMENT_LINK:
                             {
@@ -231,13 +638,11 @@ public final class MapParser
                                                 .getLineNumber());
                                         return null;
                                     }
-                                    Link link = generateLink(parser);
-                                    if (link == null)
+                                    if (!readLink(parser, currentFloor, linkBuffer))
                                     {
                                         Logger.error(LOGGER_TAG, "Failed in building link. Line:" + parser.getLineNumber());
                                         return null;
                                     }
-                                    links.add(link);
                                     break;
                                 }
                                 catch (Throwable t)
@@ -266,7 +671,8 @@ public final class MapParser
                                             .getLineNumber());
                                     return null;
                                 }
-                                return new Map(mapName, floors);
+                                if (listener != null) listener.onProgress(totalBytes, totalBytes, elementCount);
+                                return mapName;
                             }
                             //endregion
                             //region Floor element
@@ -278,9 +684,9 @@ public final class MapParser
                                             .getLineNumber());
                                     return null;
                                 }
-                                currentFloor.addLinks(links);
+                                linkBuffer.flush(currentFloor);
+                                currentFloor.buildIndexes();
                                 floors.add(currentFloor);
-                                links = new ArrayList<>();
                                 currentFloor = null;
                                 break;
                             }
@@ -292,7 +698,7 @@ public final class MapParser
                 }
                 event = parser.next();
             }
-            return new Map(mapName, floors);
+            return mapName;
         }
         catch (Throwable t)
         {
@@ -301,13 +707,106 @@ public final class MapParser
         }
     }
 
+    /**
+     * Map whole content of specified file into memory, pages are read by the system when they're touched instead of
+     * being copied into the heap
+     *
+     * @param file File to map
+     * @return File content, which stays valid after the file is closed
+     * @throws IOException Thrown if failed to map the file
+     */
+    private static ByteBuffer mapFile(final @NonNull File file)
+            throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read link element from xml parser, the link is added to floor at once if both its nodes are read, or buffered
+     * until the floor is finished otherwise
+     *
+     * @param parser Xml parser
+     * @param floor  Floor which is being parsed
+     * @param buffer Buffer for links referring to nodes which aren't read yet
+     * @return Whether the reading is succeed or not
+     */
+    private static boolean readLink(final @NonNull XmlPullParser parser, final @NonNull Floor floor, final @NonNull LinkBuffer buffer)
+    {
+        NodeType type;
+        int startIndex;
+        int endIndex;
+        try
+        {
+            type = NodeType.parse(parser.getAttributeValue(null, ATTR_TYPE));
+            startIndex = Integer.parseInt(parser.getAttributeValue(null, ATTR_START_INDEX));
+            endIndex = Integer.parseInt(parser.getAttributeValue(null, ATTR_END_INDEX));
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Link element must have valid type or index attribute.", t);
+            return false;
+        }
+        int nodeCount;
+        switch (type)
+        {
+            case GUIDE_NODE:
+            {
+                nodeCount = floor.getGuideNodes().size();
+                break;
+            }
+            case WALL_NODE:
+            {
+                nodeCount = floor.getWallNodes().size();
+                break;
+            }
+            default:
+            {
+                Logger.error(LOGGER_TAG, "Link element must have valid type attribute. Line: " + parser.getLineNumber());
+                return false;
+            }
+        }
+        if (startIndex < 0 || endIndex < 0)
+        {
+            Logger.error(LOGGER_TAG, "Link element must have valid type or index attribute. Line: " + parser.getLineNumber());
+            return false;
+        }
+        if (startIndex < nodeCount && endIndex < nodeCount) floor.addLink(type, startIndex, endIndex);
+        else buffer.add(type, startIndex, endIndex);
+        return true;
+    }
+
     /**
      * Parse a map from file
+     * <p>
+     * Large files are parsed in parallel: floor elements are located by scanning the raw bytes, then each floor is
+     * parsed on its own thread. Files whose layout can't be indexed safely, e.g. which contain comments or unexpected
+     * elements between floors, are parsed sequentially.
      *
      * @param file File to parse
      * @return New map object, or null if error occurred
      */
     public static Map parse(final @NonNull File file)
+    {
+        return parse(file, null);
+    }
+
+    /**
+     * Parse a map from file, reporting progress to specified listener
+     *
+     * @param file     File to parse
+     * @param listener Listener for progress event, or null if caller doesn't need it
+     * @return New map object, or null if error occurred or the parsing is cancelled
+     */
+    public static Map parse(final @NonNull File file, OnProgressListener listener)
     {
         try
         {
@@ -317,8 +816,32 @@ public final class MapParser
                 Logger.error(LOGGER_TAG, "Can't find map file. File path: " + file.getPath());
                 return null;
             }
-            Map map = parseStream(new FileInputStream(file));
-            Logger.info(LOGGER_TAG, "Finished parsing file: " + file.getPath());
+            long startTime = new Date().getTime();
+            Map map = null;
+            ByteBuffer data = null;
+            int[] floorRanges = null;
+            if (file.length() >= MIN_PARALLEL_FILE_SIZE && file.length() <= Integer.MAX_VALUE && PARSER_THREAD_COUNT > 1)
+            {
+                data = mapFile(file);
+                floorRanges = indexFloors(data);
+            }
+            if (floorRanges != null) map = parseParallel(data, floorRanges, listener);
+            else
+            {
+                List<Floor> floors = new ArrayList<>();
+                String mapName;
+                InputStream stream = new FileInputStream(file);
+                try
+                {
+                    mapName = parseStream(stream, file.length(), listener, floors);
+                }
+                finally
+                {
+                    stream.close();
+                }
+                if (mapName != null) map = new Map(mapName, floors);
+            }
+            Logger.info(LOGGER_TAG, "Finished parsing file: " + file.getPath() + ". Total time: " + (new Date().getTime() - startTime) + " ms.");
             return map;
         }
         catch (Throwable t)
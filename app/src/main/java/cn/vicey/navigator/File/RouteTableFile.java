@@ -0,0 +1,185 @@
+package cn.vicey.navigator.File;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Navigate.FloorNavigator;
+import cn.vicey.navigator.Navigate.NodeHeap;
+import cn.vicey.navigator.Navigate.RouteTable;
+import cn.vicey.navigator.Utils.Logger;
+import cn.vicey.navigator.Utils.Tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Route table file class, provides a set of methods to precompute, save and load route tables of a map
+ */
+public final class RouteTableFile
+{
+    //region Constants
+
+    private static final String LOGGER_TAG = "RouteTableFile";
+
+    private static final int    FILE_MAGIC       = 0x4E525442; // File magic number
+    private static final int    FILE_VERSION     = 2;          // File version
+    private static final int    HEADER_SIZE      = 12;         // Fixed header size: magic, version, map hash length
+    private static final String TEMP_FILE_SUFFIX = ".tmp";     // Suffix of files being written
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Load route tables of a map file, tables are memory mapped instead of being read into memory
+     *
+     * @param mapHash   Content hash of map file the tables should be built from
+     * @param tableFile Route table file
+     * @return Route tables indexed by floor index, or null if file doesn't exist, is outdated or error occurred
+     */
+    public static List<RouteTable> load(final @NonNull String mapHash, final @NonNull File tableFile)
+    {
+        if (!tableFile.exists()) return null;
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(tableFile, "r");
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION)
+                {
+                    Logger.error(LOGGER_TAG, "Unsupported route table file. File path: " + tableFile.getPath());
+                    return null;
+                }
+                int hashLength = header.getInt();
+                ByteBuffer hashAndCount = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, hashLength + 4);
+                byte[] hash = new byte[hashLength];
+                hashAndCount.get(hash);
+                if (!mapHash.equals(new String(hash, Tools.FILE_ENCODING)))
+                {
+                    Logger.info(LOGGER_TAG, "Route table file is outdated. File path: " + tableFile.getPath());
+                    return null;
+                }
+                int floorCount = hashAndCount.getInt();
+                long offset = HEADER_SIZE + hashLength + 4;
+                ByteBuffer nodeCounts = channel.map(FileChannel.MapMode.READ_ONLY, offset, floorCount * 4);
+                offset += floorCount * 4;
+                List<RouteTable> tables = new ArrayList<>();
+                for (int i = 0; i < floorCount; i++)
+                {
+                    int nodeCount = nodeCounts.getInt();
+                    long size = (long) nodeCount * nodeCount * RouteTable.getEntryWidth(nodeCount);
+                    tables.add(new RouteTable(nodeCount, channel.map(FileChannel.MapMode.READ_ONLY, offset, size)));
+                    offset += size;
+                }
+                return tables;
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to load route table file. File path: " + tableFile.getPath(), t);
+            return null;
+        }
+    }
+
+    /**
+     * Precompute route tables of a map and save them to file
+     *
+     * @param map       Map to precompute
+     * @param mapHash   Content hash of map file the map was parsed from
+     * @param tableFile Route table file to save
+     * @return Whether the saving is succeed or not
+     */
+    public static boolean save(final @NonNull Map map, final @NonNull String mapHash, final @NonNull File tableFile)
+    {
+        File tempFile = null;
+        try
+        {
+            // Each save writes its own temp file, so concurrent saves of the same file don't corrupt each other
+            tempFile = File.createTempFile(tableFile.getName() + ".", TEMP_FILE_SUFFIX, tableFile.getParentFile());
+            long startTime = new Date().getTime();
+            Logger.info(LOGGER_TAG, "Started building route table file: " + tableFile.getPath());
+
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try
+            {
+                List<FloorNavigator> navigators = new ArrayList<>();
+                for (Floor floor : map.getFloors()) navigators.add(new FloorNavigator(floor));
+
+                stream.writeInt(FILE_MAGIC);
+                stream.writeInt(FILE_VERSION);
+                byte[] hash = mapHash.getBytes(Tools.FILE_ENCODING);
+                stream.writeInt(hash.length);
+                stream.write(hash);
+                stream.writeInt(navigators.size());
+                for (FloorNavigator navigator : navigators) stream.writeInt(navigator.getNodeCount());
+
+                for (FloorNavigator navigator : navigators)
+                {
+                    int nodeCount = navigator.getNodeCount();
+                    boolean narrow = RouteTable.getEntryWidth(nodeCount) == RouteTable.NARROW_ENTRY_WIDTH;
+                    double[] dist = new double[nodeCount];
+                    int[] prev = new int[nodeCount];
+                    NodeHeap heap = new NodeHeap(nodeCount);
+                    for (int start = 0; start < nodeCount; start++)
+                    {
+                        navigator.buildShortestPathTree(start, dist, prev, heap);
+                        for (int node = 0; node < nodeCount; node++)
+                        {
+                            if (narrow) stream.writeChar(prev[node]);
+                            else stream.writeInt(prev[node]);
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                stream.close();
+            }
+
+            if (!(tempFile.renameTo(tableFile) || tableFile.delete() && tempFile.renameTo(tableFile)))
+            {
+                Logger.error(LOGGER_TAG, "Failed to replace route table file. File path: " + tableFile.getPath());
+                if (!tempFile.delete())
+                    Logger.error(LOGGER_TAG, "Failed to delete temp file. File path: " + tempFile.getPath());
+                return false;
+            }
+            Logger.info(LOGGER_TAG, "Finished building route table file. Total time: " + (new Date().getTime() - startTime) + " ms.");
+            return true;
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to save route table file. File path: " + tableFile.getPath(), t);
+            if (tempFile != null && tempFile.exists() && !tempFile.delete())
+                Logger.error(LOGGER_TAG, "Failed to delete temp file. File path: " + tempFile.getPath());
+            return false;
+        }
+    }
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Hidden for static class design pattern
+     */
+    private RouteTableFile()
+    {
+        // no-op
+    }
+
+    //endregion
+}
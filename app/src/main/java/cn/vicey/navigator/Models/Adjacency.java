@@ -0,0 +1,133 @@
+package cn.vicey.navigator.Models;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency class, holds links between nodes in compressed sparse row form
+ */
+public class Adjacency
+{
+    //region Static methods
+
+    /**
+     * Build adjacency from links, each link is stored in both directions and weighted by straight line distance
+     *
+     * @param nodeCount Node count
+     * @param starts    Links' start node indexes
+     * @param ends      Links' end node indexes
+     * @param linkCount Link count
+     * @param x         X axis of each node
+     * @param y         Y axis of each node
+     * @return New adjacency object
+     */
+    public static Adjacency build(int nodeCount, final @NonNull int[] starts, final @NonNull int[] ends, int linkCount, final @NonNull int[] x, final @NonNull int[] y)
+    {
+        int[] offsets = new int[nodeCount + 1];
+        for (int i = 0; i < linkCount; i++)
+        {
+            offsets[starts[i] + 1]++;
+            offsets[ends[i] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) offsets[i + 1] += offsets[i];
+        int[] targets = new int[linkCount * 2];
+        float[] weights = new float[linkCount * 2];
+        int[] cursors = Arrays.copyOf(offsets, nodeCount);
+        for (int i = 0; i < linkCount; i++)
+        {
+            int start = starts[i];
+            int end = ends[i];
+            double dx = x[start] - x[end];
+            double dy = y[start] - y[end];
+            float weight = (float) Math.sqrt(dx * dx + dy * dy);
+            targets[cursors[start]] = end;
+            weights[cursors[start]++] = weight;
+            targets[cursors[end]] = start;
+            weights[cursors[end]++] = weight;
+        }
+        return new Adjacency(offsets, targets, weights);
+    }
+
+    //endregion
+
+    //region Fields
+
+    private int[]   mOffsets; // Each node's first link index, node count + 1 entries
+    private int[]   mTargets; // Link target node indexes, indexed by link index
+    private float[] mWeights; // Link distances, indexed by link index
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link Adjacency}
+     *
+     * @param offsets Each node's first link index, node count + 1 entries
+     * @param targets Link target node indexes, indexed by link index
+     * @param weights Link distances, indexed by link index
+     */
+    public Adjacency(final @NonNull int[] offsets, final @NonNull int[] targets, final @NonNull float[] weights)
+    {
+        mOffsets = offsets;
+        mTargets = targets;
+        mWeights = weights;
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets link count
+     *
+     * @return Link count
+     */
+    public int getLinkCount()
+    {
+        return mTargets.length;
+    }
+
+    /**
+     * Gets node count
+     *
+     * @return Node count
+     */
+    public int getNodeCount()
+    {
+        return mOffsets.length - 1;
+    }
+
+    /**
+     * Gets each node's first link index, links of node i are in [offsets[i], offsets[i + 1])
+     *
+     * @return Link offsets
+     */
+    public int[] getOffsets()
+    {
+        return mOffsets;
+    }
+
+    /**
+     * Gets link target node indexes, indexed by link index
+     *
+     * @return Link targets
+     */
+    public int[] getTargets()
+    {
+        return mTargets;
+    }
+
+    /**
+     * Gets link distances, indexed by link index
+     *
+     * @return Link weights
+     */
+    public float[] getWeights()
+    {
+        return mWeights;
+    }
+
+    //endregion
+}
@@ -6,9 +6,9 @@ import cn.vicey.navigator.Models.Nodes.NodeBase;
 import cn.vicey.navigator.Models.Nodes.NodeType;
 import cn.vicey.navigator.Models.Nodes.WallNode;
 import cn.vicey.navigator.Utils.Logger;
-import cn.vicey.navigator.Utils.Tools;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -20,14 +20,29 @@ public class Floor
 
     private static final String LOGGER_TAG = "Floor";
 
-    private static final int MAP_PADDING = 50; // Map's right and bottom padding for displaying the whole area
+    private static final int DEFAULT_LINK_CAPACITY = 16; // Default capacity of recorded links
+    private static final int MAP_PADDING           = 50; // Map's right and bottom padding for displaying the whole area
+    private static final int MAX_SNAP_CANDIDATES   = 32; // Max count of nearest candidates tested against walls when snapping
 
     //endregion
 
     //region Fields
 
-    private int mHeight; // Floor's height
-    private int mWidth;  // Floor's width
+    private int   mGuideLinkCount;  // Count of recorded guide links
+    private int[] mGuideLinkEnds;   // Recorded guide links' end indexes
+    private int[] mGuideLinkStarts; // Recorded guide links' start indexes
+    private int   mHeight;          // Floor's height
+    private int   mWallLinkCount;   // Count of recorded wall links
+    private int[] mWallSegments;    // Recorded wall links' end points, x1, y1, x2, y2 of each link
+    private int   mWidth;           // Floor's width
+
+    // Indexes are built lazily by whichever thread asks first, so they're only read and written with the floor locked
+    private Adjacency               mGuideAdjacency; // Guide links in compressed sparse row form, or null if it needs to be rebuilt
+    private SpatialIndex<GuideNode> mGuideIndex;     // Spatial index of guide nodes, or null if it needs to be rebuilt
+    private SpatialIndex<GuideNode> mNextEntryIndex; // Spatial index of next floor's entry nodes, or null if it needs to be rebuilt
+    private SpatialIndex<GuideNode> mPrevEntryIndex; // Spatial index of previous floor's entry nodes, or null if it needs to be rebuilt
+    private SegmentIndex            mWallIndex;      // Segment index of wall links, or null if it needs to be rebuilt
+    private SpatialIndex<WallNode>  mWallNodeIndex;  // Spatial index of wall nodes, or null if it needs to be rebuilt
 
     private List<GuideNode> mGuideNodes     = new ArrayList<>(); // Floor's guide nodes
     private List<GuideNode> mNextEntryNodes = new ArrayList<>(); // Floor's next floor's entry nodes
@@ -38,6 +53,52 @@ public class Floor
 
     //region Accessors
 
+    /**
+     * Gets guide links in compressed sparse row form, links are stored in both directions and indexed by guide node
+     * index. The adjacency is rebuilt if guide nodes or links were added since last build
+     *
+     * @return Guide links' adjacency
+     */
+    public synchronized Adjacency getGuideAdjacency()
+    {
+        if (mGuideAdjacency == null) buildGuideAdjacency();
+        return mGuideAdjacency;
+    }
+
+    /**
+     * Gets guide graph of the floor, which holds guide nodes' coordinates, entries and links without node objects
+     *
+     * @return New guide graph object
+     */
+    public GuideGraph getGuideGraph()
+    {
+        int nodeCount = mGuideNodes.size();
+        int[] x = new int[nodeCount];
+        int[] y = new int[nodeCount];
+        int[] prev = new int[nodeCount];
+        int[] next = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+        {
+            GuideNode node = mGuideNodes.get(i);
+            x[i] = node.getX();
+            y[i] = node.getY();
+            prev[i] = node.getPrev() == null ? GuideGraph.NO_ENTRY : node.getPrev();
+            next[i] = node.getNext() == null ? GuideGraph.NO_ENTRY : node.getNext();
+        }
+        return new GuideGraph(x, y, prev, next, getGuideAdjacency());
+    }
+
+    /**
+     * Gets spatial index of guide nodes, the index is rebuilt if guide nodes were added since last build
+     *
+     * @return Guide nodes' spatial index
+     */
+    public synchronized SpatialIndex<GuideNode> getGuideIndex()
+    {
+        if (mGuideIndex == null) mGuideIndex = new SpatialIndex<>(mGuideNodes);
+        return mGuideIndex;
+    }
+
     /**
      * Gets node's guide nodes
      *
@@ -78,6 +139,28 @@ public class Floor
         return mPrevEntryNodes;
     }
 
+    /**
+     * Gets segment index of wall links, the index is rebuilt if wall links were added since last build
+     *
+     * @return Wall links' segment index
+     */
+    public synchronized SegmentIndex getWallIndex()
+    {
+        if (mWallIndex == null) mWallIndex = new SegmentIndex(mWallSegments == null ? new int[0] : mWallSegments, mWallLinkCount);
+        return mWallIndex;
+    }
+
+    /**
+     * Gets spatial index of wall nodes, the index is rebuilt if wall nodes were added since last build
+     *
+     * @return Wall nodes' spatial index
+     */
+    public synchronized SpatialIndex<WallNode> getWallNodeSpatialIndex()
+    {
+        if (mWallNodeIndex == null) mWallNodeIndex = new SpatialIndex<>(mWallNodes);
+        return mWallNodeIndex;
+    }
+
     /**
      * Gets floor's wall nodes
      *
@@ -104,51 +187,99 @@ public class Floor
 
 
     /**
-     * Find the nearest node to specified location
+     * Find the nearest node to specified location which isn't behind a wall
      *
+     * @param index Spatial index of nodes to find
      * @param x     X axis
      * @param y     Y axis
-     * @param nodes Nodes to find
-     * @return The nearest node to specified location, or null if there is no node in nodes
+     * @return The nearest node which can be reached in a straight line, or the nearest node if every candidate is
+     * behind walls, or null if there is no node
      */
-    private GuideNode findNearestGuideNode(int x, int y, List<GuideNode> nodes)
+    private GuideNode findNearestReachableGuideNode(final @NonNull SpatialIndex<GuideNode> index, int x, int y)
     {
-        double distance = Double.MAX_VALUE;
-        GuideNode result = null;
-        for (GuideNode node : nodes)
+        SegmentIndex walls = getWallIndex();
+        List<GuideNode> candidates = index.findNearest(x, y, 1);
+        int checked = 0;
+        while (true)
         {
-            double newDistance = node.calcDistance(x, y);
-            if (newDistance > distance) continue;
-            distance = newDistance;
-            result = node;
+            for (int i = checked; i < candidates.size(); i++)
+            {
+                GuideNode node = candidates.get(i);
+                if (!walls.isBlocked(x, y, node.getX(), node.getY())) return node;
+            }
+            checked = candidates.size();
+            if (checked == 0 || checked == index.getSize() || checked >= MAX_SNAP_CANDIDATES) break;
+            candidates = index.findNearest(x, y, Math.min(checked * 2, MAX_SNAP_CANDIDATES));
         }
-        return result;
+        return candidates.isEmpty() ? null : candidates.get(0);
     }
 
     /**
-     * Add and convert link to {@link NodeBase.Link}
+     * Gets spatial index of next floor's entry nodes, the index is rebuilt if guide nodes were added since last build
      *
-     * @param link Link to add
+     * @return Next floor's entry nodes' spatial index
      */
-    public void addLink(final @NonNull Link link)
+    private synchronized SpatialIndex<GuideNode> getNextEntryIndex()
     {
-        NodeBase start = getNode(link.getType(), link.getStartIndex());
-        NodeBase end = getNode(link.getType(), link.getEndIndex());
-        start.link(end);
-        end.link(start);
+        if (mNextEntryIndex == null) mNextEntryIndex = new SpatialIndex<>(mNextEntryNodes);
+        return mNextEntryIndex;
     }
 
     /**
-     * Add and convert links to {@link NodeBase.Link}
+     * Gets spatial index of previous floor's entry nodes, the index is rebuilt if guide nodes were added since last build
      *
-     * @param links Links to add
+     * @return Previous floor's entry nodes' spatial index
      */
-    public void addLinks(final @NonNull List<Link> links)
+    private synchronized SpatialIndex<GuideNode> getPrevEntryIndex()
     {
-        for (Link link : links)
+        if (mPrevEntryIndex == null) mPrevEntryIndex = new SpatialIndex<>(mPrevEntryNodes);
+        return mPrevEntryIndex;
+    }
+
+    /**
+     * Add link, guide links are recorded for {@link #getGuideAdjacency()}, other links are converted to
+     * {@link NodeBase.Link} and wall links are recorded for {@link #getWallIndex()}
+     *
+     * @param type       Link's type
+     * @param startIndex Link's start index
+     * @param endIndex   Link's end index
+     */
+    public synchronized void addLink(final @NonNull NodeType type, int startIndex, int endIndex)
+    {
+        if (type == NodeType.GUIDE_NODE)
         {
-            addLink(link);
+            // Validate indexes now, so the adjacency can be built without checking
+            getGuideNode(startIndex);
+            getGuideNode(endIndex);
+            if (mGuideLinkStarts == null)
+            {
+                mGuideLinkStarts = new int[DEFAULT_LINK_CAPACITY];
+                mGuideLinkEnds = new int[DEFAULT_LINK_CAPACITY];
+            }
+            else if (mGuideLinkCount == mGuideLinkStarts.length)
+            {
+                mGuideLinkStarts = Arrays.copyOf(mGuideLinkStarts, mGuideLinkCount * 2);
+                mGuideLinkEnds = Arrays.copyOf(mGuideLinkEnds, mGuideLinkCount * 2);
+            }
+            mGuideLinkStarts[mGuideLinkCount] = startIndex;
+            mGuideLinkEnds[mGuideLinkCount++] = endIndex;
+            mGuideAdjacency = null;
+            return;
         }
+        NodeBase start = getNode(type, startIndex);
+        NodeBase end = getNode(type, endIndex);
+        start.link(end);
+        end.link(start);
+        if (type != NodeType.WALL_NODE) return;
+        if (mWallSegments == null) mWallSegments = new int[DEFAULT_LINK_CAPACITY * 4];
+        else if (mWallLinkCount * 4 == mWallSegments.length)
+            mWallSegments = Arrays.copyOf(mWallSegments, mWallSegments.length * 2);
+        int base = mWallLinkCount++ * 4;
+        mWallSegments[base] = start.getX();
+        mWallSegments[base + 1] = start.getY();
+        mWallSegments[base + 2] = end.getX();
+        mWallSegments[base + 3] = end.getY();
+        mWallIndex = null;
     }
 
     /**
@@ -156,7 +287,7 @@ public class Floor
      *
      * @param node Node to add
      */
-    public void addNode(final @NonNull NodeBase node)
+    public synchronized void addNode(final @NonNull NodeBase node)
     {
         if (node.getX() > mWidth) mWidth = node.getX() + MAP_PADDING;
         if (node.getY() > mHeight) mHeight = node.getY() + MAP_PADDING;
@@ -166,13 +297,24 @@ public class Floor
             {
                 GuideNode guideNode = (GuideNode) node;
                 mGuideNodes.add(guideNode);
-                if (guideNode.getPrev() != null) mPrevEntryNodes.add(guideNode);
-                if (guideNode.getNext() != null) mNextEntryNodes.add(guideNode);
+                mGuideAdjacency = null;
+                mGuideIndex = null;
+                if (guideNode.getPrev() != null)
+                {
+                    mPrevEntryNodes.add(guideNode);
+                    mPrevEntryIndex = null;
+                }
+                if (guideNode.getNext() != null)
+                {
+                    mNextEntryNodes.add(guideNode);
+                    mNextEntryIndex = null;
+                }
                 return;
             }
             case WALL_NODE:
             {
                 mWallNodes.add((WallNode) node);
+                mWallNodeIndex = null;
                 return;
             }
             default:
@@ -183,37 +325,77 @@ public class Floor
     }
 
     /**
-     * Find guide nodes by pattern
-     *
-     * @param pattern Search pattern
-     * @return Found nodes
+     * Build guide links' adjacency from recorded guide links
      */
-    public List<GuideNode> findGuideNodes(final @NonNull String pattern)
+    private void buildGuideAdjacency()
     {
-        if (Tools.isStringEmpty(pattern, true)) return new ArrayList<>();
-        List<GuideNode> result = new ArrayList<>();
-        for (GuideNode node : mGuideNodes)
+        int nodeCount = mGuideNodes.size();
+        int[] x = new int[nodeCount];
+        int[] y = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
         {
-            if (node.getName() == null) continue;
-            if (node.getName().toLowerCase().contains(pattern.toLowerCase())) result.add(node);
+            x[i] = mGuideNodes.get(i).getX();
+            y[i] = mGuideNodes.get(i).getY();
         }
-        return result;
+        // Link arrays are created with the first link
+        int[] starts = mGuideLinkStarts == null ? new int[0] : mGuideLinkStarts;
+        int[] ends = mGuideLinkEnds == null ? new int[0] : mGuideLinkEnds;
+        mGuideAdjacency = Adjacency.build(nodeCount, starts, ends, mGuideLinkCount, x, y);
     }
 
     /**
-     * Find the nearest guide node to specified location
+     * Build guide links' adjacency, spatial indexes and wall index, should be called once all nodes and links of the floor are added
+     */
+    public synchronized void buildIndexes()
+    {
+        buildGuideAdjacency();
+        mGuideIndex = new SpatialIndex<>(mGuideNodes);
+        mNextEntryIndex = new SpatialIndex<>(mNextEntryNodes);
+        mPrevEntryIndex = new SpatialIndex<>(mPrevEntryNodes);
+        mWallNodeIndex = new SpatialIndex<>(mWallNodes);
+        getWallIndex();
+    }
+
+    /**
+     * Find the nearest guide node to specified location, guide nodes behind walls are skipped
      *
      * @param x X axis
      * @param y Y axis
-     * @return The nearest guide node
+     * @return The nearest guide node, or null if there is no guide node
      */
     public GuideNode findNearestGuideNode(int x, int y)
     {
-        return findNearestGuideNode(x, y, mGuideNodes);
+        return findNearestReachableGuideNode(getGuideIndex(), x, y);
     }
 
     /**
-     * Find the nearest entry node to next floor to specified location
+     * Find the k nearest guide nodes to specified location
+     *
+     * @param x X axis
+     * @param y Y axis
+     * @param k Max count of guide nodes to find
+     * @return Found guide nodes, nearest first
+     */
+    public List<GuideNode> findNearestGuideNodes(int x, int y, int k)
+    {
+        return getGuideIndex().findNearest(x, y, k);
+    }
+
+    /**
+     * Find guide nodes within specified radius of specified location
+     *
+     * @param x      X axis
+     * @param y      Y axis
+     * @param radius Radius
+     * @return Found guide nodes, in no particular order
+     */
+    public List<GuideNode> findGuideNodesInRadius(int x, int y, double radius)
+    {
+        return getGuideIndex().findInRadius(x, y, radius);
+    }
+
+    /**
+     * Find the nearest entry node to next floor to specified location, entry nodes behind walls are skipped
      *
      * @param x X axis
      * @param y Y axis
@@ -221,11 +403,11 @@ public class Floor
      */
     public GuideNode findNearestNextEntryNode(int x, int y)
     {
-        return findNearestGuideNode(x, y, mNextEntryNodes);
+        return findNearestReachableGuideNode(getNextEntryIndex(), x, y);
     }
 
     /**
-     * Find the nearest entry node to previous floor to specified location
+     * Find the nearest entry node to previous floor to specified location, entry nodes behind walls are skipped
      *
      * @param x X axis
      * @param y Y axis
@@ -233,7 +415,24 @@ public class Floor
      */
     public GuideNode findNearestPrevEntryNode(int x, int y)
     {
-        return findNearestGuideNode(x, y, mPrevEntryNodes);
+        return findNearestReachableGuideNode(getPrevEntryIndex(), x, y);
+    }
+
+    /**
+     * Gets guide node's links as objects, an optional view created from guide links' adjacency on each call, routing code
+     * should read the adjacency instead
+     *
+     * @param index Guide node index
+     * @return New list of guide node's links
+     */
+    public List<NodeBase.Link> getGuideLinks(int index)
+    {
+        Adjacency adjacency = getGuideAdjacency();
+        int[] offsets = adjacency.getOffsets();
+        List<NodeBase.Link> links = new ArrayList<>(offsets[index + 1] - offsets[index]);
+        for (int i = offsets[index]; i < offsets[index + 1]; i++)
+            links.add(new NodeBase.Link(getGuideNode(adjacency.getTargets()[i]), adjacency.getWeights()[i]));
+        return links;
     }
 
     /**
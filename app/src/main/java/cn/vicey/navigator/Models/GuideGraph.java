@@ -0,0 +1,115 @@
+package cn.vicey.navigator.Models;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Guide graph class, holds a floor's guide nodes' coordinates, entries and links by guide node index, so routes across
+ * floors can be searched without building floors
+ */
+public class GuideGraph
+{
+    //region Constants
+
+    /**
+     * Indicates there is no entry to adjacent floor
+     */
+    public static final int NO_ENTRY = -1;
+
+    //endregion
+
+    //region Fields
+
+    private Adjacency mAdjacency; // Guide links
+    private int[]     mNext;      // Each node's entry node index in next floor, or NO_ENTRY
+    private int[]     mPrev;      // Each node's entry node index in previous floor, or NO_ENTRY
+    private int[]     mX;         // X axis of each node
+    private int[]     mY;         // Y axis of each node
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link GuideGraph}
+     *
+     * @param x         X axis of each node
+     * @param y         Y axis of each node
+     * @param prev      Each node's entry node index in previous floor, or {@link #NO_ENTRY}
+     * @param next      Each node's entry node index in next floor, or {@link #NO_ENTRY}
+     * @param adjacency Guide links
+     */
+    public GuideGraph(final @NonNull int[] x, final @NonNull int[] y, final @NonNull int[] prev, final @NonNull int[] next, final @NonNull Adjacency adjacency)
+    {
+        mX = x;
+        mY = y;
+        mPrev = prev;
+        mNext = next;
+        mAdjacency = adjacency;
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets guide links
+     *
+     * @return Guide links' adjacency
+     */
+    public Adjacency getAdjacency()
+    {
+        return mAdjacency;
+    }
+
+    /**
+     * Gets each node's entry node index in next floor
+     *
+     * @return Entry node indexes, {@link #NO_ENTRY} for nodes without entry
+     */
+    public int[] getNext()
+    {
+        return mNext;
+    }
+
+    /**
+     * Gets guide node count
+     *
+     * @return Guide node count
+     */
+    public int getNodeCount()
+    {
+        return mX.length;
+    }
+
+    /**
+     * Gets each node's entry node index in previous floor
+     *
+     * @return Entry node indexes, {@link #NO_ENTRY} for nodes without entry
+     */
+    public int[] getPrev()
+    {
+        return mPrev;
+    }
+
+    /**
+     * Gets x axis of each node
+     *
+     * @return X axis of each node
+     */
+    public int[] getX()
+    {
+        return mX;
+    }
+
+    /**
+     * Gets y axis of each node
+     *
+     * @return Y axis of each node
+     */
+    public int[] getY()
+    {
+        return mY;
+    }
+
+    //endregion
+}
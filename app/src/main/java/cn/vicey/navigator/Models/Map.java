@@ -1,28 +1,103 @@
 package cn.vicey.navigator.Models;
 
 import android.support.annotation.NonNull;
+import cn.vicey.navigator.Utils.Logger;
 
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
  * Map class
+ * <p>
+ * A map either holds all its floors, or loads them on demand from a {@link FloorLoader}. Loaded floors are kept in a
+ * small LRU, and a floor evicted from it is still returned as the same object while the floor itself is referred to.
+ * Nodes don't refer to their floor, so callers which keep nodes and compare them by identity must keep their floor as
+ * well, otherwise the floor may be loaded again with new nodes.
  */
 public class Map
 {
+    //region Inner classes
+
+    /**
+     * Floor loader interface, loads floors of a map on demand
+     */
+    public interface FloorLoader
+    {
+        //region Methods
+
+        /**
+         * Load specified floor
+         *
+         * @param floorIndex Floor index
+         * @return Loaded floor
+         */
+        Floor loadFloor(int floorIndex);
+
+        /**
+         * Load guide graph of specified floor, without building the floor
+         *
+         * @param floorIndex Floor index
+         * @return Loaded guide graph
+         */
+        GuideGraph loadGuideGraph(int floorIndex);
+
+        //endregion
+    }
+
+    /**
+     * Read-only list view of map's floors, floors are loaded when they're got
+     */
+    private class FloorList
+            extends AbstractList<Floor>
+    {
+        //region Override methods
+
+        @Override
+        public Floor get(int index)
+        {
+            return getFloor(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return mFloorCount;
+        }
+
+        //endregion
+    }
+
+    //endregion
+
     //region Constants
 
     private static final String LOGGER_TAG = "Map";
 
-    private static final String MAP_VERSION = "1.1";
+    private static final int    MAX_LOADED_FLOOR_COUNT = 4;     // Max count of floors kept loaded by LRU
+    private static final String MAP_VERSION            = "1.1";
 
     //endregion
 
     //region Fields
 
-    private String mName; // Map's name
+    private int         mFloorCount;  // Map's floor count
+    private FloorLoader mFloorLoader; // Map's floor loader, or null if the map holds all its floors
+    private String      mName;        // Map's name
+    private SearchIndex mSearchIndex; // Map's guide node name search index
 
-    private List<Floor> mFloors = new ArrayList<>(); // Map's floors
+    private List<Floor>                   mFloors          = new ArrayList<>();                                                                  // Map's floors, or a view loading them on demand
+    private List<WeakReference<Floor>>    mFloorReferences = new ArrayList<>();                                                                  // Each loaded floor's weak reference
+    private LinkedHashMap<Integer, Floor> mLoadedFloors    = new LinkedHashMap<Integer, Floor>(MAX_LOADED_FLOOR_COUNT + 1, 0.75f, true) // Recently used floors in access order
+    {
+        @Override
+        protected boolean removeEldestEntry(java.util.Map.Entry<Integer, Floor> eldest)
+        {
+            return size() > MAX_LOADED_FLOOR_COUNT;
+        }
+    };
 
     //endregion
 
@@ -31,12 +106,33 @@ public class Map
     /**
      * Initialize new instance of class {@link Map}
      *
+     * @param name   Map's name
      * @param floors Map's floors
      */
     public Map(@NonNull String name, @NonNull List<Floor> floors)
     {
         mName = name;
         mFloors.addAll(floors);
+        mFloorCount = mFloors.size();
+        mSearchIndex = new SearchIndex(mFloors);
+    }
+
+    /**
+     * Initialize new instance of class {@link Map} which loads its floors on demand
+     *
+     * @param name        Map's name
+     * @param floorCount  Map's floor count
+     * @param floorLoader Loader of map's floors
+     * @param searchIndex Map's guide node name search index
+     */
+    public Map(@NonNull String name, int floorCount, @NonNull FloorLoader floorLoader, @NonNull SearchIndex searchIndex)
+    {
+        mName = name;
+        mFloorCount = floorCount;
+        mFloorLoader = floorLoader;
+        mSearchIndex = searchIndex;
+        mFloors = new FloorList();
+        for (int i = 0; i < floorCount; i++) mFloorReferences.add(null);
     }
 
     //endregion
@@ -44,7 +140,54 @@ public class Map
     //region Accessors
 
     /**
-     * Gets map's floors
+     * Gets specified floor, loading it if it isn't loaded. A floor which is evicted from LRU and no longer referred to is
+     * loaded again as a new object
+     *
+     * @param floorIndex Floor index
+     * @return Specified floor, or null if failed to load it
+     */
+    public Floor getFloor(int floorIndex)
+    {
+        if (mFloorLoader == null) return mFloors.get(floorIndex);
+        if (floorIndex < 0 || floorIndex >= mFloorCount)
+            throw new IndexOutOfBoundsException("Index: " + floorIndex + ", size: " + mFloorCount);
+        synchronized (mLoadedFloors)
+        {
+            Floor floor = mLoadedFloors.get(floorIndex);
+            if (floor != null) return floor;
+            // Floor evicted from LRU but still in use, keep using the same object
+            WeakReference<Floor> reference = mFloorReferences.get(floorIndex);
+            floor = reference == null ? null : reference.get();
+            if (floor == null)
+            {
+                try
+                {
+                    floor = mFloorLoader.loadFloor(floorIndex);
+                }
+                catch (Throwable t)
+                {
+                    Logger.error(LOGGER_TAG, "Failed to load floor. Floor index: " + floorIndex, t);
+                }
+                if (floor == null) return null;
+                mFloorReferences.set(floorIndex, new WeakReference<>(floor));
+            }
+            mLoadedFloors.put(floorIndex, floor);
+            return floor;
+        }
+    }
+
+    /**
+     * Gets map's floor count
+     *
+     * @return Floor count
+     */
+    public int getFloorCount()
+    {
+        return mFloorCount;
+    }
+
+    /**
+     * Gets map's floors, floors of a map loading them on demand are loaded when they're got from the list
      *
      * @return Map's floors
      */
@@ -53,6 +196,58 @@ public class Map
         return mFloors;
     }
 
+    /**
+     * Gets specified floor's guide graph, a map loading its floors on demand reads it without loading the floor
+     *
+     * @param floorIndex Floor index
+     * @return Specified floor's guide graph, or null if failed to load it
+     */
+    public GuideGraph getGuideGraph(int floorIndex)
+    {
+        if (mFloorLoader == null) return mFloors.get(floorIndex).getGuideGraph();
+        if (floorIndex < 0 || floorIndex >= mFloorCount)
+            throw new IndexOutOfBoundsException("Index: " + floorIndex + ", size: " + mFloorCount);
+        try
+        {
+            return mFloorLoader.loadGuideGraph(floorIndex);
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to load guide graph. Floor index: " + floorIndex, t);
+            return null;
+        }
+    }
+
+    /**
+     * Gets specified floor if it's loaded, without loading it
+     *
+     * @param floorIndex Floor index
+     * @return Specified floor, or null if it isn't loaded
+     */
+    public Floor getLoadedFloor(int floorIndex)
+    {
+        if (mFloorLoader == null) return mFloors.get(floorIndex);
+        if (floorIndex < 0 || floorIndex >= mFloorCount)
+            throw new IndexOutOfBoundsException("Index: " + floorIndex + ", size: " + mFloorCount);
+        synchronized (mLoadedFloors)
+        {
+            Floor floor = mLoadedFloors.get(floorIndex);
+            if (floor != null) return floor;
+            WeakReference<Floor> reference = mFloorReferences.get(floorIndex);
+            return reference == null ? null : reference.get();
+        }
+    }
+
+    /**
+     * Gets map's guide node name search index
+     *
+     * @return Map's search index
+     */
+    public SearchIndex getSearchIndex()
+    {
+        return mSearchIndex;
+    }
+
     /**
      * Gets map's name
      *
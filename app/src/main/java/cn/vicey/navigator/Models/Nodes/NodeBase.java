@@ -144,7 +144,9 @@ public abstract class NodeBase
      */
     public double calcDistance(int x, int y)
     {
-        return Math.sqrt(Math.pow(mX - x, 2) + Math.pow(mY - y, 2));
+        double dx = mX - x;
+        double dy = mY - y;
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     /**
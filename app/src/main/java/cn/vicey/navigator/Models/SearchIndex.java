@@ -0,0 +1,798 @@
+package cn.vicey.navigator.Models;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Utils.Tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index class, indexes named guide nodes of all floors for name search
+ * <p>
+ * Lowercased names, their pinyin initials and each of their words are kept as sorted keys for prefix matches, a key
+ * refers to a word start in a name instead of copying its suffix, so keys under a prefix are contiguous and found by
+ * binary search. Every 1 to 3 character gram of the names has a posting list of the names containing it for substring
+ * matches, so a search only visits names which are going to be returned. Names and words are also kept in a BK-tree,
+ * which finds names within a few edits of the query for typos.
+ */
+public class SearchIndex
+{
+    //region Inner classes
+
+    /**
+     * Search result, a matched guide node's index, name and floor
+     * <p>
+     * Results refer to guide nodes by index, so floors don't have to be loaded to be searched.
+     */
+    public static class Result
+    {
+        //region Fields
+
+        private double mDistance;   // Distance from search's reference location, or Double.MAX_VALUE if on another floor
+        private int    mFloorIndex; // Matched node's floor index
+        private String mName;       // Matched node's name
+        private int    mNodeIndex;  // Matched node's guide node index in its floor
+        private int    mRank;       // Match rank, lower is better
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link Result}
+         *
+         * @param name       Matched node's name
+         * @param floorIndex Matched node's floor index
+         * @param nodeIndex  Matched node's guide node index in its floor
+         * @param rank       Match rank, lower is better
+         * @param distance   Distance from search's reference location, or Double.MAX_VALUE if on another floor
+         */
+        public Result(final @NonNull String name, int floorIndex, int nodeIndex, int rank, double distance)
+        {
+            mName = name;
+            mFloorIndex = floorIndex;
+            mNodeIndex = nodeIndex;
+            mRank = rank;
+            mDistance = distance;
+        }
+
+        //endregion
+
+        //region Accessors
+
+        /**
+         * Gets distance from search's reference location
+         *
+         * @return Distance, or Double.MAX_VALUE if the node is on another floor than the reference location
+         */
+        public double getDistance()
+        {
+            return mDistance;
+        }
+
+        /**
+         * Gets matched node's floor index
+         *
+         * @return Floor index
+         */
+        public int getFloorIndex()
+        {
+            return mFloorIndex;
+        }
+
+        /**
+         * Gets matched node's name
+         *
+         * @return Node's name
+         */
+        public String getName()
+        {
+            return mName;
+        }
+
+        /**
+         * Gets matched node's guide node index in its floor
+         *
+         * @return Guide node index
+         */
+        public int getNodeIndex()
+        {
+            return mNodeIndex;
+        }
+
+        /**
+         * Gets match rank, lower is better
+         *
+         * @return Match rank
+         */
+        public int getRank()
+        {
+            return mRank;
+        }
+
+        //endregion
+
+        //region Override methods
+
+        @Override
+        public String toString()
+        {
+            return mName + " - " + (mFloorIndex + 1) + "F";
+        }
+
+        //endregion
+    }
+
+    //endregion
+
+    //region Constants
+
+    private static final int MAX_FUZZY_EDITS  = 2; // Max edits allowed in fuzzy matches
+    private static final int MAX_GRAM_LENGTH  = 3; // Max length of indexed grams
+    private static final int MIN_FUZZY_LENGTH = 3; // Min query length to search fuzzy matches, one more edit is allowed every this many characters
+
+    /**
+     * Floor index which means search has no reference location
+     */
+    public static final int NO_REFERENCE_FLOOR = -1;
+
+    /**
+     * Match rank of a name which equals query
+     */
+    public static final int RANK_EXACT = 0;
+
+    /**
+     * Match rank of a name which starts with query
+     */
+    public static final int RANK_PREFIX = 1;
+
+    /**
+     * Match rank of a name which has a word starting with query
+     */
+    public static final int RANK_WORD_PREFIX = 2;
+
+    /**
+     * Match rank of a name which contains query
+     */
+    public static final int RANK_SUBSTRING = 3;
+
+    /**
+     * Match rank of a name whose pinyin initials, or pinyin initials of one of its words, start with query
+     */
+    public static final int RANK_PINYIN = 4;
+
+    /**
+     * Match rank of a name which is, or has a word which is, one edit away from query, plus one for each more edit
+     */
+    public static final int RANK_FUZZY = 5;
+
+    //endregion
+
+    //region Fields
+
+    private int[]     mEditRow;      // Current row of edit distance table
+    private int[]     mEditPrevRow;  // Previous row of edit distance table
+    private int[]     mEntryFloors;  // Each entry's floor index
+    private String[]  mEntryLabels;  // Each entry's original name
+    private String[]  mEntryNames;   // Each entry's lowercased name
+    private int[]     mEntryNodes;   // Each entry's guide node index in its floor
+    private String[]  mEntryPinyins; // Each entry's pinyin initials, or null if name has no Chinese character
+    private int[]     mEntryX;       // Each entry's x axis
+    private int[]     mEntryY;       // Each entry's y axis
+    private int[]     mKeyEntries;   // Each key's entry index, keys are sorted
+    private boolean[] mKeyIsPinyin;  // Whether each key is taken from pinyin initials instead of name
+    private int[]     mKeyOffsets;   // Each key's start offset in its entry's name, 0 for the whole name
+    private int       mSearchId;     // Current search id
+    private int[]     mSearchIds;    // Search id which last matched each entry, avoids returning an entry twice
+    private int[]     mTermEdges;    // Each BK-tree term's edit distance to its parent term
+    private int[][]   mTermEntries;  // Entry indexes of each BK-tree term
+    private int[]     mTermFirsts;   // Each BK-tree term's first child term, or -1 if it has no child
+    private int[]     mTermNexts;    // Each BK-tree term's next sibling term, or -1 if it's the last child
+    private String[]  mTerms;        // BK-tree terms, lowercased names and words, the first one is the root
+
+    private HashMap<String, int[]> mPostings = new HashMap<>(); // Gram to ascending entry indexes table
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link SearchIndex}
+     *
+     * @param floors Floors to index, in floor index order
+     */
+    public SearchIndex(final @NonNull List<Floor> floors)
+    {
+        int count = 0;
+        for (Floor floor : floors) count += floor.getGuideNodes().size();
+        String[] names = new String[count];
+        int[] floorIndexes = new int[count];
+        int[] nodeIndexes = new int[count];
+        int[] x = new int[count];
+        int[] y = new int[count];
+        int entry = 0;
+        for (int i = 0; i < floors.size(); i++)
+        {
+            List<GuideNode> guideNodes = floors.get(i).getGuideNodes();
+            for (int j = 0; j < guideNodes.size(); j++, entry++)
+            {
+                GuideNode node = guideNodes.get(j);
+                names[entry] = node.getName();
+                floorIndexes[entry] = i;
+                nodeIndexes[entry] = j;
+                x[entry] = node.getX();
+                y[entry] = node.getY();
+            }
+        }
+        init(names, floorIndexes, nodeIndexes, x, y);
+    }
+
+    /**
+     * Initialize new instance of class {@link SearchIndex} from guide nodes' attributes, guide nodes without a name are
+     * skipped
+     *
+     * @param names        Guide nodes' names, null if a node has no name
+     * @param floorIndexes Guide nodes' floor indexes
+     * @param nodeIndexes  Guide nodes' guide node indexes in their floors
+     * @param x            Guide nodes' x axis
+     * @param y            Guide nodes' y axis
+     */
+    public SearchIndex(final @NonNull String[] names, final @NonNull int[] floorIndexes, final @NonNull int[] nodeIndexes, final @NonNull int[] x, final @NonNull int[] y)
+    {
+        init(names, floorIndexes, nodeIndexes, x, y);
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets indexed entry count
+     *
+     * @return Entry count
+     */
+    public int getSize()
+    {
+        return mEntryNodes.length;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Initialize index from guide nodes' attributes, see {@link #SearchIndex(String[], int[], int[], int[], int[])}
+     *
+     * @param names        Guide nodes' names, null if a node has no name
+     * @param floorIndexes Guide nodes' floor indexes
+     * @param nodeIndexes  Guide nodes' guide node indexes in their floors
+     * @param x            Guide nodes' x axis
+     * @param y            Guide nodes' y axis
+     */
+    private void init(final @NonNull String[] names, final @NonNull int[] floorIndexes, final @NonNull int[] nodeIndexes, final @NonNull int[] x, final @NonNull int[] y)
+    {
+        int count = 0;
+        for (String name : names) if (!Tools.isStringEmpty(name, true)) count++;
+        mEntryLabels = new String[count];
+        mEntryNames = new String[count];
+        mEntryPinyins = new String[count];
+        mEntryFloors = new int[count];
+        mEntryNodes = new int[count];
+        mEntryX = new int[count];
+        mEntryY = new int[count];
+        mSearchIds = new int[count];
+        int entry = 0;
+        for (int i = 0; i < names.length; i++)
+        {
+            if (Tools.isStringEmpty(names[i], true)) continue;
+            mEntryLabels[entry] = names[i];
+            mEntryNames[entry] = names[i].toLowerCase(Locale.ROOT);
+            mEntryPinyins[entry] = Tools.getPinyinInitials(mEntryNames[entry]);
+            mEntryFloors[entry] = floorIndexes[i];
+            mEntryNodes[entry] = nodeIndexes[i];
+            mEntryX[entry] = x[i];
+            mEntryY[entry] = y[i];
+            entry++;
+        }
+
+        buildKeys();
+        buildPostings();
+        buildTerms();
+    }
+
+    /**
+     * Build n-gram posting lists of entry names
+     */
+    private void buildPostings()
+    {
+        // Count entries of each gram, the second slot records the last counted entry
+        HashMap<String, int[]> counts = new HashMap<>();
+        for (int i = 0; i < mEntryNames.length; i++)
+        {
+            String name = mEntryNames[i];
+            for (int length = 1; length <= MAX_GRAM_LENGTH; length++)
+            {
+                for (int start = 0; start + length <= name.length(); start++)
+                {
+                    String gram = name.substring(start, start + length);
+                    int[] count = counts.get(gram);
+                    if (count == null) counts.put(gram, new int[]{1, i});
+                    else if (count[1] != i)
+                    {
+                        count[0]++;
+                        count[1] = i;
+                    }
+                }
+            }
+        }
+        for (java.util.Map.Entry<String, int[]> entry : counts.entrySet())
+        {
+            mPostings.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+
+        // Fill posting lists, entries are visited in ascending order so lists are sorted
+        for (int i = 0; i < mEntryNames.length; i++)
+        {
+            String name = mEntryNames[i];
+            for (int length = 1; length <= MAX_GRAM_LENGTH; length++)
+            {
+                for (int start = 0; start + length <= name.length(); start++)
+                {
+                    String gram = name.substring(start, start + length);
+                    int[] count = counts.get(gram);
+                    int[] posting = mPostings.get(gram);
+                    if (count[0] > 0 && posting[count[0] - 1] == i) continue;
+                    posting[count[0]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Build BK-tree of entry names and names' words
+     */
+    private void buildTerms()
+    {
+        // Collect distinct terms and their entries
+        HashMap<String, List<Integer>> termEntries = new HashMap<>();
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < mEntryNames.length; i++)
+        {
+            String name = mEntryNames[i];
+            int wordStart = -1;
+            for (int offset = 0; offset <= name.length(); offset++)
+            {
+                boolean isEnd = offset == name.length();
+                if (!isEnd && offset > 0 && !isWordStart(name, offset) && Character.isLetterOrDigit(name.charAt(offset)))
+                    continue;
+                // A word ends at the next word start or at a separator
+                if (wordStart >= 0) addTerm(name.substring(wordStart, offset), i, terms, termEntries);
+                wordStart = !isEnd && Character.isLetterOrDigit(name.charAt(offset)) ? offset : -1;
+            }
+            addTerm(name, i, terms, termEntries);
+        }
+        mTerms = terms.toArray(new String[terms.size()]);
+        mTermEntries = new int[mTerms.length][];
+        for (int i = 0; i < mTerms.length; i++)
+        {
+            List<Integer> entries = termEntries.get(mTerms[i]);
+            mTermEntries[i] = new int[entries.size()];
+            for (int j = 0; j < entries.size(); j++) mTermEntries[i][j] = entries.get(j);
+        }
+
+        // Insert terms under the root, each child is keyed by its edit distance to the parent
+        mTermEdges = new int[mTerms.length];
+        mTermFirsts = new int[mTerms.length];
+        mTermNexts = new int[mTerms.length];
+        Arrays.fill(mTermFirsts, -1);
+        Arrays.fill(mTermNexts, -1);
+        for (int i = 1; i < mTerms.length; i++)
+        {
+            int term = 0;
+            while (true)
+            {
+                int edge = getEditDistance(mTerms[i], mTerms[term]);
+                int child = findTermChild(term, edge);
+                if (child < 0)
+                {
+                    mTermEdges[i] = edge;
+                    mTermNexts[i] = mTermFirsts[term];
+                    mTermFirsts[term] = i;
+                    break;
+                }
+                term = child;
+            }
+        }
+    }
+
+    /**
+     * Add entry to a term, registering the term if it's new
+     *
+     * @param term        Term
+     * @param entry       Entry index
+     * @param terms       Registered terms
+     * @param termEntries Term to entry indexes table
+     */
+    private static void addTerm(final @NonNull String term, int entry, final @NonNull List<String> terms, final @NonNull HashMap<String, List<Integer>> termEntries)
+    {
+        List<Integer> entries = termEntries.get(term);
+        if (entries == null)
+        {
+            entries = new ArrayList<>();
+            termEntries.put(term, entries);
+            terms.add(term);
+        }
+        if (entries.isEmpty() || entries.get(entries.size() - 1) != entry) entries.add(entry);
+    }
+
+    /**
+     * Build sorted keys of entry names, names' pinyin initials and their words
+     */
+    private void buildKeys()
+    {
+        // Collect keys, the whole name and every word start in it, and the same of pinyin initials
+        int count = 0;
+        for (int pass = 0; pass < 2; pass++)
+        {
+            if (pass == 1)
+            {
+                mKeyEntries = new int[count];
+                mKeyOffsets = new int[count];
+                mKeyIsPinyin = new boolean[count];
+                count = 0;
+            }
+            for (int i = 0; i < mEntryNames.length; i++)
+            {
+                String name = mEntryNames[i];
+                boolean hasPinyin = mEntryPinyins[i] != null;
+                for (int offset = 0; offset < name.length(); offset++)
+                {
+                    if (offset > 0 && !isWordStart(name, offset)) continue;
+                    for (int pinyin = 0; pinyin < (hasPinyin ? 2 : 1); pinyin++, count++)
+                    {
+                        if (pass == 0) continue;
+                        mKeyEntries[count] = i;
+                        mKeyOffsets[count] = offset;
+                        mKeyIsPinyin[count] = pinyin == 1;
+                    }
+                }
+            }
+        }
+
+        // Sort keys, so keys under a prefix are contiguous
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer left, Integer right)
+            {
+                String leftText = getKeyText(mKeyEntries[left], mKeyIsPinyin[left]);
+                String rightText = getKeyText(mKeyEntries[right], mKeyIsPinyin[right]);
+                int leftOffset = mKeyOffsets[left];
+                int rightOffset = mKeyOffsets[right];
+                int length = Math.min(leftText.length() - leftOffset, rightText.length() - rightOffset);
+                for (int i = 0; i < length; i++)
+                {
+                    char leftChar = leftText.charAt(leftOffset + i);
+                    char rightChar = rightText.charAt(rightOffset + i);
+                    if (leftChar != rightChar) return leftChar - rightChar;
+                }
+                return (leftText.length() - leftOffset) - (rightText.length() - rightOffset);
+            }
+        });
+        int[] entries = new int[count];
+        int[] offsets = new int[count];
+        boolean[] isPinyin = new boolean[count];
+        for (int i = 0; i < count; i++)
+        {
+            entries[i] = mKeyEntries[order[i]];
+            offsets[i] = mKeyOffsets[order[i]];
+            isPinyin[i] = mKeyIsPinyin[order[i]];
+        }
+        mKeyEntries = entries;
+        mKeyOffsets = offsets;
+        mKeyIsPinyin = isPinyin;
+    }
+
+    /**
+     * Calculate edit distance between two strings
+     *
+     * @param left  Left string
+     * @param right Right string
+     * @return Count of character insertions, deletions and substitutions to change left string into right string
+     */
+    private int getEditDistance(final @NonNull String left, final @NonNull String right)
+    {
+        if (mEditRow == null || mEditRow.length <= right.length())
+        {
+            mEditRow = new int[right.length() + 1];
+            mEditPrevRow = new int[right.length() + 1];
+        }
+        int[] row = mEditRow;
+        int[] prevRow = mEditPrevRow;
+        for (int j = 0; j <= right.length(); j++) prevRow[j] = j;
+        for (int i = 1; i <= left.length(); i++)
+        {
+            row[0] = i;
+            char c = left.charAt(i - 1);
+            for (int j = 1; j <= right.length(); j++)
+            {
+                int cost = c == right.charAt(j - 1) ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j - 1], prevRow[j]) + 1, prevRow[j - 1] + cost);
+            }
+            int[] swap = row;
+            row = prevRow;
+            prevRow = swap;
+        }
+        return prevRow[right.length()];
+    }
+
+    /**
+     * Check whether a word starts at specified offset of name
+     *
+     * @param name   Lowercased name
+     * @param offset Offset in name
+     * @return Whether a word starts at the offset
+     */
+    private static boolean isWordStart(final @NonNull String name, int offset)
+    {
+        char current = name.charAt(offset);
+        char previous = name.charAt(offset - 1);
+        if (!Character.isLetterOrDigit(current)) return false;
+        if (!Character.isLetterOrDigit(previous)) return true;
+        // Letters and digits start new words at each other, ideographs are words by themselves
+        return Character.isDigit(current) != Character.isDigit(previous) || Character.isIdeographic(current);
+    }
+
+    /**
+     * Add entry to result if it isn't added yet
+     *
+     * @param entry      Entry index
+     * @param rank       Match rank
+     * @param floorIndex Reference location's floor index
+     * @param x          Reference location's x axis
+     * @param y          Reference location's y axis
+     * @param result     List to receive results
+     */
+    private void offer(int entry, int rank, int floorIndex, int x, int y, final @NonNull List<Result> result)
+    {
+        if (mSearchIds[entry] == mSearchId) return;
+        mSearchIds[entry] = mSearchId;
+        double distance = Double.MAX_VALUE;
+        if (mEntryFloors[entry] == floorIndex)
+        {
+            double dx = mEntryX[entry] - x;
+            double dy = mEntryY[entry] - y;
+            distance = Math.sqrt(dx * dx + dy * dy);
+        }
+        result.add(new Result(mEntryLabels[entry], mEntryFloors[entry], mEntryNodes[entry], rank, distance));
+    }
+
+    /**
+     * Compare key with specified prefix
+     *
+     * @param key    Key index
+     * @param prefix Lowercased prefix
+     * @return Negative if key is before the prefix, 0 if key starts with the prefix, positive if key is after the prefix
+     */
+    private int compareKey(int key, final @NonNull String prefix)
+    {
+        String text = getKeyText(mKeyEntries[key], mKeyIsPinyin[key]);
+        int offset = mKeyOffsets[key];
+        int length = Math.min(text.length() - offset, prefix.length());
+        for (int i = 0; i < length; i++)
+        {
+            char keyChar = text.charAt(offset + i);
+            char prefixChar = prefix.charAt(i);
+            if (keyChar != prefixChar) return keyChar - prefixChar;
+        }
+        return text.length() - offset < prefix.length() ? -1 : 0;
+    }
+
+    /**
+     * Find bound of keys starting with specified prefix by binary search
+     *
+     * @param prefix Lowercased prefix
+     * @param upper  Whether to find the upper bound instead of the lower bound
+     * @return First key index starting with the prefix if finding lower bound, otherwise first key index after them
+     */
+    private int findKeyBound(final @NonNull String prefix, boolean upper)
+    {
+        int low = 0;
+        int high = mKeyEntries.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            int compare = compareKey(mid, prefix);
+            if (compare < 0 || upper && compare == 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Find BK-tree term's child which has specified edit distance to it
+     *
+     * @param term Term index
+     * @param edge Edit distance to the term
+     * @return Child term index, or -1 if there isn't one
+     */
+    private int findTermChild(int term, int edge)
+    {
+        for (int child = mTermFirsts[term]; child >= 0; child = mTermNexts[child]) if (mTermEdges[child] == edge) return child;
+        return -1;
+    }
+
+    /**
+     * Gets text a key is taken from
+     *
+     * @param entry    Key's entry index
+     * @param isPinyin Whether the key is taken from pinyin initials
+     * @return Entry's lowercased name or pinyin initials
+     */
+    private String getKeyText(int entry, boolean isPinyin)
+    {
+        return isPinyin ? mEntryPinyins[entry] : mEntryNames[entry];
+    }
+
+    /**
+     * Find entries whose names or words are within a few edits of specified query, using the BK-tree
+     *
+     * @param query      Lowercased query
+     * @param floorIndex Reference location's floor index
+     * @param x          Reference location's x axis
+     * @param y          Reference location's y axis
+     * @param result     List to receive results
+     */
+    private void searchFuzzy(final @NonNull String query, int floorIndex, int x, int y, final @NonNull List<Result> result)
+    {
+        int maxEdits = Math.min(MAX_FUZZY_EDITS, query.length() / MIN_FUZZY_LENGTH);
+        if (maxEdits == 0 || mTerms.length == 0) return;
+
+        // Collect matched terms by edit distance, so entries get their best rank
+        List<List<Integer>> matches = new ArrayList<>();
+        for (int i = 0; i <= maxEdits; i++) matches.add(new ArrayList<Integer>());
+        int[] stack = new int[16];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0)
+        {
+            int term = stack[--stackSize];
+            int distance = getEditDistance(query, mTerms[term]);
+            if (distance <= maxEdits) matches.get(distance).add(term);
+            // Only children within max edits of the distance can be within max edits of the query
+            for (int child = mTermFirsts[term]; child >= 0; child = mTermNexts[child])
+            {
+                if (Math.abs(mTermEdges[child] - distance) > maxEdits) continue;
+                if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+                stack[stackSize++] = child;
+            }
+        }
+        for (int i = 0; i <= maxEdits; i++)
+        {
+            int rank = RANK_FUZZY + Math.max(0, i - 1);
+            for (int term : matches.get(i)) for (int entry : mTermEntries[term]) offer(entry, rank, floorIndex, x, y, result);
+        }
+    }
+
+    /**
+     * Find entries whose names contain specified query, using the posting lists of the query's grams
+     *
+     * @param query      Lowercased query
+     * @param floorIndex Reference location's floor index
+     * @param x          Reference location's x axis
+     * @param y          Reference location's y axis
+     * @param result     List to receive results
+     */
+    private void searchSubstrings(final @NonNull String query, int floorIndex, int x, int y, final @NonNull List<Result> result)
+    {
+        if (query.length() <= MAX_GRAM_LENGTH)
+        {
+            int[] posting = mPostings.get(query);
+            if (posting == null) return;
+            for (int entry : posting) offer(entry, RANK_SUBSTRING, floorIndex, x, y, result);
+            return;
+        }
+
+        // Intersect posting lists of the query's grams, starting from the shortest one
+        int[] candidates = null;
+        for (int start = 0; start + MAX_GRAM_LENGTH <= query.length(); start++)
+        {
+            int[] posting = mPostings.get(query.substring(start, start + MAX_GRAM_LENGTH));
+            if (posting == null) return;
+            if (candidates == null || posting.length < candidates.length) candidates = posting;
+        }
+        for (int entry : candidates)
+        {
+            if (mSearchIds[entry] == mSearchId) continue;
+            if (mEntryNames[entry].contains(query)) offer(entry, RANK_SUBSTRING, floorIndex, x, y, result);
+        }
+    }
+
+    /**
+     * Search guide nodes whose names contain specified query, case insensitive
+     *
+     * @param query Search query
+     * @return Found results, ranked by match rank, then name length, then name, then floor index
+     */
+    public List<Result> search(final @NonNull String query)
+    {
+        return search(query, NO_REFERENCE_FLOOR, 0, 0);
+    }
+
+    /**
+     * Search guide nodes whose names or pinyin initials match specified query, case insensitive and tolerating typos
+     *
+     * @param query      Search query
+     * @param floorIndex Reference location's floor index, or {@link #NO_REFERENCE_FLOOR}
+     * @param x          Reference location's x axis
+     * @param y          Reference location's y axis
+     * @return Found results, ranked by match rank, then floor distance and distance from reference location, then name
+     * length, then name
+     */
+    public synchronized List<Result> search(final @NonNull String query, final int floorIndex, int x, int y)
+    {
+        List<Result> result = new ArrayList<>();
+        final String lowerQuery = query.trim().toLowerCase(Locale.ROOT);
+        if (lowerQuery.isEmpty() || mEntryNodes.length == 0) return result;
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mSearchIds, 0);
+            mSearchId = 1;
+        }
+
+        // Prefix matches from sorted keys, whole name keys are ranked before word keys, and name keys before pinyin keys
+        int from = findKeyBound(lowerQuery, false);
+        int to = findKeyBound(lowerQuery, true);
+        for (int i = from; i < to; i++)
+        {
+            if (mKeyOffsets[i] != 0 || mKeyIsPinyin[i]) continue;
+            int entry = mKeyEntries[i];
+            int rank = mEntryNames[entry].length() == lowerQuery.length() ? RANK_EXACT : RANK_PREFIX;
+            offer(entry, rank, floorIndex, x, y, result);
+        }
+        for (int i = from; i < to; i++)
+            if (!mKeyIsPinyin[i]) offer(mKeyEntries[i], RANK_WORD_PREFIX, floorIndex, x, y, result);
+
+        // Substring matches from posting lists
+        searchSubstrings(lowerQuery, floorIndex, x, y, result);
+
+        // Pinyin initials matches, then typo tolerant matches
+        for (int i = from; i < to; i++)
+            if (mKeyIsPinyin[i]) offer(mKeyEntries[i], RANK_PINYIN, floorIndex, x, y, result);
+        searchFuzzy(lowerQuery, floorIndex, x, y, result);
+
+        Collections.sort(result, new Comparator<Result>()
+        {
+            @Override
+            public int compare(Result left, Result right)
+            {
+                if (left.mRank != right.mRank) return left.mRank - right.mRank;
+                if (floorIndex != NO_REFERENCE_FLOOR)
+                {
+                    int leftFloors = Math.abs(left.mFloorIndex - floorIndex);
+                    int rightFloors = Math.abs(right.mFloorIndex - floorIndex);
+                    if (leftFloors != rightFloors) return leftFloors - rightFloors;
+                    if (left.mDistance != right.mDistance) return Double.compare(left.mDistance, right.mDistance);
+                }
+                String leftName = left.mName;
+                String rightName = right.mName;
+                if (leftName.length() != rightName.length()) return leftName.length() - rightName.length();
+                int compare = leftName.compareToIgnoreCase(rightName);
+                if (compare != 0) return compare;
+                return left.mFloorIndex - right.mFloorIndex;
+            }
+        });
+        return result;
+    }
+
+    //endregion
+}
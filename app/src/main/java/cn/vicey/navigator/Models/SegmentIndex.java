@@ -0,0 +1,399 @@
+package cn.vicey.navigator.Models;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Segment index class, a hierarchical grid over line segments which answers whether a line crosses any of them, and
+ * which segments overlap a rectangle
+ * <p>
+ * Cells of each level are twice as large as cells of the level below. Each segment is registered in the lowest level
+ * whose cells are at least as large as the segment, so it overlaps at most 2 x 2 cells there no matter how long it is.
+ * A line query walks each level's cells along the line, so a short line tests a few cells per level and the cost grows
+ * with the logarithm of the map's extent rather than with the count of walls.
+ */
+public class SegmentIndex
+{
+    //region Fields
+
+    private int     mBaseCellSize; // Cell's width and height in the lowest level
+    private int[][] mCellOffsets;  // Each level's each cell's first entry index in level's cell segments, cell count + 1 entries
+    private int[][] mCellSegments; // Segment indexes registered in each cell of each level
+    private int[]   mColumnCounts; // Each level's column count
+    private int     mMinX;         // Grid's left bound
+    private int     mMinY;         // Grid's top bound
+    private int[]   mRowCounts;    // Each level's row count
+    private int     mSearchId;     // Current search id
+    private int[]   mSearchIds;    // Search id which last tested each segment, avoids testing a segment twice
+    private int[]   mSegments;     // Segment end points, x1, y1, x2, y2 of each segment
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link SegmentIndex}
+     *
+     * @param segments Segment end points, x1, y1, x2, y2 of each segment
+     * @param count    Segment count
+     */
+    public SegmentIndex(final @NonNull int[] segments, int count)
+    {
+        mSegments = Arrays.copyOf(segments, count * 4);
+        mSearchIds = new int[count];
+
+        // Grid bounds
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < count * 4; i += 2)
+        {
+            minX = Math.min(minX, mSegments[i]);
+            minY = Math.min(minY, mSegments[i + 1]);
+            maxX = Math.max(maxX, mSegments[i]);
+            maxY = Math.max(maxY, mSegments[i + 1]);
+        }
+        if (count == 0) minX = minY = maxX = maxY = 0;
+        mMinX = minX;
+        mMinY = minY;
+
+        // About one lowest level cell per segment, levels are added until one cell covers the whole grid
+        double area = Math.max(1.0, (double) (maxX - minX + 1) * (maxY - minY + 1));
+        mBaseCellSize = Math.max(1, (int) Math.ceil(Math.sqrt(area / Math.max(1, count))));
+        long extent = Math.max((long) maxX - minX, (long) maxY - minY);
+        int levelCount = 1;
+        while (levelCount < 31 && getCellSize(levelCount - 1) < extent) levelCount++;
+        mColumnCounts = new int[levelCount];
+        mRowCounts = new int[levelCount];
+        for (int level = 0; level < levelCount; level++)
+        {
+            mColumnCounts[level] = (int) (((long) maxX - minX) / getCellSize(level) + 1);
+            mRowCounts[level] = (int) (((long) maxY - minY) / getCellSize(level) + 1);
+        }
+
+        // Pick each segment's level
+        int[] segmentLevels = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            int base = i * 4;
+            long size = Math.max(Math.abs((long) mSegments[base] - mSegments[base + 2]), Math.abs((long) mSegments[base + 1] - mSegments[base + 3]));
+            int level = 0;
+            while (level < levelCount - 1 && getCellSize(level) < size) level++;
+            segmentLevels[i] = level;
+        }
+
+        // Register segments in cells of their levels
+        mCellOffsets = new int[levelCount][];
+        mCellSegments = new int[levelCount][];
+        for (int level = 0; level < levelCount; level++)
+            mCellOffsets[level] = new int[mColumnCounts[level] * mRowCounts[level] + 1];
+        for (int pass = 0; pass < 2; pass++)
+        {
+            int[][] cursors = new int[levelCount][];
+            if (pass == 1)
+            {
+                for (int level = 0; level < levelCount; level++)
+                    cursors[level] = Arrays.copyOf(mCellOffsets[level], mCellOffsets[level].length - 1);
+            }
+            for (int i = 0; i < count; i++)
+            {
+                int base = i * 4;
+                int level = segmentLevels[i];
+                int fromColumn = getColumn(level, Math.min(mSegments[base], mSegments[base + 2]));
+                int toColumn = getColumn(level, Math.max(mSegments[base], mSegments[base + 2]));
+                int fromRow = getRow(level, Math.min(mSegments[base + 1], mSegments[base + 3]));
+                int toRow = getRow(level, Math.max(mSegments[base + 1], mSegments[base + 3]));
+                for (int row = fromRow; row <= toRow; row++)
+                {
+                    for (int column = fromColumn; column <= toColumn; column++)
+                    {
+                        int cell = row * mColumnCounts[level] + column;
+                        if (pass == 0) mCellOffsets[level][cell + 1]++;
+                        else mCellSegments[level][cursors[level][cell]++] = i;
+                    }
+                }
+            }
+            if (pass == 0)
+            {
+                for (int level = 0; level < levelCount; level++)
+                {
+                    int[] offsets = mCellOffsets[level];
+                    for (int j = 0; j < offsets.length - 1; j++) offsets[j + 1] += offsets[j];
+                    mCellSegments[level] = new int[offsets[offsets.length - 1]];
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets segment end points, x1, y1, x2, y2 of each segment, indexed by segment index * 4
+     *
+     * @return Segment end points
+     */
+    public int[] getSegments()
+    {
+        return mSegments;
+    }
+
+    /**
+     * Gets segment count
+     *
+     * @return Segment count
+     */
+    public int getSize()
+    {
+        return mSearchIds.length;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Calculate which side of line a-b point c is on
+     *
+     * @param ax Point a's x axis
+     * @param ay Point a's y axis
+     * @param bx Point b's x axis
+     * @param by Point b's y axis
+     * @param cx Point c's x axis
+     * @param cy Point c's y axis
+     * @return Positive if counter-clockwise, negative if clockwise, 0 if collinear
+     */
+    private static long cross(long ax, long ay, long bx, long by, long cx, long cy)
+    {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    /**
+     * Check whether point c, which is collinear with segment a-b, lies on the segment
+     *
+     * @param ax Point a's x axis
+     * @param ay Point a's y axis
+     * @param bx Point b's x axis
+     * @param by Point b's y axis
+     * @param cx Point c's x axis
+     * @param cy Point c's y axis
+     * @return Whether point c is within segment's bounding box
+     */
+    private static boolean isOnSegment(int ax, int ay, int bx, int by, int cx, int cy)
+    {
+        return cx >= Math.min(ax, bx) && cx <= Math.max(ax, bx) && cy >= Math.min(ay, by) && cy <= Math.max(ay, by);
+    }
+
+    /**
+     * Gets cell's width and height in specified level
+     *
+     * @param level Level index
+     * @return Cell size
+     */
+    private long getCellSize(int level)
+    {
+        return (long) mBaseCellSize << level;
+    }
+
+    /**
+     * Gets grid column of x axis in specified level, clamped to grid
+     *
+     * @param level Level index
+     * @param x     X axis
+     * @return Column index
+     */
+    private int getColumn(int level, long x)
+    {
+        long column = (x - mMinX) / getCellSize(level);
+        return (int) Math.max(0, Math.min(mColumnCounts[level] - 1, column));
+    }
+
+    /**
+     * Gets grid row of y axis in specified level, clamped to grid
+     *
+     * @param level Level index
+     * @param y     Y axis
+     * @return Row index
+     */
+    private int getRow(int level, long y)
+    {
+        long row = (y - mMinY) / getCellSize(level);
+        return (int) Math.max(0, Math.min(mRowCounts[level] - 1, row));
+    }
+
+    /**
+     * Check whether line from (x1, y1) to (x2, y2) crosses or touches specified segment, touching an end point or
+     * overlapping a collinear segment counts as crossing
+     *
+     * @param segment Segment index
+     * @param x1      Start point's x axis
+     * @param y1      Start point's y axis
+     * @param x2      End point's x axis
+     * @param y2      End point's y axis
+     * @return Whether the line crosses the segment
+     */
+    private boolean isCrossing(int segment, int x1, int y1, int x2, int y2)
+    {
+        int base = segment * 4;
+        int sx1 = mSegments[base];
+        int sy1 = mSegments[base + 1];
+        int sx2 = mSegments[base + 2];
+        int sy2 = mSegments[base + 3];
+        long d1 = cross(sx1, sy1, sx2, sy2, x1, y1);
+        long d2 = cross(sx1, sy1, sx2, sy2, x2, y2);
+        long d3 = cross(x1, y1, x2, y2, sx1, sy1);
+        long d4 = cross(x1, y1, x2, y2, sx2, sy2);
+        if ((d1 > 0 && d2 < 0 || d1 < 0 && d2 > 0) && (d3 > 0 && d4 < 0 || d3 < 0 && d4 > 0)) return true;
+        // A zero cross product means an end point is on the other line, which blocks if it's within the other segment
+        if (d1 == 0 && isOnSegment(sx1, sy1, sx2, sy2, x1, y1)) return true;
+        if (d2 == 0 && isOnSegment(sx1, sy1, sx2, sy2, x2, y2)) return true;
+        if (d3 == 0 && isOnSegment(x1, y1, x2, y2, sx1, sy1)) return true;
+        return d4 == 0 && isOnSegment(x1, y1, x2, y2, sx2, sy2);
+    }
+
+    /**
+     * Check whether line from (x1, y1) to (x2, y2) crosses any segment registered in specified cell
+     *
+     * @param level Level index
+     * @param cell  Cell index in the level
+     * @param x1    Start point's x axis
+     * @param y1    Start point's y axis
+     * @param x2    End point's x axis
+     * @param y2    End point's y axis
+     * @return Whether the line crosses any segment in the cell
+     */
+    private boolean isCrossingCell(int level, int cell, int x1, int y1, int x2, int y2)
+    {
+        int[] offsets = mCellOffsets[level];
+        int[] cellSegments = mCellSegments[level];
+        for (int i = offsets[cell]; i < offsets[cell + 1]; i++)
+        {
+            int segment = cellSegments[i];
+            if (mSearchIds[segment] == mSearchId) continue;
+            mSearchIds[segment] = mSearchId;
+            if (isCrossing(segment, x1, y1, x2, y2)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether line from (x1, y1) to (x2, y2) crosses any indexed segment, touching a segment counts as crossing
+     *
+     * @param x1 Start point's x axis
+     * @param y1 Start point's y axis
+     * @param x2 End point's x axis
+     * @param y2 End point's y axis
+     * @return Whether the line crosses any segment
+     */
+    public synchronized boolean isBlocked(int x1, int y1, int x2, int y2)
+    {
+        if (mSearchIds.length == 0) return false;
+        // Line is outside grid, nothing to cross
+        if (Math.max(x1, x2) < mMinX || Math.max(y1, y2) < mMinY) return false;
+        if ((long) Math.min(x1, x2) - mMinX >= mColumnCounts[0] * getCellSize(0)) return false;
+        if ((long) Math.min(y1, y2) - mMinY >= mRowCounts[0] * getCellSize(0)) return false;
+
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mSearchIds, 0);
+            mSearchId = 1;
+        }
+        int lineMinX = Math.min(x1, x2);
+        int lineMaxX = Math.max(x1, x2);
+        int lineMinY = Math.min(y1, y2);
+        int lineMaxY = Math.max(y1, y2);
+        for (int level = 0; level < mCellOffsets.length; level++)
+        {
+            // Level without segments
+            if (mCellSegments[level].length == 0) continue;
+            long cellSize = getCellSize(level);
+            int fromColumn = getColumn(level, lineMinX);
+            int toColumn = getColumn(level, lineMaxX);
+            for (int column = fromColumn; column <= toColumn; column++)
+            {
+                // Part of the line within the column, widened to next column's first unit so crossings between two
+                // columns' integer bounds are found as well
+                long left = Math.max(lineMinX, mMinX + column * cellSize);
+                long right = Math.min(lineMaxX, mMinX + (column + 1) * cellSize);
+                long low = lineMinY;
+                long high = lineMaxY;
+                if (x1 != x2)
+                {
+                    double slope = (double) (y2 - y1) / (x2 - x1);
+                    double leftY = y1 + slope * (left - x1);
+                    double rightY = y1 + slope * (right - x1);
+                    low = Math.max(low, (long) Math.floor(Math.min(leftY, rightY)));
+                    high = Math.min(high, (long) Math.ceil(Math.max(leftY, rightY)));
+                }
+                int fromRow = getRow(level, low);
+                int toRow = getRow(level, high);
+                for (int row = fromRow; row <= toRow; row++)
+                {
+                    if (isCrossingCell(level, row * mColumnCounts[level] + column, x1, y1, x2, y2)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find segments whose bounding box overlaps specified rectangle
+     *
+     * @param minX   Rectangle's left bound, inclusive
+     * @param minY   Rectangle's top bound, inclusive
+     * @param maxX   Rectangle's right bound, inclusive
+     * @param maxY   Rectangle's bottom bound, inclusive
+     * @param result Array to receive found segment indexes, at least {@link #getSize()} long
+     * @return Count of found segments
+     */
+    public synchronized int findInRect(int minX, int minY, int maxX, int maxY, final @NonNull int[] result)
+    {
+        if (mSearchIds.length == 0 || minX > maxX || minY > maxY) return 0;
+        // Rectangle is outside grid, nothing to find
+        if (maxX < mMinX || maxY < mMinY) return 0;
+        if ((long) minX - mMinX >= mColumnCounts[0] * getCellSize(0)) return 0;
+        if ((long) minY - mMinY >= mRowCounts[0] * getCellSize(0)) return 0;
+
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mSearchIds, 0);
+            mSearchId = 1;
+        }
+        int count = 0;
+        for (int level = 0; level < mCellOffsets.length; level++)
+        {
+            int[] offsets = mCellOffsets[level];
+            int[] cellSegments = mCellSegments[level];
+            if (cellSegments.length == 0) continue;
+            int fromColumn = getColumn(level, minX);
+            int toColumn = getColumn(level, maxX);
+            int fromRow = getRow(level, minY);
+            int toRow = getRow(level, maxY);
+            for (int row = fromRow; row <= toRow; row++)
+            {
+                for (int column = fromColumn; column <= toColumn; column++)
+                {
+                    int cell = row * mColumnCounts[level] + column;
+                    for (int i = offsets[cell]; i < offsets[cell + 1]; i++)
+                    {
+                        int segment = cellSegments[i];
+                        if (mSearchIds[segment] == mSearchId) continue;
+                        mSearchIds[segment] = mSearchId;
+                        int base = segment * 4;
+                        if (Math.max(mSegments[base], mSegments[base + 2]) < minX) continue;
+                        if (Math.min(mSegments[base], mSegments[base + 2]) > maxX) continue;
+                        if (Math.max(mSegments[base + 1], mSegments[base + 3]) < minY) continue;
+                        if (Math.min(mSegments[base + 1], mSegments[base + 3]) > maxY) continue;
+                        result[count++] = segment;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    //endregion
+}
@@ -0,0 +1,332 @@
+package cn.vicey.navigator.Models;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Nodes.NodeBase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spatial index class, a balanced k-d tree over node coordinates which answers nearest, k-nearest, radius and rectangle
+ * queries
+ * <p>
+ * The tree is stored implicitly: nodes in [lo, hi) form a subtree whose root is the median at (lo + hi) / 2, split on
+ * x axis at even depths and y axis at odd depths.
+ *
+ * @param <T> Node type
+ */
+public class SpatialIndex<T extends NodeBase>
+{
+    //region Constants
+
+    private static final int X_AXIS = 0; // Split by x axis
+    private static final int Y_AXIS = 1; // Split by y axis
+
+    //endregion
+
+    //region Fields
+
+    private long[]   mBestDistances; // Squared distances of best candidates, ascending
+    private int[]    mBestIndexes;   // Node positions of best candidates
+    private int      mBestCount;     // Count of best candidates
+    private int      mBestLimit;     // Max count of best candidates
+    private Object[] mNodes;         // Nodes in tree order
+    private int[]    mX;             // X axis of each node in tree order
+    private int[]    mY;             // Y axis of each node in tree order
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link SpatialIndex}
+     *
+     * @param nodes Nodes to index
+     */
+    public SpatialIndex(final @NonNull List<T> nodes)
+    {
+        int size = nodes.size();
+        mNodes = nodes.toArray();
+        mX = new int[size];
+        mY = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            mX[i] = nodes.get(i).getX();
+            mY[i] = nodes.get(i).getY();
+        }
+        build(0, size, X_AXIS);
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets indexed node count
+     *
+     * @return Node count
+     */
+    public int getSize()
+    {
+        return mNodes.length;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Build subtree of specified range
+     *
+     * @param lo   Range start, inclusive
+     * @param hi   Range end, exclusive
+     * @param axis Split axis
+     */
+    private void build(int lo, int hi, int axis)
+    {
+        if (hi - lo <= 1) return;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi, mid, axis);
+        build(lo, mid, 1 - axis);
+        build(mid + 1, hi, 1 - axis);
+    }
+
+    /**
+     * Gets coordinate of node at specified position on specified axis
+     *
+     * @param position Node position
+     * @param axis     Axis
+     * @return Coordinate
+     */
+    private int getCoordinate(int position, int axis)
+    {
+        return axis == X_AXIS ? mX[position] : mY[position];
+    }
+
+    /**
+     * Gets node at specified position
+     *
+     * @param position Node position
+     * @return Node
+     */
+    @SuppressWarnings("unchecked")
+    private T getNode(int position)
+    {
+        return (T) mNodes[position];
+    }
+
+    /**
+     * Offer a candidate to best candidates, keeping them sorted and within limit
+     *
+     * @param position Node position
+     * @param distance Squared distance to query location
+     */
+    private void offer(int position, long distance)
+    {
+        if (mBestCount == mBestLimit && distance >= mBestDistances[mBestCount - 1]) return;
+        int i = mBestCount == mBestLimit ? mBestCount - 1 : mBestCount++;
+        for (; i > 0 && mBestDistances[i - 1] > distance; i--)
+        {
+            mBestDistances[i] = mBestDistances[i - 1];
+            mBestIndexes[i] = mBestIndexes[i - 1];
+        }
+        mBestDistances[i] = distance;
+        mBestIndexes[i] = position;
+    }
+
+    /**
+     * Search subtree for nodes nearest to specified location
+     *
+     * @param lo   Range start, inclusive
+     * @param hi   Range end, exclusive
+     * @param axis Split axis
+     * @param x    X axis
+     * @param y    Y axis
+     */
+    private void searchNearest(int lo, int hi, int axis, int x, int y)
+    {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        long dx = (long) x - mX[mid];
+        long dy = (long) y - mY[mid];
+        offer(mid, dx * dx + dy * dy);
+        long diff = axis == X_AXIS ? dx : dy;
+        if (diff < 0)
+        {
+            searchNearest(lo, mid, 1 - axis, x, y);
+            if (mBestCount < mBestLimit || diff * diff < mBestDistances[mBestCount - 1])
+                searchNearest(mid + 1, hi, 1 - axis, x, y);
+        }
+        else
+        {
+            searchNearest(mid + 1, hi, 1 - axis, x, y);
+            if (mBestCount < mBestLimit || diff * diff < mBestDistances[mBestCount - 1])
+                searchNearest(lo, mid, 1 - axis, x, y);
+        }
+    }
+
+    /**
+     * Search subtree for nodes within specified radius
+     *
+     * @param lo     Range start, inclusive
+     * @param hi     Range end, exclusive
+     * @param axis   Split axis
+     * @param x      X axis
+     * @param y      Y axis
+     * @param radius Squared radius
+     * @param result List to receive found nodes
+     */
+    private void searchRadius(int lo, int hi, int axis, int x, int y, double radius, final @NonNull List<T> result)
+    {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        long dx = (long) x - mX[mid];
+        long dy = (long) y - mY[mid];
+        if (dx * dx + dy * dy <= radius) result.add(getNode(mid));
+        long diff = axis == X_AXIS ? dx : dy;
+        if (diff < 0 || diff * diff <= radius) searchRadius(lo, mid, 1 - axis, x, y, radius, result);
+        if (diff >= 0 || diff * diff <= radius) searchRadius(mid + 1, hi, 1 - axis, x, y, radius, result);
+    }
+
+    /**
+     * Search subtree for nodes within specified rectangle
+     *
+     * @param lo     Range start, inclusive
+     * @param hi     Range end, exclusive
+     * @param axis   Split axis
+     * @param minX   Rectangle's left bound, inclusive
+     * @param minY   Rectangle's top bound, inclusive
+     * @param maxX   Rectangle's right bound, inclusive
+     * @param maxY   Rectangle's bottom bound, inclusive
+     * @param result List to receive found nodes
+     */
+    private void searchRect(int lo, int hi, int axis, int minX, int minY, int maxX, int maxY, final @NonNull List<T> result)
+    {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        int x = mX[mid];
+        int y = mY[mid];
+        if (x >= minX && x <= maxX && y >= minY && y <= maxY) result.add(getNode(mid));
+        int coordinate = axis == X_AXIS ? x : y;
+        if (coordinate >= (axis == X_AXIS ? minX : minY)) searchRect(lo, mid, 1 - axis, minX, minY, maxX, maxY, result);
+        if (coordinate <= (axis == X_AXIS ? maxX : maxY)) searchRect(mid + 1, hi, 1 - axis, minX, minY, maxX, maxY, result);
+    }
+
+    /**
+     * Partially sort specified range so the node at k is where it would be if the range was sorted on specified axis
+     *
+     * @param lo   Range start, inclusive
+     * @param hi   Range end, exclusive
+     * @param k    Position to select
+     * @param axis Axis to compare
+     */
+    private void select(int lo, int hi, int k, int axis)
+    {
+        hi--;
+        while (lo < hi)
+        {
+            int pivot = getCoordinate((lo + hi) >>> 1, axis);
+            int i = lo;
+            int j = hi;
+            while (i <= j)
+            {
+                while (getCoordinate(i, axis) < pivot) i++;
+                while (getCoordinate(j, axis) > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    /**
+     * Swap two nodes
+     *
+     * @param a First node position
+     * @param b Second node position
+     */
+    private void swap(int a, int b)
+    {
+        Object node = mNodes[a];
+        mNodes[a] = mNodes[b];
+        mNodes[b] = node;
+        int x = mX[a];
+        mX[a] = mX[b];
+        mX[b] = x;
+        int y = mY[a];
+        mY[a] = mY[b];
+        mY[b] = y;
+    }
+
+    /**
+     * Find the nearest node to specified location
+     *
+     * @param x X axis
+     * @param y Y axis
+     * @return The nearest node, or null if there is no node
+     */
+    public T findNearest(int x, int y)
+    {
+        List<T> result = findNearest(x, y, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Find the k nearest nodes to specified location
+     *
+     * @param x X axis
+     * @param y Y axis
+     * @param k Max count of nodes to find
+     * @return Found nodes, nearest first
+     */
+    public synchronized List<T> findNearest(int x, int y, int k)
+    {
+        k = Math.min(k, mNodes.length);
+        List<T> result = new ArrayList<>(Math.max(k, 0));
+        if (k <= 0) return result;
+        if (mBestIndexes == null || mBestIndexes.length < k)
+        {
+            mBestIndexes = new int[k];
+            mBestDistances = new long[k];
+        }
+        mBestCount = 0;
+        mBestLimit = k;
+        searchNearest(0, mNodes.length, X_AXIS, x, y);
+        for (int i = 0; i < mBestCount; i++) result.add(getNode(mBestIndexes[i]));
+        return result;
+    }
+
+    /**
+     * Find nodes within specified radius of specified location
+     *
+     * @param x      X axis
+     * @param y      Y axis
+     * @param radius Radius
+     * @return Found nodes, in no particular order
+     */
+    public List<T> findInRadius(int x, int y, double radius)
+    {
+        List<T> result = new ArrayList<>();
+        if (radius < 0) return result;
+        searchRadius(0, mNodes.length, X_AXIS, x, y, radius * radius, result);
+        return result;
+    }
+
+    /**
+     * Find nodes within specified rectangle, found nodes are appended to result list so it can be reused
+     *
+     * @param minX   Rectangle's left bound, inclusive
+     * @param minY   Rectangle's top bound, inclusive
+     * @param maxX   Rectangle's right bound, inclusive
+     * @param maxY   Rectangle's bottom bound, inclusive
+     * @param result List to receive found nodes, in no particular order
+     */
+    public void findInRect(int minX, int minY, int maxX, int maxY, final @NonNull List<T> result)
+    {
+        if (minX > maxX || minY > maxY) return;
+        searchRect(0, mNodes.length, X_AXIS, minX, minY, maxX, maxY, result);
+    }
+
+    //endregion
+}
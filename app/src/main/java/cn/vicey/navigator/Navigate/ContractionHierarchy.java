@@ -0,0 +1,609 @@
+package cn.vicey.navigator.Navigate;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Utils.Logger;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Contraction hierarchy class, a shortcut index over the graph of {@link MapNavigator} answering shortest route
+ * queries by searching upward from both ends
+ */
+public class ContractionHierarchy
+{
+    //region Inner classes
+
+    /**
+     * Mutable graph used while contracting nodes
+     */
+    private static class Builder
+    {
+        //region Constants
+
+        private static final int MAX_SETTLED_NODES = 500; // Max settled node count of a witness search
+
+        //endregion
+
+        //region Fields
+
+        private int[][]    mAdjMiddles;       // Middle node index of each adjacent link, or NO_NODE for original links
+        private int[][]    mAdjTargets;       // Target node index of each adjacent link
+        private double[][] mAdjWeights;       // Weight of each adjacent link
+        private int[]      mAdjSizes;         // Adjacent link count of each node
+        private boolean[]  mContracted;       // Whether each node has been contracted
+        private int[]      mDeleted;          // Contracted neighbour count of each node
+        private int        mNeighbourCount;   // Neighbour count of node being contracted
+        private int[]      mNeighbourMiddles; // Middle node index of the link to each neighbour
+        private int[]      mNeighbours;       // Deduplicated uncontracted neighbours of node being contracted
+        private int[]      mNeighbourSlots;   // Position of each node in neighbour list, valid when stamped
+        private int        mNeighbourStamp;   // Current neighbour collection stamp
+        private int[]      mNeighbourStamps;  // Stamp of neighbour collection which last touched each node
+        private double[]   mNeighbourWeights; // Lowest link weight to each neighbour
+        private int        mNodeCount;        // Node count
+        private int        mShortcutCount;    // Shortcut count found by last call of findShortcuts
+        private double[]   mWitnessDist;      // Witness search distances
+        private int        mWitnessId;        // Current witness search id
+        private int[]      mWitnessIds;       // Witness search id which last touched each node
+
+        private int[]    mShortcutFrom   = new int[16];    // Shortcut start node indexes
+        private int[]    mShortcutTo     = new int[16];    // Shortcut end node indexes
+        private double[] mShortcutWeight = new double[16]; // Shortcut weights
+        private NodeHeap mWitnessHeap    = new NodeHeap(); // Witness search heap
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link Builder}
+         *
+         * @param navigator Navigator provides original graph
+         */
+        Builder(final @NonNull MapNavigator navigator)
+        {
+            mNodeCount = navigator.getNodeCount();
+            int[] offsets = navigator.getLinkOffsets();
+            int[] targets = navigator.getLinkTargets();
+            double[] distances = navigator.getLinkDistances();
+            mAdjTargets = new int[mNodeCount][];
+            mAdjWeights = new double[mNodeCount][];
+            mAdjMiddles = new int[mNodeCount][];
+            mAdjSizes = new int[mNodeCount];
+            for (int i = 0; i < mNodeCount; i++)
+            {
+                int size = offsets[i + 1] - offsets[i];
+                mAdjTargets[i] = Arrays.copyOfRange(targets, offsets[i], offsets[i + 1]);
+                mAdjWeights[i] = Arrays.copyOfRange(distances, offsets[i], offsets[i + 1]);
+                mAdjMiddles[i] = new int[size];
+                Arrays.fill(mAdjMiddles[i], FloorNavigator.NO_NODE);
+                mAdjSizes[i] = size;
+            }
+            mContracted = new boolean[mNodeCount];
+            mDeleted = new int[mNodeCount];
+            mNeighbours = new int[16];
+            mNeighbourWeights = new double[16];
+            mNeighbourMiddles = new int[16];
+            mNeighbourSlots = new int[mNodeCount];
+            mNeighbourStamps = new int[mNodeCount];
+            mWitnessDist = new double[mNodeCount];
+            mWitnessIds = new int[mNodeCount];
+        }
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Add or shorten an adjacent link of a node
+         *
+         * @param from   Node index
+         * @param to     Target node index
+         * @param weight Link weight
+         * @param middle Middle node index
+         */
+        private void addLink(int from, int to, double weight, int middle)
+        {
+            for (int i = 0; i < mAdjSizes[from]; i++)
+            {
+                if (mAdjTargets[from][i] != to) continue;
+                if (weight < mAdjWeights[from][i])
+                {
+                    mAdjWeights[from][i] = weight;
+                    mAdjMiddles[from][i] = middle;
+                }
+                return;
+            }
+            int size = mAdjSizes[from];
+            if (size == mAdjTargets[from].length)
+            {
+                int capacity = Math.max(4, size * 2);
+                mAdjTargets[from] = Arrays.copyOf(mAdjTargets[from], capacity);
+                mAdjWeights[from] = Arrays.copyOf(mAdjWeights[from], capacity);
+                mAdjMiddles[from] = Arrays.copyOf(mAdjMiddles[from], capacity);
+            }
+            mAdjTargets[from][size] = to;
+            mAdjWeights[from][size] = weight;
+            mAdjMiddles[from][size] = middle;
+            mAdjSizes[from]++;
+        }
+
+        /**
+         * Collect uncontracted neighbours of a node with the lowest link weight to each of them
+         *
+         * @param node Node index
+         */
+        private void collectNeighbours(int node)
+        {
+            if (++mNeighbourStamp == 0)
+            {
+                Arrays.fill(mNeighbourStamps, 0);
+                mNeighbourStamp = 1;
+            }
+            mNeighbourCount = 0;
+            for (int i = 0; i < mAdjSizes[node]; i++)
+            {
+                int target = mAdjTargets[node][i];
+                if (mContracted[target] || target == node) continue;
+                double weight = mAdjWeights[node][i];
+                if (mNeighbourStamps[target] == mNeighbourStamp)
+                {
+                    int slot = mNeighbourSlots[target];
+                    if (weight < mNeighbourWeights[slot])
+                    {
+                        mNeighbourWeights[slot] = weight;
+                        mNeighbourMiddles[slot] = mAdjMiddles[node][i];
+                    }
+                    continue;
+                }
+                if (mNeighbourCount == mNeighbours.length)
+                {
+                    mNeighbours = Arrays.copyOf(mNeighbours, mNeighbourCount * 2);
+                    mNeighbourWeights = Arrays.copyOf(mNeighbourWeights, mNeighbourCount * 2);
+                    mNeighbourMiddles = Arrays.copyOf(mNeighbourMiddles, mNeighbourCount * 2);
+                }
+                mNeighbourStamps[target] = mNeighbourStamp;
+                mNeighbourSlots[target] = mNeighbourCount;
+                mNeighbours[mNeighbourCount] = target;
+                mNeighbourWeights[mNeighbourCount] = weight;
+                mNeighbourMiddles[mNeighbourCount] = mAdjMiddles[node][i];
+                mNeighbourCount++;
+            }
+        }
+
+        /**
+         * Find shortcuts needed to contract a node, the result is stored in shortcut arrays
+         *
+         * @param node Node index
+         */
+        private void findShortcuts(int node)
+        {
+            collectNeighbours(node);
+            mShortcutCount = 0;
+            double maxWeight = 0;
+            for (int i = 0; i < mNeighbourCount; i++) maxWeight = Math.max(maxWeight, mNeighbourWeights[i]);
+            for (int i = 0; i < mNeighbourCount - 1; i++)
+            {
+                int from = mNeighbours[i];
+                double fromWeight = mNeighbourWeights[i];
+                witnessSearch(from, node, fromWeight + maxWeight);
+                for (int j = i + 1; j < mNeighbourCount; j++)
+                {
+                    int to = mNeighbours[j];
+                    double weight = fromWeight + mNeighbourWeights[j];
+                    if (mWitnessIds[to] == mWitnessId && mWitnessDist[to] <= weight) continue;
+                    if (mShortcutCount == mShortcutFrom.length)
+                    {
+                        mShortcutFrom = Arrays.copyOf(mShortcutFrom, mShortcutCount * 2);
+                        mShortcutTo = Arrays.copyOf(mShortcutTo, mShortcutCount * 2);
+                        mShortcutWeight = Arrays.copyOf(mShortcutWeight, mShortcutCount * 2);
+                    }
+                    mShortcutFrom[mShortcutCount] = from;
+                    mShortcutTo[mShortcutCount] = to;
+                    mShortcutWeight[mShortcutCount] = weight;
+                    mShortcutCount++;
+                }
+            }
+        }
+
+        /**
+         * Run a bounded Dijkstra search from start node which avoids ignored node
+         *
+         * @param start       Start node index
+         * @param ignored     Node index to avoid
+         * @param maxDistance Max distance to search
+         */
+        private void witnessSearch(int start, int ignored, double maxDistance)
+        {
+            if (++mWitnessId == 0)
+            {
+                Arrays.fill(mWitnessIds, 0);
+                mWitnessId = 1;
+            }
+            mWitnessIds[start] = mWitnessId;
+            mWitnessDist[start] = 0;
+            mWitnessHeap.clear();
+            mWitnessHeap.push(start, 0);
+            int settled = 0;
+            while (!mWitnessHeap.isEmpty() && settled < MAX_SETTLED_NODES)
+            {
+                double distance = mWitnessHeap.getTopPriority();
+                int current = mWitnessHeap.pop();
+                if (distance > mWitnessDist[current]) continue;
+                if (distance > maxDistance) break;
+                settled++;
+                for (int i = 0; i < mAdjSizes[current]; i++)
+                {
+                    int target = mAdjTargets[current][i];
+                    if (target == ignored || mContracted[target]) continue;
+                    double newDistance = distance + mAdjWeights[current][i];
+                    if (mWitnessIds[target] == mWitnessId && newDistance >= mWitnessDist[target]) continue;
+                    mWitnessIds[target] = mWitnessId;
+                    mWitnessDist[target] = newDistance;
+                    mWitnessHeap.push(target, newDistance);
+                }
+            }
+        }
+
+        /**
+         * Contract all nodes and build the hierarchy
+         *
+         * @param floorChangeCost Floor change cost the graph was built with
+         * @return New contraction hierarchy
+         */
+        ContractionHierarchy build(double floorChangeCost)
+        {
+            // Initial priorities
+            NodeHeap queue = new NodeHeap(mNodeCount);
+            for (int i = 0; i < mNodeCount; i++)
+            {
+                findShortcuts(i);
+                queue.push(i, mShortcutCount - mNeighbourCount);
+            }
+
+            int[] ranks = new int[mNodeCount];
+            int[][] upTargets = new int[mNodeCount][];
+            double[][] upWeights = new double[mNodeCount][];
+            int[][] upMiddles = new int[mNodeCount][];
+            int rank = 0;
+            int edgeCount = 0;
+            while (!queue.isEmpty())
+            {
+                int node = queue.pop();
+                // Lazy update, put the node back if it isn't the best choice anymore
+                findShortcuts(node);
+                double priority = mShortcutCount - mNeighbourCount + mDeleted[node];
+                if (!queue.isEmpty() && priority > queue.getTopPriority())
+                {
+                    queue.push(node, priority);
+                    continue;
+                }
+
+                // Links to uncontracted neighbours become upward links of this node
+                upTargets[node] = Arrays.copyOf(mNeighbours, mNeighbourCount);
+                upWeights[node] = Arrays.copyOf(mNeighbourWeights, mNeighbourCount);
+                upMiddles[node] = Arrays.copyOf(mNeighbourMiddles, mNeighbourCount);
+                edgeCount += mNeighbourCount;
+
+                for (int i = 0; i < mShortcutCount; i++)
+                {
+                    addLink(mShortcutFrom[i], mShortcutTo[i], mShortcutWeight[i], node);
+                    addLink(mShortcutTo[i], mShortcutFrom[i], mShortcutWeight[i], node);
+                }
+                for (int i = 0; i < mNeighbourCount; i++) mDeleted[mNeighbours[i]]++;
+                mContracted[node] = true;
+                ranks[node] = rank++;
+            }
+
+            // Flatten upward links
+            int[] offsets = new int[mNodeCount + 1];
+            int[] targets = new int[edgeCount];
+            double[] weights = new double[edgeCount];
+            int[] middles = new int[edgeCount];
+            for (int i = 0; i < mNodeCount; i++)
+            {
+                int size = upTargets[i].length;
+                offsets[i + 1] = offsets[i] + size;
+                System.arraycopy(upTargets[i], 0, targets, offsets[i], size);
+                System.arraycopy(upWeights[i], 0, weights, offsets[i], size);
+                System.arraycopy(upMiddles[i], 0, middles, offsets[i], size);
+            }
+            return new ContractionHierarchy(floorChangeCost, offsets, targets, weights, middles);
+        }
+
+        //endregion
+    }
+
+    //endregion
+
+    //region Constants
+
+    private static final String LOGGER_TAG = "ContractionHierarchy";
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Build contraction hierarchy over the graph of specified navigator
+     *
+     * @param navigator Navigator provides the graph
+     * @return New contraction hierarchy
+     */
+    public static ContractionHierarchy build(final @NonNull MapNavigator navigator)
+    {
+        long startTime = new Date().getTime();
+        Logger.info(LOGGER_TAG, "Started building contraction hierarchy.");
+        ContractionHierarchy hierarchy = new Builder(navigator).build(navigator.getFloorChangeCost());
+        Logger.info(LOGGER_TAG, "Finished building contraction hierarchy. Shortcut links: " + hierarchy.mTargets.length + ". Total time: " + (new Date().getTime() - startTime) + " ms.");
+        return hierarchy;
+    }
+
+    //endregion
+
+    //region Fields
+
+    private double[] mBackwardDist;    // Backward search distances
+    private int[]    mBackwardIds;     // Search id which last touched each node in backward search
+    private int[]    mBackwardPrev;    // Previous node indexes in backward search
+    private double   mFloorChangeCost; // Floor change cost the hierarchy was built with
+    private double[] mForwardDist;     // Forward search distances
+    private int[]    mForwardIds;      // Search id which last touched each node in forward search
+    private int[]    mForwardPrev;     // Previous node indexes in forward search
+    private int[]    mMiddles;         // Middle node index of each upward link, or NO_NODE for original links
+    private int      mNodeCount;       // Node count
+    private int[]    mOffsets;         // Each node's first upward link index, node count + 1 entries
+    private int      mRouteSize;       // Unpacked route node count
+    private int      mSearchId;        // Current search id
+    private int[]    mTargets;         // Target node index of each upward link
+    private double[] mWeights;         // Weight of each upward link
+
+    private int[] mRouteNodes = new int[16]; // Unpacked route nodes
+    private int[] mStack      = new int[16]; // Stack used for collecting nodes and unpacking shortcuts
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link ContractionHierarchy}
+     *
+     * @param floorChangeCost Floor change cost the hierarchy was built with
+     * @param offsets         Each node's first upward link index, node count + 1 entries
+     * @param targets         Target node index of each upward link
+     * @param weights         Weight of each upward link
+     * @param middles         Middle node index of each upward link, or {@link FloorNavigator#NO_NODE} for original links
+     */
+    public ContractionHierarchy(double floorChangeCost, final @NonNull int[] offsets, final @NonNull int[] targets, final @NonNull double[] weights, final @NonNull int[] middles)
+    {
+        mFloorChangeCost = floorChangeCost;
+        mOffsets = offsets;
+        mTargets = targets;
+        mWeights = weights;
+        mMiddles = middles;
+        mNodeCount = offsets.length - 1;
+        mForwardDist = new double[mNodeCount];
+        mForwardIds = new int[mNodeCount];
+        mForwardPrev = new int[mNodeCount];
+        mBackwardDist = new double[mNodeCount];
+        mBackwardIds = new int[mNodeCount];
+        mBackwardPrev = new int[mNodeCount];
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets floor change cost the hierarchy was built with
+     *
+     * @return Floor change cost
+     */
+    public double getFloorChangeCost()
+    {
+        return mFloorChangeCost;
+    }
+
+    /**
+     * Gets middle node index of each upward link
+     *
+     * @return Middle node indexes
+     */
+    public int[] getMiddles()
+    {
+        return mMiddles;
+    }
+
+    /**
+     * Gets node count
+     *
+     * @return Node count
+     */
+    public int getNodeCount()
+    {
+        return mNodeCount;
+    }
+
+    /**
+     * Gets each node's first upward link index
+     *
+     * @return Upward link offsets
+     */
+    public int[] getOffsets()
+    {
+        return mOffsets;
+    }
+
+    /**
+     * Gets target node index of each upward link
+     *
+     * @return Upward link targets
+     */
+    public int[] getTargets()
+    {
+        return mTargets;
+    }
+
+    /**
+     * Gets weight of each upward link
+     *
+     * @return Upward link weights
+     */
+    public double[] getWeights()
+    {
+        return mWeights;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Append nodes from one node to another to route nodes, expanding shortcuts into original links
+     *
+     * @param from Node index already appended
+     * @param to   Node index to reach
+     */
+    private void appendRouteNodes(int from, int to)
+    {
+        // Stack holds (from, to) pairs, top of stack is the next piece in route order
+        int top = 0;
+        mStack = ensureCapacity(mStack, 2);
+        mStack[top++] = from;
+        mStack[top++] = to;
+        while (top > 0)
+        {
+            int end = mStack[--top];
+            int start = mStack[--top];
+            int middle = getMiddle(start, end);
+            if (middle == FloorNavigator.NO_NODE)
+            {
+                mRouteNodes = ensureCapacity(mRouteNodes, mRouteSize + 1);
+                mRouteNodes[mRouteSize++] = end;
+                continue;
+            }
+            mStack = ensureCapacity(mStack, top + 4);
+            mStack[top++] = middle;
+            mStack[top++] = end;
+            mStack[top++] = start;
+            mStack[top++] = middle;
+        }
+    }
+
+    /**
+     * Ensure an array can hold specified count of values
+     *
+     * @param array    Array to check
+     * @param capacity Required capacity
+     * @return The array itself, or a larger copy of it
+     */
+    private int[] ensureCapacity(final @NonNull int[] array, int capacity)
+    {
+        if (array.length >= capacity) return array;
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    /**
+     * Gets middle node of the link between two nodes, the link is stored in the lower node's upward links
+     *
+     * @param from Node index
+     * @param to   Node index
+     * @return Middle node index, or {@link FloorNavigator#NO_NODE} if the link is an original link
+     */
+    private int getMiddle(int from, int to)
+    {
+        for (int i = mOffsets[from]; i < mOffsets[from + 1]; i++) if (mTargets[i] == to) return mMiddles[i];
+        for (int i = mOffsets[to]; i < mOffsets[to + 1]; i++) if (mTargets[i] == from) return mMiddles[i];
+        return FloorNavigator.NO_NODE;
+    }
+
+    /**
+     * Find the shortest route between two nodes
+     *
+     * @param navigator Navigator the hierarchy was built for
+     * @param start     Start node index
+     * @param end       End node index
+     * @return New route object, or null if end node is unreachable
+     */
+    public synchronized Route findRoute(final @NonNull MapNavigator navigator, int start, int end)
+    {
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mForwardIds, 0);
+            Arrays.fill(mBackwardIds, 0);
+            mSearchId = 1;
+        }
+        mForwardIds[start] = mSearchId;
+        mForwardDist[start] = 0;
+        mForwardPrev[start] = FloorNavigator.NO_NODE;
+        mBackwardIds[end] = mSearchId;
+        mBackwardDist[end] = 0;
+        mBackwardPrev[end] = FloorNavigator.NO_NODE;
+
+        // Bidirectional upward search started
+        NodeHeap forward = new NodeHeap();
+        NodeHeap backward = new NodeHeap();
+        forward.push(start, 0);
+        backward.push(end, 0);
+        double best = Double.POSITIVE_INFINITY;
+        int meet = FloorNavigator.NO_NODE;
+        while (!forward.isEmpty() || !backward.isEmpty())
+        {
+            boolean forwardTurn = backward.isEmpty() || !forward.isEmpty() && forward.getTopPriority() <= backward.getTopPriority();
+            NodeHeap heap = forwardTurn ? forward : backward;
+            if (heap.getTopPriority() >= best)
+            {
+                // This direction can't improve the route anymore
+                heap.clear();
+                continue;
+            }
+            double[] dist = forwardTurn ? mForwardDist : mBackwardDist;
+            int[] ids = forwardTurn ? mForwardIds : mBackwardIds;
+            int[] prev = forwardTurn ? mForwardPrev : mBackwardPrev;
+            double[] otherDist = forwardTurn ? mBackwardDist : mForwardDist;
+            int[] otherIds = forwardTurn ? mBackwardIds : mForwardIds;
+
+            double distance = heap.getTopPriority();
+            int current = heap.pop();
+            if (distance > dist[current]) continue;
+            if (otherIds[current] == mSearchId && distance + otherDist[current] < best)
+            {
+                best = distance + otherDist[current];
+                meet = current;
+            }
+            for (int i = mOffsets[current]; i < mOffsets[current + 1]; i++)
+            {
+                int target = mTargets[i];
+                double newDistance = distance + mWeights[i];
+                if (ids[target] == mSearchId && newDistance >= dist[target]) continue;
+                ids[target] = mSearchId;
+                dist[target] = newDistance;
+                prev[target] = current;
+                heap.push(target, newDistance);
+            }
+        }
+        // Bidirectional upward search finished
+
+        if (meet == FloorNavigator.NO_NODE) return null;
+
+        // Collect upward nodes from start to meeting node
+        int upwardCount = 0;
+        for (int current = meet; current != FloorNavigator.NO_NODE; current = mForwardPrev[current])
+        {
+            mStack = ensureCapacity(mStack, upwardCount + 1);
+            mStack[upwardCount++] = current;
+        }
+        int[] upward = Arrays.copyOf(mStack, upwardCount);
+
+        // Unpack forward part, then backward part from meeting node down to end node
+        mRouteSize = 0;
+        mRouteNodes = ensureCapacity(mRouteNodes, 1);
+        mRouteNodes[mRouteSize++] = start;
+        for (int i = upwardCount - 1; i > 0; i--) appendRouteNodes(upward[i], upward[i - 1]);
+        for (int current = meet; current != end; current = mBackwardPrev[current])
+            appendRouteNodes(current, mBackwardPrev[current]);
+        return new Route(navigator, Arrays.copyOf(mRouteNodes, mRouteSize));
+    }
+
+    //endregion
+}
@@ -1,14 +1,20 @@
 package cn.vicey.navigator.Navigate;
 
 import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Adjacency;
 import cn.vicey.navigator.Models.Floor;
 import cn.vicey.navigator.Models.Nodes.GuideNode;
-import cn.vicey.navigator.Models.Nodes.NodeBase;
 import cn.vicey.navigator.Utils.Logger;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Navigator class, provides navigate ability for related floor
@@ -33,7 +39,114 @@ public class FloorNavigator
     }
 
     /**
-     * Navigate table builder
+     * Listener which will be invoked when requested shortest paths are built
+     */
+    public interface OnPathBuiltListener
+    {
+        //region Methods
+
+        /**
+         * Invoked when the shortest paths are built
+         *
+         * @param path Path from requested start node to end node, or null if end node is unreachable
+         */
+        void onBuilt(Path path);
+
+        /**
+         * Invoked when the shortest paths failed to be built, the build can be requested again
+         */
+        void onFailed();
+
+        //endregion
+    }
+
+    /**
+     * Build request, represents a caller waiting for a shared table builder
+     */
+    public class BuildRequest
+    {
+        //region Fields
+
+        private TableBuilder        mBuilder;   // Table builder which serves this request
+        private volatile boolean    mCancelled; // Indicates whether the request is cancelled or not
+        private GuideNode           mEndNode;   // Requested end node
+        private OnPathBuiltListener mListener;  // Listener for path built and build failed event, or null if caller doesn't need it
+        private GuideNode           mStartNode; // Requested start node
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link BuildRequest}
+         *
+         * @param builder   Table builder which serves this request
+         * @param startNode Requested start node
+         * @param endNode   Requested end node
+         * @param listener  Listener for path built event
+         */
+        private BuildRequest(final @NonNull TableBuilder builder, final @NonNull GuideNode startNode, final @NonNull GuideNode endNode, OnPathBuiltListener listener)
+        {
+            mBuilder = builder;
+            mStartNode = startNode;
+            mEndNode = endNode;
+            mListener = listener;
+        }
+
+        //endregion
+
+        //region Accessors
+
+        /**
+         * Gets whether the request is cancelled or not
+         *
+         * @return Whether the request is cancelled or not
+         */
+        public boolean isCancelled()
+        {
+            return mCancelled;
+        }
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Notify listener that the shortest paths are built
+         */
+        private void notifyBuilt()
+        {
+            if (mCancelled || mListener == null) return;
+            mListener.onBuilt(getPath(mStartNode, mEndNode));
+        }
+
+        /**
+         * Notify listener that the shortest paths failed to be built
+         */
+        private void notifyFailed()
+        {
+            if (mCancelled || mListener == null) return;
+            mListener.onFailed();
+        }
+
+        /**
+         * Cancel this request, the build will be dropped if no one else is waiting for it and it hasn't started yet
+         */
+        public void cancel()
+        {
+            synchronized (mPendingBuilds)
+            {
+                if (mCancelled) return;
+                mCancelled = true;
+                mBuilder.removeRequest(this);
+            }
+        }
+
+        //endregion
+    }
+
+    /**
+     * Navigate table builder, runs Dijkstra algorithm from root node over the indexed graph
      */
     private class TableBuilder
             implements Runnable
@@ -49,7 +162,11 @@ public class FloorNavigator
         //region Fields
 
         private int       mErrorCount; // Error count
-        private GuideNode mStartNode;  // Start node
+        private Future<?> mFuture;     // Future of submitted build
+        private int       mRoot;       // Root node index
+        private boolean   mRunning;    // Indicates whether the build is running or not
+
+        private List<BuildRequest> mRequests = new ArrayList<>(); // Requests waiting for this build
 
         //endregion
 
@@ -58,11 +175,47 @@ public class FloorNavigator
         /**
          * Initialize new instance of class {@link TableBuilder}
          *
-         * @param startNode Start node
+         * @param root Root node index
          */
-        public TableBuilder(final @NonNull GuideNode startNode)
+        public TableBuilder(int root)
         {
-            mStartNode = startNode;
+            mRoot = root;
+        }
+
+        //endregion
+
+        //region Methods
+
+        /**
+         * Add request waiting for this build, must be called with pending builds locked
+         *
+         * @param request Request to add
+         */
+        public void addRequest(final @NonNull BuildRequest request)
+        {
+            mRequests.add(request);
+        }
+
+        /**
+         * Remove request waiting for this build, must be called with pending builds locked
+         *
+         * @param request Request to remove
+         */
+        public void removeRequest(final @NonNull BuildRequest request)
+        {
+            mRequests.remove(request);
+            if (!mRequests.isEmpty() || mRunning) return;
+            // No one is waiting and the build hasn't started, drop it
+            mFuture.cancel(false);
+            mPendingBuilds.remove(mRoot);
+        }
+
+        /**
+         * Submit this build to shared executor, must be called with pending builds locked
+         */
+        public void submit()
+        {
+            mFuture = BUILD_EXECUTOR.submit(this);
         }
 
         //endregion
@@ -72,174 +225,104 @@ public class FloorNavigator
         @Override
         public void run()
         {
+            synchronized (mPendingBuilds)
+            {
+                // Cancelled before being started
+                if (mPendingBuilds.get(mRoot) != this) return;
+                mRunning = true;
+            }
+            List<BuildRequest> requests;
             try
             {
-                GuideNode current = mStartNode;
-
                 long startTime = new Date().getTime();
                 Logger.info(LOGGER_TAG, "Started building table.");
 
-                // Dijkstra algorithm started
-                Path path = new Path(null);
-
-                // Create open table, put all nodes into it
-                HashMap<GuideNode, Path> openTable = new HashMap<>();
-                for (GuideNode guideNode : mPathTable.get(current).keySet()) openTable.put(guideNode, null);
-
-                // Create close table
-                HashMap<GuideNode, Path> closeTable = new HashMap<>();
-
-                // Pick node from open table and update open table
-                while (!openTable.isEmpty())
-                {
-                    // Append current node to path tail
-                    path.appendTail(current);
-                    // Remove current node from open table
-                    openTable.remove(current);
-                    // Put current node and path to close table
-                    closeTable.put(current, path.fork());
-                    // Walk through adjacent nodes, and find next node
-                    GuideNode nearestNode = null;
-                    double distance = Double.MAX_VALUE;
-                    for (NodeBase.Link link : current.getLinks())
-                    {
-                        // Only support guide node
-                        if (!(link.getTarget() instanceof GuideNode)) continue;
-                        GuideNode target = (GuideNode) link.getTarget();
-                        // Must not in close table
-                        if (closeTable.containsKey(target)) continue;
-                        // Must in open table
-                        if (!openTable.containsKey(target)) continue;
-                        // No path, this means the node used to be unreachable, so create a new path for it
-                        if (openTable.get(target) == null) openTable.put(target, path.fork().appendTail(target));
-                        else
-                        {
-                            // Calc new distance and compare to old distance
-                            double newDistance = path.getLength() + link.getDistance();
-                            // New shortest path to target found, update open table
-                            if (openTable.get(target).getLength() > newDistance) openTable.put(target, path.fork()
-                                                                                                           .appendTail(target));
-                        }
-                        if (link.getDistance() < distance)
-                        {
-                            distance = link.getDistance();
-                            nearestNode = target;
-                        }
-                    }
-                    // Meet corner, find nearest node in open table
-                    if (nearestNode == null && !openTable.isEmpty())
-                    {
-                        distance = Double.MAX_VALUE;
-                        Path newPath = null;
-                        for (Map.Entry<GuideNode, Path> entry : openTable.entrySet())
-                        {
-                            if (entry.getValue() == null) continue;
-                            if (entry.getValue().getLength() < distance)
-                            {
-                                distance = entry.getValue().getLength();
-                                nearestNode = entry.getKey();
-                                newPath = entry.getValue();
-                            }
-                        }
-                        if (newPath == null)
-                        {
-                            // No nearest node found, error occurred
-                            Logger.error(LOGGER_TAG, "No nearest node found, error occurred.");
-                            if (mOnBuildFailedListener != null) mOnBuildFailedListener.onFailed();
-                            return;
-                        }
-                        path = newPath.fork().removeTail();
-                    }
-                    if (nearestNode == null) break;
-                    // Move to nearest node
-                    current = nearestNode;
-                }
-                // Dijkstra algorithm finished
+                double[] dist = new double[mNodeCount];
+                int[] prev = new int[mNodeCount];
+                buildShortestPathTree(mRoot, dist, prev, new NodeHeap(mNodeCount));
 
                 long totalTime = new Date().getTime() - startTime;
                 Logger.info(LOGGER_TAG, "Finished building table. Total time: " + totalTime + " ms.");
 
-                for (Map.Entry<GuideNode, Path> entry : closeTable.entrySet())
-                    mPathTable.get(mStartNode).get(entry.getKey()).setPath(entry.getValue());
-
+                synchronized (mPendingBuilds)
+                {
+                    mPathTrees[mRoot].setTree(dist, prev);
+                    mPendingBuilds.remove(mRoot);
+                    requests = mRequests;
+                }
             }
             catch (Throwable t)
             {
                 Logger.error(LOGGER_TAG, "Error occurred when building table. Error count: " + mErrorCount++ + ".", t);
-                if (mErrorCount < MAX_ERROR_COUNT)
+                synchronized (mPendingBuilds)
                 {
-                    Logger.info(LOGGER_TAG, "Trying to restart update task.");
-                    new Thread(this).start();
+                    if (mErrorCount < MAX_ERROR_COUNT)
+                    {
+                        Logger.info(LOGGER_TAG, "Trying to restart build task.");
+                        mRunning = false;
+                        submit();
+                        return;
+                    }
+                    mPendingBuilds.remove(mRoot);
+                    requests = mRequests;
+                    mRequests = new ArrayList<>();
                 }
-                else
-                    Logger.error(LOGGER_TAG, "Table builder's crash count reaches its limit. Build process will be stopped.");
+                Logger.error(LOGGER_TAG, "Table builder's crash count reaches its limit. Build process will be stopped.");
+                if (mOnBuildFailedListener != null) mOnBuildFailedListener.onFailed();
+                // Waiting requests are dropped with the build, let callers know so they can request it again
+                for (BuildRequest request : requests) request.notifyFailed();
+                return;
             }
+            for (BuildRequest request : requests) request.notifyBuilt();
         }
 
         //endregion
     }
 
     /**
-     * Path builder
+     * Path tree, holds the shortest path tree from a root node
      */
-    private class PathBuilder
+    private class PathTree
     {
         //region Fields
 
-        private boolean mBuilding; // Indicates whether the path is building or not
-        private Path    mPath;       // Built path
-
-        //endregion
-
-        //region Constructors
-
-        public PathBuilder()
-        {
-
-        }
+        private volatile double[] mDist; // Distance from root node to each node
+        private volatile int[]    mPrev; // Previous node index in shortest path from root node to each node
 
         //endregion
 
         //region Accessors
 
         /**
-         * Gets built path
-         *
-         * @return Built path, or null if the build process isn't finished yet
-         */
-        public Path getPath()
-        {
-            return mPath;
-        }
-
-        /**
-         * Gets whether the path is building or not
+         * Gets distances from root node to each node
          *
-         * @return Whether the path is building or not
+         * @return Distances, or null if the build process isn't finished yet
          */
-        public boolean isBuilding()
+        public double[] getDist()
         {
-            return mBuilding;
+            return mDist;
         }
 
         /**
-         * Sets whether the path is building or not
+         * Gets previous node indexes in shortest path from root node to each node
          *
-         * @param value Whether the path is building or not
+         * @return Previous node indexes, or null if the build process isn't finished yet
          */
-        public void setBuilding(boolean value)
+        public int[] getPrev()
         {
-            mBuilding = value;
+            return mPrev;
         }
 
         /**
-         * Sets built path
+         * Sets built tree
          *
-         * @param value Built path
+         * @param dist Distances from root node to each node
+         * @param prev Previous node indexes in shortest path from root node to each node
          */
-        public void setPath(final @NonNull Path value)
+        public void setTree(final @NonNull double[] dist, final @NonNull int[] prev)
         {
-            mPath = value;
+            mDist = dist;
+            mPrev = prev;
         }
 
         //endregion
@@ -247,11 +330,40 @@ public class FloorNavigator
 
     //endregion
 
+    //region Constants
+
+    private static final String LOGGER_TAG = "FloorNavigator";
+
+    private static final int MAX_BUILD_THREAD_COUNT  = 2; // Max count of threads building tables at the same time
+    private static final int MAX_UPDATE_THREAD_COUNT = 1; // Max count of long-running navigate manager update tasks
+
+    static final ExecutorService BUILD_EXECUTOR = Executors.newFixedThreadPool(MAX_BUILD_THREAD_COUNT + MAX_UPDATE_THREAD_COUNT); // Executor shared by table builders and navigate manager
+
+    /**
+     * Indicates there is no node
+     */
+    public static final int NO_NODE = -1;
+
+    //endregion
+
     //region Fields
 
+    private Floor                 mFloor;                 // Related floor, kept so map keeps returning it with the same guide nodes
+    private float[]               mLinkDistances;         // Link distances, indexed by link index
+    private int[]                 mSearchPrev;            // Previous node indexes used by point-to-point search
+    private double[]              mSearchDist;            // Distances from start node used by point-to-point search
+    private int                   mSearchId;              // Current point-to-point search id
+    private int[]                 mSearchIds;             // Search id which last touched each node, used to reset arrays lazily
+    private int[]                 mLinkOffsets;           // Each node's first link index, node count + 1 entries
+    private int[]                 mLinkTargets;           // Link target node indexes, indexed by link index
+    private int                   mNodeCount;             // Guide node count
+    private List<GuideNode>       mNodes;                 // Guide nodes, indexed by node index
     private OnBuildFailedListener mOnBuildFailedListener; // Listener for navigation finished event
+    private PathTree[]            mPathTrees;             // Shortest path trees, indexed by start node index
+    private RouteTable            mRouteTable;            // Precomputed route table, or null if there isn't one
 
-    private HashMap<GuideNode, HashMap<GuideNode, PathBuilder>> mPathTable = new HashMap<>(); // TableBuilder table to get built table or start building table
+    private HashMap<GuideNode, Integer>    mNodeIndexes   = new HashMap<>(); // Guide node to node index table
+    private HashMap<Integer, TableBuilder> mPendingBuilds = new HashMap<>(); // Queued or running table builders, indexed by root node index
 
     //endregion
 
@@ -264,11 +376,22 @@ public class FloorNavigator
      */
     public FloorNavigator(final @NonNull Floor floor)
     {
-        for (GuideNode startNode : floor.getGuideNodes())
-        {
-            mPathTable.put(startNode, new HashMap<GuideNode, PathBuilder>());
-            for (GuideNode endNode : floor.getGuideNodes()) mPathTable.get(startNode).put(endNode, new PathBuilder());
-        }
+        mFloor = floor;
+        mNodes = floor.getGuideNodes();
+        mNodeCount = mNodes.size();
+        for (int i = 0; i < mNodeCount; i++) mNodeIndexes.put(mNodes.get(i), i);
+
+        Adjacency adjacency = floor.getGuideAdjacency();
+        mLinkOffsets = adjacency.getOffsets();
+        mLinkTargets = adjacency.getTargets();
+        mLinkDistances = adjacency.getWeights();
+
+        mPathTrees = new PathTree[mNodeCount];
+        for (int i = 0; i < mNodeCount; i++) mPathTrees[i] = new PathTree();
+
+        mSearchPrev = new int[mNodeCount];
+        mSearchDist = new double[mNodeCount];
+        mSearchIds = new int[mNodeCount];
     }
 
     //endregion
@@ -276,15 +399,25 @@ public class FloorNavigator
     //region Accessors
 
     /**
-     * Gets path builder from start node to end node
+     * Gets node index of specified guide node
      *
-     * @param startNode Start node
-     * @param endNode   End node
-     * @return Path builder from start node to end node
+     * @param node Specified guide node
+     * @return Node index, or {@link #NO_NODE} if the node isn't in related floor
      */
-    private PathBuilder getBuilder(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode)
+    private int getNodeIndex(final @NonNull GuideNode node)
     {
-        return mPathTable.get(startNode).get(endNode);
+        Integer index = mNodeIndexes.get(node);
+        return index == null ? NO_NODE : index;
+    }
+
+    /**
+     * Gets guide node count of related floor
+     *
+     * @return Guide node count
+     */
+    public int getNodeCount()
+    {
+        return mNodeCount;
     }
 
     /**
@@ -297,14 +430,202 @@ public class FloorNavigator
         mOnBuildFailedListener = value;
     }
 
+    /**
+     * Sets precomputed route table for this navigator, paths will be looked up from it instead of being searched
+     *
+     * @param value Route table to set, or null to search paths at runtime
+     */
+    public void setRouteTable(RouteTable value)
+    {
+        if (value != null && value.getNodeCount() != mNodeCount)
+        {
+            Logger.error(LOGGER_TAG, "Route table doesn't match floor. Route table will be ignored.");
+            return;
+        }
+        mRouteTable = value;
+    }
+
     //endregion
 
     //region Methods
 
-    public void buildPathAsync(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode)
+    /**
+     * Build path nodes from start node to end node by walking back through previous node indexes
+     *
+     * @param table Route table to look up
+     * @param start Start node index
+     * @param end   End node index
+     * @return Guide nodes in path order, or null if end node is unreachable
+     */
+    private List<GuideNode> buildPathNodes(final @NonNull RouteTable table, int start, int end)
     {
-        if (getBuilder(startNode, endNode).isBuilding()) return;
-        new Thread(new TableBuilder(startNode)).start();
+        if (start != end && table.getPrev(start, end) == NO_NODE) return null;
+        List<GuideNode> nodes = new ArrayList<>();
+        for (int current = end; current != NO_NODE; current = table.getPrev(start, current)) nodes.add(mNodes.get(current));
+        Collections.reverse(nodes);
+        return nodes;
+    }
+
+    /**
+     * Create path from guide nodes
+     *
+     * @param nodes Guide nodes in path order, or null
+     * @return New path object, or null if nodes is null
+     */
+    private static Path toPath(List<GuideNode> nodes)
+    {
+        if (nodes == null) return null;
+        Path path = new Path(null);
+        for (GuideNode node : nodes) path = path.appendTail(node);
+        return path;
+    }
+
+    /**
+     * Build the shortest path tree from start node using Dijkstra algorithm
+     *
+     * @param start Start node index
+     * @param dist  Array to receive distances from start node, at least node count long
+     * @param prev  Array to receive previous node indexes, {@link #NO_NODE} for start node and unreachable nodes
+     * @param heap  Heap to use, will be cleared
+     */
+    public void buildShortestPathTree(int start, final @NonNull double[] dist, final @NonNull int[] prev, final @NonNull NodeHeap heap)
+    {
+        Arrays.fill(dist, 0, mNodeCount, Double.POSITIVE_INFINITY);
+        Arrays.fill(prev, 0, mNodeCount, NO_NODE);
+        dist[start] = 0;
+
+        // Dijkstra algorithm started
+        heap.clear();
+        heap.push(start, 0);
+        while (!heap.isEmpty())
+        {
+            double distance = heap.getTopPriority();
+            int current = heap.pop();
+            // Skip stale entries
+            if (distance > dist[current]) continue;
+            for (int i = mLinkOffsets[current]; i < mLinkOffsets[current + 1]; i++)
+            {
+                int target = mLinkTargets[i];
+                double newDistance = distance + mLinkDistances[i];
+                if (newDistance >= dist[target]) continue;
+                dist[target] = newDistance;
+                prev[target] = current;
+                heap.push(target, newDistance);
+            }
+        }
+        // Dijkstra algorithm finished
+    }
+
+    /**
+     * Start building shortest paths between end node and every other node if they aren't built or building, links are
+     * bidirectional so the tree is rooted at end node and serves every start node while user walks toward it
+     *
+     * @param startNode Start node
+     * @param endNode   End node
+     * @param listener  Listener for path built and build failed event, invoked on build thread, or immediately if paths are
+     *                  already built
+     * @return Build request which can be cancelled, or null if paths are already built or nodes aren't in related floor
+     */
+    public BuildRequest buildPathAsync(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode, OnPathBuiltListener listener)
+    {
+        int start = getNodeIndex(startNode);
+        int end = getNodeIndex(endNode);
+        if (start == NO_NODE || end == NO_NODE) return null;
+        if (mRouteTable == null)
+        {
+            synchronized (mPendingBuilds)
+            {
+                if (mPathTrees[end].getPrev() == null && mPathTrees[start].getPrev() == null)
+                {
+                    // Join the pending build if there is one, otherwise start a new one
+                    TableBuilder builder = mPendingBuilds.get(end);
+                    if (builder == null)
+                    {
+                        builder = new TableBuilder(end);
+                        mPendingBuilds.put(end, builder);
+                        builder.submit();
+                    }
+                    BuildRequest request = new BuildRequest(builder, startNode, endNode, listener);
+                    builder.addRequest(request);
+                    return request;
+                }
+            }
+        }
+        if (listener != null) listener.onBuilt(getPath(startNode, endNode));
+        return null;
+    }
+
+    /**
+     * Find path from start node to end node using A* algorithm, with straight line distance as heuristic
+     *
+     * @param startNode Start node
+     * @param endNode   End node
+     * @return New path object, or null if end node is unreachable
+     */
+    public Path findPath(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode)
+    {
+        return toPath(findPathNodes(startNode, endNode));
+    }
+
+    /**
+     * Find path nodes from start node to end node using A* algorithm, with straight line distance as heuristic
+     *
+     * @param startNode Start node
+     * @param endNode   End node
+     * @return Guide nodes in path order, or null if end node is unreachable
+     */
+    public synchronized List<GuideNode> findPathNodes(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode)
+    {
+        int start = getNodeIndex(startNode);
+        int end = getNodeIndex(endNode);
+        if (start == NO_NODE || end == NO_NODE) return null;
+        RouteTable table = mRouteTable;
+        if (table != null) return buildPathNodes(table, start, end);
+
+        // Use a new search id instead of clearing arrays, so each search only touches explored nodes
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mSearchIds, 0);
+            mSearchId = 1;
+        }
+        mSearchIds[start] = mSearchId;
+        mSearchDist[start] = 0;
+        mSearchPrev[start] = NO_NODE;
+
+        // A* algorithm started
+        NodeHeap heap = new NodeHeap();
+        heap.push(start, startNode.calcDistance(endNode));
+        boolean found = false;
+        while (!heap.isEmpty())
+        {
+            double priority = heap.getTopPriority();
+            int current = heap.pop();
+            double distance = mSearchDist[current];
+            // Skip stale entries, the node was pushed again with a shorter distance
+            if (priority > distance + mNodes.get(current).calcDistance(endNode)) continue;
+            if (current == end)
+            {
+                found = true;
+                break;
+            }
+            for (int i = mLinkOffsets[current]; i < mLinkOffsets[current + 1]; i++)
+            {
+                int target = mLinkTargets[i];
+                double newDistance = distance + mLinkDistances[i];
+                if (mSearchIds[target] == mSearchId && newDistance >= mSearchDist[target]) continue;
+                mSearchIds[target] = mSearchId;
+                mSearchDist[target] = newDistance;
+                mSearchPrev[target] = current;
+                heap.push(target, newDistance + mNodes.get(target).calcDistance(endNode));
+            }
+        }
+        // A* algorithm finished
+
+        if (!found) return null;
+        List<GuideNode> nodes = new ArrayList<>();
+        for (int current = end; current != NO_NODE; current = mSearchPrev[current]) nodes.add(mNodes.get(current));
+        Collections.reverse(nodes);
+        return nodes;
     }
 
     /**
@@ -312,13 +633,49 @@ public class FloorNavigator
      *
      * @param startNode Start node
      * @param endNode   End node
-     * @return Path's fork, or null if the build process isn't finished yet
+     * @return New path object, or null if the build process isn't finished yet or end node is unreachable
      */
     public Path getPath(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode)
     {
-        PathBuilder builder = mPathTable.get(startNode).get(endNode);
-        if (builder == null) return null;
-        return builder.getPath();
+        return toPath(getPathNodes(startNode, endNode));
+    }
+
+    /**
+     * Gets path nodes from start node to end node in related floor, looked up from route table or built trees
+     *
+     * @param startNode Start node
+     * @param endNode   End node
+     * @return Guide nodes in path order, or null if the build process isn't finished yet or end node is unreachable
+     */
+    public List<GuideNode> getPathNodes(final @NonNull GuideNode startNode, final @NonNull GuideNode endNode)
+    {
+        int start = getNodeIndex(startNode);
+        int end = getNodeIndex(endNode);
+        if (start == NO_NODE || end == NO_NODE) return null;
+        RouteTable table = mRouteTable;
+        if (table != null) return buildPathNodes(table, start, end);
+
+        List<GuideNode> nodes = new ArrayList<>();
+        PathTree tree = mPathTrees[end];
+        int[] prev = tree.getPrev();
+        double[] dist = tree.getDist();
+        if (prev != null && dist != null)
+        {
+            if (dist[start] == Double.POSITIVE_INFINITY) return null;
+            // Walk from start node toward root
+            for (int current = start; current != NO_NODE; current = prev[current]) nodes.add(mNodes.get(current));
+            return nodes;
+        }
+        tree = mPathTrees[start];
+        prev = tree.getPrev();
+        dist = tree.getDist();
+        if (prev == null || dist == null) return null;
+        if (dist[end] == Double.POSITIVE_INFINITY) return null;
+
+        // Walk back from end node, then reverse
+        for (int current = end; current != NO_NODE; current = prev[current]) nodes.add(mNodes.get(current));
+        Collections.reverse(nodes);
+        return nodes;
     }
 
     //endregion
@@ -0,0 +1,550 @@
+package cn.vicey.navigator.Navigate;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Adjacency;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.GuideGraph;
+import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Utils.Logger;
+import cn.vicey.navigator.Utils.Tools;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Map navigator class, provides navigate ability across all floors of related map
+ * <p>
+ * The graph is built from floors' guide graphs, so floors aren't loaded to build it. Nodes are indexed by floor index
+ * and guide node index, and a floor is only loaded when its guide nodes are needed. Floors aren't kept by the navigator,
+ * related map's LRU decides how long they stay loaded, and a floor loaded again as a new object is indexed again.
+ */
+public class MapNavigator
+{
+    //region Constants
+
+    private static final String LOGGER_TAG = "MapNavigator";
+
+    /**
+     * Default cost of moving between two adjacent floors, in floor coordinate unit
+     */
+    public static final double DEFAULT_FLOOR_CHANGE_COST = 200;
+
+    /**
+     * Max count of nodes settled by a route repair search before giving up
+     */
+    public static final int MAX_REPAIR_SETTLED_NODES = 256;
+
+    //endregion
+
+    //region Fields
+
+    private double               mFloorChangeCost; // Cost of moving between two adjacent floors
+    private int[]                mFloorOffsets;    // Each floor's first node index, floor count + 1 entries
+    private ContractionHierarchy mHierarchy;       // Shortcut index used for route queries, or null if there isn't one
+    private double[]             mLinkDistances;   // Link distances, indexed by link index
+    private int[]                mLinkOffsets;     // Each node's first link index, node count + 1 entries
+    private int[]                mLinkTargets;     // Link target node indexes, indexed by link index
+    private int                  mNodeCount;       // Guide node count of all floors
+    private int[]                mNodeFloors;      // Floor index of each node
+    private int[]                mNodeX;           // X axis of each node
+    private int[]                mNodeY;           // Y axis of each node
+    private int[]                mSearchPrev;      // Previous node indexes used by search
+    private double[]             mSearchDist;      // Distances from start node used by search
+    private int                  mSearchId;        // Current search id
+    private int[]                mSearchIds;       // Search id which last touched each node, used to reset arrays lazily
+
+    private List<WeakReference<Floor>>      mFloorReferences = new ArrayList<>();   // Each indexed floor's weak reference, indexed by floor index
+    private Map                             mMap;                                   // Related map
+    private WeakHashMap<GuideNode, Integer> mNodeIndexes     = new WeakHashMap<>(); // Guide node to node index table of indexed floors, entries of unused nodes are dropped
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link MapNavigator}
+     *
+     * @param map             Related map
+     * @param floorChangeCost Cost of moving between two adjacent floors, in floor coordinate unit
+     */
+    public MapNavigator(final @NonNull Map map, double floorChangeCost)
+    {
+        mFloorChangeCost = floorChangeCost;
+
+        // Index guide nodes of all floors by their floors' guide graphs
+        mMap = map;
+        int floorCount = map.getFloorCount();
+        GuideGraph[] graphs = new GuideGraph[floorCount];
+        mFloorOffsets = new int[floorCount + 1];
+        for (int i = 0; i < floorCount; i++)
+        {
+            graphs[i] = map.getGuideGraph(i);
+            if (graphs[i] == null)
+            {
+                Logger.error(LOGGER_TAG, "Failed to load guide graph. Floor " + i + " will be unreachable.");
+                graphs[i] = new GuideGraph(new int[0], new int[0], new int[0], new int[0], new Adjacency(new int[1], new int[0], new float[0]));
+            }
+            mFloorOffsets[i + 1] = mFloorOffsets[i] + graphs[i].getNodeCount();
+            mFloorReferences.add(null);
+        }
+        mNodeCount = mFloorOffsets[floorCount];
+        mNodeFloors = new int[mNodeCount];
+        mNodeX = new int[mNodeCount];
+        mNodeY = new int[mNodeCount];
+        int[] nodePrevs = new int[mNodeCount];
+        int[] nodeNexts = new int[mNodeCount];
+        for (int i = 0; i < floorCount; i++)
+        {
+            int nodeCount = graphs[i].getNodeCount();
+            int offset = mFloorOffsets[i];
+            Arrays.fill(mNodeFloors, offset, offset + nodeCount, i);
+            System.arraycopy(graphs[i].getX(), 0, mNodeX, offset, nodeCount);
+            System.arraycopy(graphs[i].getY(), 0, mNodeY, offset, nodeCount);
+            System.arraycopy(graphs[i].getPrev(), 0, nodePrevs, offset, nodeCount);
+            System.arraycopy(graphs[i].getNext(), 0, nodeNexts, offset, nodeCount);
+        }
+
+        // Count links, entry links are stitched both ways so one sided declarations still work
+        Adjacency[] adjacencies = new Adjacency[floorCount];
+        for (int i = 0; i < floorCount; i++) adjacencies[i] = graphs[i].getAdjacency();
+        int[] linkCounts = new int[mNodeCount];
+        for (int i = 0; i < mNodeCount; i++)
+        {
+            int[] floorOffsets = adjacencies[mNodeFloors[i]].getOffsets();
+            int local = i - mFloorOffsets[mNodeFloors[i]];
+            linkCounts[i] += floorOffsets[local + 1] - floorOffsets[local];
+            int prev = getEntryIndex(i, nodePrevs[i], -1);
+            int next = getEntryIndex(i, nodeNexts[i], 1);
+            if (prev >= 0)
+            {
+                linkCounts[i]++;
+                linkCounts[prev]++;
+            }
+            if (next >= 0)
+            {
+                linkCounts[i]++;
+                linkCounts[next]++;
+            }
+        }
+        mLinkOffsets = new int[mNodeCount + 1];
+        for (int i = 0; i < mNodeCount; i++) mLinkOffsets[i + 1] = mLinkOffsets[i] + linkCounts[i];
+        mLinkTargets = new int[mLinkOffsets[mNodeCount]];
+        mLinkDistances = new double[mLinkOffsets[mNodeCount]];
+
+        // Fill links
+        int[] cursors = Arrays.copyOf(mLinkOffsets, mNodeCount);
+        for (int i = 0; i < mNodeCount; i++)
+        {
+            Adjacency adjacency = adjacencies[mNodeFloors[i]];
+            int floorOffset = mFloorOffsets[mNodeFloors[i]];
+            int local = i - floorOffset;
+            for (int j = adjacency.getOffsets()[local]; j < adjacency.getOffsets()[local + 1]; j++)
+            {
+                mLinkTargets[cursors[i]] = floorOffset + adjacency.getTargets()[j];
+                mLinkDistances[cursors[i]++] = adjacency.getWeights()[j];
+            }
+            int prev = getEntryIndex(i, nodePrevs[i], -1);
+            int next = getEntryIndex(i, nodeNexts[i], 1);
+            if (prev >= 0) addEntryLink(cursors, i, prev);
+            if (next >= 0) addEntryLink(cursors, i, next);
+        }
+
+        mSearchPrev = new int[mNodeCount];
+        mSearchDist = new double[mNodeCount];
+        mSearchIds = new int[mNodeCount];
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets cost of moving between two adjacent floors
+     *
+     * @return Cost of moving between two adjacent floors
+     */
+    public double getFloorChangeCost()
+    {
+        return mFloorChangeCost;
+    }
+
+    /**
+     * Gets shortcut index used for route queries
+     *
+     * @return Contraction hierarchy, or null if there isn't one
+     */
+    public ContractionHierarchy getHierarchy()
+    {
+        return mHierarchy;
+    }
+
+    /**
+     * Gets distance of the shortest link between two nodes
+     *
+     * @param from Start node index
+     * @param to   End node index
+     * @return Link distance, or {@link Double#POSITIVE_INFINITY} if the nodes aren't linked
+     */
+    public double getLinkDistance(int from, int to)
+    {
+        double distance = Double.POSITIVE_INFINITY;
+        for (int i = mLinkOffsets[from]; i < mLinkOffsets[from + 1]; i++)
+            if (mLinkTargets[i] == to) distance = Math.min(distance, mLinkDistances[i]);
+        return distance;
+    }
+
+    /**
+     * Gets link distances, indexed by link index
+     *
+     * @return Link distances
+     */
+    public double[] getLinkDistances()
+    {
+        return mLinkDistances;
+    }
+
+    /**
+     * Gets each node's first link index, node count + 1 entries
+     *
+     * @return Link offsets
+     */
+    public int[] getLinkOffsets()
+    {
+        return mLinkOffsets;
+    }
+
+    /**
+     * Gets link target node indexes, indexed by link index
+     *
+     * @return Link targets
+     */
+    public int[] getLinkTargets()
+    {
+        return mLinkTargets;
+    }
+
+    /**
+     * Gets guide node by node index, loading its floor if the floor isn't loaded
+     *
+     * @param index Node index
+     * @return Guide node
+     * @throws IllegalStateException Thrown if failed to load the node's floor or it doesn't match the graph
+     */
+    public GuideNode getNode(int index)
+    {
+        int floorIndex = mNodeFloors[index];
+        return indexFloor(floorIndex).getGuideNode(index - mFloorOffsets[floorIndex]);
+    }
+
+    /**
+     * Gets guide node count of all floors
+     *
+     * @return Guide node count
+     */
+    public int getNodeCount()
+    {
+        return mNodeCount;
+    }
+
+    /**
+     * Gets floor index of specified node
+     *
+     * @param index Node index
+     * @return Floor index
+     */
+    public int getNodeFloorIndex(int index)
+    {
+        return mNodeFloors[index];
+    }
+
+    /**
+     * Gets node index of specified guide node, indexing its floor if the node isn't indexed
+     *
+     * @param floorIndex Floor index of the node
+     * @param node       Specified guide node
+     * @return Node index, or {@link FloorNavigator#NO_NODE} if the node isn't in specified floor of related map
+     * @throws IllegalStateException Thrown if failed to load specified floor or it doesn't match the graph
+     */
+    public synchronized int getNodeIndex(int floorIndex, final @NonNull GuideNode node)
+    {
+        if (floorIndex < 0 || floorIndex >= mFloorReferences.size()) return FloorNavigator.NO_NODE;
+        Integer index = mNodeIndexes.get(node);
+        if (index == null)
+        {
+            // Node may belong to a floor which was loaded again as a new object and isn't indexed yet
+            indexFloor(floorIndex);
+            index = mNodeIndexes.get(node);
+        }
+        return index == null || mNodeFloors[index] != floorIndex ? FloorNavigator.NO_NODE : index;
+    }
+
+    /**
+     * Sets shortcut index used for route queries
+     *
+     * @param value Contraction hierarchy built for this navigator's graph, or null to search with A* algorithm
+     */
+    public void setHierarchy(ContractionHierarchy value)
+    {
+        if (value != null && (value.getNodeCount() != mNodeCount || !Tools.isDoubleEqual(value.getFloorChangeCost(), mFloorChangeCost)))
+        {
+            Logger.error(LOGGER_TAG, "Contraction hierarchy doesn't match map. Contraction hierarchy will be ignored.");
+            return;
+        }
+        mHierarchy = value;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Add entry link between two nodes in both directions
+     *
+     * @param cursors Next free link index of each node
+     * @param from    Start node index
+     * @param to      End node index
+     */
+    private void addEntryLink(final @NonNull int[] cursors, int from, int to)
+    {
+        double distance = mFloorChangeCost + calcDistance(from, to);
+        mLinkTargets[cursors[from]] = to;
+        mLinkDistances[cursors[from]++] = distance;
+        mLinkTargets[cursors[to]] = from;
+        mLinkDistances[cursors[to]++] = distance;
+    }
+
+    /**
+     * Calculate straight line distance between two nodes, ignoring floors
+     *
+     * @param from Start node index
+     * @param to   End node index
+     * @return Distance between two nodes
+     */
+    private double calcDistance(int from, int to)
+    {
+        double dx = mNodeX[from] - mNodeX[to];
+        double dy = mNodeY[from] - mNodeY[to];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Calculate admissible estimate of remaining cost from a node to end node
+     *
+     * @param from Node index
+     * @param end  End node index
+     * @return Estimated cost
+     */
+    private double estimate(int from, int end)
+    {
+        return calcDistance(from, end) + Math.abs(mNodeFloors[from] - mNodeFloors[end]) * mFloorChangeCost;
+    }
+
+    /**
+     * Gets node index of entry node in adjacent floor
+     *
+     * @param index      Node index
+     * @param entryIndex Entry node's guide node index in adjacent floor, or {@link GuideGraph#NO_ENTRY} if there is no entry
+     * @param direction  -1 for previous floor, 1 for next floor
+     * @return Entry node index, or {@link FloorNavigator#NO_NODE} if entry is missing or invalid
+     */
+    private int getEntryIndex(int index, int entryIndex, int direction)
+    {
+        int floor = mNodeFloors[index] + direction;
+        if (floor < 0 || floor >= mFloorOffsets.length - 1) return FloorNavigator.NO_NODE;
+        if (entryIndex < 0 || entryIndex >= mFloorOffsets[floor + 1] - mFloorOffsets[floor])
+            return FloorNavigator.NO_NODE;
+        return mFloorOffsets[floor] + entryIndex;
+    }
+
+    /**
+     * Gets specified floor and index its guide nodes if they aren't indexed. Nodes of a floor which was loaded again are
+     * indexed alongside the old ones, so nodes still held by callers keep working
+     *
+     * @param floorIndex Floor index
+     * @return Specified floor
+     * @throws IllegalStateException Thrown if failed to load specified floor or it doesn't match the graph
+     */
+    private synchronized Floor indexFloor(int floorIndex)
+    {
+        Floor floor = mMap.getFloor(floorIndex);
+        if (floor == null) throw new IllegalStateException("Failed to load floor. Floor index: " + floorIndex);
+        WeakReference<Floor> reference = mFloorReferences.get(floorIndex);
+        if (reference != null && reference.get() == floor) return floor;
+        List<GuideNode> nodes = floor.getGuideNodes();
+        int offset = mFloorOffsets[floorIndex];
+        if (nodes.size() != mFloorOffsets[floorIndex + 1] - offset)
+            throw new IllegalStateException("Floor doesn't match guide graph. Floor index: " + floorIndex);
+        for (int i = 0; i < nodes.size(); i++) mNodeIndexes.put(nodes.get(i), offset + i);
+        mFloorReferences.set(floorIndex, new WeakReference<>(floor));
+        return floor;
+    }
+
+    /**
+     * Find the shortest route from start node to end node across floors, using contraction hierarchy if there is one,
+     * otherwise A* algorithm
+     *
+     * @param startFloorIndex Start node's floor index
+     * @param startNode       Start node
+     * @param endFloorIndex   End node's floor index
+     * @param endNode         End node
+     * @return New route object, or null if end node is unreachable
+     */
+    public synchronized Route findRoute(int startFloorIndex, final @NonNull GuideNode startNode, int endFloorIndex, final @NonNull GuideNode endNode)
+    {
+        int start = getNodeIndex(startFloorIndex, startNode);
+        int end = getNodeIndex(endFloorIndex, endNode);
+        if (start == FloorNavigator.NO_NODE || end == FloorNavigator.NO_NODE) return null;
+        ContractionHierarchy hierarchy = mHierarchy;
+        if (hierarchy != null) return hierarchy.findRoute(this, start, end);
+
+        // Use a new search id instead of clearing arrays, so each search only touches explored nodes
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mSearchIds, 0);
+            mSearchId = 1;
+        }
+        mSearchIds[start] = mSearchId;
+        mSearchDist[start] = 0;
+        mSearchPrev[start] = FloorNavigator.NO_NODE;
+
+        // A* algorithm started
+        NodeHeap heap = new NodeHeap();
+        heap.push(start, estimate(start, end));
+        boolean found = false;
+        while (!heap.isEmpty())
+        {
+            double priority = heap.getTopPriority();
+            int current = heap.pop();
+            double distance = mSearchDist[current];
+            // Skip stale entries, the node was pushed again with a shorter distance
+            if (priority > distance + estimate(current, end)) continue;
+            if (current == end)
+            {
+                found = true;
+                break;
+            }
+            for (int i = mLinkOffsets[current]; i < mLinkOffsets[current + 1]; i++)
+            {
+                int target = mLinkTargets[i];
+                double newDistance = distance + mLinkDistances[i];
+                if (mSearchIds[target] == mSearchId && newDistance >= mSearchDist[target]) continue;
+                mSearchIds[target] = mSearchId;
+                mSearchDist[target] = newDistance;
+                mSearchPrev[target] = current;
+                heap.push(target, newDistance + estimate(target, end));
+            }
+        }
+        // A* algorithm finished
+
+        if (!found) return null;
+        int size = 0;
+        for (int current = end; current != FloorNavigator.NO_NODE; current = mSearchPrev[current]) size++;
+        int[] nodes = new int[size];
+        for (int current = end; current != FloorNavigator.NO_NODE; current = mSearchPrev[current])
+            nodes[--size] = current;
+        return new Route(this, nodes);
+    }
+
+    /**
+     * Create route from guide nodes of a floor found by its floor navigator
+     *
+     * @param floorIndex Floor index of the nodes
+     * @param nodes      Guide nodes in route order
+     * @return New route object, or null if any node isn't in specified floor of related map
+     */
+    public Route createRoute(int floorIndex, final @NonNull List<GuideNode> nodes)
+    {
+        if (nodes.isEmpty()) return null;
+        int[] indexes = new int[nodes.size()];
+        for (int i = 0; i < indexes.length; i++)
+        {
+            indexes[i] = getNodeIndex(floorIndex, nodes.get(i));
+            if (indexes[i] == FloorNavigator.NO_NODE) return null;
+        }
+        return new Route(this, indexes);
+    }
+
+    /**
+     * Repair route after user stepped off it, by searching around user's nearest node for the cheapest way back onto
+     * the route. The search settles at most {@link #MAX_REPAIR_SETTLED_NODES} nodes, so its cost depends on how far user
+     * deviates instead of map size
+     *
+     * @param route         Route to repair
+     * @param fromFloorIndex Floor index of user's nearest node
+     * @param fromNode       User's nearest node
+     * @return New route object which starts from specified node and shares the rest with old route, or null if the
+     * route can't be reached within search limit
+     */
+    public synchronized Route repairRoute(final @NonNull Route route, int fromFloorIndex, final @NonNull GuideNode fromNode)
+    {
+        int from = getNodeIndex(fromFloorIndex, fromNode);
+        if (from == FloorNavigator.NO_NODE) return null;
+
+        if (++mSearchId == 0)
+        {
+            Arrays.fill(mSearchIds, 0);
+            mSearchId = 1;
+        }
+        mSearchIds[from] = mSearchId;
+        mSearchDist[from] = 0;
+        mSearchPrev[from] = FloorNavigator.NO_NODE;
+
+        // Dijkstra algorithm started, stops once no unsettled node can beat the best join
+        NodeHeap heap = new NodeHeap();
+        heap.push(from, 0);
+        double bestCost = Double.POSITIVE_INFINITY;
+        int bestNode = FloorNavigator.NO_NODE;
+        int bestPosition = -1;
+        int settledCount = 0;
+        while (!heap.isEmpty() && settledCount < MAX_REPAIR_SETTLED_NODES)
+        {
+            double distance = heap.getTopPriority();
+            int current = heap.pop();
+            if (distance > mSearchDist[current]) continue;
+            if (distance >= bestCost) break;
+            settledCount++;
+            int position = route.indexOf(current);
+            if (position >= 0)
+            {
+                double cost = distance + route.getRemaining(position);
+                if (cost < bestCost)
+                {
+                    bestCost = cost;
+                    bestNode = current;
+                    bestPosition = position;
+                }
+                // No need to search beyond route
+                continue;
+            }
+            for (int i = mLinkOffsets[current]; i < mLinkOffsets[current + 1]; i++)
+            {
+                int target = mLinkTargets[i];
+                double newDistance = distance + mLinkDistances[i];
+                if (mSearchIds[target] == mSearchId && newDistance >= mSearchDist[target]) continue;
+                mSearchIds[target] = mSearchId;
+                mSearchDist[target] = newDistance;
+                mSearchPrev[target] = current;
+                heap.push(target, newDistance);
+            }
+        }
+        // Dijkstra algorithm finished
+
+        if (bestNode == FloorNavigator.NO_NODE) return null;
+        int size = 0;
+        for (int current = mSearchPrev[bestNode]; current != FloorNavigator.NO_NODE; current = mSearchPrev[current]) size++;
+        int[] detour = new int[size];
+        double[] detourRemaining = new double[size];
+        for (int current = mSearchPrev[bestNode]; current != FloorNavigator.NO_NODE; current = mSearchPrev[current])
+        {
+            detour[--size] = current;
+            detourRemaining[size] = bestCost - mSearchDist[current];
+        }
+        return route.join(detour, detourRemaining, bestPosition);
+    }
+
+    //endregion
+}
@@ -35,6 +35,7 @@ public final class NavigateManager
 
     private static final Object SYNC_LOCK_TASK = new Object(); // Sync lock for task
     private static final Object SYNC_LOCK_PATH = new Object(); // Sync lock for user path
+    private static final Object SYNC_LOCK_MAP  = new Object(); // Sync lock for map navigator
 
     private static final int  MAX_ERROR_COUNT = 3;            // Max error count
     private static final long UPDATE_INTERNAL = 1000;         // Update internal in milliseconds
@@ -73,17 +74,20 @@ public final class NavigateManager
 
     //region Static fields
 
-    private static int          mCurrentFloorIndex;  // Current floor index
-    private static Point        mCurrentLocation;    // Current location
-    private static Map          mCurrentMap;         // Current map object
-    private static NavigateTask mCurrentTask;        // Current navigate task
-    private static Path         mCurrentUserPath;    // Current user path
-    private static int          mErrorCount;         // Error count
-    private static Path         mCurrentGuidePath;          // Current guide path
-    private static boolean      mIsNavigating;       // Indicates whether the manager is navigating
-    private static int          mLastFloorIndex;     // Last floor index used for notifying floor changed event
-    private static GuideNode    mLastNearestNode;    // Last nearest node
-    private static GuideNode    mCurrentNearestNode; // Nearest node to user node
+    private static int                  mCurrentFloorIndex;  // Current floor index
+    private static Point                mCurrentLocation;    // Current location
+    private static volatile Map         mCurrentMap;         // Current map object
+    private static NavigateTask         mCurrentTask;        // Current navigate task
+    private static volatile Path        mCurrentUserPath;    // Current user path
+    private static int                  mErrorCount;         // Error count
+    private static volatile Path        mCurrentGuidePath;   // Current guide path
+    private static boolean              mIsNavigating;       // Indicates whether the manager is navigating
+    private static int                  mLastFloorIndex;     // Last floor index used for notifying floor changed event
+    private static GuideNode            mLastNearestNode;    // Last nearest node
+    private static GuideNode            mCurrentNearestNode; // Nearest node to user node
+    private static ContractionHierarchy mHierarchy;          // Current map's precomputed contraction hierarchy
+    private static List<RouteTable>     mRouteTables;        // Current map's precomputed route tables
+    private static MapNavigator         mMapNavigator;       // Current map's navigator
 
     private static SparseArray<FloorNavigator>          mFloorNavigators       = new SparseArray<>();                         // Floor navigators
     private static FloorNavigator.OnBuildFailedListener mOnBuildFailedListener = new FloorNavigator.OnBuildFailedListener() // Listener for build finished event
@@ -91,8 +95,8 @@ public final class NavigateManager
         @Override
         public void onFailed()
         {
+            // Navigate task keeps its searched route and requests the build again, so navigation goes on
             AlertManager.alert(R.string.failed_to_build_path);
-            cancelNavigate();
         }
     };
     private static SparseArray<List<OnUpdateListener>>  mOnUpdateListeners     = new SparseArray<>();                         // Listeners for update event
@@ -122,7 +126,7 @@ public final class NavigateManager
                 if (mErrorCount < MAX_ERROR_COUNT)
                 {
                     Logger.info(LOGGER_TAG, "Trying to restart update task.");
-                    new Thread(this).start();
+                    FloorNavigator.BUILD_EXECUTOR.execute(this);
                 }
                 else
                     Logger.error(LOGGER_TAG, "Navigate manager update task's crash count reaches its limit. Update function will be disabled.");
@@ -155,15 +159,13 @@ public final class NavigateManager
     }
 
     /**
-     * Gets current guide path's fork
+     * Gets current guide path
      *
-     * @return Current guide path's fork, or null if guide path is not ready
+     * @return Current guide path, or null if guide path is not ready
      */
     public static Path getCurrentGuidePath()
     {
-        Path guidePath = mCurrentGuidePath;
-        if (guidePath == null) return null;
-        return guidePath.fork();
+        return mCurrentGuidePath;
     }
 
     /**
@@ -197,18 +199,23 @@ public final class NavigateManager
     }
 
     /**
-     * Gets current user path's fork
+     * Gets current user path
      *
-     * @return Current user path's fork, or null if there is no user path
+     * @return Current user path, or null if there is no user path
      */
     public static Path getCurrentUserPath()
     {
-        Path path = null;
-        synchronized (SYNC_LOCK_PATH)
-        {
-            if (mCurrentUserPath != null) path = mCurrentUserPath.fork();
-        }
-        return path;
+        return mCurrentUserPath;
+    }
+
+    /**
+     * Gets cost of moving between two adjacent floors used by cross floor navigation
+     *
+     * @return Cost in floor coordinate unit
+     */
+    public static double getFloorChangeCost()
+    {
+        return MapNavigator.DEFAULT_FLOOR_CHANGE_COST;
     }
 
     /**
@@ -219,10 +226,26 @@ public final class NavigateManager
      */
     public static Floor getFloor(int floorIndex)
     {
-        if (mCurrentMap == null) return null;
+        Map map = mCurrentMap;
+        if (map == null) return null;
+        if (floorIndex < 0) return null;
+        if (floorIndex > map.getFloorCount() - 1) return null;
+        return map.getFloor(floorIndex);
+    }
+
+    /**
+     * Gets specified floor if it's loaded, without loading it
+     *
+     * @param floorIndex Specified floor index
+     * @return Specified floor object, or null if index is out of range or the floor isn't loaded
+     */
+    public static Floor getLoadedFloor(int floorIndex)
+    {
+        Map map = mCurrentMap;
+        if (map == null) return null;
         if (floorIndex < 0) return null;
-        if (floorIndex > mCurrentMap.getFloors().size() - 1) return null;
-        return mCurrentMap.getFloors().get(floorIndex);
+        if (floorIndex > map.getFloorCount() - 1) return null;
+        return map.getLoadedFloor(floorIndex);
     }
 
     /**
@@ -233,16 +256,40 @@ public final class NavigateManager
      */
     public static FloorNavigator getNavigator(int floorIndex)
     {
-        Floor floor = getFloor(floorIndex);
-        if (floor == null) return null;
-        // If target floor's navigator didn't exist then create it
-        if (mFloorNavigators.get(floorIndex) == null)
+        synchronized (SYNC_LOCK_MAP)
         {
-            FloorNavigator navigator = new FloorNavigator(floor);
-            navigator.setOnBuildFailedListener(mOnBuildFailedListener);
-            mFloorNavigators.put(floorIndex, navigator);
+            Floor floor = getFloor(floorIndex);
+            if (floor == null) return null;
+            // If target floor's navigator didn't exist then create it
+            if (mFloorNavigators.get(floorIndex) == null)
+            {
+                FloorNavigator navigator = new FloorNavigator(floor);
+                navigator.setOnBuildFailedListener(mOnBuildFailedListener);
+                if (mRouteTables != null && floorIndex < mRouteTables.size())
+                    navigator.setRouteTable(mRouteTables.get(floorIndex));
+                mFloorNavigators.put(floorIndex, navigator);
+            }
+            return mFloorNavigators.get(floorIndex);
+        }
+    }
+
+    /**
+     * Gets navigator across all floors of current map
+     *
+     * @return Current map's navigator, or null if no current map is set
+     */
+    public static MapNavigator getMapNavigator()
+    {
+        synchronized (SYNC_LOCK_MAP)
+        {
+            if (mCurrentMap == null) return null;
+            if (mMapNavigator == null)
+            {
+                mMapNavigator = new MapNavigator(mCurrentMap, getFloorChangeCost());
+                if (mHierarchy != null) mMapNavigator.setHierarchy(mHierarchy);
+            }
+            return mMapNavigator;
         }
-        return mFloorNavigators.get(floorIndex);
     }
 
     /**
@@ -266,13 +313,23 @@ public final class NavigateManager
     }
 
     /**
-     * Set current map
+     * Set current map with its precomputed route indexes, the map and its indexes are swapped in at once
      *
-     * @param map Map to set
+     * @param map         Map to set
+     * @param routeTables Route tables indexed by floor index, or null if there isn't any
+     * @param hierarchy   Contraction hierarchy, or null if there isn't one
      */
-    public static void setCurrentMap(final @NonNull Map map)
+    public static void setCurrentMap(final @NonNull Map map, List<RouteTable> routeTables, ContractionHierarchy hierarchy)
     {
-        mCurrentMap = map;
+        cancelNavigate();
+        synchronized (SYNC_LOCK_MAP)
+        {
+            mCurrentMap = map;
+            mHierarchy = hierarchy;
+            mMapNavigator = null;
+            mRouteTables = routeTables;
+            mFloorNavigators.clear();
+        }
     }
 
     //endregion
@@ -333,8 +390,8 @@ public final class NavigateManager
         }
 
         // Get guide path and append user node to it
-        mCurrentGuidePath = task.getPath();
-        if (mCurrentGuidePath != null) mCurrentGuidePath.appendHead(UserNode.getInstance());
+        Path guidePath = task.getPath();
+        mCurrentGuidePath = guidePath == null ? null : guidePath.appendHead(UserNode.getInstance());
 
     }
 
@@ -368,7 +425,7 @@ public final class NavigateManager
             {
                 // If no current user path then create one
                 if (mCurrentUserPath == null) mCurrentUserPath = new Path(null);
-                mCurrentUserPath.appendTail(UserNode.getInstance());
+                mCurrentUserPath = mCurrentUserPath.appendTail(UserNode.getInstance());
             }
         }
     }
@@ -393,10 +450,13 @@ public final class NavigateManager
     {
         if (!mIsNavigating) return;
         mIsNavigating = false;
+        NavigateTask task;
         synchronized (SYNC_LOCK_TASK)
         {
+            task = mCurrentTask;
             mCurrentTask = null;
         }
+        if (task != null) task.cancel();
         mCurrentGuidePath = null;
     }
 
@@ -420,7 +480,7 @@ public final class NavigateManager
     {
         try
         {
-            new Thread(mUpdateTask).start();
+            FloorNavigator.BUILD_EXECUTOR.execute(mUpdateTask);
 
             mOnUpdateListeners.put(HIGHEST_PRIORITY, new ArrayList<OnUpdateListener>());
             mOnUpdateListeners.put(HIGHER_PRIORITY, new ArrayList<OnUpdateListener>());
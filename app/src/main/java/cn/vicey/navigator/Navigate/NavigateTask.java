@@ -5,8 +5,10 @@ import cn.vicey.navigator.Models.Floor;
 import cn.vicey.navigator.Models.Nodes.GuideNode;
 import cn.vicey.navigator.Utils.Logger;
 
+import java.util.List;
+
 /**
- * Navigate task class, provides navigate path to {@link NavigateManager} by using {@link FloorNavigator}
+ * Navigate task class, provides navigate path to {@link NavigateManager} by using {@link FloorNavigator} and {@link MapNavigator}
  */
 public class NavigateTask
 {
@@ -20,13 +22,15 @@ public class NavigateTask
 
     //region Fields
 
-    private int            mErrorCount;       // Task's error count
-    private boolean        mIsFinished;       // Whether the task has been finished yet
-    private FloorNavigator mNavigator;
-    private GuideNode      mNearestEntryNode;
-    private Path           mPath;
-    private GuideNode      mTarget;           // Task's target node
-    private int            mTargetFloorIndex; // Task's target floor index
+    private FloorNavigator.BuildRequest mBuildRequest;     // Pending shortest path tree build request, or null if there isn't one
+    private int                         mErrorCount;       // Task's error count
+    private volatile boolean            mHasPathTree;      // Whether shortest path tree to target node is built in current floor
+    private volatile boolean            mIsFinished;       // Whether the task has been finished yet
+    private volatile FloorNavigator     mNavigator;        // Current floor's navigator
+    private volatile Path               mPath;             // Path to follow in current floor
+    private volatile Route              mRoute;            // Route to target node, or null if there isn't one yet
+    private GuideNode                   mTarget;           // Task's target node
+    private int                         mTargetFloorIndex; // Task's target floor index
 
     //endregion
 
@@ -52,12 +56,11 @@ public class NavigateTask
     /**
      * Gets latest path from start node to end node
      *
-     * @return Latest path's fork, or null if navigator isn't ready yet
+     * @return Latest path, or null if navigator isn't ready yet
      */
     public Path getPath()
     {
-        if (mPath == null) return null;
-        return mPath.fork();
+        return mPath;
     }
 
     /**
@@ -84,10 +87,132 @@ public class NavigateTask
 
     //region Methods
 
+    /**
+     * Cancel pending shortest path tree build request
+     */
+    private synchronized void cancelBuildRequest()
+    {
+        FloorNavigator.BuildRequest request = mBuildRequest;
+        mBuildRequest = null;
+        if (request != null) request.cancel();
+    }
+
+    /**
+     * Find a new route from specified node to target node
+     *
+     * @param navigator       Current map's navigator
+     * @param startFloorIndex Start node's floor index
+     * @param startNode       Start node
+     * @return New route object, or null if target is unreachable
+     */
+    private Route findRoute(final @NonNull MapNavigator navigator, int startFloorIndex, final @NonNull GuideNode startNode)
+    {
+        FloorNavigator floorNavigator = mNavigator;
+        if (navigator.getHierarchy() == null && floorNavigator != null && startFloorIndex == mTargetFloorIndex)
+        {
+            // Target in same floor, look path up from route table or built tree, or search it now and build the tree for
+            // following searches
+            List<GuideNode> nodes = mHasPathTree ? floorNavigator.getPathNodes(startNode, mTarget) : null;
+            if (nodes == null)
+            {
+                nodes = floorNavigator.findPathNodes(startNode, mTarget);
+                if (nodes != null) requestPathTree(startNode);
+            }
+            if (nodes != null) return navigator.createRoute(startFloorIndex, nodes);
+        }
+        // Target in other floor, only reachable through other floors, or contraction hierarchy is available
+        return navigator.findRoute(startFloorIndex, startNode, mTargetFloorIndex, mTarget);
+    }
+
+    /**
+     * Publish route and its path in current floor
+     *
+     * @param route Route to publish, or null if target is unreachable
+     * @param path  Route's path in current floor, or null if target is unreachable
+     */
+    private synchronized void publishRoute(Route route, Path path)
+    {
+        if (mIsFinished) return;
+        mRoute = route;
+        mPath = path;
+        if (route != null) return;
+        // Target is unreachable
+        Logger.error(LOGGER_TAG, "Target is unreachable.");
+        mIsFinished = true;
+    }
+
+    /**
+     * Request shortest path tree to target node, so following searches in current floor can be looked up from it
+     *
+     * @param startNode Node where the request is made
+     */
+    private synchronized void requestPathTree(final @NonNull GuideNode startNode)
+    {
+        final FloorNavigator navigator = mNavigator;
+        if (mBuildRequest != null || mHasPathTree || navigator == null) return;
+        mBuildRequest = navigator.buildPathAsync(startNode, mTarget, new FloorNavigator.OnPathBuiltListener()
+        {
+            @Override
+            public void onBuilt(Path path)
+            {
+                synchronized (NavigateTask.this)
+                {
+                    if (mIsFinished || mNavigator != navigator) return;
+                    mBuildRequest = null;
+                    mHasPathTree = true;
+                }
+                // User may have moved since the request was made, switch to the route from built tree, the route is
+                // looked up without holding the task so the update thread isn't blocked meanwhile
+                MapNavigator mapNavigator = NavigateManager.getMapNavigator();
+                GuideNode nearestNode = NavigateManager.getNearestNode();
+                if (mapNavigator == null || nearestNode == null) return;
+                try
+                {
+                    List<GuideNode> nodes = navigator.getPathNodes(nearestNode, mTarget);
+                    Route route = nodes == null ? null : mapNavigator.createRoute(mTargetFloorIndex, nodes);
+                    if (route == null) return;
+                    Path floorPath = route.getFloorPath();
+                    synchronized (NavigateTask.this)
+                    {
+                        if (mNavigator == navigator) publishRoute(route, floorPath);
+                    }
+                }
+                catch (Throwable t)
+                {
+                    // Keep current route, next update reports the error if it persists
+                    Logger.error(LOGGER_TAG, "Failed to switch to route from built tree.", t);
+                }
+            }
+
+            @Override
+            public void onFailed()
+            {
+                synchronized (NavigateTask.this)
+                {
+                    // Keep current route and request the tree again on next search
+                    if (mNavigator == navigator) mBuildRequest = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel the task, pending requests made by the task will be dropped
+     */
+    public void cancel()
+    {
+        mIsFinished = true;
+        cancelBuildRequest();
+    }
+
     public void onFloorChanged()
     {
-        mNavigator = null;
-        mNearestEntryNode = null;
+        synchronized (this)
+        {
+            cancelBuildRequest();
+            mHasPathTree = false;
+            mNavigator = null;
+        }
 
         Floor floor = NavigateManager.getCurrentFloor();
         if (floor == null)
@@ -108,44 +233,43 @@ public class NavigateTask
 
     public void onNearestNodeChanged()
     {
-        if (NavigateManager.getNearestNode() == mTarget)
+        GuideNode nearestNode = NavigateManager.getNearestNode();
+        if (nearestNode == mTarget)
         {
             mIsFinished = true;
             return;
         }
-        Floor floor = NavigateManager.getCurrentFloor();
-        if (floor == null)
+        int floorIndex = NavigateManager.getCurrentFloorIndex();
+        Floor floor = NavigateManager.getFloor(floorIndex);
+        if (floor == null || nearestNode == null)
         {
             mIsFinished = true;
             return;
         }
-        int x = NavigateManager.getCurrentLocation().x;
-        int y = NavigateManager.getCurrentLocation().y;
-        int diff = NavigateManager.getCurrentFloorIndex() - mTargetFloorIndex;
-        if (diff == 0)
+        MapNavigator navigator = NavigateManager.getMapNavigator();
+        if (navigator == null)
         {
-            // Target in same floor
-            mNavigator.buildPathAsync(NavigateManager.getNearestNode(), mTarget);
-            mPath = mNavigator.getPath(NavigateManager.getNearestNode(), mTarget);
+            mIsFinished = true;
+            return;
         }
-        else
+
+        // Trim current route if user is still on it, this includes arriving at another floor through an entry, otherwise
+        // repair it around user, and only search a new route if user went too far away from it. Searching is done without
+        // holding the task, so built trees can be delivered meanwhile, only the result is published under the lock
+        try
         {
-            if (mNearestEntryNode == null)
-            {
-                // Try to find new nearest entry node
-                // diff < 0 -> target is higher
-                // diff > 0 -> target is lower
-                mNearestEntryNode = diff < 0 ? floor.findNearestNextEntryNode(x, y) : floor.findNearestPrevEntryNode(x, y);
-                if (mNearestEntryNode == null)
-                {
-                    // Target is unreachable
-                    Logger.error(LOGGER_TAG, "Target is unreachable.");
-                    mIsFinished = true;
-                    return;
-                }
-            }
-            mNavigator.buildPathAsync(NavigateManager.getNearestNode(), mNearestEntryNode);
-            mPath = mNavigator.getPath(NavigateManager.getNearestNode(), mNearestEntryNode);
+            Route route = mRoute;
+            if (route != null && !route.advanceTo(floorIndex, nearestNode))
+                route = navigator.repairRoute(route, floorIndex, nearestNode);
+            if (route == null) route = findRoute(navigator, floorIndex, nearestNode);
+            publishRoute(route, route == null ? null : route.getFloorPath());
+        }
+        catch (Throwable t)
+        {
+            // A floor on the route failed to load, finished task
+            Logger.error(LOGGER_TAG, "Failed to update route.", t);
+            mPath = null;
+            mIsFinished = true;
         }
     }
 
@@ -0,0 +1,151 @@
+package cn.vicey.navigator.Navigate;
+
+import java.util.Arrays;
+
+/**
+ * Node heap class, a binary min heap of node indexes keyed by priority, stores entries in primitive arrays
+ */
+public class NodeHeap
+{
+    //region Constants
+
+    private static final int DEFAULT_CAPACITY = 16; // Default heap capacity
+
+    //endregion
+
+    //region Fields
+
+    private int mSize; // Entry count
+
+    private int[]    mNodes;      // Node indexes
+    private double[] mPriorities; // Node priorities
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link NodeHeap}
+     */
+    public NodeHeap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initialize new instance of class {@link NodeHeap}
+     *
+     * @param capacity Initial capacity
+     */
+    public NodeHeap(int capacity)
+    {
+        if (capacity < 1) capacity = DEFAULT_CAPACITY;
+        mNodes = new int[capacity];
+        mPriorities = new double[capacity];
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets the node index with lowest priority
+     *
+     * @return Node index with lowest priority
+     */
+    public int getTop()
+    {
+        return mNodes[0];
+    }
+
+    /**
+     * Gets the lowest priority
+     *
+     * @return Lowest priority
+     */
+    public double getTopPriority()
+    {
+        return mPriorities[0];
+    }
+
+    /**
+     * Gets whether the heap is empty
+     *
+     * @return Whether the heap is empty
+     */
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Remove all entries
+     */
+    public void clear()
+    {
+        mSize = 0;
+    }
+
+    /**
+     * Remove the entry with lowest priority
+     *
+     * @return Removed node index
+     */
+    public int pop()
+    {
+        int top = mNodes[0];
+        mSize--;
+        if (mSize > 0)
+        {
+            int node = mNodes[mSize];
+            double priority = mPriorities[mSize];
+            int i = 0;
+            int half = mSize >>> 1;
+            while (i < half)
+            {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < mSize && mPriorities[right] < mPriorities[child]) child = right;
+                if (priority <= mPriorities[child]) break;
+                mNodes[i] = mNodes[child];
+                mPriorities[i] = mPriorities[child];
+                i = child;
+            }
+            mNodes[i] = node;
+            mPriorities[i] = priority;
+        }
+        return top;
+    }
+
+    /**
+     * Add a node index with specified priority, a node may be pushed more than once
+     *
+     * @param node     Node index
+     * @param priority Node priority
+     */
+    public void push(int node, double priority)
+    {
+        if (mSize == mNodes.length)
+        {
+            mNodes = Arrays.copyOf(mNodes, mSize * 2);
+            mPriorities = Arrays.copyOf(mPriorities, mSize * 2);
+        }
+        int i = mSize++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (mPriorities[parent] <= priority) break;
+            mNodes[i] = mNodes[parent];
+            mPriorities[i] = mPriorities[parent];
+            i = parent;
+        }
+        mNodes[i] = node;
+        mPriorities[i] = priority;
+    }
+
+    //endregion
+}
@@ -4,14 +4,87 @@ import android.support.annotation.NonNull;
 import cn.vicey.navigator.Models.Nodes.NodeBase;
 import cn.vicey.navigator.Models.Nodes.PathNode;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Path class, represents a path in map
+ * Path class, represents an immutable path in map
+ * <p>
+ * Paths share their nodes with the paths they're appended from, so they can be passed between threads without copying.
+ * A path is either a node prepended to another path, or a prefix of a node buffer which only grows at its tail.
  */
 public class Path
 {
+    //region Inner classes
+
+    /**
+     * Node buffer shared by paths appended from each other, slots below size are never changed once written
+     */
+    private static class Buffer
+    {
+        //region Constants
+
+        private static final int DEFAULT_CAPACITY = 8; // Default capacity
+
+        //endregion
+
+        //region Fields
+
+        private PathNode[] mItems; // Buffered nodes
+        private int        mSize;  // Count of written slots
+
+        //endregion
+
+        //region Constructors
+
+        /**
+         * Initialize new instance of class {@link Buffer}
+         *
+         * @param capacity Initial capacity
+         */
+        public Buffer(int capacity)
+        {
+            mItems = new PathNode[Math.max(capacity, DEFAULT_CAPACITY)];
+        }
+
+        //endregion
+    }
+
+    /**
+     * Read-only list view of path's nodes
+     */
+    private class NodeList
+            extends AbstractList<PathNode>
+    {
+        //region Override methods
+
+        @Override
+        public PathNode get(int index)
+        {
+            if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+            Path path = Path.this;
+            while (path.mHead != null)
+            {
+                if (index == 0) return path.mHead;
+                index--;
+                path = path.mBody;
+            }
+            return path.mBuffer.mItems[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return mSize;
+        }
+
+        //endregion
+    }
+
+    //endregion
+
     //region Constants
 
     private static final String LOGGER_TAG = "Path";
@@ -20,9 +93,13 @@ public class Path
 
     //region Fields
 
-    private double mLength; // Path length
+    private final Path     mBody;   // Path following head node, or null if this path is a buffer prefix
+    private final Buffer   mBuffer; // Shared node buffer, or null if this path has a head node
+    private final PathNode mHead;   // Node prepended to body, or null if this path is a buffer prefix
+    private final double   mLength; // Path length
+    private final int      mSize;   // Path's node count
 
-    private List<PathNode> mNodes = new ArrayList<>(); // Path nodes
+    private final List<PathNode> mNodes = new NodeList(); // Read-only view of path nodes
 
     //endregion
 
@@ -36,7 +113,7 @@ public class Path
      */
     public Path(int x, int y)
     {
-        appendTail(new PathNode(x, y));
+        this(new PathNode(x, y));
     }
 
     /**
@@ -46,7 +123,47 @@ public class Path
      */
     public Path(NodeBase startNode)
     {
-        if (startNode != null) appendTail(startNode);
+        mBody = null;
+        mHead = null;
+        mLength = 0;
+        mBuffer = new Buffer(Buffer.DEFAULT_CAPACITY);
+        if (startNode != null)
+        {
+            mBuffer.mItems[0] = new PathNode(startNode);
+            mBuffer.mSize = 1;
+        }
+        mSize = mBuffer.mSize;
+    }
+
+    /**
+     * Initialize new instance of class {@link Path} as a buffer prefix
+     *
+     * @param buffer Shared node buffer
+     * @param size   Path's node count
+     * @param length Path length
+     */
+    private Path(final @NonNull Buffer buffer, int size, double length)
+    {
+        mBody = null;
+        mHead = null;
+        mBuffer = buffer;
+        mSize = size;
+        mLength = length;
+    }
+
+    /**
+     * Initialize new instance of class {@link Path} as a node prepended to another path
+     *
+     * @param head Head node
+     * @param body Path following head node
+     */
+    private Path(final @NonNull PathNode head, final @NonNull Path body)
+    {
+        mBody = body;
+        mBuffer = null;
+        mHead = head;
+        mSize = body.mSize + 1;
+        mLength = body.mSize == 0 ? 0 : body.mLength + head.calcDistance(body.getStart());
     }
 
     //endregion
@@ -60,8 +177,8 @@ public class Path
      */
     public PathNode getEnd()
     {
-        if (mNodes.isEmpty()) return null;
-        return mNodes.get(mNodes.size() - 1);
+        if (mSize == 0) return null;
+        return getNode(mSize - 1);
     }
 
     /**
@@ -74,10 +191,21 @@ public class Path
         return mLength;
     }
 
+    /**
+     * Gets node at specified index
+     *
+     * @param index Node index
+     * @return Node at specified index
+     */
+    public PathNode getNode(int index)
+    {
+        return mNodes.get(index);
+    }
+
     /**
      * Gets path's nodes
      *
-     * @return Path's nodes
+     * @return Read-only view of path's nodes
      */
     public List<PathNode> getNodes()
     {
@@ -91,7 +219,7 @@ public class Path
      */
     public int getSize()
     {
-        return mNodes.size();
+        return mSize;
     }
 
     /**
@@ -101,8 +229,8 @@ public class Path
      */
     public PathNode getStart()
     {
-        if (mNodes.isEmpty()) return null;
-        return mNodes.get(0);
+        if (mSize == 0) return null;
+        return mHead != null ? mHead : mBuffer.mItems[0];
     }
 
     //endregion
@@ -110,83 +238,84 @@ public class Path
     //region Methods
 
     /**
-     * Append a node to path's head
+     * Copy path's nodes into a new buffer
+     *
+     * @param capacity Capacity of new buffer, at least path's node count
+     * @return New buffer holding path's nodes
+     */
+    private Buffer copyBuffer(int capacity)
+    {
+        Buffer buffer = new Buffer(capacity);
+        if (mHead == null) System.arraycopy(mBuffer.mItems, 0, buffer.mItems, 0, mSize);
+        else mNodes.toArray(buffer.mItems);
+        buffer.mSize = mSize;
+        return buffer;
+    }
+
+    /**
+     * Create path with a node appended to this path's head, this path is unchanged
      *
      * @param node Node to append
-     * @return This path
+     * @return New path
      */
     public Path appendHead(final @NonNull NodeBase node)
     {
-        if (mNodes.isEmpty())
-        {
-            mNodes.add(new PathNode(node));
-            return this;
-        }
-        NodeBase head = mNodes.get(0);
-        for (NodeBase.Link link : head.getLinks())
-        {
-            if (link.getTarget() == node)
-            {
-                mNodes.add(0, new PathNode(node));
-                mLength += link.getDistance();
-                break;
-            }
-        }
-        mNodes.add(0, new PathNode(node));
-        mLength += head.calcDistance(node);
-        return this;
+        return new Path(new PathNode(node), this);
     }
 
     /**
-     * Append nodes to path's head
+     * Create path with nodes appended to this path's head one by one, this path is unchanged
      *
      * @param nodes Nodes to append
-     * @return This path
+     * @return New path
      */
     public Path appendHead(final @NonNull List<NodeBase> nodes)
     {
-        for (NodeBase node : nodes) appendHead(node);
-        return this;
+        Path path = this;
+        for (NodeBase node : nodes) path = path.appendHead(node);
+        return path;
     }
 
     /**
-     * Append a node to path's tail
+     * Create path with a node appended to this path's tail, this path is unchanged
      *
      * @param node Node to append
-     * @return This path
+     * @return New path
      */
     public Path appendTail(final @NonNull NodeBase node)
     {
-        if (mNodes.isEmpty())
-        {
-            mNodes.add(new PathNode(node));
-            return this;
-        }
-        NodeBase tail = mNodes.get(mNodes.size() - 1);
-        for (NodeBase.Link link : tail.getLinks())
+        PathNode newNode = new PathNode(node);
+        double length = mSize == 0 ? 0 : mLength + getEnd().calcDistance(newNode);
+        if (mHead == null)
         {
-            if (link.getTarget() == node)
+            Buffer buffer = mBuffer;
+            synchronized (buffer)
             {
-                mNodes.add(new PathNode(node));
-                mLength += link.getDistance();
-                break;
+                // Grow in place if no other path has grown from this one yet
+                if (buffer.mSize == mSize && mSize < buffer.mItems.length)
+                {
+                    buffer.mItems[mSize] = newNode;
+                    buffer.mSize++;
+                    return new Path(buffer, mSize + 1, length);
+                }
             }
         }
-        mNodes.add(new PathNode(node));
-        mLength += tail.calcDistance(node);
-        return this;
+        Buffer buffer = copyBuffer(mSize * 2);
+        buffer.mItems[buffer.mSize++] = newNode;
+        return new Path(buffer, mSize + 1, length);
     }
 
     /**
-     * Append nodes to path's tail
+     * Create path with nodes appended to this path's tail, this path is unchanged
      *
      * @param nodes Nodes to append
-     * @return This path
+     * @return New path
      */
     public Path appendTail(final @NonNull List<NodeBase> nodes)
     {
-        for (NodeBase node : nodes) appendTail(node);
-        return this;
+        Path path = this;
+        for (NodeBase node : nodes) path = path.appendTail(node);
+        return path;
     }
 
     /**
@@ -200,19 +329,6 @@ public class Path
         return mNodes.contains(node);
     }
 
-    /**
-     * Fork a path from this path
-     *
-     * @return Forked path
-     */
-    public Path fork()
-    {
-        Path newPath = new Path(null);
-        newPath.mLength = mLength;
-        for (PathNode node : mNodes) newPath.mNodes.add(new PathNode(node));
-        return newPath;
-    }
-
     /**
      * Gets the nearest node to target node in this path
      *
@@ -254,33 +370,37 @@ public class Path
      */
     public boolean isEnd(final @NonNull NodeBase target)
     {
-        return !mNodes.isEmpty() && mNodes.get(mNodes.size() - 1) == target;
+        return mSize != 0 && getEnd() == target;
     }
 
     /**
-     * Remove path's tail
+     * Create path without this path's tail, this path is unchanged
      *
-     * @return This path
+     * @return New path
      */
     public Path removeTail()
     {
-        if (mNodes.isEmpty()) return this;
-        PathNode oldTail = mNodes.get(mNodes.size() - 1);
-        if (mNodes.size() > 1)
+        if (mSize == 0) return this;
+        if (mHead != null)
         {
-            PathNode newTail = mNodes.get(mNodes.size() - 2);
-            mLength -= newTail.calcDistance(oldTail);
+            if (mSize == 1) return new Path(null);
+            return new Path(mHead, mBody.removeTail());
         }
-        mNodes.remove(oldTail);
-        return this;
+        double length = mSize == 1 ? 0 : mLength - mBuffer.mItems[mSize - 2].calcDistance(mBuffer.mItems[mSize - 1]);
+        return new Path(mBuffer, mSize - 1, length);
     }
 
+    /**
+     * Create path with reversed node order
+     *
+     * @return New path
+     */
     public Path reverse()
     {
-        Path newPath = new Path(null);
-        newPath.mLength = mLength;
-        for (int i = mNodes.size() - 1; i >= 0; i--) newPath.mNodes.add(mNodes.get(i));
-        return newPath;
+        Buffer buffer = copyBuffer(mSize);
+        List<PathNode> items = Arrays.asList(buffer.mItems).subList(0, mSize);
+        Collections.reverse(items);
+        return new Path(buffer, mSize, mLength);
     }
 
     //endregion
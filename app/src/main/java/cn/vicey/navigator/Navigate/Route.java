@@ -0,0 +1,218 @@
+package cn.vicey.navigator.Navigate;
+
+import android.support.annotation.NonNull;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+
+import java.util.HashMap;
+
+/**
+ * Route class, represents a route across floors found by {@link MapNavigator}
+ * <p>
+ * A route is made of a short detour followed by a suffix of a base route. Repaired routes share their base route, so
+ * rerouting costs in proportion to the detour instead of the whole route.
+ */
+public class Route
+{
+    //region Fields
+
+    private int          mCursor;          // Position of the node user is nearest to
+    private int[]        mDetour;          // Detour node indexes before joining base route
+    private double[]     mDetourRemaining; // Remaining distance to end node from each detour node
+    private int          mJoin;            // Position in base route where detour joins it
+    private MapNavigator mNavigator;       // Navigator which found this route
+    private int[]        mNodes;           // Base route's node indexes in related navigator
+    private double[]     mRemaining;       // Remaining distance to end node from each base route node
+
+    private HashMap<Integer, Integer> mPositions; // Base route's node index to position table
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link Route}
+     *
+     * @param navigator Navigator which found this route
+     * @param nodes     Node indexes in related navigator
+     */
+    public Route(final @NonNull MapNavigator navigator, final @NonNull int[] nodes)
+    {
+        mNavigator = navigator;
+        mNodes = nodes;
+        mRemaining = new double[nodes.length];
+        for (int i = nodes.length - 2; i >= 0; i--)
+            mRemaining[i] = mRemaining[i + 1] + navigator.getLinkDistance(nodes[i], nodes[i + 1]);
+        mPositions = new HashMap<>();
+        for (int i = 0; i < nodes.length; i++) mPositions.put(nodes[i], i);
+        mDetour = new int[0];
+        mDetourRemaining = new double[0];
+    }
+
+    /**
+     * Initialize new instance of class {@link Route} which shares base route with another route
+     *
+     * @param base            Route to share base route with
+     * @param detour          Detour node indexes before joining base route
+     * @param detourRemaining Remaining distance to end node from each detour node
+     * @param join            Position in base route where detour joins it
+     */
+    private Route(final @NonNull Route base, final @NonNull int[] detour, final @NonNull double[] detourRemaining, int join)
+    {
+        mNavigator = base.mNavigator;
+        mNodes = base.mNodes;
+        mRemaining = base.mRemaining;
+        mPositions = base.mPositions;
+        mDetour = detour;
+        mDetourRemaining = detourRemaining;
+        mJoin = join;
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets position of the node user is nearest to
+     *
+     * @return Cursor position
+     */
+    public int getCursor()
+    {
+        return mCursor;
+    }
+
+    /**
+     * Gets route length, including floor change costs
+     *
+     * @return Route length
+     */
+    public double getLength()
+    {
+        return getRemaining(0);
+    }
+
+    /**
+     * Gets node index at specified position
+     *
+     * @param position Position in this route
+     * @return Node index in related navigator
+     */
+    public int getNodeIndex(int position)
+    {
+        if (position < mDetour.length) return mDetour[position];
+        return mNodes[mJoin + position - mDetour.length];
+    }
+
+    /**
+     * Gets remaining distance to end node from specified position
+     *
+     * @param position Position in this route
+     * @return Remaining distance, including floor change costs
+     */
+    public double getRemaining(int position)
+    {
+        if (position < mDetour.length) return mDetourRemaining[position];
+        return mRemaining[mJoin + position - mDetour.length];
+    }
+
+    /**
+     * Gets route's node count
+     *
+     * @return Node count
+     */
+    public int getSize()
+    {
+        return mDetour.length + mNodes.length - mJoin;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Move cursor to specified node if the node is in this route
+     *
+     * @param floorIndex Floor index of the node
+     * @param node       Node user is nearest to
+     * @return Whether the node is in this route or not
+     */
+    public boolean advanceTo(int floorIndex, final @NonNull GuideNode node)
+    {
+        int position = indexOf(floorIndex, node);
+        if (position < 0) return false;
+        mCursor = position;
+        return true;
+    }
+
+    /**
+     * Gets the part of this route which starts from cursor and stays in the cursor node's floor
+     *
+     * @return New path object
+     * @throws IllegalStateException Thrown if failed to load the cursor node's floor
+     */
+    public Path getFloorPath()
+    {
+        int size = getSize();
+        int floorIndex = mNavigator.getNodeFloorIndex(getNodeIndex(mCursor));
+        Path path = new Path(null);
+        for (int i = mCursor; i < size && mNavigator.getNodeFloorIndex(getNodeIndex(i)) == floorIndex; i++)
+        {
+            path = path.appendTail(mNavigator.getNode(getNodeIndex(i)));
+        }
+        return path;
+    }
+
+    /**
+     * Gets position of specified node in this route
+     *
+     * @param floorIndex Floor index of the node
+     * @param node       Specified node
+     * @return Position of the node, or -1 if the node isn't in this route
+     */
+    public int indexOf(int floorIndex, final @NonNull GuideNode node)
+    {
+        int index = mNavigator.getNodeIndex(floorIndex, node);
+        if (index == FloorNavigator.NO_NODE) return -1;
+        return indexOf(index);
+    }
+
+    /**
+     * Gets position of specified node index in this route
+     *
+     * @param index Node index in related navigator
+     * @return Position of the node, or -1 if the node isn't in this route
+     */
+    public int indexOf(int index)
+    {
+        for (int i = 0; i < mDetour.length; i++) if (mDetour[i] == index) return i;
+        Integer position = mPositions.get(index);
+        if (position == null || position < mJoin) return -1;
+        return mDetour.length + position - mJoin;
+    }
+
+    /**
+     * Create a route which follows a detour and then joins this route
+     *
+     * @param detour          Detour node indexes, not including the joined node
+     * @param detourRemaining Remaining distance to end node from each detour node
+     * @param position        Position in this route where detour joins it
+     * @return New route object sharing base route with this route, with cursor at detour's first node
+     */
+    public Route join(final @NonNull int[] detour, final @NonNull double[] detourRemaining, int position)
+    {
+        if (position >= mDetour.length)
+            return new Route(this, detour, detourRemaining, mJoin + position - mDetour.length);
+
+        // Joined in this route's detour, keep the rest of it
+        int rest = mDetour.length - position;
+        int[] newDetour = new int[detour.length + rest];
+        double[] newDetourRemaining = new double[detour.length + rest];
+        System.arraycopy(detour, 0, newDetour, 0, detour.length);
+        System.arraycopy(detourRemaining, 0, newDetourRemaining, 0, detour.length);
+        System.arraycopy(mDetour, position, newDetour, detour.length, rest);
+        System.arraycopy(mDetourRemaining, position, newDetourRemaining, detour.length, rest);
+        return new Route(this, newDetour, newDetourRemaining, mJoin);
+    }
+
+    //endregion
+}
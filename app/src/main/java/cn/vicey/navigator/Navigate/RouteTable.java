@@ -0,0 +1,97 @@
+package cn.vicey.navigator.Navigate;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Route table class, holds precomputed previous node indexes of every shortest path in a floor
+ */
+public class RouteTable
+{
+    //region Constants
+
+    /**
+     * Entry width when node indexes are stored as unsigned 16 bit values
+     */
+    public static final int NARROW_ENTRY_WIDTH = 2;
+    /**
+     * Entry width when node indexes are stored as 32 bit values
+     */
+    public static final int WIDE_ENTRY_WIDTH   = 4;
+
+    private static final int NARROW_NO_NODE = 0xFFFF; // No node value of narrow entries
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Gets entry width used to store specified node count
+     *
+     * @param nodeCount Node count
+     * @return Entry width in bytes
+     */
+    public static int getEntryWidth(int nodeCount)
+    {
+        return nodeCount < NARROW_NO_NODE ? NARROW_ENTRY_WIDTH : WIDE_ENTRY_WIDTH;
+    }
+
+    //endregion
+
+    //region Fields
+
+    private CharBuffer mNarrowEntries; // Narrow entries, or null if entries are wide
+    private int        mNodeCount;     // Node count
+    private IntBuffer  mWideEntries;   // Wide entries, or null if entries are narrow
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link RouteTable}
+     *
+     * @param nodeCount Node count
+     * @param buffer    Buffer holds node count * node count entries, row by row for each start node
+     */
+    public RouteTable(int nodeCount, final @NonNull ByteBuffer buffer)
+    {
+        mNodeCount = nodeCount;
+        if (getEntryWidth(nodeCount) == NARROW_ENTRY_WIDTH) mNarrowEntries = buffer.asCharBuffer();
+        else mWideEntries = buffer.asIntBuffer();
+    }
+
+    //endregion
+
+    //region Accessors
+
+    /**
+     * Gets node count
+     *
+     * @return Node count
+     */
+    public int getNodeCount()
+    {
+        return mNodeCount;
+    }
+
+    /**
+     * Gets previous node index of specified node in the shortest path from start node
+     *
+     * @param start Start node index
+     * @param node  Specified node index
+     * @return Previous node index, or {@link FloorNavigator#NO_NODE} if node is start node or unreachable
+     */
+    public int getPrev(int start, int node)
+    {
+        int index = start * mNodeCount + node;
+        if (mWideEntries != null) return mWideEntries.get(index);
+        int value = mNarrowEntries.get(index);
+        return value == NARROW_NO_NODE ? FloorNavigator.NO_NODE : value;
+    }
+
+    //endregion
+}
@@ -15,9 +15,10 @@ public final class SettingsManager
 
     private static final String LOGGER_TAG = "SettingsManager";
 
-    private static final String DEFAULT_INT     = "0";               // Default int settings item value
-    private static final String DEFAULT_STRING  = "";                // Default string settings item value
-    private static final String PREFERENCE_NAME = "SettingsManager"; // Preference name
+    private static final String DEFAULT_INT        = "0";                 // Default int settings item value
+    private static final String DEFAULT_STRING     = "";                  // Default string settings item value
+    private static final String HARDWARE_RENDERING = "HardwareRendering"; // Settings item name of whether map is rendered by OpenGL ES
+    private static final String PREFERENCE_NAME    = "SettingsManager";   // Preference name
 
     //endregion
 
@@ -40,6 +41,16 @@ public final class SettingsManager
         return mDebugModeEnabled;
     }
 
+    /**
+     * Gets whether map is rendered by OpenGL ES instead of canvas
+     *
+     * @return Whether the hardware rendering is enabled
+     */
+    public static boolean isHardwareRenderingEnabled()
+    {
+        return "1".equals(getSettingsItemValue(HARDWARE_RENDERING, DEFAULT_INT));
+    }
+
     /**
      * Sets whether the debug mode is enabled
      *
@@ -59,6 +70,16 @@ public final class SettingsManager
 
     }
 
+    /**
+     * Sets whether map is rendered by OpenGL ES instead of canvas, takes effect when map renderer flushes
+     *
+     * @param value Whether the hardware rendering is enabled
+     */
+    public static void setHardwareRenderingEnabled(boolean value)
+    {
+        setSettingValue(HARDWARE_RENDERING, value ? "1" : DEFAULT_INT);
+    }
+
     //endregion
 
     //region Static methods
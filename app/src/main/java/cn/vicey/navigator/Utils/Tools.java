@@ -6,6 +6,7 @@ import cn.vicey.navigator.Navigator;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -29,9 +30,19 @@ public final class Tools
 
     private static final String LOGGER_TAG = "Tools";
 
-    private static final String DATE_PATTERN     = "yyyy-MM-dd"; // Date string pattern
-    private static final double DOUBLE_PRECISION = 0.0000001;    // Double equality check precision
-    private static final String TIME_PATTERN     = "HH:mm:ss";   // Time string pattern
+    private static final String DATE_PATTERN     = "yyyy-MM-dd";              // Date string pattern
+    private static final double DOUBLE_PRECISION = 0.0000001;                 // Double equality check precision
+    private static final String HASH_ALGORITHM   = "SHA-1";                   // File content hash algorithm
+    private static final String PINYIN_ENCODING  = "GBK";                     // Encoding whose level 1 characters are sorted by pinyin
+    private static final String PINYIN_INITIALS  = "abcdefghjklmnopqrstwxyz"; // Pinyin initials of each boundary
+    private static final String TIME_PATTERN     = "HH:mm:ss";                // Time string pattern
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024; // Buffer size for hashing file content
+
+    private static final int[] PINYIN_BOUNDARIES = { // First GBK code of each pinyin initial, the last one is the end of level 1 characters
+            45217, 45253, 45761, 46318, 46826, 47010, 47297, 47614, 48119, 49062, 49324, 49896, 50371, 50614, 50622,
+            50906, 51387, 51446, 52218, 52698, 52980, 53689, 54481, 55290
+    };
 
     /**
      * File encoding
@@ -268,6 +279,39 @@ public final class Tools
         }
     }
 
+    /**
+     * Gets hash of specified file's content, as lower case hex string
+     *
+     * @param file File to hash
+     * @return Content hash, or null if error occurred
+     */
+    public static String getFileHash(final @NonNull File file)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            FileInputStream fis = new FileInputStream(file);
+            try
+            {
+                byte[] buf = new byte[HASH_BUFFER_SIZE];
+                int len;
+                while ((len = fis.read(buf)) > 0) digest.update(buf, 0, len);
+            }
+            finally
+            {
+                fis.close();
+            }
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest()) builder.append(String.format(Locale.US, "%02x", b & 0xff));
+            return builder.toString();
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to get hash of file " + file + ".", t);
+            return null;
+        }
+    }
+
     /**
      * Gets all files under specified directory
      *
@@ -302,6 +346,48 @@ public final class Tools
         }
     }
 
+    /**
+     * Gets pinyin initials of a string, each common Chinese character is replaced by its pinyin initial and other
+     * characters are kept
+     *
+     * @param str String to convert
+     * @return Converted string, or null if the string has no Chinese character of which pinyin initial is known
+     */
+    public static String getPinyinInitials(final @NonNull String str)
+    {
+        try
+        {
+            StringBuilder builder = new StringBuilder(str.length());
+            boolean converted = false;
+            for (int i = 0; i < str.length(); i++)
+            {
+                char c = str.charAt(i);
+                if (c < 0x80)
+                {
+                    builder.append(c);
+                    continue;
+                }
+                byte[] bytes = String.valueOf(c).getBytes(PINYIN_ENCODING);
+                int code = bytes.length == 2 ? (bytes[0] & 0xff) << 8 | (bytes[1] & 0xff) : 0;
+                if (code < PINYIN_BOUNDARIES[0] || code >= PINYIN_BOUNDARIES[PINYIN_BOUNDARIES.length - 1])
+                {
+                    builder.append(c);
+                    continue;
+                }
+                int initial = 0;
+                while (code >= PINYIN_BOUNDARIES[initial + 1]) initial++;
+                builder.append(PINYIN_INITIALS.charAt(initial));
+                converted = true;
+            }
+            return converted ? builder.toString() : null;
+        }
+        catch (Throwable t)
+        {
+            Logger.error(LOGGER_TAG, "Failed to get pinyin initials of " + str + ".", t);
+            return null;
+        }
+    }
+
     /**
      * Check equality of two double value equal
      *
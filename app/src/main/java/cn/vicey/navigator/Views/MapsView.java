@@ -1,6 +1,7 @@
 package cn.vicey.navigator.Views;
 
 import android.Manifest;
+import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.os.Environment;
 import android.support.annotation.NonNull;
@@ -14,7 +15,9 @@ import cn.vicey.navigator.Activities.MainActivity;
 import cn.vicey.navigator.Components.FileList;
 import cn.vicey.navigator.File.MapManager;
 import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Navigate.ContractionHierarchy;
 import cn.vicey.navigator.Navigate.NavigateManager;
+import cn.vicey.navigator.Navigate.RouteTable;
 import cn.vicey.navigator.Navigator;
 import cn.vicey.navigator.R;
 import cn.vicey.navigator.Share.AlertManager;
@@ -22,6 +25,7 @@ import cn.vicey.navigator.Utils.Logger;
 import cn.vicey.navigator.Utils.Tools;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Maps view, provides a view to manage all map files
@@ -33,6 +37,8 @@ public class MapsView
 
     private static final String LOGGER_TAG = "MapsView";
 
+    private static final int MAX_PROGRESS = 100; // Max value of load progress
+
     //endregion
 
     //region Listeners
@@ -90,14 +96,7 @@ public class MapsView
                             //region Load
                             case 0:
                             {
-                                Map map;
-                                if ((map = MapManager.loadMap(chosenFile.getName())) != null)
-                                {
-                                    NavigateManager.setCurrentMap(map);
-                                    AlertManager.alert(R.string.load_succeed);
-                                    mParent.switchView(MainActivity.VIEW_NAVIGATE);
-                                }
-                                else AlertManager.alert(R.string.load_failed);
+                                loadMap(chosenFile.getName());
                                 break;
                             }
                             //endregion
@@ -284,9 +283,11 @@ public class MapsView
 
     //region Fields
 
-    private DialogInterface mFileChooserDialog; // File chooser dialog
-    private FileList        mMapList;           // Map list
-    private MainActivity    mParent;            // Parent activity
+    private DialogInterface        mFileChooserDialog; // File chooser dialog
+    private ProgressDialog         mLoadDialog;        // Map loading progress dialog
+    private MapManager.LoadRequest mLoadRequest;       // Current map loading request
+    private FileList               mMapList;           // Map list
+    private MainActivity           mParent;            // Parent activity
 
     //endregion
 
@@ -339,6 +340,100 @@ public class MapsView
         }
     }
 
+    /**
+     * Load specified map file in background, then set it as current map
+     *
+     * @param mapFileName Map file name to load
+     */
+    private void loadMap(final @NonNull String mapFileName)
+    {
+        if (mLoadRequest != null) mLoadRequest.cancel();
+        if (mLoadDialog != null) mLoadDialog.dismiss();
+
+        final ProgressDialog loadDialog = new ProgressDialog(mParent);
+        loadDialog.setTitle(R.string.loading);
+        loadDialog.setMessage(mapFileName);
+        loadDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        loadDialog.setMax(MAX_PROGRESS);
+        loadDialog.setCanceledOnTouchOutside(false);
+        loadDialog.setOnCancelListener(new DialogInterface.OnCancelListener()
+        {
+            @Override
+            public void onCancel(DialogInterface dialogInterface)
+            {
+                if (mLoadDialog != loadDialog) return;
+                mLoadRequest.cancel();
+                mLoadRequest = null;
+                mLoadDialog = null;
+                AlertManager.alert(R.string.load_cancelled);
+            }
+        });
+        loadDialog.setButton(DialogInterface.BUTTON_NEGATIVE, mParent.getString(R.string.cancel), new DialogInterface.OnClickListener()
+        {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int i)
+            {
+                dialogInterface.cancel();
+            }
+        });
+        mLoadDialog = loadDialog;
+        mLoadRequest = MapManager.loadMapAsync(mapFileName, new MapManager.OnLoadListener()
+        {
+            @Override
+            public void onFailed()
+            {
+                mParent.invoke(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (mLoadDialog != loadDialog) return;
+                        loadDialog.dismiss();
+                        mLoadRequest = null;
+                        mLoadDialog = null;
+                        AlertManager.alert(R.string.load_failed);
+                    }
+                });
+            }
+
+            @Override
+            public void onLoaded(final Map map, final List<RouteTable> routeTables, final ContractionHierarchy hierarchy)
+            {
+                mParent.invoke(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // Dropped if the loading is cancelled or replaced before this runs
+                        if (mLoadDialog != loadDialog) return;
+                        loadDialog.dismiss();
+                        mLoadRequest = null;
+                        mLoadDialog = null;
+                        NavigateManager.setCurrentMap(map, routeTables, hierarchy);
+                        AlertManager.alert(R.string.load_succeed);
+                        mParent.switchView(MainActivity.VIEW_NAVIGATE);
+                    }
+                });
+            }
+
+            @Override
+            public void onProgress(long processedBytes, long totalBytes, int elementCount)
+            {
+                if (totalBytes <= 0) return;
+                final int progress = (int) Math.min(MAX_PROGRESS, processedBytes * MAX_PROGRESS / totalBytes);
+                mParent.invoke(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (mLoadDialog == loadDialog) loadDialog.setProgress(progress);
+                    }
+                });
+            }
+        });
+        loadDialog.show();
+    }
+
     /**
      * Flush view
      */
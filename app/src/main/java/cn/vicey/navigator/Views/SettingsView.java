@@ -160,6 +160,14 @@ public class SettingsView
             DebugManager.setDisplayAllGuidePaths(b);
         }
     };
+    private final CompoundButton.OnCheckedChangeListener mOnHardwareRenderingCheckedChangeListener   = new CompoundButton.OnCheckedChangeListener() // Listener for check box checked change event
+    {
+        @Override
+        public void onCheckedChanged(CompoundButton compoundButton, boolean b)
+        {
+            SettingsManager.setHardwareRenderingEnabled(b);
+        }
+    };
     private final CompoundButton.OnCheckedChangeListener mOnTrackPathCheckedChangeListener           = new CompoundButton.OnCheckedChangeListener() // Listener for check box checked change event
     {
         @Override
@@ -212,6 +220,7 @@ public class SettingsView
     private LinearLayout     mFakeLocationPanel;         // Fake location panel
     private MainActivity     mParent;                    // Parent activity
     private SettingsCheckBox mDisplayAllGuidePath;       // Display all guide path check box
+    private SettingsCheckBox mHardwareRenderingCheckBox; // Hardware rendering check box
     private SettingsCheckBox mTrackPathCheckBox;         // Track path check box
     private SettingsCheckBox mUseDebugPathCheckBox;      // Use debug path check box
     private SettingsCheckBox mUseFakeLocationCheckBox;   // Use fake location check box
@@ -247,6 +256,10 @@ public class SettingsView
             // Inflate layout
             LayoutInflater.from(mParent).inflate(R.layout.view_settings, this, true);
 
+            // mHardwareRenderingCheckBox
+            mHardwareRenderingCheckBox = (SettingsCheckBox) findViewById(R.id.sv_general_hardware_rendering);
+            mHardwareRenderingCheckBox.setOnCheckedChangeListener(mOnHardwareRenderingCheckedChangeListener);
+
             // mUseFakeLocationCheckBox
             mUseFakeLocationCheckBox = (SettingsCheckBox) findViewById(R.id.sv_debug_use_fake_location);
             mUseFakeLocationCheckBox.setOnCheckedChangeListener(mOnUseFakeLocationCheckedChangeListener);
@@ -308,6 +321,9 @@ public class SettingsView
     {
         mParent.setTitleText(R.string.settings);
 
+        // mHardwareRenderingCheckBox
+        mHardwareRenderingCheckBox.setChecked(SettingsManager.isHardwareRenderingEnabled());
+
         // debugView
         View debugView = findViewById(R.id.sv_debug_view);
         debugView.setVisibility(SettingsManager.isDebugModeEnabled() ? View.VISIBLE : View.GONE);
@@ -0,0 +1,198 @@
+package cn.vicey.navigator.File;
+
+import cn.vicey.navigator.Models.Adjacency;
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.NodeBase;
+import cn.vicey.navigator.Models.Nodes.NodeType;
+import cn.vicey.navigator.Models.Nodes.WallNode;
+import cn.vicey.navigator.Models.SearchIndex;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link BinaryMapFile}
+ */
+public class BinaryMapFileTest
+{
+    //region Constants
+
+    private static final String MAP_HASH = "0123456789abcdef"; // Content hash the binary map file is saved with
+
+    private static final int FLOOR_COUNT = 3; // Floor count of saved map
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Create a map of random floors with named, unnamed and entry guide nodes, wall nodes and links of both types
+     *
+     * @param random Random source
+     * @return New map
+     */
+    private static Map createRandomMap(Random random)
+    {
+        List<Floor> floors = new ArrayList<>();
+        for (int i = 0; i < FLOOR_COUNT; i++)
+        {
+            Floor floor = new Floor();
+            int guideNodeCount = 50 + random.nextInt(50);
+            int wallNodeCount = 30;
+            for (int j = 0; j < guideNodeCount; j++)
+            {
+                String name = random.nextInt(3) == 0 ? null : "room " + random.nextInt(20);
+                Integer prev = random.nextInt(5) == 0 ? random.nextInt(10) : null;
+                Integer next = random.nextInt(5) == 0 ? random.nextInt(10) : null;
+                floor.addNode(new GuideNode(random.nextInt(1000), random.nextInt(1000), name, prev, next));
+            }
+            for (int j = 0; j < wallNodeCount; j++) floor.addNode(new WallNode(random.nextInt(1000), random.nextInt(1000)));
+            for (int j = 0; j < guideNodeCount * 2; j++)
+            {
+                int start = random.nextInt(guideNodeCount);
+                int end = random.nextInt(guideNodeCount);
+                if (start != end) floor.addLink(NodeType.GUIDE_NODE, start, end);
+            }
+            for (int j = 0; j < wallNodeCount; j++)
+            {
+                int start = random.nextInt(wallNodeCount);
+                int end = random.nextInt(wallNodeCount);
+                if (start != end) floor.addLink(NodeType.WALL_NODE, start, end);
+            }
+            floor.buildIndexes();
+            floors.add(floor);
+        }
+        return new Map("map", floors);
+    }
+
+    /**
+     * Gets sorted link targets of a node in adjacency
+     *
+     * @param adjacency Adjacency to read
+     * @param index     Node index
+     * @return Sorted target node indexes
+     */
+    private static List<Integer> getTargets(Adjacency adjacency, int index)
+    {
+        List<Integer> targets = new ArrayList<>();
+        for (int i = adjacency.getOffsets()[index]; i < adjacency.getOffsets()[index + 1]; i++)
+            targets.add(adjacency.getTargets()[i]);
+        Collections.sort(targets);
+        return targets;
+    }
+
+    /**
+     * Gets sorted link targets of a wall node
+     *
+     * @param floor Floor of the node
+     * @param node  Wall node
+     * @return Sorted target wall node indexes
+     */
+    private static List<Integer> getTargets(Floor floor, WallNode node)
+    {
+        List<Integer> targets = new ArrayList<>();
+        for (NodeBase.Link link : node.getLinks()) targets.add(floor.getWallNodeIndex((WallNode) link.getTarget()));
+        Collections.sort(targets);
+        return targets;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Loaded map has the same name, nodes, links and search index as the saved one
+     */
+    @Test
+    public void loadReturnsSavedMap() throws Exception
+    {
+        Map map = createRandomMap(new Random(3));
+        File file = File.createTempFile("map", ".bin");
+        try
+        {
+            assertTrue(BinaryMapFile.save(map, MAP_HASH, file));
+            Map loadedMap = BinaryMapFile.load(MAP_HASH, file);
+            assertNotNull(loadedMap);
+            assertEquals(map.getName(), loadedMap.getName());
+            assertEquals(FLOOR_COUNT, loadedMap.getFloorCount());
+            for (int i = 0; i < FLOOR_COUNT; i++)
+            {
+                Floor floor = map.getFloor(i);
+                Floor loadedFloor = loadedMap.getFloor(i);
+                assertSame(loadedFloor, loadedMap.getFloor(i));
+                assertEquals(floor.getGuideNodes().size(), loadedFloor.getGuideNodes().size());
+                for (int j = 0; j < floor.getGuideNodes().size(); j++)
+                {
+                    GuideNode node = floor.getGuideNode(j);
+                    GuideNode loadedNode = loadedFloor.getGuideNode(j);
+                    assertEquals(node.getX(), loadedNode.getX());
+                    assertEquals(node.getY(), loadedNode.getY());
+                    assertEquals(node.getName(), loadedNode.getName());
+                    assertEquals(node.getPrev(), loadedNode.getPrev());
+                    assertEquals(node.getNext(), loadedNode.getNext());
+                    assertEquals(getTargets(floor.getGuideAdjacency(), j), getTargets(loadedFloor.getGuideAdjacency(), j));
+                }
+                assertEquals(floor.getWallNodes().size(), loadedFloor.getWallNodes().size());
+                for (int j = 0; j < floor.getWallNodes().size(); j++)
+                {
+                    WallNode node = floor.getWallNode(j);
+                    WallNode loadedNode = loadedFloor.getWallNode(j);
+                    assertEquals(node.getX(), loadedNode.getX());
+                    assertEquals(node.getY(), loadedNode.getY());
+                    assertEquals(getTargets(floor, node), getTargets(loadedFloor, loadedNode));
+                }
+            }
+
+            SearchIndex searchIndex = map.getSearchIndex();
+            SearchIndex loadedSearchIndex = loadedMap.getSearchIndex();
+            assertEquals(searchIndex.getSize(), loadedSearchIndex.getSize());
+            List<SearchIndex.Result> results = searchIndex.search("room 1");
+            List<SearchIndex.Result> loadedResults = loadedSearchIndex.search("room 1");
+            assertEquals(results.size(), loadedResults.size());
+            for (int i = 0; i < results.size(); i++)
+            {
+                assertEquals(results.get(i).getName(), loadedResults.get(i).getName());
+                assertEquals(results.get(i).getFloorIndex(), loadedResults.get(i).getFloorIndex());
+                assertEquals(results.get(i).getNodeIndex(), loadedResults.get(i).getNodeIndex());
+                assertEquals(results.get(i).getRank(), loadedResults.get(i).getRank());
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Binary map file converted from another map file content isn't loaded
+     */
+    @Test
+    public void loadRejectsOutdatedFile() throws Exception
+    {
+        File file = File.createTempFile("map", ".bin");
+        try
+        {
+            assertTrue(BinaryMapFile.save(createRandomMap(new Random(5)), MAP_HASH, file));
+            assertNull(BinaryMapFile.load("fedcba9876543210", file));
+        }
+        finally
+        {
+            file.delete();
+        }
+        assertNull(BinaryMapFile.load(MAP_HASH, file));
+    }
+
+    //endregion
+}
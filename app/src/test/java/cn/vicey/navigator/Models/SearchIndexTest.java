@@ -0,0 +1,161 @@
+package cn.vicey.navigator.Models;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link SearchIndex}
+ */
+public class SearchIndexTest
+{
+    //region Constants
+
+    private static final String EXIT       = "\u51fa\u53e3"; // Exit in Chinese
+    private static final String NORTH_GATE = "\u5317\u95e8"; // North gate in Chinese, pinyin initials are bm
+    private static final String SOUTH_GATE = "\u5357\u95e8"; // South gate in Chinese, pinyin initials are nm
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Create search index of names on floor 0, node index is the name's index and both axes are 0
+     *
+     * @param names Names to index
+     * @return New search index
+     */
+    private static SearchIndex createIndex(String... names)
+    {
+        return createIndex(names, new int[names.length], new int[names.length]);
+    }
+
+    /**
+     * Create search index of names, node index is the name's index and y axis is 0
+     *
+     * @param names        Names to index
+     * @param floorIndexes Each name's floor index
+     * @param x            Each name's x axis
+     * @return New search index
+     */
+    private static SearchIndex createIndex(String[] names, int[] floorIndexes, int[] x)
+    {
+        int[] nodeIndexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) nodeIndexes[i] = i;
+        return new SearchIndex(names, floorIndexes, nodeIndexes, x, new int[names.length]);
+    }
+
+    /**
+     * Gets each found name's rank
+     *
+     * @param results Search results
+     * @return Name to rank table
+     */
+    private static HashMap<String, Integer> getRanks(List<SearchIndex.Result> results)
+    {
+        HashMap<String, Integer> ranks = new HashMap<>();
+        for (SearchIndex.Result result : results) assertNull(ranks.put(result.getName(), result.getRank()));
+        return ranks;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Names are ranked by how they match query, and results are sorted by rank
+     */
+    @Test
+    public void searchRanksMatches()
+    {
+        SearchIndex index = createIndex("Gate", "Gate 12", "North Gate", "Tollgate", "Gale", "Cafe", null);
+        assertEquals(6, index.getSize());
+        List<SearchIndex.Result> results = index.search(" GATE ");
+        HashMap<String, Integer> ranks = getRanks(results);
+        assertEquals(5, ranks.size());
+        assertEquals(SearchIndex.RANK_EXACT, (int) ranks.get("Gate"));
+        assertEquals(SearchIndex.RANK_PREFIX, (int) ranks.get("Gate 12"));
+        assertEquals(SearchIndex.RANK_WORD_PREFIX, (int) ranks.get("North Gate"));
+        assertEquals(SearchIndex.RANK_SUBSTRING, (int) ranks.get("Tollgate"));
+        assertEquals(SearchIndex.RANK_FUZZY, (int) ranks.get("Gale"));
+        for (int i = 1; i < results.size(); i++) assertTrue(results.get(i - 1).getRank() <= results.get(i).getRank());
+        assertEquals(0, index.search("   ").size());
+    }
+
+    /**
+     * Chinese names are found by their pinyin initials
+     */
+    @Test
+    public void searchRanksPinyinInitials()
+    {
+        SearchIndex index = createIndex(NORTH_GATE, SOUTH_GATE, "Cafe");
+        HashMap<String, Integer> ranks = getRanks(index.search("bm"));
+        assertEquals(1, ranks.size());
+        assertEquals(SearchIndex.RANK_PINYIN, (int) ranks.get(NORTH_GATE));
+        assertEquals(SearchIndex.RANK_EXACT, (int) getRanks(index.search(SOUTH_GATE)).get(SOUTH_GATE));
+    }
+
+    /**
+     * Results of the same rank are sorted by floor distance, then by distance from reference location
+     */
+    @Test
+    public void searchSortsByReferenceLocation()
+    {
+        SearchIndex index = createIndex(new String[]{"Exit", "Exit", "Exit", "Exit"}, new int[]{0, 2, 1, 1}, new int[]{0, 0, 500, 100});
+        List<SearchIndex.Result> results = index.search("exit", 1, 0, 0);
+        assertEquals(4, results.size());
+        assertEquals(3, results.get(0).getNodeIndex());
+        assertEquals(2, results.get(1).getNodeIndex());
+        assertEquals(1, Math.abs(results.get(2).getFloorIndex() - 1));
+        assertEquals(1, Math.abs(results.get(3).getFloorIndex() - 1));
+    }
+
+    /**
+     * Substring and better matches are exactly the names containing query, each found once
+     */
+    @Test
+    public void searchFindsAllSubstrings()
+    {
+        Random random = new Random(1);
+        String[] words = {"room", "Cafe", "101", "wc", EXIT, "store", "Gate", "a", "b2"};
+        String[] names = new String[600];
+        for (int i = 0; i < names.length; i++)
+        {
+            if (random.nextInt(10) == 0) continue;
+            names[i] = words[random.nextInt(words.length)] + (random.nextBoolean() ? " " + words[random.nextInt(words.length)] : "")
+                    + (random.nextBoolean() ? String.valueOf(random.nextInt(30)) : "");
+        }
+        SearchIndex index = createIndex(names);
+        String[] queries = {"r", "ro", "room", "room 1", "oo", "1", "10", "101", "e 1", EXIT.substring(0, 1), EXIT, "wc2", "zz", "b", "b2 ", " CAFE"};
+        for (String query : queries)
+        {
+            Set<Integer> found = new HashSet<>();
+            for (SearchIndex.Result result : index.search(query))
+            {
+                assertNotNull(result.getName());
+                if (result.getRank() <= SearchIndex.RANK_SUBSTRING) assertTrue(found.add(result.getNodeIndex()));
+            }
+            String lowerQuery = query.trim().toLowerCase(Locale.ROOT);
+            int expected = 0;
+            for (int i = 0; i < names.length; i++)
+            {
+                if (names[i] == null || !names[i].toLowerCase(Locale.ROOT).contains(lowerQuery)) continue;
+                expected++;
+                assertTrue(query, found.contains(i));
+            }
+            assertEquals(query, expected, found.size());
+        }
+    }
+
+    //endregion
+}
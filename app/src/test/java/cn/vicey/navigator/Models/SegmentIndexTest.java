@@ -0,0 +1,169 @@
+package cn.vicey.navigator.Models;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link SegmentIndex}, results are compared with checking every segment
+ */
+public class SegmentIndexTest
+{
+    //region Static methods
+
+    /**
+     * Calculate cross product of vectors from point a to point b and from point a to point c
+     *
+     * @return Cross product, 0 if the points are collinear
+     */
+    private static long cross(long ax, long ay, long bx, long by, long cx, long cy)
+    {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    /**
+     * Check whether point c is in bounding box of segment from point a to point b
+     *
+     * @return Whether point c is in the bounding box
+     */
+    private static boolean isInBox(long ax, long ay, long bx, long by, long cx, long cy)
+    {
+        return cx >= Math.min(ax, bx) && cx <= Math.max(ax, bx) && cy >= Math.min(ay, by) && cy <= Math.max(ay, by);
+    }
+
+    /**
+     * Check whether a segment crosses or touches a line
+     *
+     * @param segments Segments, x1, y1, x2, y2 of each segment
+     * @param offset   Offset of the segment
+     * @param x1       Line's start x axis
+     * @param y1       Line's start y axis
+     * @param x2       Line's end x axis
+     * @param y2       Line's end y axis
+     * @return Whether the segment crosses or touches the line
+     */
+    private static boolean isCrossing(int[] segments, int offset, int x1, int y1, int x2, int y2)
+    {
+        int sx1 = segments[offset];
+        int sy1 = segments[offset + 1];
+        int sx2 = segments[offset + 2];
+        int sy2 = segments[offset + 3];
+        long d1 = cross(sx1, sy1, sx2, sy2, x1, y1);
+        long d2 = cross(sx1, sy1, sx2, sy2, x2, y2);
+        long d3 = cross(x1, y1, x2, y2, sx1, sy1);
+        long d4 = cross(x1, y1, x2, y2, sx2, sy2);
+        if ((d1 > 0 && d2 < 0 || d1 < 0 && d2 > 0) && (d3 > 0 && d4 < 0 || d3 < 0 && d4 > 0)) return true;
+        return d1 == 0 && isInBox(sx1, sy1, sx2, sy2, x1, y1) || d2 == 0 && isInBox(sx1, sy1, sx2, sy2, x2, y2)
+                || d3 == 0 && isInBox(x1, y1, x2, y2, sx1, sy1) || d4 == 0 && isInBox(x1, y1, x2, y2, sx2, sy2);
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Lines touching a wall's end, running along a wall or passing a joint are blocked, lines beside walls aren't
+     */
+    @Test
+    public void isBlockedHandlesTouchingCases()
+    {
+        SegmentIndex index = new SegmentIndex(new int[]{50, 0, 50, 100, 50, 100, 100, 100}, 2);
+        assertTrue(index.isBlocked(40, 50, 50, 50));
+        assertTrue(index.isBlocked(50, 20, 50, 80));
+        assertTrue(index.isBlocked(40, 100, 60, 90));
+        assertTrue(index.isBlocked(50, 100, 50, 120));
+        assertTrue(index.isBlocked(0, 50, 100, 50));
+        assertFalse(index.isBlocked(40, 0, 40, 100));
+        assertFalse(index.isBlocked(60, 0, 60, 90));
+    }
+
+    /**
+     * Lines are blocked exactly when they cross or touch a segment, for both dense and sparse segments
+     */
+    @Test
+    public void isBlockedMatchesBruteForce()
+    {
+        Random random = new Random(9);
+        for (int round = 0; round < 200; round++)
+        {
+            int count = random.nextInt(300);
+            // Small spans put many segments into the same cell
+            int span = round % 2 == 0 ? 8 + random.nextInt(30) : 10 + random.nextInt(5000);
+            int[] segments = new int[count * 4];
+            for (int i = 0; i < count; i++)
+            {
+                int x = random.nextInt(span);
+                int y = random.nextInt(span);
+                segments[i * 4] = x;
+                segments[i * 4 + 1] = y;
+                if (random.nextInt(4) != 0)
+                {
+                    segments[i * 4 + 2] = Math.min(span, Math.max(0, x + random.nextInt(21) - 10));
+                    segments[i * 4 + 3] = Math.min(span, Math.max(0, y + random.nextInt(21) - 10));
+                }
+                else
+                {
+                    segments[i * 4 + 2] = random.nextInt(span);
+                    segments[i * 4 + 3] = random.nextInt(span);
+                }
+            }
+            SegmentIndex index = new SegmentIndex(segments, count);
+            assertEquals(count, index.getSize());
+            for (int query = 0; query < 200; query++)
+            {
+                int x1 = random.nextInt(span + 20) - 10;
+                int y1 = random.nextInt(span + 20) - 10;
+                int x2 = random.nextBoolean() ? x1 + random.nextInt(41) - 20 : random.nextInt(span + 20) - 10;
+                int y2 = random.nextBoolean() ? y1 + random.nextInt(41) - 20 : random.nextInt(span + 20) - 10;
+                boolean isBlocked = false;
+                for (int i = 0; i < count && !isBlocked; i++) isBlocked = isCrossing(segments, i * 4, x1, y1, x2, y2);
+                assertEquals(isBlocked, index.isBlocked(x1, y1, x2, y2));
+            }
+        }
+    }
+
+    /**
+     * Segments found in a rectangle are exactly the ones whose bounding boxes overlap it, each found once
+     */
+    @Test
+    public void findInRectMatchesBruteForce()
+    {
+        Random random = new Random(3);
+        for (int round = 0; round < 100; round++)
+        {
+            int count = random.nextInt(300);
+            int span = 10 + random.nextInt(3000);
+            int[] segments = new int[count * 4];
+            for (int i = 0; i < segments.length; i++) segments[i] = random.nextInt(span);
+            SegmentIndex index = new SegmentIndex(segments, count);
+            int[] result = new int[count];
+            for (int query = 0; query < 50; query++)
+            {
+                int minX = random.nextInt(span);
+                int minY = random.nextInt(span);
+                int maxX = minX + random.nextInt(span / 2 + 1);
+                int maxY = minY + random.nextInt(span / 2 + 1);
+                int found = index.findInRect(minX, minY, maxX, maxY, result);
+                Set<Integer> foundSet = new HashSet<>();
+                for (int i = 0; i < found; i++) assertTrue(foundSet.add(result[i]));
+                for (int i = 0; i < count; i++)
+                {
+                    int offset = i * 4;
+                    boolean isOverlapping = Math.max(segments[offset], segments[offset + 2]) >= minX
+                            && Math.min(segments[offset], segments[offset + 2]) <= maxX
+                            && Math.max(segments[offset + 1], segments[offset + 3]) >= minY
+                            && Math.min(segments[offset + 1], segments[offset + 3]) <= maxY;
+                    assertEquals(isOverlapping, foundSet.contains(i));
+                }
+            }
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,184 @@
+package cn.vicey.navigator.Navigate;
+
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.NodeType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link ContractionHierarchy}, routes are compared with {@link MapNavigator}'s A* search and a
+ * plain Dijkstra search over the same graph
+ */
+public class ContractionHierarchyTest
+{
+    //region Constants
+
+    private static final double DELTA = 1e-6; // Tolerance of route length comparison
+
+    private static final int ENTRY_COUNT = 3; // Entry node count between two adjacent floors
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Create a map of random floors, the first nodes of each floor are entries to adjacent floors
+     *
+     * @param random     Random source
+     * @param floorCount Floor count
+     * @return New map
+     */
+    private static Map createRandomMap(Random random, int floorCount)
+    {
+        List<Floor> floors = new ArrayList<>();
+        for (int i = 0; i < floorCount; i++)
+        {
+            Floor floor = new Floor();
+            int nodeCount = ENTRY_COUNT + 2 + random.nextInt(60);
+            for (int j = 0; j < nodeCount; j++)
+            {
+                Integer prev = i > 0 && j < ENTRY_COUNT ? j : null;
+                Integer next = i < floorCount - 1 && j < ENTRY_COUNT ? j : null;
+                floor.addNode(new GuideNode(random.nextInt(500), random.nextInt(500), "node " + j, prev, next));
+            }
+            for (int j = 0; j < nodeCount * 2; j++)
+            {
+                int start = random.nextInt(nodeCount);
+                int end = random.nextInt(nodeCount);
+                if (start != end) floor.addLink(NodeType.GUIDE_NODE, start, end);
+            }
+            floor.buildIndexes();
+            floors.add(floor);
+        }
+        return new Map("map", floors);
+    }
+
+    /**
+     * Find shortest distance between two nodes using plain Dijkstra algorithm over navigator's links
+     *
+     * @param navigator Navigator to search
+     * @param start     Start node index
+     * @param end       End node index
+     * @return Shortest distance, or positive infinity if end node is unreachable
+     */
+    private static double findDistance(MapNavigator navigator, int start, int end)
+    {
+        int[] offsets = navigator.getLinkOffsets();
+        int[] targets = navigator.getLinkTargets();
+        double[] distances = navigator.getLinkDistances();
+        double[] dist = new double[navigator.getNodeCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[start] = 0;
+        NodeHeap heap = new NodeHeap();
+        heap.push(start, 0);
+        while (!heap.isEmpty())
+        {
+            double distance = heap.getTopPriority();
+            int current = heap.pop();
+            if (distance > dist[current]) continue;
+            if (current == end) return distance;
+            for (int i = offsets[current]; i < offsets[current + 1]; i++)
+            {
+                double newDistance = distance + distances[i];
+                if (newDistance >= dist[targets[i]]) continue;
+                dist[targets[i]] = newDistance;
+                heap.push(targets[i], newDistance);
+            }
+        }
+        return dist[end];
+    }
+
+    /**
+     * Find route between two nodes of navigator
+     *
+     * @param navigator Navigator to search
+     * @param start     Start node index
+     * @param end       End node index
+     * @return Found route, or null if end node is unreachable
+     */
+    private static Route findRoute(MapNavigator navigator, int start, int end)
+    {
+        return navigator.findRoute(navigator.getNodeFloorIndex(start), navigator.getNode(start), navigator.getNodeFloorIndex(end), navigator
+                .getNode(end));
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Routes found by contraction hierarchy are as long as A* and Dijkstra routes, follow links and connect the queried
+     * nodes
+     */
+    @Test
+    public void findRouteMatchesSearches()
+    {
+        Random random = new Random(1);
+        for (int round = 0; round < 20; round++)
+        {
+            Map map = createRandomMap(random, 1 + random.nextInt(3));
+            MapNavigator searchNavigator = new MapNavigator(map, MapNavigator.DEFAULT_FLOOR_CHANGE_COST);
+            MapNavigator hierarchyNavigator = new MapNavigator(map, MapNavigator.DEFAULT_FLOOR_CHANGE_COST);
+            hierarchyNavigator.setHierarchy(ContractionHierarchy.build(hierarchyNavigator));
+            int nodeCount = searchNavigator.getNodeCount();
+            assertEquals(nodeCount, hierarchyNavigator.getNodeCount());
+            for (int query = 0; query < 100; query++)
+            {
+                int start = random.nextInt(nodeCount);
+                int end = random.nextInt(nodeCount);
+                double distance = findDistance(searchNavigator, start, end);
+                Route searchRoute = findRoute(searchNavigator, start, end);
+                Route hierarchyRoute = findRoute(hierarchyNavigator, start, end);
+                if (distance == Double.POSITIVE_INFINITY)
+                {
+                    assertNull(searchRoute);
+                    assertNull(hierarchyRoute);
+                    continue;
+                }
+                assertNotNull(searchRoute);
+                assertNotNull(hierarchyRoute);
+                assertEquals(distance, searchRoute.getLength(), DELTA);
+                assertEquals(distance, hierarchyRoute.getLength(), DELTA);
+
+                // Unpacked shortcuts are real links whose distances sum up to route length
+                int size = hierarchyRoute.getSize();
+                assertEquals(start, hierarchyRoute.getNodeIndex(0));
+                assertEquals(end, hierarchyRoute.getNodeIndex(size - 1));
+                double length = 0;
+                for (int i = 1; i < size; i++)
+                {
+                    double linkDistance = hierarchyNavigator.getLinkDistance(hierarchyRoute.getNodeIndex(i - 1), hierarchyRoute
+                            .getNodeIndex(i));
+                    assertTrue(linkDistance < Double.POSITIVE_INFINITY);
+                    length += linkDistance;
+                }
+                assertEquals(distance, length, DELTA);
+            }
+        }
+    }
+
+    /**
+     * Hierarchy keeps floor change cost of the navigator it's built from
+     */
+    @Test
+    public void buildKeepsFloorChangeCost()
+    {
+        MapNavigator navigator = new MapNavigator(createRandomMap(new Random(2), 2), 123);
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(navigator);
+        assertEquals(123, hierarchy.getFloorChangeCost(), 0);
+        assertEquals(navigator.getNodeCount(), hierarchy.getNodeCount());
+    }
+
+    //endregion
+}
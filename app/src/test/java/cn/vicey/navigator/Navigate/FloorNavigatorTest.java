@@ -0,0 +1,155 @@
+package cn.vicey.navigator.Navigate;
+
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.NodeBase;
+import cn.vicey.navigator.Models.Nodes.NodeType;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link FloorNavigator}
+ */
+public class FloorNavigatorTest
+{
+    //region Constants
+
+    private static final double DELTA = 1e-3; // Tolerance of path length comparison, link distances are floats
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Create a floor of random guide nodes and links
+     *
+     * @param random    Random source
+     * @param nodeCount Guide node count
+     * @param linkCount Link count, self links are skipped
+     * @return New floor with indexes built
+     */
+    static Floor createRandomFloor(Random random, int nodeCount, int linkCount)
+    {
+        Floor floor = new Floor();
+        for (int i = 0; i < nodeCount; i++)
+            floor.addNode(new GuideNode(random.nextInt(1000), random.nextInt(1000), "node " + i, null, null));
+        for (int i = 0; i < linkCount; i++)
+        {
+            int start = random.nextInt(nodeCount);
+            int end = random.nextInt(nodeCount);
+            if (start != end) floor.addLink(NodeType.GUIDE_NODE, start, end);
+        }
+        floor.buildIndexes();
+        return floor;
+    }
+
+    /**
+     * Check whether two guide nodes are linked
+     *
+     * @param floor Floor of the nodes
+     * @param start Start node
+     * @param end   End node
+     * @return Whether there is a link from start node to end node
+     */
+    private static boolean isLinked(Floor floor, GuideNode start, GuideNode end)
+    {
+        for (NodeBase.Link link : floor.getGuideLinks(floor.getGuideNodeIndex(start)))
+            if (link.getTarget() == end) return true;
+        return false;
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * A* paths are as long as Dijkstra shortest path tree distances, and unreachable nodes have no path
+     */
+    @Test
+    public void findPathMatchesShortestPathTree()
+    {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++)
+        {
+            int nodeCount = 20 + random.nextInt(200);
+            // Sparse floors leave some nodes unreachable
+            Floor floor = createRandomFloor(random, nodeCount, nodeCount + random.nextInt(nodeCount * 2));
+            FloorNavigator navigator = new FloorNavigator(floor);
+            double[] dist = new double[nodeCount];
+            int[] prev = new int[nodeCount];
+            NodeHeap heap = new NodeHeap(nodeCount);
+            for (int query = 0; query < 20; query++)
+            {
+                int start = random.nextInt(nodeCount);
+                int end = random.nextInt(nodeCount);
+                navigator.buildShortestPathTree(start, dist, prev, heap);
+                Path path = navigator.findPath(floor.getGuideNode(start), floor.getGuideNode(end));
+                if (dist[end] == Double.POSITIVE_INFINITY)
+                {
+                    assertNull(path);
+                    assertEquals(FloorNavigator.NO_NODE, prev[end]);
+                    continue;
+                }
+                assertNotNull(path);
+                assertEquals(dist[end], path.getLength(), DELTA);
+                assertEquals(floor.getGuideNode(start).getX(), path.getStart().getX());
+                assertEquals(floor.getGuideNode(end).getY(), path.getEnd().getY());
+            }
+        }
+    }
+
+    /**
+     * Path nodes found by A* are linked one by one
+     */
+    @Test
+    public void findPathNodesFollowsLinks()
+    {
+        Random random = new Random(11);
+        Floor floor = createRandomFloor(random, 100, 300);
+        FloorNavigator navigator = new FloorNavigator(floor);
+        for (int query = 0; query < 50; query++)
+        {
+            GuideNode start = floor.getGuideNode(random.nextInt(100));
+            GuideNode end = floor.getGuideNode(random.nextInt(100));
+            List<GuideNode> nodes = navigator.findPathNodes(start, end);
+            if (nodes == null) continue;
+            assertSame(start, nodes.get(0));
+            assertSame(end, nodes.get(nodes.size() - 1));
+            for (int i = 1; i < nodes.size(); i++)
+                assertTrue(isLinked(floor, nodes.get(i - 1), nodes.get(i)));
+        }
+    }
+
+    /**
+     * Shortest path on a small floor takes the detour which is shorter than the direct link
+     */
+    @Test
+    public void findPathPrefersShorterDetour()
+    {
+        Floor floor = new Floor();
+        floor.addNode(new GuideNode(0, 0, "a", null, null));
+        floor.addNode(new GuideNode(30, 40, "b", null, null));
+        floor.addNode(new GuideNode(60, 0, "c", null, null));
+        floor.addNode(new GuideNode(30, -1, "d", null, null));
+        floor.addLink(NodeType.GUIDE_NODE, 0, 1);
+        floor.addLink(NodeType.GUIDE_NODE, 1, 2);
+        floor.addLink(NodeType.GUIDE_NODE, 0, 3);
+        floor.addLink(NodeType.GUIDE_NODE, 3, 2);
+        floor.buildIndexes();
+        Path path = new FloorNavigator(floor).findPath(floor.getGuideNode(0), floor.getGuideNode(2));
+        assertNotNull(path);
+        assertEquals(3, path.getSize());
+        assertEquals(-1, path.getNode(1).getY());
+        assertEquals(2 * Math.hypot(30, 1), path.getLength(), DELTA);
+    }
+
+    //endregion
+}
@@ -0,0 +1,130 @@
+package cn.vicey.navigator.Navigate;
+
+import cn.vicey.navigator.Models.Nodes.PathNode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests of class {@link Path}
+ */
+public class PathTest
+{
+    //region Constants
+
+    private static final double DELTA = 1e-6; // Tolerance of path length comparison
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Check that path has expected nodes and length
+     *
+     * @param expected Expected node coordinates, x and y of each node
+     * @param path     Path to check
+     */
+    private static void assertPath(List<int[]> expected, Path path)
+    {
+        assertEquals(expected.size(), path.getSize());
+        assertEquals(expected.size(), path.getNodes().size());
+        double length = 0;
+        for (int i = 0; i < expected.size(); i++)
+        {
+            PathNode node = path.getNodes().get(i);
+            assertEquals(expected.get(i)[0], node.getX());
+            assertEquals(expected.get(i)[1], node.getY());
+            if (i > 0)
+                length += Math.hypot(expected.get(i)[0] - expected.get(i - 1)[0], expected.get(i)[1] - expected.get(i - 1)[1]);
+        }
+        assertEquals(length, path.getLength(), DELTA);
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Paths grown from the same path in different ways don't affect each other or the path they're grown from
+     */
+    @Test
+    public void derivedPathsLeaveSourceUnchanged()
+    {
+        Random random = new Random(1);
+        List<Path> paths = new ArrayList<>();
+        List<List<int[]>> expected = new ArrayList<>();
+        paths.add(new Path(null));
+        expected.add(new ArrayList<int[]>());
+        for (int step = 0; step < 5000; step++)
+        {
+            int source = random.nextInt(paths.size());
+            Path path = paths.get(source);
+            List<int[]> nodes = new ArrayList<>(expected.get(source));
+            int x = random.nextInt(100);
+            int y = random.nextInt(100);
+            int operation = random.nextInt(10);
+            Path newPath;
+            if (operation < 5)
+            {
+                newPath = path.appendTail(new PathNode(x, y));
+                nodes.add(new int[]{x, y});
+            }
+            else if (operation < 8)
+            {
+                newPath = path.appendHead(new PathNode(x, y));
+                nodes.add(0, new int[]{x, y});
+            }
+            else if (operation < 9)
+            {
+                newPath = path.removeTail();
+                if (!nodes.isEmpty()) nodes.remove(nodes.size() - 1);
+            }
+            else
+            {
+                newPath = path.reverse();
+                Collections.reverse(nodes);
+            }
+            assertPath(nodes, newPath);
+            assertPath(expected.get(source), path);
+            paths.add(newPath);
+            expected.add(nodes);
+            if (paths.size() > 100)
+            {
+                paths.remove(0);
+                expected.remove(0);
+            }
+        }
+        for (int i = 0; i < paths.size(); i++) assertPath(expected.get(i), paths.get(i));
+    }
+
+    /**
+     * Empty path has no start or end node
+     */
+    @Test
+    public void emptyPathHasNoEnds()
+    {
+        Path path = new Path(null);
+        assertEquals(0, path.getSize());
+        assertNull(path.getStart());
+        assertNull(path.getEnd());
+        assertEquals(0, path.removeTail().getSize());
+    }
+
+    /**
+     * Nodes of a path can't be changed through its node list
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void nodesAreReadOnly()
+    {
+        Path path = new Path(0, 0).appendTail(new PathNode(3, 4));
+        path.getNodes().add(new PathNode(6, 8));
+    }
+
+    //endregion
+}
@@ -0,0 +1,147 @@
+package cn.vicey.navigator.Navigate;
+
+import cn.vicey.navigator.Models.Floor;
+import cn.vicey.navigator.Models.Map;
+import cn.vicey.navigator.Models.Nodes.GuideNode;
+import cn.vicey.navigator.Models.Nodes.NodeType;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of class {@link Route}
+ */
+public class RouteTest
+{
+    //region Constants
+
+    private static final double DELTA = 1e-3; // Tolerance of route length comparison, link distances are floats
+
+    private static final int LINE_SIZE = 10; // Guide node count along the straight line
+
+    //endregion
+
+    //region Static methods
+
+    /**
+     * Gets node indexes of route
+     *
+     * @param route Route to read
+     * @return Node indexes in route order
+     */
+    private static int[] getNodeIndexes(Route route)
+    {
+        int[] indexes = new int[route.getSize()];
+        for (int i = 0; i < indexes.length; i++) indexes[i] = route.getNodeIndex(i);
+        return indexes;
+    }
+
+    //endregion
+
+    //region Fields
+
+    private Floor        mFloor;     // Floor of a straight line of nodes with a branch beside it
+    private MapNavigator mNavigator; // Navigator of the floor
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Initialize new instance of class {@link RouteTest}
+     * <p>
+     * Nodes 0 to 9 are on a straight line, node 10 branches from node 3, and nodes 11 and 12 branch from node 10.
+     */
+    public RouteTest()
+    {
+        mFloor = new Floor();
+        for (int i = 0; i < LINE_SIZE; i++) mFloor.addNode(new GuideNode(i * 10, 0, "line " + i, null, null));
+        mFloor.addNode(new GuideNode(30, 10, "branch", null, null));
+        mFloor.addNode(new GuideNode(30, 20, "far", null, null));
+        mFloor.addNode(new GuideNode(40, 10, "side", null, null));
+        for (int i = 1; i < LINE_SIZE; i++) mFloor.addLink(NodeType.GUIDE_NODE, i - 1, i);
+        mFloor.addLink(NodeType.GUIDE_NODE, 3, 10);
+        mFloor.addLink(NodeType.GUIDE_NODE, 10, 11);
+        mFloor.addLink(NodeType.GUIDE_NODE, 10, 12);
+        mFloor.buildIndexes();
+        mNavigator = new MapNavigator(new Map("map", Collections.singletonList(mFloor)), MapNavigator.DEFAULT_FLOOR_CHANGE_COST);
+    }
+
+    //endregion
+
+    //region Methods
+
+    /**
+     * Gets navigator node index of a guide node
+     *
+     * @param guideNodeIndex Guide node index in floor
+     * @return Node index in navigator
+     */
+    private int getIndex(int guideNodeIndex)
+    {
+        return mNavigator.getNodeIndex(0, mFloor.getGuideNode(guideNodeIndex));
+    }
+
+    /**
+     * Moving cursor of a route doesn't move cursors of routes sharing its base route
+     */
+    @Test
+    public void advanceToOnlyMovesOwnCursor()
+    {
+        Route route = mNavigator.findRoute(0, mFloor.getGuideNode(0), 0, mFloor.getGuideNode(LINE_SIZE - 1));
+        assertNotNull(route);
+        Route repaired = mNavigator.repairRoute(route, 0, mFloor.getGuideNode(11));
+        assertNotNull(repaired);
+        assertTrue(repaired.advanceTo(0, mFloor.getGuideNode(5)));
+        assertEquals(0, route.getCursor());
+        assertTrue(route.advanceTo(0, mFloor.getGuideNode(7)));
+        assertEquals(7, route.getCursor());
+        assertEquals(repaired.indexOf(0, mFloor.getGuideNode(5)), repaired.getCursor());
+    }
+
+    /**
+     * Repairing a route creates a new route which shares the rest of it, old routes stay unchanged
+     */
+    @Test
+    public void repairRouteLeavesRouteUnchanged()
+    {
+        Route route = mNavigator.findRoute(0, mFloor.getGuideNode(0), 0, mFloor.getGuideNode(LINE_SIZE - 1));
+        assertNotNull(route);
+        int[] routeNodes = getNodeIndexes(route);
+        double routeLength = route.getLength();
+        assertEquals(LINE_SIZE, routeNodes.length);
+        assertEquals((LINE_SIZE - 1) * 10, routeLength, DELTA);
+
+        // User stepped off to node 11, detour goes back through node 10 and joins at node 3
+        Route repaired = mNavigator.repairRoute(route, 0, mFloor.getGuideNode(11));
+        assertNotNull(repaired);
+        int[] repairedNodes = getNodeIndexes(repaired);
+        assertArrayEquals(new int[]{getIndex(11), getIndex(10), getIndex(3), getIndex(4), getIndex(5), getIndex(6), getIndex(7),
+                getIndex(8), getIndex(9)}, repairedNodes);
+        assertEquals(20 + 60, repaired.getLength(), DELTA);
+        assertEquals(-1, repaired.indexOf(getIndex(0)));
+        assertArrayEquals(routeNodes, getNodeIndexes(route));
+        assertEquals(routeLength, route.getLength(), DELTA);
+
+        // User stepped off to node 12 from the detour, new detour joins the old one at node 10
+        Route repairedAgain = mNavigator.repairRoute(repaired, 0, mFloor.getGuideNode(12));
+        assertNotNull(repairedAgain);
+        assertArrayEquals(new int[]{getIndex(12), getIndex(10), getIndex(3), getIndex(4), getIndex(5), getIndex(6), getIndex(7),
+                getIndex(8), getIndex(9)}, getNodeIndexes(repairedAgain));
+        assertEquals(10 + 10 + 60, repairedAgain.getLength(), DELTA);
+        assertArrayEquals(repairedNodes, getNodeIndexes(repaired));
+        assertArrayEquals(routeNodes, getNodeIndexes(route));
+
+        // Remaining distances decrease along the route and reach zero at end node
+        for (int i = 1; i < repairedAgain.getSize(); i++)
+            assertTrue(repairedAgain.getRemaining(i) < repairedAgain.getRemaining(i - 1));
+        assertEquals(0, repairedAgain.getRemaining(repairedAgain.getSize() - 1), DELTA);
+    }
+
+    //endregion
+}